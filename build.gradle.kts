@@ -32,6 +32,37 @@ dependencies {
     testImplementation("org.junit.jupiter:junit-jupiter")
 }
 
+// The SIMD noise kernel needs the incubating Vector API, FastNoiseLite falls back to scalar code without the module.
+// It is only used with -Dskyengine.noise.vector=true. The kernel lives in its own source set, so only its compile task
+// gets the module and prints javac's "using incubating module(s)" warning. FastNoiseLite loads it through reflection.
+val vectorModule = listOf("--add-modules", "jdk.incubator.vector")
+
+val vector: SourceSet by sourceSets.creating {
+    compileClasspath += sourceSets.main.get().output
+}
+
+sourceSets {
+    main {
+        runtimeClasspath += vector.output
+    }
+    test {
+        runtimeClasspath += vector.output
+    }
+}
+
+tasks.named<JavaCompile>(vector.compileJavaTaskName) {
+    options.compilerArgs.addAll(vectorModule)
+}
+
+tasks.jar {
+    from(vector.output)
+}
+
+tasks.withType<JavaExec>().configureEach {
+    jvmArgs(vectorModule)
+}
+
 tasks.test {
     useJUnitPlatform()
-}
\ No newline at end of file
+    jvmArgs(vectorModule)
+}
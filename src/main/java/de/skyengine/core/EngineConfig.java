@@ -1,5 +1,6 @@
 package de.skyengine.core;
 
+import de.skyengine.core.tick.TickScheduler;
 import de.skyengine.graphics.color.Color4;
 
 public class EngineConfig {
@@ -23,6 +24,9 @@ public class EngineConfig {
 
     private int backgroundFPS = -1;
 
+    private int ticksPerSecond = TickScheduler.DEFAULT_TICKS_PER_SECOND;
+    private int maxCatchUpTicks = TickScheduler.DEFAULT_MAX_CATCH_UP_TICKS;
+
     private Color4 windowClearColor = Color4.BLACK;
     private DebugMode debugMode = DebugMode.NONE;
 
@@ -197,6 +201,25 @@ public class EngineConfig {
         this.backgroundFPS = backgroundFPS;
     }
 
+    public int getTicksPerSecond() {
+        return ticksPerSecond;
+    }
+
+    public void setTicksPerSecond(int ticksPerSecond) {
+        this.ticksPerSecond = Math.max(ticksPerSecond, 1);
+    }
+
+    public int getMaxCatchUpTicks() {
+        return maxCatchUpTicks;
+    }
+
+    /**
+     * @param maxCatchUpTicks the number of ticks a single frame runs at most when the game fell behind
+     */
+    public void setMaxCatchUpTicks(int maxCatchUpTicks) {
+        this.maxCatchUpTicks = Math.max(maxCatchUpTicks, 1);
+    }
+
     public enum WindowMode {
         WINDOWED, FULLSCREEN, BORDERLESS_FULLSCREEN;
     }
@@ -33,7 +33,7 @@ public class EngineProperties {
         this.useInverseDepth = caps.GL_ARB_clip_control || caps.OpenGL45;
         this.useNvMultisampleCoverage = caps.GL_NV_framebuffer_multisample_coverage;
         this.canUseSynchronousDebugCallback = caps.GL_ARB_debug_output || caps.OpenGL43;
-        this.generateDrawCallsViaShader = caps.GL_ARB_shader_image_load_store/* 4.2 */ && caps.GL_ARB_shader_storage_buffer_object/* 4.3 */ && caps.GL_ARB_shader_atomic_counters/* 4.2 */ || caps.OpenGL43;
+        this.generateDrawCallsViaShader = caps.GL_ARB_shader_image_load_store/* 4.2 */ && caps.GL_ARB_shader_storage_buffer_object/* 4.3 */ && caps.GL_ARB_shader_atomic_counters/* 4.2 */ && caps.GL_ARB_compute_shader/* 4.3 */ || caps.OpenGL43;
         this.useOcclusionCulling = this.generateDrawCallsViaShader && this.useMultiDrawIndirect;
         this.useTemporalCoherenceOcclusionCulling = true;
         this.sourceIndirectDrawCallCountFromBuffer = this.generateDrawCallsViaShader && (caps.GL_ARB_indirect_parameters || caps.OpenGL46);
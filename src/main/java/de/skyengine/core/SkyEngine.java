@@ -2,6 +2,7 @@ package de.skyengine.core;
 
 import de.skyengine.core.file.Files;
 import de.skyengine.core.input.Input;
+import de.skyengine.core.tick.TickScheduler;
 import de.skyengine.game.GameContainer;
 import de.skyengine.util.DelayedRunnable;
 import de.skyengine.util.logging.LogManager;
@@ -25,9 +26,6 @@ public class SkyEngine {
     private static SkyEngine instance = null;
     private final Logger logger = LogManager.getLogger(SkyEngine.class.getName());
 
-    private static final int TPS = 20;
-    private static final long TICK_TIME_NANOS = 1_000_000_000 / TPS;
-
     private final EngineConfig config;
 
     private final Window window;
@@ -37,6 +35,7 @@ public class SkyEngine {
     private final Queue<DelayedRunnable> tasks;
 
     private final GameContainer game;
+    private final TickScheduler scheduler;
 
     public SkyEngine(EngineConfig config) {
         instance = this;
@@ -47,6 +46,13 @@ public class SkyEngine {
         this.files = new Files();
         this.tasks = new ConcurrentLinkedQueue<>();
         this.game = new GameContainer();
+
+        this.scheduler = new TickScheduler(config.getTicksPerSecond(), config.getMaxCatchUpTicks());
+        this.scheduler.addFramePhase("tasks", this::drainRunnables);
+        this.scheduler.addFramePhase("input", this.input::update);
+        this.scheduler.addTickPhase("chunks", this.game::integrateChunks).setSkipDuringCatchUp(true);
+        this.scheduler.addTickPhase("world", this::onUpdate);
+        this.scheduler.addRenderPhase("render", this::onRender);
     }
 
     private void onUpdate() {
@@ -60,7 +66,6 @@ public class SkyEngine {
                 this.config.getWindowClearColor().blue,
                 this.config.getWindowClearColor().alpha
         );
-        GL11.glClear(GL11.GL_COLOR_BUFFER_BIT | GL11.GL_DEPTH_BUFFER_BIT);
         GL11.glEnable(GL31.GL_PRIMITIVE_RESTART);
         GL11.glBlendFunc(GL11.GL_SRC_ALPHA, GL11.GL_ONE_MINUS_SRC_ALPHA);
         GL31.glPrimitiveRestartIndex(PRIMITIVE_RESTART_INDEX);
@@ -71,10 +76,12 @@ public class SkyEngine {
             GL11.glClearDepth(0.0);
         } else {
             GL11.glDepthFunc(GL11.GL_LESS);
+            GL11.glClearDepth(1.0);
         }
 
-        GL11.glClear(GL11.GL_COLOR_BUFFER_BIT | GL11.GL_DEPTH_BUFFER_BIT);
+        /* The game draws into the multisampled framebuffer, the screen is overwritten by the blit */
         this.window.getFrameBuffer().bind();
+        GL11.glClear(GL11.GL_COLOR_BUFFER_BIT | GL11.GL_DEPTH_BUFFER_BIT);
         this.game.render(partialTick);
         this.window.getFrameBuffer().blitToScreen();
 
@@ -97,57 +104,34 @@ public class SkyEngine {
     private void gameLoop() {
         this.drainRunnables();
 
-        long lastTickTime = System.nanoTime();
-        long accumulatedTime = 0;
-        double lastLoopTime = 0;
-
-        int frames = 0;
-        int updates = 0;
+        long lastFrames = 0;
+        long lastUpdates = 0;
         long lastStatusTime = System.currentTimeMillis();
 
         while (!this.window.shouldClose()) {
-            long currentTime = System.nanoTime();
-            long frameTime = currentTime - lastTickTime;
-            lastTickTime = currentTime;
-            lastLoopTime = GLFW.glfwGetTime();
-
-            accumulatedTime += frameTime;
-
-            this.drainRunnables();
+            double lastLoopTime = GLFW.glfwGetTime();
 
-            this.input.update();
-
-            int ticksProcessed = 0;
-            while (accumulatedTime >= TICK_TIME_NANOS && ticksProcessed < 10) {
-                this.onUpdate();
-                accumulatedTime -= TICK_TIME_NANOS;
-                ticksProcessed++;
-                updates++;
-            }
-
-            if (ticksProcessed >= 10) {
-                this.logger.warning("Can't keep up with TPS! Skipping " + (accumulatedTime / TICK_TIME_NANOS) + " Ticks.");
-                accumulatedTime = 0;
-            }
-
-            float partialTick = (float) accumulatedTime / TICK_TIME_NANOS;
-            this.onRender(partialTick);
-            frames++;
+            this.scheduler.frame();
 
             // TODO: Add fps limit function here
-            if (this.config.getBackgroundFPS() > TPS && this.config.isMinimized()) {
+            if (this.config.getBackgroundFPS() > this.scheduler.getTicksPerSecond() && this.config.isMinimized()) {
                 this.sync(this.config.getBackgroundFPS(), lastLoopTime);
             }
 
             // show states each 1 second
             if (System.currentTimeMillis() - lastStatusTime >= 1000) {
+                long frames = this.scheduler.getFrameCount() - lastFrames;
+                long updates = this.scheduler.getTickCount() - lastUpdates;
                 System.out.printf("FPS: %d, TPS: %d%n", frames, updates);
-                if (this.config.isWindowed() && !this.config.getDebugMode().equals(EngineConfig.DebugMode.NONE)) {
-                    this.window.setTitle("%s v%s | FPS: %d, TPS: %d".formatted(SkyEngine.ENGINE_NAME, SkyEngine.ENGINE_VERSION, frames, updates));
+                if (!this.config.getDebugMode().equals(EngineConfig.DebugMode.NONE)) {
+                    this.logger.debug(this.scheduler.getTimingSummary());
+                    if (this.config.isWindowed()) {
+                        this.window.setTitle("%s v%s | FPS: %d, TPS: %d".formatted(SkyEngine.ENGINE_NAME, SkyEngine.ENGINE_VERSION, frames, updates));
+                    }
                 }
 
-                frames = 0;
-                updates = 0;
+                lastFrames = this.scheduler.getFrameCount();
+                lastUpdates = this.scheduler.getTickCount();
                 lastStatusTime = System.currentTimeMillis();
             }
         }
@@ -183,6 +167,8 @@ public class SkyEngine {
 
                 // Configure VAOs, Shader, Textures here
                 this.window.getFrameBuffer().create();
+                this.game.init();
+                this.game.resize(this.window.getWidth(), this.window.getHeight());
 
                 /* Make sure everything is ready before we show the window */
                 GL11.glFlush();
@@ -285,6 +271,10 @@ public class SkyEngine {
         return game;
     }
 
+    public TickScheduler getScheduler() {
+        return scheduler;
+    }
+
     public static SkyEngine get() {
         return instance;
     }
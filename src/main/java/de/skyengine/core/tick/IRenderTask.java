@@ -0,0 +1,13 @@
+package de.skyengine.core.tick;
+
+/**
+ * The work of a {@link TickPhase.Type#RENDER} phase.
+ */
+@FunctionalInterface
+public interface IRenderTask {
+
+    /**
+     * @param partialTick the fraction of the next tick that already passed, between 0 and 1
+     */
+    void run(float partialTick);
+}
@@ -0,0 +1,105 @@
+package de.skyengine.core.tick;
+
+/**
+ * A step of the game loop registered on a {@link TickScheduler}, with the timings of its runs.
+ */
+public class TickPhase {
+
+    public enum Type {
+        /** Runs once per frame before the ticks, e.g. input. */
+        FRAME,
+        /** Runs once per tick. */
+        TICK,
+        /** Runs once per frame after the ticks with the partial tick, e.g. rendering. */
+        RENDER
+    }
+
+    private final String name;
+    private final Type type;
+    /** Set for frame and tick phases. */
+    private final Runnable task;
+    /** Set for render phases. */
+    private final IRenderTask renderTask;
+    private final TimingHistogram timings;
+
+    private boolean skipDuringCatchUp;
+    private int overruns;
+
+    TickPhase(String name, Type type, Runnable task) {
+        this(name, type, task, null);
+    }
+
+    TickPhase(String name, IRenderTask renderTask) {
+        this(name, Type.RENDER, null, renderTask);
+    }
+
+    private TickPhase(String name, Type type, Runnable task, IRenderTask renderTask) {
+        this.name = name;
+        this.type = type;
+        this.task = task;
+        this.renderTask = renderTask;
+        this.timings = new TimingHistogram();
+    }
+
+    /**
+     * @param partialTick only passed to render phases
+     * @return the duration of the run in nanoseconds
+     */
+    long run(float partialTick) {
+        long start = System.nanoTime();
+        if (this.renderTask != null) {
+            this.renderTask.run(partialTick);
+        } else {
+            this.task.run();
+        }
+        long duration = System.nanoTime() - start;
+
+        this.timings.record(duration);
+        return duration;
+    }
+
+    /**
+     * Skip the phase in all but the first tick of a frame while the scheduler is catching up. For work that only has
+     * to happen once per frame, e.g. taking over results of worker threads, so a slow phase doesn't slow down the
+     * catch-up even more. Only used for {@link Type#TICK} phases.
+     */
+    public TickPhase setSkipDuringCatchUp(boolean skipDuringCatchUp) {
+        this.skipDuringCatchUp = skipDuringCatchUp;
+        return this;
+    }
+
+    public boolean isSkipDuringCatchUp() {
+        return skipDuringCatchUp;
+    }
+
+    void addOverrun() {
+        this.overruns++;
+    }
+
+    /**
+     * @return how often this phase was the slowest one of a tick or frame that took longer than the tick time
+     */
+    public int getOverruns() {
+        return overruns;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    /**
+     * @return the durations of the recent runs
+     */
+    public TimingHistogram getTimings() {
+        return timings;
+    }
+
+    @Override
+    public String toString() {
+        return this.name + " " + this.timings;
+    }
+}
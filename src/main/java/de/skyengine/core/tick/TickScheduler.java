@@ -0,0 +1,350 @@
+package de.skyengine.core.tick;
+
+import de.skyengine.util.TimeUtils;
+import de.skyengine.util.logging.LogManager;
+import de.skyengine.util.logging.Logger;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Runs the registered {@link TickPhase}s of the game loop with a fixed timestep.
+ * <p>
+ * Every {@link #frame()} runs the frame phases, then as many ticks as the time since the last frame allows and then
+ * the render phases with the fraction of the next tick that already passed. When ticks take too long the scheduler
+ * falls behind and catches up over the following frames: a frame runs at most {@link #getMaxCatchUpTicks()} ticks
+ * and spends at most one tick time on the ticks after the first one, so frames keep being rendered. Phases marked with
+ * {@link TickPhase#setSkipDuringCatchUp(boolean)} only run in the first tick of a frame while catching up. Only a
+ * backlog of more than {@link #getMaxBacklogTicks()} ticks is dropped.
+ * <p>
+ * Each phase records how long its runs take. Ticks and frames that take longer than a tick time are counted per
+ * slowest phase and reported at most once per second together with the dropped ticks, the maximum durations start
+ * over with every report. All methods have to be called from the thread running the game loop.
+ */
+public class TickScheduler {
+
+    private final Logger logger = LogManager.getLogger(TickScheduler.class.getName());
+
+    public static final int DEFAULT_TICKS_PER_SECOND = 20;
+    public static final int DEFAULT_MAX_CATCH_UP_TICKS = 10;
+
+    private static final long REPORT_INTERVAL_NANOS = 1_000_000_000L;
+
+    private final List<TickPhase> phases;
+    private final TimingHistogram tickTimings;
+    private final TimingHistogram frameTimings;
+
+    private int ticksPerSecond;
+    private long tickNanos;
+    private int maxCatchUpTicks;
+    private int maxBacklogTicks;
+
+    private long lastTime = Long.MIN_VALUE;
+    private long accumulated;
+
+    private long tickCount;
+    private long frameCount;
+    private long droppedTicks;
+
+    /* Overruns since the last report */
+    private int overrunTicks;
+    private int overrunFrames;
+    private long reportDroppedTicks;
+    private TickPhase slowestPhase;
+    private long slowestPhaseNanos;
+    private long nextReport;
+
+    /** The slowest phase since the last tick or frame started. */
+    private TickPhase runSlowest;
+    private long runSlowestNanos;
+
+    public TickScheduler() {
+        this(DEFAULT_TICKS_PER_SECOND, DEFAULT_MAX_CATCH_UP_TICKS);
+    }
+
+    public TickScheduler(int ticksPerSecond, int maxCatchUpTicks) {
+        this.phases = new ArrayList<>();
+        this.tickTimings = new TimingHistogram();
+        this.frameTimings = new TimingHistogram();
+
+        this.setTicksPerSecond(ticksPerSecond);
+        this.setMaxCatchUpTicks(maxCatchUpTicks);
+    }
+
+    /**
+     * Register a phase that runs once per frame before the ticks. Phases of the same type run in the order
+     * they were added.
+     */
+    public TickPhase addFramePhase(String name, Runnable task) {
+        return this.addPhase(new TickPhase(name, TickPhase.Type.FRAME, task));
+    }
+
+    /**
+     * Register a phase that runs once per tick.
+     */
+    public TickPhase addTickPhase(String name, Runnable task) {
+        return this.addPhase(new TickPhase(name, TickPhase.Type.TICK, task));
+    }
+
+    /**
+     * Register a phase that runs once per frame after the ticks.
+     */
+    public TickPhase addRenderPhase(String name, IRenderTask task) {
+        return this.addPhase(new TickPhase(name, task));
+    }
+
+    private TickPhase addPhase(TickPhase phase) {
+        if (this.getPhase(phase.getName()) != null) throw new IllegalArgumentException("A phase with the name " + phase.getName() + " is already registered");
+
+        this.phases.add(phase);
+        return phase;
+    }
+
+    /**
+     * Run one frame of the game loop. The first frame only starts the clock and runs no ticks.
+     */
+    public void frame() {
+        long frameStart = System.nanoTime();
+        if (this.lastTime == Long.MIN_VALUE) {
+            this.lastTime = frameStart;
+            this.nextReport = frameStart + REPORT_INTERVAL_NANOS;
+        }
+        this.accumulated += frameStart - this.lastTime;
+        this.lastTime = frameStart;
+
+        this.runSlowest = null;
+        this.runSlowestNanos = 0L;
+        long frameNanos = this.runPhases(TickPhase.Type.FRAME, 0.0F, false);
+        TickPhase frameSlowest = this.runSlowest;
+        long frameSlowestNanos = this.runSlowestNanos;
+
+        int ticks = 0;
+        long catchUpStart = 0L;
+        while (this.accumulated >= this.tickNanos && ticks < this.maxCatchUpTicks) {
+            /* Spend at most one tick time per frame on catching up, the rest is left for the next frames */
+            if (ticks == 1) {
+                catchUpStart = System.nanoTime();
+            } else if (ticks > 1 && System.nanoTime() - catchUpStart >= this.tickNanos) {
+                break;
+            }
+
+            this.tick(ticks > 0);
+            this.accumulated -= this.tickNanos;
+            ticks++;
+        }
+
+        long backlog = this.accumulated / this.tickNanos;
+        if (backlog > this.maxBacklogTicks) {
+            long dropped = backlog - this.maxBacklogTicks;
+            this.accumulated -= dropped * this.tickNanos;
+            this.droppedTicks += dropped;
+            this.reportDroppedTicks += dropped;
+        }
+
+        /* With a backlog the last tick is the newest state there is */
+        float partialTick = Math.min(1.0F, (float) this.accumulated / this.tickNanos);
+        this.runSlowest = frameSlowest;
+        this.runSlowestNanos = frameSlowestNanos;
+        frameNanos += this.runPhases(TickPhase.Type.RENDER, partialTick, false);
+
+        if (frameNanos > this.tickNanos) {
+            this.overrunFrames++;
+            this.addOverrun();
+        }
+
+        long frameEnd = System.nanoTime();
+        this.frameTimings.record(frameEnd - frameStart);
+        this.frameCount++;
+
+        if (frameEnd >= this.nextReport) {
+            this.report();
+            this.nextReport = frameEnd + REPORT_INTERVAL_NANOS;
+        }
+    }
+
+    private void tick(boolean catchUp) {
+        this.runSlowest = null;
+        this.runSlowestNanos = 0L;
+        long tickNanos = this.runPhases(TickPhase.Type.TICK, 0.0F, catchUp);
+        this.tickTimings.record(tickNanos);
+        this.tickCount++;
+
+        if (tickNanos > this.tickNanos) {
+            this.overrunTicks++;
+            this.addOverrun();
+        }
+    }
+
+    /**
+     * @return the time all phases of the given type took in nanoseconds
+     */
+    private long runPhases(TickPhase.Type type, float partialTick, boolean catchUp) {
+        long total = 0L;
+        for (int i = 0; i < this.phases.size(); i++) {
+            TickPhase phase = this.phases.get(i);
+            if (phase.getType() != type || (catchUp && phase.isSkipDuringCatchUp())) continue;
+
+            long nanos = phase.run(partialTick);
+            if (nanos > this.runSlowestNanos) {
+                this.runSlowest = phase;
+                this.runSlowestNanos = nanos;
+            }
+            total += nanos;
+        }
+        return total;
+    }
+
+    /**
+     * Blame the slowest phase of the tick or frame that took too long.
+     */
+    private void addOverrun() {
+        if (this.runSlowest == null) return;
+
+        this.runSlowest.addOverrun();
+        if (this.runSlowestNanos > this.slowestPhaseNanos) {
+            this.slowestPhase = this.runSlowest;
+            this.slowestPhaseNanos = this.runSlowestNanos;
+        }
+    }
+
+    private void report() {
+        if (this.overrunTicks > 0 || this.overrunFrames > 0 || this.reportDroppedTicks > 0) {
+            StringBuilder message = new StringBuilder("Can't keep up with ").append(this.ticksPerSecond).append(" TPS: ")
+                    .append(this.overrunTicks).append(" ticks and ").append(this.overrunFrames).append(" frames took longer than ")
+                    .append("%.1f".formatted(TimeUtils.nanosToMillis(this.tickNanos))).append(" ms");
+            if (this.reportDroppedTicks > 0) {
+                message.append(", dropped ").append(this.reportDroppedTicks).append(" ticks");
+            }
+            if (this.slowestPhase != null) {
+                message.append(". Slowest phase ").append(this.slowestPhase.getName()).append(" took ")
+                        .append("%.2f".formatted(TimeUtils.nanosToMillis(this.slowestPhaseNanos))).append(" ms (")
+                        .append(this.slowestPhase.getTimings()).append(")");
+            }
+            this.logger.warning(message.toString());
+        }
+
+        this.tickTimings.resetMax();
+        this.frameTimings.resetMax();
+        for (TickPhase phase : this.phases) {
+            phase.getTimings().resetMax();
+        }
+
+        this.overrunTicks = 0;
+        this.overrunFrames = 0;
+        this.reportDroppedTicks = 0;
+        this.slowestPhase = null;
+        this.slowestPhaseNanos = 0L;
+    }
+
+    /**
+     * @return the timings of all phases in the order they run, one line each
+     */
+    public String getTimingSummary() {
+        StringBuilder summary = new StringBuilder("tick ").append(this.tickTimings).append(", frame ").append(this.frameTimings);
+        for (TickPhase.Type type : TickPhase.Type.values()) {
+            for (TickPhase phase : this.phases) {
+                if (phase.getType() == type) {
+                    summary.append(System.lineSeparator()).append("  ").append(phase);
+                }
+            }
+        }
+        return summary.toString();
+    }
+
+    public void setTicksPerSecond(int ticksPerSecond) {
+        if (ticksPerSecond < 1) throw new IllegalArgumentException("At least one tick per second is needed, got " + ticksPerSecond);
+
+        this.ticksPerSecond = ticksPerSecond;
+        this.tickNanos = 1_000_000_000L / ticksPerSecond;
+        this.maxBacklogTicks = ticksPerSecond;
+    }
+
+    public int getTicksPerSecond() {
+        return ticksPerSecond;
+    }
+
+    /**
+     * @return the time budget of one tick in nanoseconds
+     */
+    public long getTickNanos() {
+        return tickNanos;
+    }
+
+    /**
+     * @param maxCatchUpTicks the number of ticks a single frame runs at most
+     */
+    public void setMaxCatchUpTicks(int maxCatchUpTicks) {
+        if (maxCatchUpTicks < 1) throw new IllegalArgumentException("A frame has to run at least one tick, got " + maxCatchUpTicks);
+
+        this.maxCatchUpTicks = maxCatchUpTicks;
+    }
+
+    public int getMaxCatchUpTicks() {
+        return maxCatchUpTicks;
+    }
+
+    /**
+     * @param maxBacklogTicks the number of ticks the scheduler may fall behind before it drops ticks,
+     *                        one second of ticks by default
+     */
+    public void setMaxBacklogTicks(int maxBacklogTicks) {
+        if (maxBacklogTicks < 0) throw new IllegalArgumentException("Negative backlog " + maxBacklogTicks);
+
+        this.maxBacklogTicks = maxBacklogTicks;
+    }
+
+    public int getMaxBacklogTicks() {
+        return maxBacklogTicks;
+    }
+
+    /**
+     * @return the number of whole ticks the scheduler is behind
+     */
+    public long getBacklogTicks() {
+        return this.accumulated / this.tickNanos;
+    }
+
+    public long getTickCount() {
+        return tickCount;
+    }
+
+    public long getFrameCount() {
+        return frameCount;
+    }
+
+    /**
+     * @return the number of ticks that were dropped because the backlog grew too large
+     */
+    public long getDroppedTicks() {
+        return droppedTicks;
+    }
+
+    /**
+     * @return the durations of all tick phases of the recent ticks together
+     */
+    public TimingHistogram getTickTimings() {
+        return tickTimings;
+    }
+
+    /**
+     * @return the durations of the recent frames including their ticks
+     */
+    public TimingHistogram getFrameTimings() {
+        return frameTimings;
+    }
+
+    /**
+     * @return the phase with the given name or <code>null</code>
+     */
+    public TickPhase getPhase(String name) {
+        for (TickPhase phase : this.phases) {
+            if (phase.getName().equals(name)) return phase;
+        }
+        return null;
+    }
+
+    public List<TickPhase> getPhases() {
+        return Collections.unmodifiableList(this.phases);
+    }
+}
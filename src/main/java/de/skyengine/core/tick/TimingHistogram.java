@@ -0,0 +1,108 @@
+package de.skyengine.core.tick;
+
+import de.skyengine.util.TimeUtils;
+
+import java.util.Arrays;
+
+/**
+ * Keeps the last {@link #getWindowSize()} durations of something that runs repeatedly and answers percentiles over them.
+ * Recording is a store into a ring buffer, percentiles sort a copy of the window and are meant for reports.
+ */
+public class TimingHistogram {
+
+    /** More than 10 seconds of ticks at 20 TPS. */
+    public static final int DEFAULT_WINDOW_SIZE = 256;
+
+    private final long[] samples;
+    private final long[] sorted;
+    private int count;
+    private int next;
+
+    private long last;
+    private long max;
+
+    public TimingHistogram() {
+        this(DEFAULT_WINDOW_SIZE);
+    }
+
+    public TimingHistogram(int windowSize) {
+        if (windowSize < 1) throw new IllegalArgumentException("The window needs at least one sample, got " + windowSize);
+
+        this.samples = new long[windowSize];
+        this.sorted = new long[windowSize];
+    }
+
+    public void record(long nanos) {
+        this.samples[this.next] = nanos;
+        this.next = this.next + 1 == this.samples.length ? 0 : this.next + 1;
+        this.count = Math.min(this.count + 1, this.samples.length);
+
+        this.last = nanos;
+        this.max = Math.max(this.max, nanos);
+    }
+
+    /**
+     * @param percentile between 0 and 100
+     * @return the duration in nanoseconds that the given percentage of the samples in the window did not exceed,
+     * 0 without samples
+     */
+    public long getPercentile(double percentile) {
+        if (percentile < 0.0 || percentile > 100.0) throw new IllegalArgumentException("Percentile needs to be between 0 and 100, got " + percentile);
+        if (this.count == 0) return 0L;
+
+        System.arraycopy(this.samples, 0, this.sorted, 0, this.count);
+        Arrays.sort(this.sorted, 0, this.count);
+        int index = (int) Math.ceil(percentile / 100.0 * this.count) - 1;
+        return this.sorted[Math.max(0, index)];
+    }
+
+    public long getP50() {
+        return this.getPercentile(50.0);
+    }
+
+    public long getP99() {
+        return this.getPercentile(99.0);
+    }
+
+    /**
+     * @return the last recorded duration in nanoseconds
+     */
+    public long getLast() {
+        return last;
+    }
+
+    /**
+     * @return the longest duration in nanoseconds since the last {@link #resetMax()}, it is not limited to the window
+     */
+    public long getMax() {
+        return max;
+    }
+
+    public void resetMax() {
+        this.max = 0L;
+    }
+
+    /**
+     * @return the number of samples in the window
+     */
+    public int getCount() {
+        return count;
+    }
+
+    public int getWindowSize() {
+        return this.samples.length;
+    }
+
+    public void clear() {
+        this.count = 0;
+        this.next = 0;
+        this.last = 0L;
+        this.max = 0L;
+    }
+
+    @Override
+    public String toString() {
+        return "p50=%.2fms p99=%.2fms max=%.2fms".formatted(TimeUtils.nanosToMillis(this.getP50()),
+                TimeUtils.nanosToMillis(this.getP99()), TimeUtils.nanosToMillis(this.max));
+    }
+}
@@ -1,41 +1,82 @@
 package de.skyengine.game;
 
+import de.skyengine.core.SkyEngine;
 import de.skyengine.core.input.Input;
 import de.skyengine.core.io.IDisposable;
+import de.skyengine.core.io.IInitializable;
 import de.skyengine.core.io.IRenderable;
 import de.skyengine.core.io.IResizeable;
 import de.skyengine.core.io.IUpdatable;
 import de.skyengine.game.world.World;
+import de.skyengine.game.world.render.ChunkRenderer;
+import org.joml.Matrix4f;
 
-public class GameContainer implements IUpdatable, IRenderable, IResizeable, IDisposable {
+public class GameContainer implements IInitializable, IUpdatable, IRenderable, IResizeable, IDisposable {
 
     private World world;
+    private ChunkRenderer chunkRenderer;
+
+    private final Matrix4f viewProjection;
 
     public GameContainer() {
         this.world = new World("world");
+        this.world.setViewCenter(0.0F, 0.0F);
+
+        this.viewProjection = new Matrix4f();
+    }
+
+    /**
+     * Called on the render thread once the OpenGL context exists.
+     */
+    @Override
+    public void init() {
+        this.chunkRenderer = new ChunkRenderer(SkyEngine.get().getWindow().getProperties());
+        this.chunkRenderer.create();
     }
 
     @Override
     public void update(Input input) {
+        this.world.update();
+    }
 
+    /**
+     * Take over the finished work of the chunk workers, see {@link World#integrateChunks()}.
+     */
+    public void integrateChunks() {
+        this.world.integrateChunks();
     }
 
     @Override
     public void render(float partialTick) {
-
+        this.chunkRenderer.render(this.world.getChunkManager(), this.world.getLodManager(), this.viewProjection, SkyEngine.get().getWindow().getFrameBuffer());
     }
 
     @Override
     public void resize(int width, int height) {
+        float fov = (float) Math.toRadians(70.0F), aspect = (float) width / Math.max(height, 1);
 
+        /* Inverse depth maps the near plane to 1 and the far plane to 0 in a [0, 1] depth range */
+        if (SkyEngine.get().getWindow().getProperties().isUseInverseDepth()) {
+            this.viewProjection.setPerspective(fov, aspect, 1000.0F, 0.1F, true);
+        } else {
+            this.viewProjection.setPerspective(fov, aspect, 0.1F, 1000.0F);
+        }
+        this.viewProjection.lookAt(-64.0F, 140.0F, -64.0F, 8.0F, 64.0F, 8.0F, 0.0F, 1.0F, 0.0F);
     }
 
     @Override
     public void dispose() {
-
+        if (this.chunkRenderer != null) {
+            this.chunkRenderer.dispose();
+        }
+        this.world.dispose();
     }
 
     public World getWorld() {
         return world;
     }
+
+    public ChunkRenderer getChunkRenderer() {
+        return chunkRenderer;
+    }
 }
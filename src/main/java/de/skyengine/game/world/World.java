@@ -1,14 +1,229 @@
 package de.skyengine.game.world;
 
-public class World {
+import de.skyengine.core.file.Files;
+import de.skyengine.core.io.IDisposable;
+import de.skyengine.game.world.block.Blocks;
+import de.skyengine.game.world.chunk.Chunk;
+import de.skyengine.game.world.chunk.ChunkManager;
+import de.skyengine.game.world.generation.TerrainGenerator;
+import de.skyengine.game.world.light.LightEngine;
+import de.skyengine.game.world.lod.LodManager;
+import de.skyengine.game.world.mesh.ChunkMesher;
+import de.skyengine.game.world.storage.ChunkSaveQueue;
+import de.skyengine.game.world.storage.ChunkSerializer;
+import de.skyengine.game.world.storage.RegionStorage;
+import de.skyengine.util.logging.LogManager;
+import de.skyengine.util.logging.Logger;
+import de.skyengine.util.math.MathUtils;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Properties;
+
+public class World implements IDisposable {
+
+    private static final Logger logger = LogManager.getLogger(World.class.getName());
+
+    /** Every world is saved in a directory with its name inside of this directory. */
+    public static final String SAVES_PATH = Files.PROJECT_PATH + "saves" + File.separator;
+
+    private static final String LEVEL_FILE = "level.properties";
 
     private final String name;
+    private final long seed;
+    private final File directory;
+
+    private final ChunkManager chunkManager;
+    private final LodManager lodManager;
+    private final TerrainGenerator generator;
+    private final RegionStorage storage;
+    private final ChunkSaveQueue saveQueue;
 
+    /**
+     * Open the saved world with the given name or create a new one with a random seed.
+     */
     public World(String name) {
+        this(name, readSeed(new File(SAVES_PATH, name)));
+    }
+
+    public World(String name, long seed) {
         this.name = name;
+        this.seed = seed;
+        this.directory = new File(SAVES_PATH, name);
+        this.storage = new RegionStorage(new File(this.directory, "region"));
+        writeSeed(this.directory, seed);
+
+        this.generator = new TerrainGenerator(seed);
+        this.saveQueue = new ChunkSaveQueue(this.storage, this.directory);
+        this.saveQueue.recover(this::generate);
+
+        this.chunkManager = new ChunkManager();
+        this.chunkManager.setStorage(this.saveQueue);
+        this.generator.register(this.chunkManager);
+        this.chunkManager.setLighter(new LightEngine());
+
+        ThreadLocal<ChunkMesher> meshers = ThreadLocal.withInitial(ChunkMesher::new);
+        this.chunkManager.setMesher((chunk, neighbours, sections, cancelled) -> meshers.get().mesh(chunk, neighbours, sections, cancelled));
+
+        this.lodManager = new LodManager(this.generator, this.chunkManager);
+    }
+
+    public void update() {
+        this.saveQueue.update();
+    }
+
+    /**
+     * Take over the chunks and far terrain tiles the workers finished since the last call and start the next work.
+     * Runs before {@link #update()}, but can be skipped in ticks that catch up with a backlog.
+     */
+    public void integrateChunks() {
+        this.chunkManager.update();
+        this.lodManager.update();
+    }
+
+    /**
+     * Run the saved generation stages on the chunk outside of the chunk manager.
+     */
+    private void generate(Chunk chunk) {
+        this.generator.generateNoise(chunk);
+        this.generator.generateSurface(chunk);
+        this.generator.decorate(chunk);
+        chunk.setStatus(ChunkSerializer.SAVED_STATUS);
+    }
+
+    /**
+     * Load the chunks around the given world position (usually the player), nearest first,
+     * and move the far terrain with them.
+     */
+    public void setViewCenter(float x, float z) {
+        int chunkX = (int) Math.floor(x) >> Chunk.CHUNK_SHIFT_WIDTH;
+        int chunkZ = (int) Math.floor(z) >> Chunk.CHUNK_SHIFT_WIDTH;
+        this.chunkManager.setCenter(chunkX, chunkZ);
+        this.lodManager.setCenter(chunkX, chunkZ);
+    }
+
+    /**
+     * @return the chunk containing the given world position or <code>null</code> if it is not loaded
+     */
+    public Chunk getChunkAt(int worldX, int worldZ) {
+        return this.chunkManager.getChunk(worldX >> Chunk.CHUNK_SHIFT_WIDTH, worldZ >> Chunk.CHUNK_SHIFT_WIDTH);
+    }
+
+    /**
+     * @return the block id at the given world position, air if the chunk is not loaded
+     */
+    public int getBlock(int worldX, int y, int worldZ) {
+        Chunk chunk = this.getChunkAt(worldX, worldZ);
+        return chunk == null ? Blocks.AIR : chunk.getBlock(worldX, y, worldZ);
+    }
+
+    /**
+     * @return the sky light (0-15) at the given world position, full light if the chunk is not loaded
+     */
+    public int getSkyLight(int worldX, int y, int worldZ) {
+        Chunk chunk = this.getChunkAt(worldX, worldZ);
+        return chunk == null ? LightEngine.MAX_LEVEL : chunk.getSkyLight(worldX, y, worldZ);
+    }
+
+    /**
+     * @return the block light (0-15) at the given world position, 0 if the chunk is not loaded
+     */
+    public int getBlockLight(int worldX, int y, int worldZ) {
+        Chunk chunk = this.getChunkAt(worldX, worldZ);
+        return chunk == null ? 0 : chunk.getBlockLight(worldX, y, worldZ);
+    }
+
+    /**
+     * @return the id of the replaced block, air if the chunk is not loaded
+     */
+    public int setBlock(int worldX, int y, int worldZ, int id) {
+        Chunk chunk = this.getChunkAt(worldX, worldZ);
+        if (chunk == null) return Blocks.AIR;
+
+        int previous = chunk.setBlock(worldX, y, worldZ, id);
+        if (previous != id) {
+            this.chunkManager.onBlockChanged(worldX, y, worldZ);
+            this.saveQueue.onBlockChanged(chunk, worldX & (Chunk.CHUNK_WIDTH - 1), y, worldZ & (Chunk.CHUNK_WIDTH - 1), id);
+        }
+        return previous;
     }
 
     public String getName() {
         return name;
     }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    public ChunkManager getChunkManager() {
+        return chunkManager;
+    }
+
+    public LodManager getLodManager() {
+        return lodManager;
+    }
+
+    public TerrainGenerator getGenerator() {
+        return generator;
+    }
+
+    /**
+     * @return the saved seed of the world in the given directory or a random one for a new world
+     */
+    private static long readSeed(File directory) {
+        File file = new File(directory, LEVEL_FILE);
+        if (!file.isFile()) return MathUtils.randomAsLong();
+
+        Properties properties = new Properties();
+        try (InputStream in = new FileInputStream(file)) {
+            properties.load(in);
+            return Long.parseLong(properties.getProperty("seed"));
+        } catch (IOException | RuntimeException e) {
+            throw new RuntimeException("Could not read the seed from " + file, e);
+        }
+    }
+
+    private static void writeSeed(File directory, long seed) {
+        File file = new File(directory, LEVEL_FILE);
+        if (file.isFile() && readSeed(directory) != seed) {
+            logger.warning("Opening " + directory + " with another seed, saved chunks won't match the new ones");
+        }
+
+        Properties properties = new Properties();
+        properties.setProperty("seed", Long.toString(seed));
+        try (OutputStream out = new FileOutputStream(file)) {
+            properties.store(out, null);
+        } catch (IOException e) {
+            throw new RuntimeException("Could not write the seed to " + file, e);
+        }
+    }
+
+    public File getDirectory() {
+        return directory;
+    }
+
+    public RegionStorage getStorage() {
+        return storage;
+    }
+
+    public ChunkSaveQueue getSaveQueue() {
+        return saveQueue;
+    }
+
+    /**
+     * Save all chunks and release the world.
+     */
+    @Override
+    public void dispose() {
+        this.lodManager.dispose();
+        this.chunkManager.dispose();
+        this.saveQueue.dispose();
+        this.storage.dispose();
+        this.generator.dispose();
+    }
 }
@@ -0,0 +1,22 @@
+package de.skyengine.game.world.biome;
+
+/**
+ * The biomes a chunk stores in its 4x4x4 block biome grid, the ordinal is the stored id.
+ */
+public enum Biome {
+
+    OCEAN,
+    BEACH,
+    PLAINS,
+    HILLS;
+
+    private static final Biome[] VALUES = values();
+
+    public static Biome byId(int id) {
+        return VALUES[id];
+    }
+
+    public static Biome[] getValues() {
+        return VALUES;
+    }
+}
@@ -0,0 +1,42 @@
+package de.skyengine.game.world.block;
+
+/**
+ * Numeric block ids as they are stored inside a {@link de.skyengine.game.world.chunk.ChunkSection}.
+ */
+public class Blocks {
+
+    public static final short AIR = 0;
+    public static final short STONE = 1;
+    public static final short DIRT = 2;
+    public static final short GRASS = 3;
+    public static final short SAND = 4;
+    public static final short WATER = 5;
+    public static final short BEDROCK = 6;
+    public static final short LOG = 7;
+    public static final short LEAVES = 8;
+    public static final short GLOWSTONE = 9;
+
+    /** @return <code>true</code> if the block occupies space (everything but air and fluids) */
+    public static boolean isSolid(int id) {
+        return id != AIR && id != WATER;
+    }
+
+    /**
+     * @param face the face index as used by the mesher (0 = -X, 1 = +X, 2 = -Y, 3 = +Y, 4 = -Z, 5 = +Z)
+     * @return the layer of the block texture array used for the given face
+     */
+    public static int getTextureLayer(int id, int face) {
+        if (id == GRASS && face == 2) return DIRT;
+        return id;
+    }
+
+    /** @return <code>true</code> if the block fully hides the faces of its neighbours */
+    public static boolean isOpaque(int id) {
+        return id != AIR && id != WATER;
+    }
+
+    /** @return the block light level (0-15) the block emits */
+    public static int getLightEmission(int id) {
+        return id == GLOWSTONE ? 15 : 0;
+    }
+}
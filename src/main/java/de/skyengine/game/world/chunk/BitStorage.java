@@ -0,0 +1,74 @@
+package de.skyengine.game.world.chunk;
+
+/**
+ * Fixed size array of unsigned integers packed into a <code>long[]</code>.
+ * The entry width is always a power of two (1, 2, 4, 8 or 16 bits), so an entry never spans two longs
+ * and get/set are a shift and a mask.
+ */
+public class BitStorage {
+
+    private final long[] data;
+    private final int bits;
+    private final int size;
+
+    private final long mask;
+    private final int entriesShift;
+    private final int entriesMask;
+
+    public BitStorage(int bits, int size) {
+        if (Integer.bitCount(bits) != 1 || bits > 32) throw new IllegalArgumentException("Bits per entry must be a power of two between 1 and 32 but was " + bits);
+
+        this.bits = bits;
+        this.size = size;
+        this.mask = (1L << bits) - 1L;
+
+        int entriesPerLong = Long.SIZE / bits;
+        this.entriesShift = Integer.numberOfTrailingZeros(entriesPerLong);
+        this.entriesMask = entriesPerLong - 1;
+        this.data = new long[(size + entriesPerLong - 1) / entriesPerLong];
+    }
+
+    public int get(int index) {
+        int shift = (index & this.entriesMask) * this.bits;
+        return (int) ((this.data[index >>> this.entriesShift] >>> shift) & this.mask);
+    }
+
+    public void set(int index, int value) {
+        int cell = index >>> this.entriesShift;
+        int shift = (index & this.entriesMask) * this.bits;
+        this.data[cell] = (this.data[cell] & ~(this.mask << shift)) | ((value & this.mask) << shift);
+    }
+
+    /**
+     * Sets the value at the given index and returns the value that was stored there before.
+     */
+    public int getAndSet(int index, int value) {
+        int cell = index >>> this.entriesShift;
+        int shift = (index & this.entriesMask) * this.bits;
+        long word = this.data[cell];
+        int previous = (int) ((word >>> shift) & this.mask);
+        this.data[cell] = (word & ~(this.mask << shift)) | ((value & this.mask) << shift);
+        return previous;
+    }
+
+    /**
+     * @return an independent copy of the entries
+     */
+    public BitStorage copy() {
+        BitStorage copy = new BitStorage(this.bits, this.size);
+        System.arraycopy(this.data, 0, copy.data, 0, this.data.length);
+        return copy;
+    }
+
+    public long[] getData() {
+        return data;
+    }
+
+    public int getBits() {
+        return bits;
+    }
+
+    public int getSize() {
+        return size;
+    }
+}
@@ -1,10 +1,406 @@
 package de.skyengine.game.world.chunk;
 
-public class Chunk {
+import de.skyengine.core.io.IDisposable;
+import de.skyengine.game.world.biome.Biome;
+import de.skyengine.game.world.block.Blocks;
+import de.skyengine.game.world.mesh.ChunkMesh;
+import de.skyengine.util.math.MathUtils;
+
+import java.util.concurrent.locks.ReentrantLock;
+
+public class Chunk implements IDisposable {
 
     public static final int CHUNK_WIDTH = 16;
     public static final int CHUNK_HEIGHT = 256;
 
     public static final int CHUNK_SHIFT_WIDTH = 4;
     public static final int CHUNK_SHIFT_HEIGHT = 8;
+
+    /** Number of 16x16x16 sections stacked on top of each other. */
+    public static final int SECTION_COUNT = CHUNK_HEIGHT >> CHUNK_SHIFT_WIDTH;
+
+    private static final int LOCAL_MASK = CHUNK_WIDTH - 1;
+
+    /** Biomes are stored per cube of 4x4x4 blocks. */
+    public static final int BIOME_SHIFT = 2;
+    public static final int BIOME_WIDTH = CHUNK_WIDTH >> BIOME_SHIFT;
+    public static final int BIOME_HEIGHT = CHUNK_HEIGHT >> BIOME_SHIFT;
+
+    private final ChunkPosition position;
+
+    /** Sections from bottom to top, <code>null</code> entries are completely filled with air. */
+    private final ChunkSection[] sections;
+
+    /** Updated on every block change, indexed by {@link Heightmap.Type#ordinal()}. */
+    private final Heightmap[] heightmaps;
+
+    /** Light levels per section, written by the light engine while it holds {@link #lightLock}. */
+    private final NibbleArray[] skyLight;
+    private final NibbleArray[] blockLight;
+    private final ReentrantLock lightLock;
+
+    /** Biome ids indexed with <code>(y * BIOME_WIDTH + z) * BIOME_WIDTH + x</code> in biome cells. */
+    private final byte[] biomes;
+
+    /** The last generation stage this chunk completed. */
+    private volatile ChunkStatus status = ChunkStatus.EMPTY;
+
+    /** Set by every block change, cleared when the chunk is loaded or a snapshot of it is saved. */
+    private volatile boolean dirty;
+
+    /** Bit per section whose mesh is outdated, only accessed by the update thread. */
+    private int dirtySections;
+
+    /** Guarded by <code>this</code>. */
+    private ChunkMesh mesh;
+    private boolean disposed;
+
+    public Chunk(ChunkPosition position) {
+        this.position = position;
+        this.sections = new ChunkSection[SECTION_COUNT];
+        this.heightmaps = new Heightmap[Heightmap.Type.getValues().length];
+        for (Heightmap.Type type : Heightmap.Type.getValues()) {
+            this.heightmaps[type.ordinal()] = new Heightmap(type);
+        }
+        this.biomes = new byte[BIOME_WIDTH * BIOME_HEIGHT * BIOME_WIDTH];
+
+        this.skyLight = new NibbleArray[SECTION_COUNT];
+        this.blockLight = new NibbleArray[SECTION_COUNT];
+        for (int i = 0; i < SECTION_COUNT; i++) {
+            this.skyLight[i] = new NibbleArray(0);
+            this.blockLight[i] = new NibbleArray(0);
+        }
+        this.lightLock = new ReentrantLock();
+    }
+
+    /**
+     * Copy the given sections, share everything else with the source.
+     */
+    private Chunk(Chunk source, int sections) {
+        this.position = source.position;
+        this.sections = new ChunkSection[SECTION_COUNT];
+        for (int remaining = sections; remaining != 0; remaining &= remaining - 1) {
+            int sectionY = Integer.numberOfTrailingZeros(remaining);
+            ChunkSection section = source.sections[sectionY];
+            this.sections[sectionY] = section == null ? null : section.copy();
+        }
+        this.heightmaps = source.heightmaps;
+        this.skyLight = source.skyLight;
+        this.blockLight = source.blockLight;
+        this.lightLock = source.lightLock;
+        this.biomes = source.biomes;
+        this.status = source.status;
+    }
+
+    /**
+     * A read only copy of the blocks of some sections for another thread, e.g. a remesh job that runs while the
+     * update thread keeps changing blocks. The light, heightmaps and biomes are shared with this chunk, the other
+     * sections are air. Has to be called by the thread that changes the blocks.
+     *
+     * @param sections bit mask of the sections to copy
+     */
+    public Chunk snapshot(int sections) {
+        return new Chunk(this, sections);
+    }
+
+    /**
+     * @param x local x coordinate (0-15)
+     * @param y world y coordinate (0-255), positions outside the chunk are air
+     * @param z local z coordinate (0-15)
+     * @return the block id at the given position
+     */
+    public int getBlock(int x, int y, int z) {
+        if (y >>> CHUNK_SHIFT_HEIGHT != 0) return Blocks.AIR;
+
+        ChunkSection section = this.sections[y >> CHUNK_SHIFT_WIDTH];
+        if (section == null) return Blocks.AIR;
+
+        return section.get(ChunkSection.index(x & LOCAL_MASK, y & LOCAL_MASK, z & LOCAL_MASK));
+    }
+
+    /**
+     * @param x local x coordinate (0-15)
+     * @param y world y coordinate (0-255)
+     * @param z local z coordinate (0-15)
+     * @return the id of the block that was replaced
+     */
+    public int setBlock(int x, int y, int z, int id) {
+        if (y >>> CHUNK_SHIFT_HEIGHT != 0) throw new IllegalArgumentException("y coordinate " + y + " is outside of the chunk");
+
+        x &= LOCAL_MASK;
+        z &= LOCAL_MASK;
+
+        int sectionY = y >> CHUNK_SHIFT_WIDTH;
+        ChunkSection section = this.sections[sectionY];
+        if (section == null) {
+            if (id == Blocks.AIR) return Blocks.AIR;
+            section = this.sections[sectionY] = new ChunkSection(Blocks.AIR);
+        }
+
+        int previous = section.set(ChunkSection.index(x, y & LOCAL_MASK, z), id);
+        if (previous != id) {
+            this.dirty = true;
+            for (Heightmap heightmap : this.heightmaps) {
+                heightmap.onBlockChanged(this, x, y, z, id);
+            }
+        }
+        return previous;
+    }
+
+    /**
+     * Replace a whole section with one block without allocating any index data.
+     */
+    public void fillSection(int sectionY, int id) {
+        this.sections[sectionY] = id == Blocks.AIR ? null : new ChunkSection(id);
+        this.dirty = true;
+        for (Heightmap heightmap : this.heightmaps) {
+            heightmap.onSectionFilled(this, sectionY, id);
+        }
+    }
+
+    /**
+     * Compact the palettes of all sections and drop sections that only contain air.
+     */
+    public void compact() {
+        for (int i = 0; i < SECTION_COUNT; i++) {
+            ChunkSection section = this.sections[i];
+            if (section == null) continue;
+
+            if (section.isEmpty()) {
+                this.sections[i] = null;
+            } else {
+                section.compact();
+            }
+        }
+    }
+
+    /**
+     * Replace a whole section, <code>null</code> for air. Call {@link #recomputeHeightmaps()} after
+     * replacing sections.
+     */
+    public void setSection(int sectionY, ChunkSection section) {
+        this.sections[sectionY] = section;
+    }
+
+    /**
+     * Rebuild the heightmaps from the blocks, only needed after {@link #setSection(int, ChunkSection)}.
+     */
+    public void recomputeHeightmaps() {
+        for (Heightmap heightmap : this.heightmaps) {
+            heightmap.recompute(this);
+        }
+    }
+
+    public ChunkSection getSection(int sectionY) {
+        return this.sections[sectionY];
+    }
+
+    public ChunkSection[] getSections() {
+        return sections;
+    }
+
+    /**
+     * @return <code>true</code> if the section only contains air
+     */
+    public boolean isSectionEmpty(int sectionY) {
+        ChunkSection section = this.sections[sectionY];
+        return section == null || section.isEmpty();
+    }
+
+    /**
+     * @return <code>true</code> if the section only contains opaque blocks
+     */
+    public boolean isSectionFull(int sectionY) {
+        ChunkSection section = this.sections[sectionY];
+        return section != null && section.isFull();
+    }
+
+    /**
+     * A section is buried if it and all 6 sections around it are full, none of its faces can be seen and
+     * no light can reach it. The space below the world and missing neighbours count as not full.
+     *
+     * @param neighbours the 3x3 chunks around this chunk indexed with <code>(dz + 1) * 3 + (dx + 1)</code>
+     */
+    public boolean isSectionBuried(int sectionY, Chunk[] neighbours) {
+        if (sectionY == 0 || sectionY == SECTION_COUNT - 1) return false;
+        if (!this.isSectionFull(sectionY) || !this.isSectionFull(sectionY - 1) || !this.isSectionFull(sectionY + 1)) return false;
+
+        for (int index = 1; index < 9; index += 2) {
+            Chunk neighbour = neighbours[index];
+            if (neighbour == null || !neighbour.isSectionFull(sectionY)) return false;
+        }
+        return true;
+    }
+
+    /**
+     * @param x local x coordinate (0-15)
+     * @param y world y coordinate, above the chunk the sky light is 15 and below 0
+     * @param z local z coordinate (0-15)
+     */
+    public int getSkyLight(int x, int y, int z) {
+        if (y >>> CHUNK_SHIFT_HEIGHT != 0) return y < 0 ? 0 : 15;
+        return this.skyLight[y >> CHUNK_SHIFT_WIDTH].get(ChunkSection.index(x & LOCAL_MASK, y & LOCAL_MASK, z & LOCAL_MASK));
+    }
+
+    /**
+     * @param x local x coordinate (0-15)
+     * @param y world y coordinate, outside the chunk the block light is 0
+     * @param z local z coordinate (0-15)
+     */
+    public int getBlockLight(int x, int y, int z) {
+        if (y >>> CHUNK_SHIFT_HEIGHT != 0) return 0;
+        return this.blockLight[y >> CHUNK_SHIFT_WIDTH].get(ChunkSection.index(x & LOCAL_MASK, y & LOCAL_MASK, z & LOCAL_MASK));
+    }
+
+    public NibbleArray getSkyLight(int sectionY) {
+        return this.skyLight[sectionY];
+    }
+
+    public NibbleArray getBlockLight(int sectionY) {
+        return this.blockLight[sectionY];
+    }
+
+    /**
+     * The light engine holds the locks of all chunks it writes light to, see
+     * {@link de.skyengine.game.world.light.LightEngine}.
+     */
+    public ReentrantLock getLightLock() {
+        return lightLock;
+    }
+
+    public Heightmap getHeightmap(Heightmap.Type type) {
+        return this.heightmaps[type.ordinal()];
+    }
+
+    /**
+     * @param x local x coordinate (0-15)
+     * @param y world y coordinate (0-255)
+     * @param z local z coordinate (0-15)
+     * @return the biome of the 4x4x4 cell containing the given position
+     */
+    public Biome getBiome(int x, int y, int z) {
+        y = MathUtils.clamp(y, 0, CHUNK_HEIGHT - 1);
+        return Biome.byId(this.biomes[biomeIndex((x & LOCAL_MASK) >> BIOME_SHIFT, y >> BIOME_SHIFT, (z & LOCAL_MASK) >> BIOME_SHIFT)]);
+    }
+
+    /**
+     * @param cellX biome cell x coordinate (0-3)
+     * @param cellY biome cell y coordinate (0-63)
+     * @param cellZ biome cell z coordinate (0-3)
+     */
+    public void setBiome(int cellX, int cellY, int cellZ, Biome biome) {
+        this.biomes[biomeIndex(cellX, cellY, cellZ)] = (byte) biome.ordinal();
+    }
+
+    /**
+     * @return the raw biome ids, see {@link #biomes}
+     */
+    public byte[] getBiomeData() {
+        return biomes;
+    }
+
+    private static int biomeIndex(int cellX, int cellY, int cellZ) {
+        return (cellY * BIOME_WIDTH + cellZ) * BIOME_WIDTH + cellX;
+    }
+
+    /**
+     * @return the approximate heap usage of the block and light data in bytes
+     */
+    public int getMemoryUsage() {
+        int bytes = 0;
+        for (int i = 0; i < SECTION_COUNT; i++) {
+            if (this.sections[i] != null) bytes += this.sections[i].getMemoryUsage();
+            bytes += this.skyLight[i].getMemoryUsage() + this.blockLight[i].getMemoryUsage();
+        }
+        return bytes;
+    }
+
+    public ChunkPosition getPosition() {
+        return position;
+    }
+
+    public ChunkStatus getStatus() {
+        return status;
+    }
+
+    public void setStatus(ChunkStatus status) {
+        this.status = status;
+    }
+
+    /**
+     * @return <code>true</code> if blocks changed since the chunk was loaded or last saved
+     */
+    public boolean isDirty() {
+        return dirty;
+    }
+
+    public void setDirty(boolean dirty) {
+        this.dirty = dirty;
+    }
+
+    /**
+     * Mark sections whose mesh has to be rebuilt, see {@link ChunkManager#onBlockChanged(int, int, int)}.
+     */
+    public void markSectionsDirty(int sections) {
+        this.dirtySections |= sections;
+    }
+
+    /**
+     * @return the bit mask of the sections marked since the last call
+     */
+    public int takeDirtySections() {
+        int sections = this.dirtySections;
+        this.dirtySections = 0;
+        return sections;
+    }
+
+    public boolean hasDirtySections() {
+        return this.dirtySections != 0;
+    }
+
+    public synchronized ChunkMesh getMesh() {
+        return mesh;
+    }
+
+    /**
+     * Replace the mesh of this chunk. If the previous mesh wasn't taken yet, the sections of the new mesh
+     * are merged into it, so a partial mesh never drops sections that were not uploaded.
+     * If the chunk was already disposed the new mesh is freed right away.
+     */
+    public synchronized void setMesh(ChunkMesh mesh) {
+        if (this.disposed && mesh != null) {
+            mesh.dispose();
+            mesh = null;
+        }
+
+        if (this.mesh != null && mesh != null) {
+            this.mesh.merge(mesh);
+            return;
+        }
+
+        if (this.mesh != null) {
+            this.mesh.dispose();
+        }
+        this.mesh = mesh;
+    }
+
+    /**
+     * Remove the mesh from this chunk without freeing it, the caller owns it afterwards.
+     *
+     * @return the mesh or <code>null</code> if no new mesh was built since the last call
+     */
+    public synchronized ChunkMesh takeMesh() {
+        ChunkMesh mesh = this.mesh;
+        this.mesh = null;
+        return mesh;
+    }
+
+    /**
+     * Release the native memory of the chunk. Called when the chunk is unloaded.
+     */
+    @Override
+    public synchronized void dispose() {
+        this.disposed = true;
+        this.setMesh(null);
+    }
 }
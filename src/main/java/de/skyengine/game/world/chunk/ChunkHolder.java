@@ -0,0 +1,45 @@
+package de.skyengine.game.world.chunk;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Tracks the pending and finished stages of a chunk inside the generation pipeline.
+ */
+class ChunkHolder {
+
+    private final Chunk chunk;
+    private final CompletableFuture<?>[] futures;
+
+    /**
+     * @param loaded completes once the saved state of the chunk (if any) was loaded into it
+     */
+    ChunkHolder(Chunk chunk, CompletableFuture<Chunk> loaded) {
+        this.chunk = chunk;
+        this.futures = new CompletableFuture[ChunkStatus.getValues().length];
+        this.futures[ChunkStatus.EMPTY.ordinal()] = loaded;
+    }
+
+    @SuppressWarnings("unchecked")
+    CompletableFuture<Chunk> getFuture(ChunkStatus status) {
+        return (CompletableFuture<Chunk>) this.futures[status.ordinal()];
+    }
+
+    void setFuture(ChunkStatus status, CompletableFuture<Chunk> future) {
+        this.futures[status.ordinal()] = future;
+    }
+
+    /**
+     * Cancel all stages of this chunk that are not finished yet.
+     */
+    void cancelPending() {
+        for (CompletableFuture<?> future : this.futures) {
+            if (future != null && !future.isDone()) {
+                future.cancel(false);
+            }
+        }
+    }
+
+    Chunk getChunk() {
+        return chunk;
+    }
+}
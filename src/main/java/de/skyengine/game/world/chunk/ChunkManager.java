@@ -1,11 +1,68 @@
 package de.skyengine.game.world.chunk;
 
+import de.skyengine.core.io.IDisposable;
+import de.skyengine.game.world.mesh.ChunkMesh;
+import de.skyengine.util.logging.LogManager;
+import de.skyengine.util.logging.Logger;
+
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.Queue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+public class ChunkManager implements IDisposable {
+
+    private final Logger logger = LogManager.getLogger(ChunkManager.class.getName());
 
-public class ChunkManager {
+    public static final int DEFAULT_VIEW_RADIUS = 8;
 
     private final ExecutorService executor;
+    private final ChunkScheduler scheduler;
+
+    /** All loaded chunks by their packed position. Only accessed by the update thread. */
+    private final ChunkMap<Chunk> chunks;
+
+    /** Chunks inside the generation pipeline, guarded by itself. */
+    private final ChunkMap<ChunkHolder> holders;
+
+    private final EnumMap<ChunkStatus, IChunkStage> stages;
+
+    /** Loads chunks before they enter the pipeline and saves them when they are unloaded, optional. */
+    private IChunkStorage storage;
+
+    /** Chunks that finished the pipeline and wait to be added to {@link #chunks}. */
+    private final Queue<Chunk> finished;
+
+    /** Builds the meshes of the {@link ChunkStatus#MESH} stage and of changed sections, optional. */
+    private IChunkMesher mesher;
+
+    /** Loaded chunks with sections marked since the last update. Only accessed by the update thread. */
+    private final ChunkMap<Chunk> remeshQueue;
+
+    /** The last remesh job of each chunk until it is finished. Only accessed by the update thread. */
+    private final ChunkMap<RemeshJob> remeshJobs;
+
+    /** Computes the light of the {@link ChunkStatus#LIGHT} stage and after block changes, optional. */
+    private IChunkLighter lighter;
+
+    /** Block changes since the last update per chunk, waiting for a light job. Only accessed by the update thread. */
+    private final ChunkMap<LightJob> lightQueue;
+
+    /** The running light job of each chunk. Only accessed by the update thread. */
+    private final ChunkMap<LightJob> lightJobs;
+
+    private int centerX = Integer.MIN_VALUE;
+    private int centerZ = Integer.MIN_VALUE;
+    private int viewRadius = DEFAULT_VIEW_RADIUS;
+
+    /** Reused buffer for the positions of chunks to unload. */
+    private long[] unloadBuffer = new long[256];
 
     public ChunkManager() {
         int numThreads = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
@@ -16,5 +73,676 @@ public class ChunkManager {
             t.setDaemon(true);
             return t;
         });
+
+        this.scheduler = new ChunkScheduler(this.executor, numThreads, this.viewRadius);
+
+        this.chunks = new ChunkMap<>(1024);
+        this.holders = new ChunkMap<>(1024);
+        this.stages = new EnumMap<>(ChunkStatus.class);
+        this.finished = new ConcurrentLinkedQueue<>();
+        this.remeshQueue = new ChunkMap<>(64);
+        this.remeshJobs = new ChunkMap<>(64);
+        this.lightQueue = new ChunkMap<>(64);
+        this.lightJobs = new ChunkMap<>(64);
+    }
+
+    /**
+     * Register the work that is done when a chunk enters the given stage. Stages without work are skipped.
+     */
+    public void setStage(ChunkStatus status, IChunkStage stage) {
+        if (status == ChunkStatus.EMPTY) throw new IllegalArgumentException("The empty stage can't have any work");
+        this.stages.put(status, stage);
+    }
+
+    /**
+     * Load chunks from the given storage instead of generating them and save them when they are unloaded.
+     * Has to be set before the first chunk is requested.
+     */
+    public void setStorage(IChunkStorage storage) {
+        this.storage = storage;
+    }
+
+    /**
+     * Build the meshes of the {@link ChunkStatus#MESH} stage with the given mesher and use it to rebuild
+     * sections after block changes.
+     */
+    public void setMesher(IChunkMesher mesher) {
+        this.mesher = mesher;
+        this.setStage(ChunkStatus.MESH, (chunk, neighbours) -> chunk.setMesh(mesher.mesh(chunk, neighbours, ChunkMesh.ALL_SECTIONS, () -> false)));
+    }
+
+    /**
+     * Compute the light of the {@link ChunkStatus#LIGHT} stage with the given lighter and use it to update
+     * the light after block changes.
+     */
+    public void setLighter(IChunkLighter lighter) {
+        this.lighter = lighter;
+        this.setStage(ChunkStatus.LIGHT, lighter::light);
+    }
+
+    /**
+     * Move chunks that finished the pipeline into the loaded chunks, start the light jobs for the blocks that
+     * changed since the last update and remesh the changed sections. Has to be called from the update thread.
+     */
+    public void update() {
+        Chunk chunk;
+        while ((chunk = this.finished.poll()) != null) {
+            long key = chunk.getPosition().toLong();
+
+            /* The chunk might have been unloaded while its last stage was running */
+            synchronized (this.holders) {
+                ChunkHolder holder = this.holders.get(key);
+                if (holder == null || holder.getChunk() != chunk) continue;
+            }
+
+            this.chunks.put(key, chunk);
+        }
+
+        this.collectLightJobs();
+        this.submitLightJobs();
+
+        this.pruneRemeshJobs();
+        if (!this.remeshQueue.isEmpty()) {
+            int count = 0;
+            for (int slot = this.remeshQueue.firstSlot(); slot >= 0; slot = this.remeshQueue.nextSlot(slot)) {
+                /* Chunks waiting for light are meshed once the light is done, with the light job's sections */
+                long key = this.remeshQueue.keyAt(slot);
+                if (this.isLightPending(ChunkPosition.unpackX(key), ChunkPosition.unpackZ(key))) continue;
+
+                Chunk queued = this.remeshQueue.valueAt(slot);
+                this.remesh(queued, queued.takeDirtySections());
+                count = this.addToUnloadBuffer(count, key);
+            }
+            for (int i = 0; i < count; i++) {
+                this.remeshQueue.remove(this.unloadBuffer[i]);
+            }
+        }
+    }
+
+    /**
+     * Mark the section of the changed block for remeshing, together with the sections of this and the neighbour
+     * chunks that touch the block, their faces and ambient occlusion depend on it, and queue a light update for the
+     * block. All changes until the next {@link #update()} are lit and meshed together. Has to be called from the
+     * update thread.
+     */
+    public void onBlockChanged(int worldX, int y, int worldZ) {
+        if (y >>> Chunk.CHUNK_SHIFT_HEIGHT != 0) return;
+
+        int localX = worldX & (Chunk.CHUNK_WIDTH - 1);
+        int localY = y & (Chunk.CHUNK_WIDTH - 1);
+        int localZ = worldZ & (Chunk.CHUNK_WIDTH - 1);
+
+        if (this.lighter != null) {
+            this.queueLightUpdate(worldX >> Chunk.CHUNK_SHIFT_WIDTH, worldZ >> Chunk.CHUNK_SHIFT_WIDTH,
+                    y << (Chunk.CHUNK_SHIFT_WIDTH << 1) | localZ << Chunk.CHUNK_SHIFT_WIDTH | localX);
+        }
+        if (this.mesher == null) return;
+
+        int sectionY = y >> Chunk.CHUNK_SHIFT_WIDTH;
+        int sections = 1 << sectionY;
+        if (localY == 0 && sectionY > 0) sections |= 1 << (sectionY - 1);
+        if (localY == Chunk.CHUNK_WIDTH - 1 && sectionY < Chunk.SECTION_COUNT - 1) sections |= 1 << (sectionY + 1);
+
+        int chunkX = worldX >> Chunk.CHUNK_SHIFT_WIDTH;
+        int chunkZ = worldZ >> Chunk.CHUNK_SHIFT_WIDTH;
+        int maxDx = localX == Chunk.CHUNK_WIDTH - 1 ? 1 : 0;
+        int maxDz = localZ == Chunk.CHUNK_WIDTH - 1 ? 1 : 0;
+
+        for (int dz = localZ == 0 ? -1 : 0; dz <= maxDz; dz++) {
+            for (int dx = localX == 0 ? -1 : 0; dx <= maxDx; dx++) {
+                long key = ChunkPosition.pack(chunkX + dx, chunkZ + dz);
+                Chunk chunk = this.chunks.get(key);
+                if (chunk == null) continue;
+
+                chunk.markSectionsDirty(sections);
+                this.remeshQueue.put(key, chunk);
+            }
+        }
+    }
+
+    private void queueLightUpdate(int chunkX, int chunkZ, int position) {
+        long key = ChunkPosition.pack(chunkX, chunkZ);
+        LightJob job = this.lightQueue.get(key);
+        if (job == null) {
+            Chunk chunk = this.chunks.get(key);
+            if (chunk == null) return;
+
+            job = new LightJob(chunk);
+            this.lightQueue.put(key, job);
+        }
+        job.add(position);
+    }
+
+    /**
+     * Mark the sections whose light changed in finished light jobs for remeshing.
+     */
+    private void collectLightJobs() {
+        int count = 0;
+        for (int slot = this.lightJobs.firstSlot(); slot >= 0; slot = this.lightJobs.nextSlot(slot)) {
+            LightJob job = this.lightJobs.valueAt(slot);
+            if (!job.result.isDone()) continue;
+
+            long key = this.lightJobs.keyAt(slot);
+            count = this.addToUnloadBuffer(count, key);
+            if (job.result.isCompletedExceptionally()) {
+                this.logger.error("Failed to update the light of chunk at " + job.chunk.getPosition(), job.failure);
+                continue;
+            }
+            if (this.mesher == null) continue;
+
+            ChunkPosition position = job.chunk.getPosition();
+            for (int i = 0; i < job.changedSections.length; i++) {
+                if (job.changedSections[i] == 0) continue;
+
+                long neighbourKey = ChunkPosition.pack(position.getX() + i % 3 - 1, position.getZ() + i / 3 - 1);
+                Chunk neighbour = this.chunks.get(neighbourKey);
+                if (neighbour == null) continue;
+
+                neighbour.markSectionsDirty(job.changedSections[i]);
+                this.remeshQueue.put(neighbourKey, neighbour);
+            }
+        }
+        for (int i = 0; i < count; i++) {
+            this.lightJobs.remove(this.unloadBuffer[i]);
+        }
+    }
+
+    /**
+     * Start a light job for every chunk with block changes. Changes of a chunk whose previous job is still
+     * running stay queued and are batched with later ones, so the jobs of a chunk run in order.
+     */
+    private void submitLightJobs() {
+        if (this.lightQueue.isEmpty()) return;
+
+        int count = 0;
+        for (int slot = this.lightQueue.firstSlot(); slot >= 0; slot = this.lightQueue.nextSlot(slot)) {
+            long key = this.lightQueue.keyAt(slot);
+            if (this.lightJobs.containsKey(key)) continue;
+
+            LightJob job = this.lightQueue.valueAt(slot);
+            Chunk[] neighbours = this.getPipelineNeighbours(job.chunk.getPosition());
+            IChunkLighter lighter = this.lighter;
+            this.lightJobs.put(key, job);
+            this.scheduler.submit(ChunkPosition.unpackX(key), ChunkPosition.unpackZ(key), 0, job.result, () -> {
+                try {
+                    lighter.update(job.chunk, neighbours, job.positions, job.count, job.changedSections);
+                    job.result.complete(null);
+                } catch (Throwable t) {
+                    job.failure = t;
+                    job.result.completeExceptionally(t);
+                }
+            });
+            count = this.addToUnloadBuffer(count, key);
+        }
+        for (int i = 0; i < count; i++) {
+            this.lightQueue.remove(this.unloadBuffer[i]);
+        }
+    }
+
+    /**
+     * @return <code>true</code> if the light of the chunk can still change by a queued or running light job
+     * of the chunk or one of its neighbours
+     */
+    private boolean isLightPending(int x, int z) {
+        if (this.lightJobs.isEmpty() && this.lightQueue.isEmpty()) return false;
+
+        for (int dz = -1; dz <= 1; dz++) {
+            for (int dx = -1; dx <= 1; dx++) {
+                long key = ChunkPosition.pack(x + dx, z + dz);
+                if (this.lightJobs.containsKey(key) || this.lightQueue.containsKey(key)) return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return the 3x3 chunks of the pipeline around the given position, missing chunks are <code>null</code>
+     */
+    private Chunk[] getPipelineNeighbours(ChunkPosition position) {
+        Chunk[] neighbours = new Chunk[9];
+        synchronized (this.holders) {
+            for (int dz = -1; dz <= 1; dz++) {
+                for (int dx = -1; dx <= 1; dx++) {
+                    ChunkHolder holder = this.holders.get(ChunkPosition.pack(position.getX() + dx, position.getZ() + dz));
+                    neighbours[(dz + 1) * 3 + (dx + 1)] = holder == null ? null : holder.getChunk();
+                }
+            }
+        }
+        return neighbours;
+    }
+
+    /**
+     * Build the given sections on a chunk worker. A job of the chunk that didn't finish yet is cancelled
+     * and its sections are built by the new job instead. The job meshes snapshots of the sections and the
+     * ones around them, so blocks can change while it runs.
+     */
+    private void remesh(Chunk chunk, int sections) {
+        if (sections == 0) return;
+
+        ChunkPosition position = chunk.getPosition();
+        long key = position.toLong();
+
+        RemeshJob previous = this.remeshJobs.get(key);
+        if (previous != null && previous.supersede()) {
+            sections |= previous.sections;
+        }
+
+        /* A section is meshed with the blocks of the sections above and below it */
+        int copied = (sections | sections << 1 | sections >>> 1) & ChunkMesh.ALL_SECTIONS;
+        Chunk[] neighbours = this.getPipelineNeighbours(position);
+        neighbours[4] = chunk;
+        for (int i = 0; i < neighbours.length; i++) {
+            if (neighbours[i] != null) neighbours[i] = neighbours[i].snapshot(copied);
+        }
+        Chunk snapshot = neighbours[4];
+
+        IChunkMesher mesher = this.mesher;
+        RemeshJob job = new RemeshJob(chunk, sections);
+        this.remeshJobs.put(key, job);
+        this.scheduler.submit(position.getX(), position.getZ(), 0, job.result, () -> {
+            ChunkMesh mesh = null;
+            try {
+                mesh = mesher.mesh(snapshot, neighbours, job.sections, job.result::isDone);
+                if (mesh != null && job.deliver(mesh)) mesh = null;
+            } catch (Throwable t) {
+                this.logger.error("Failed to remesh chunk at " + position, t);
+                job.result.completeExceptionally(t);
+            } finally {
+                /* Meshes of superseded jobs never reach the chunk, their buffers go back to the pool */
+                if (mesh != null) mesh.dispose();
+            }
+        });
+    }
+
+    /**
+     * Forget finished remesh jobs. Failed jobs of chunks that changed again are kept, so the next job also
+     * builds their sections.
+     */
+    private void pruneRemeshJobs() {
+        int count = 0;
+        for (int slot = this.remeshJobs.firstSlot(); slot >= 0; slot = this.remeshJobs.nextSlot(slot)) {
+            RemeshJob job = this.remeshJobs.valueAt(slot);
+            if (!job.result.isDone()) continue;
+
+            long key = this.remeshJobs.keyAt(slot);
+            if (job.result.isCompletedExceptionally() && !job.result.isCancelled() && this.remeshQueue.containsKey(key)) continue;
+
+            count = this.addToUnloadBuffer(count, key);
+        }
+        for (int i = 0; i < count; i++) {
+            this.remeshJobs.remove(this.unloadBuffer[i]);
+        }
+    }
+
+    /**
+     * Move the view center to the given chunk. When it changed all pending work is re-prioritized,
+     * chunks that left the view radius are unloaded or cancelled and missing chunks inside of it are requested.
+     * Has to be called from the update thread.
+     */
+    public void setCenter(int x, int z) {
+        if (this.centerX == x && this.centerZ == z) return;
+        this.centerX = x;
+        this.centerZ = z;
+
+        this.scheduler.setCenter(x, z);
+        this.unloadOutOfRange();
+        this.requestInRange();
+    }
+
+    public void setViewRadius(int viewRadius) {
+        this.viewRadius = viewRadius;
+        this.scheduler.setViewRadius(viewRadius);
+
+        if (this.centerX != Integer.MIN_VALUE) {
+            this.unloadOutOfRange();
+            this.requestInRange();
+        }
+    }
+
+    private void requestInRange() {
+        for (int dz = -this.viewRadius; dz <= this.viewRadius; dz++) {
+            for (int dx = -this.viewRadius; dx <= this.viewRadius; dx++) {
+                int x = this.centerX + dx;
+                int z = this.centerZ + dz;
+                if (!this.scheduler.isInRange(x, z, 0) || this.chunks.containsKey(ChunkPosition.pack(x, z))) continue;
+
+                this.loadChunk(x, z);
+            }
+        }
+    }
+
+    private void unloadOutOfRange() {
+        /* Rendered chunks get one ring of hysteresis so walking along a border doesn't reload them all the time */
+        int count = 0;
+        for (int slot = this.chunks.firstSlot(); slot >= 0; slot = this.chunks.nextSlot(slot)) {
+            long key = this.chunks.keyAt(slot);
+            if (!this.scheduler.isInRange(ChunkPosition.unpackX(key), ChunkPosition.unpackZ(key), 1)) {
+                count = this.addToUnloadBuffer(count, key);
+            }
+        }
+        for (int i = 0; i < count; i++) {
+            this.unloadChunk(ChunkPosition.unpackX(this.unloadBuffer[i]), ChunkPosition.unpackZ(this.unloadBuffer[i]));
+        }
+
+        /* Chunks that are only needed as neighbours are kept as long as a generation stage could still need them */
+        int margin = ChunkStatus.MESH.ordinal() - ChunkStatus.NOISE.ordinal() + 1;
+        count = 0;
+        synchronized (this.holders) {
+            for (int slot = this.holders.firstSlot(); slot >= 0; slot = this.holders.nextSlot(slot)) {
+                long key = this.holders.keyAt(slot);
+                if (!this.scheduler.isInRange(ChunkPosition.unpackX(key), ChunkPosition.unpackZ(key), margin)) {
+                    count = this.addToUnloadBuffer(count, key);
+                }
+            }
+        }
+        for (int i = 0; i < count; i++) {
+            this.unloadChunk(ChunkPosition.unpackX(this.unloadBuffer[i]), ChunkPosition.unpackZ(this.unloadBuffer[i]));
+        }
+    }
+
+    private int addToUnloadBuffer(int count, long key) {
+        if (count == this.unloadBuffer.length) {
+            this.unloadBuffer = Arrays.copyOf(this.unloadBuffer, count << 1);
+        }
+        this.unloadBuffer[count] = key;
+        return count + 1;
+    }
+
+    /**
+     * Run the chunk through the whole pipeline. It becomes visible through {@link #getChunk(int, int)}
+     * with the next {@link #update()} after the returned future completed.
+     */
+    public CompletableFuture<Chunk> loadChunk(int x, int z) {
+        return this.getChunkFuture(x, z, ChunkStatus.MESH);
+    }
+
+    /**
+     * @return a future that completes on a chunk worker as soon as the chunk reached the given stage.
+     * Missing stages of the chunk and its neighbours are scheduled on the way.
+     */
+    public CompletableFuture<Chunk> getChunkFuture(int x, int z, ChunkStatus status) {
+        synchronized (this.holders) {
+            return this.schedule(x, z, status);
+        }
+    }
+
+    private CompletableFuture<Chunk> schedule(int x, int z, ChunkStatus status) {
+        ChunkHolder holder = this.getOrCreateHolder(x, z);
+
+        CompletableFuture<Chunk> future = holder.getFuture(status);
+        if (future != null) return future;
+
+        ChunkStatus previous = status.previous();
+        Chunk chunk = holder.getChunk();
+        Chunk[] neighbours = new Chunk[9];
+        CompletableFuture<?>[] dependencies;
+
+        if (status.isRequiresNeighbours()) {
+            dependencies = new CompletableFuture[9];
+            for (int dz = -1; dz <= 1; dz++) {
+                for (int dx = -1; dx <= 1; dx++) {
+                    int index = (dz + 1) * 3 + (dx + 1);
+                    dependencies[index] = this.schedule(x + dx, z + dz, previous);
+                    neighbours[index] = this.holders.get(ChunkPosition.pack(x + dx, z + dz)).getChunk();
+                }
+            }
+        } else {
+            dependencies = new CompletableFuture[] {this.schedule(x, z, previous)};
+            neighbours[4] = chunk;
+        }
+
+        IChunkStage stage = this.stages.get(status);
+        int margin = ChunkStatus.MESH.ordinal() - status.ordinal();
+
+        CompletableFuture<Chunk> result = new CompletableFuture<>();
+        holder.setFuture(status, result);
+
+        result.whenComplete((value, throwable) -> {
+            if (throwable != null) {
+                this.onStageFailed(holder, status, result, throwable);
+            } else if (status == ChunkStatus.MESH) {
+                this.finished.add(value);
+            }
+        });
+
+        CompletableFuture.allOf(dependencies).whenComplete((v, throwable) -> {
+            if (throwable != null) {
+                result.completeExceptionally(throwable);
+                return;
+            }
+
+            this.scheduler.submit(x, z, margin, result, () -> {
+                try {
+                    /* Loaded chunks already passed the stages they were saved with */
+                    if (!chunk.getStatus().isAtLeast(status)) {
+                        if (stage != null) {
+                            stage.process(chunk, neighbours);
+                        }
+                        chunk.setStatus(status);
+                    }
+                    result.complete(chunk);
+                } catch (Throwable t) {
+                    result.completeExceptionally(t);
+                }
+            });
+        });
+
+        return result;
+    }
+
+    /**
+     * Forget a failed or cancelled stage so that it is scheduled again with the next request.
+     */
+    private void onStageFailed(ChunkHolder holder, ChunkStatus status, CompletableFuture<Chunk> future, Throwable throwable) {
+        synchronized (this.holders) {
+            if (holder.getFuture(status) == future) {
+                holder.setFuture(status, null);
+            }
+        }
+
+        Throwable cause = throwable instanceof CompletionException && throwable.getCause() != null ? throwable.getCause() : throwable;
+        if (!(cause instanceof CancellationException) && status == ChunkStatus.MESH) {
+            this.logger.error("Failed to generate chunk at " + holder.getChunk().getPosition(), cause);
+        }
+    }
+
+    private ChunkHolder getOrCreateHolder(int x, int z) {
+        long key = ChunkPosition.pack(x, z);
+        ChunkHolder holder = this.holders.get(key);
+        if (holder == null) {
+            Chunk chunk = new Chunk(new ChunkPosition(x, z));
+            CompletableFuture<Chunk> loaded = this.storage == null ? CompletableFuture.completedFuture(chunk)
+                    : this.storage.load(chunk).thenApply(found -> chunk);
+            holder = new ChunkHolder(chunk, loaded);
+            this.holders.put(key, holder);
+        }
+        return holder;
+    }
+
+    /**
+     * Remove the chunk from the loaded chunks and from the pipeline. Pending stages of the chunk are cancelled
+     * and the chunk is passed to the storage.
+     */
+    public Chunk unloadChunk(int x, int z) {
+        long key = ChunkPosition.pack(x, z);
+        ChunkHolder holder;
+        synchronized (this.holders) {
+            holder = this.holders.remove(key);
+        }
+
+        RemeshJob job = this.remeshJobs.remove(key);
+        if (job != null) {
+            job.supersede();
+        }
+        this.remeshQueue.remove(key);
+
+        this.lightQueue.remove(key);
+        LightJob lightJob = this.lightJobs.remove(key);
+        if (lightJob != null) {
+            /* A job that already started finishes, its result is ignored */
+            lightJob.result.cancel(false);
+        }
+
+        if (holder != null) {
+            holder.cancelPending();
+            if (this.storage != null) {
+                this.storage.save(holder.getChunk());
+            }
+            holder.getChunk().dispose();
+        }
+        return this.chunks.remove(key);
+    }
+
+    public Chunk getChunk(int x, int z) {
+        return this.chunks.get(ChunkPosition.pack(x, z));
+    }
+
+    public Chunk getChunk(long position) {
+        return this.chunks.get(position);
+    }
+
+    public boolean isLoaded(int x, int z) {
+        return this.chunks.containsKey(ChunkPosition.pack(x, z));
+    }
+
+    /**
+     * @return the chunk that was previously loaded at the same position or <code>null</code>
+     */
+    public Chunk addChunk(Chunk chunk) {
+        return this.chunks.put(chunk.getPosition().toLong(), chunk);
+    }
+
+    public Chunk removeChunk(int x, int z) {
+        return this.chunks.remove(ChunkPosition.pack(x, z));
+    }
+
+    /**
+     * Fill the given array with the 3x3 chunks around (and including) the given chunk.
+     * The array is indexed with <code>(dz + 1) * 3 + (dx + 1)</code>, missing chunks are <code>null</code>.
+     *
+     * @return the number of loaded chunks that were found
+     */
+    public int getNeighbours(int x, int z, Chunk[] out) {
+        int found = 0;
+        for (int dz = -1; dz <= 1; dz++) {
+            for (int dx = -1; dx <= 1; dx++) {
+                Chunk chunk = this.chunks.get(ChunkPosition.pack(x + dx, z + dz));
+                out[(dz + 1) * 3 + (dx + 1)] = chunk;
+                if (chunk != null) found++;
+            }
+        }
+        return found;
+    }
+
+    public ChunkMap<Chunk> getChunks() {
+        return chunks;
+    }
+
+    public int getLoadedChunkCount() {
+        return this.chunks.size();
+    }
+
+    public ExecutorService getExecutor() {
+        return executor;
+    }
+
+    public ChunkScheduler getScheduler() {
+        return scheduler;
+    }
+
+    public int getViewRadius() {
+        return viewRadius;
+    }
+
+    /**
+     * Stop the chunk workers and pass all chunks to the storage.
+     */
+    @Override
+    public void dispose() {
+        this.executor.shutdownNow();
+        if (this.storage == null) return;
+
+        try {
+            /* Don't save chunks while a stage is still writing to them */
+            if (!this.executor.awaitTermination(5, TimeUnit.SECONDS)) {
+                this.logger.warning("Chunk workers did not stop in time, saving chunks anyway");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        synchronized (this.holders) {
+            for (int slot = this.holders.firstSlot(); slot >= 0; slot = this.holders.nextSlot(slot)) {
+                this.storage.save(this.holders.valueAt(slot).getChunk());
+            }
+        }
+    }
+
+    /**
+     * Updates the light around the changed blocks of a loaded chunk. Positions are added on the update thread
+     * until the job is submitted, afterwards only the worker touches it until the result is completed.
+     */
+    private static class LightJob {
+
+        private final Chunk chunk;
+        private int[] positions = new int[16];
+        private int count;
+        private final int[] changedSections = new int[9];
+        private final CompletableFuture<Void> result;
+        private volatile Throwable failure;
+
+        private LightJob(Chunk chunk) {
+            this.chunk = chunk;
+            this.result = new CompletableFuture<>();
+        }
+
+        private void add(int position) {
+            if (this.count == this.positions.length) {
+                this.positions = Arrays.copyOf(this.positions, this.count << 1);
+            }
+            this.positions[this.count++] = position;
+        }
+    }
+
+    /**
+     * Rebuilds some sections of a loaded chunk. The result future is completed when the mesh is handed to the chunk
+     * and cancelled when a newer job takes over the sections.
+     */
+    private static class RemeshJob {
+
+        private final Chunk chunk;
+        private final int sections;
+        private final CompletableFuture<Void> result;
+
+        private RemeshJob(Chunk chunk, int sections) {
+            this.chunk = chunk;
+            this.sections = sections;
+            this.result = new CompletableFuture<>();
+        }
+
+        /**
+         * Hand the mesh to the chunk unless the job was superseded in the meantime.
+         *
+         * @return <code>true</code> if the chunk took the mesh, otherwise the caller still owns it
+         */
+        private boolean deliver(ChunkMesh mesh) {
+            synchronized (this.chunk) {
+                if (!this.result.complete(null)) return false;
+
+                this.chunk.setMesh(mesh);
+                return true;
+            }
+        }
+
+        /**
+         * Cancel the job if it didn't deliver its mesh yet.
+         *
+         * @return <code>true</code> if the mesh of this job never reaches the chunk
+         */
+        private boolean supersede() {
+            synchronized (this.chunk) {
+                return this.result.cancel(false) || this.result.isCompletedExceptionally();
+            }
+        }
     }
 }
@@ -0,0 +1,216 @@
+package de.skyengine.game.world.chunk;
+
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+/**
+ * Open addressing hash map from packed chunk coordinates ({@link ChunkPosition#pack(int, int)}) to values.
+ * <p>
+ * Keys are plain <code>long</code>s in a flat array, so lookups neither allocate a key object nor chase pointers.
+ * Collisions are resolved with linear probing, removals use backward shift deletion so no tombstones pile up.
+ * Values must not be <code>null</code>, an empty slot is marked by a <code>null</code> value.
+ * <p>
+ * Iterating without allocations:
+ * <pre>
+ * for (int slot = map.firstSlot(); slot >= 0; slot = map.nextSlot(slot)) {
+ *     Chunk chunk = map.valueAt(slot);
+ * }
+ * </pre>
+ * The map is not thread safe.
+ */
+public class ChunkMap<V> {
+
+    private static final int DEFAULT_CAPACITY = 64;
+    private static final float LOAD_FACTOR = 0.5F;
+
+    private long[] keys;
+    private V[] values;
+    private int mask;
+    private int size;
+    private int resizeThreshold;
+
+    public ChunkMap() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public ChunkMap(int expectedSize) {
+        this.allocate(tableSizeFor((int) Math.ceil(Math.max(expectedSize, 1) / LOAD_FACTOR)));
+    }
+
+    /**
+     * Murmur3 64 bit finalizer. Spreads neighbouring coordinates (including diagonals) over the whole table.
+     */
+    public static int hash(long key) {
+        key ^= key >>> 33;
+        key *= 0xFF51AFD7ED558CCDL;
+        key ^= key >>> 33;
+        key *= 0xC4CEB9FE1A85EC53L;
+        key ^= key >>> 33;
+        return (int) key;
+    }
+
+    public V get(int x, int z) {
+        return this.get(ChunkPosition.pack(x, z));
+    }
+
+    public V get(long key) {
+        int slot = hash(key) & this.mask;
+        V value;
+        while ((value = this.values[slot]) != null) {
+            if (this.keys[slot] == key) return value;
+            slot = (slot + 1) & this.mask;
+        }
+        return null;
+    }
+
+    public boolean containsKey(long key) {
+        return this.get(key) != null;
+    }
+
+    /**
+     * @return the value previously stored for the key or <code>null</code>
+     */
+    public V put(long key, V value) {
+        if (value == null) throw new NullPointerException("ChunkMap does not support null values");
+
+        int slot = hash(key) & this.mask;
+        V current;
+        while ((current = this.values[slot]) != null) {
+            if (this.keys[slot] == key) {
+                this.values[slot] = value;
+                return current;
+            }
+            slot = (slot + 1) & this.mask;
+        }
+
+        this.keys[slot] = key;
+        this.values[slot] = value;
+
+        if (++this.size > this.resizeThreshold) {
+            this.rehash(this.values.length << 1);
+        }
+        return null;
+    }
+
+    public V remove(int x, int z) {
+        return this.remove(ChunkPosition.pack(x, z));
+    }
+
+    /**
+     * @return the removed value or <code>null</code> if the key was not present
+     */
+    public V remove(long key) {
+        int slot = hash(key) & this.mask;
+        V value;
+        while ((value = this.values[slot]) != null) {
+            if (this.keys[slot] == key) {
+                this.shiftKeys(slot);
+                this.size--;
+                return value;
+            }
+            slot = (slot + 1) & this.mask;
+        }
+        return null;
+    }
+
+    public void clear() {
+        Arrays.fill(this.values, null);
+        this.size = 0;
+    }
+
+    /**
+     * @return the first occupied slot or -1 if the map is empty
+     */
+    public int firstSlot() {
+        return this.nextSlot(-1);
+    }
+
+    /**
+     * @return the next occupied slot after the given one or -1 if there is none
+     */
+    public int nextSlot(int slot) {
+        for (int i = slot + 1; i < this.values.length; i++) {
+            if (this.values[i] != null) return i;
+        }
+        return -1;
+    }
+
+    public long keyAt(int slot) {
+        return this.keys[slot];
+    }
+
+    public V valueAt(int slot) {
+        return this.values[slot];
+    }
+
+    public void forEachValue(Consumer<? super V> consumer) {
+        for (V value : this.values) {
+            if (value != null) consumer.accept(value);
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return this.size == 0;
+    }
+
+    /**
+     * Close the gap at the given slot by moving following entries of the same probe chain backwards.
+     */
+    private void shiftKeys(int slot) {
+        while (true) {
+            int last = slot;
+            slot = (slot + 1) & this.mask;
+
+            V value;
+            while (true) {
+                if ((value = this.values[slot]) == null) {
+                    this.values[last] = null;
+                    return;
+                }
+
+                int home = hash(this.keys[slot]) & this.mask;
+                /* Move the entry if its home slot is not between the gap and its current slot (cyclic) */
+                if (last <= slot ? (last >= home || home > slot) : (last >= home && home > slot)) break;
+                slot = (slot + 1) & this.mask;
+            }
+
+            this.keys[last] = this.keys[slot];
+            this.values[last] = value;
+        }
+    }
+
+    private void rehash(int capacity) {
+        long[] oldKeys = this.keys;
+        V[] oldValues = this.values;
+
+        this.allocate(capacity);
+
+        for (int i = 0; i < oldValues.length; i++) {
+            V value = oldValues[i];
+            if (value == null) continue;
+
+            int slot = hash(oldKeys[i]) & this.mask;
+            while (this.values[slot] != null) {
+                slot = (slot + 1) & this.mask;
+            }
+            this.keys[slot] = oldKeys[i];
+            this.values[slot] = value;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void allocate(int capacity) {
+        this.keys = new long[capacity];
+        this.values = (V[]) new Object[capacity];
+        this.mask = capacity - 1;
+        this.resizeThreshold = (int) (capacity * LOAD_FACTOR);
+    }
+
+    private static int tableSizeFor(int size) {
+        return Math.max(2, Integer.highestOneBit(Math.max(size, 2) - 1) << 1);
+    }
+}
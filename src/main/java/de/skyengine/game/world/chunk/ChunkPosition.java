@@ -26,6 +26,32 @@ public class ChunkPosition {
         return this.z << Chunk.CHUNK_SHIFT_WIDTH;
     }
 
+    /**
+     * @return this position packed into one long, see {@link #pack(int, int)}
+     */
+    public long toLong() {
+        return pack(this.x, this.z);
+    }
+
+    /**
+     * Pack chunk coordinates into one long (x in the upper, z in the lower 32 bits).
+     */
+    public static long pack(int x, int z) {
+        return ((long) x << 32) | (z & 0xFFFFFFFFL);
+    }
+
+    public static int unpackX(long packed) {
+        return (int) (packed >> 32);
+    }
+
+    public static int unpackZ(long packed) {
+        return (int) packed;
+    }
+
+    public static ChunkPosition fromLong(long packed) {
+        return new ChunkPosition(unpackX(packed), unpackZ(packed));
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
@@ -39,11 +65,7 @@ public class ChunkPosition {
 
     @Override
     public int hashCode() {
-        final int prime = 31;
-        int result = 1;
-        result = prime * result + this.x;
-        result = prime * result + this.z;
-        return result;
+        return ChunkMap.hash(this.toLong());
     }
 
     @Override
@@ -0,0 +1,186 @@
+package de.skyengine.game.world.chunk;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Hands chunk work to the chunk workers, nearest chunks to the view center first.
+ * <p>
+ * Only {@link #getMaxInFlight()} tasks are passed to the executor at once, everything else waits in a priority queue.
+ * That way a task submitted for a chunk right in front of the camera overtakes all far away tasks that are not running yet.
+ * When the center moves to another chunk the queue is re-sorted and tasks of chunks that left the view radius are cancelled.
+ * <p>
+ * A task is cancelled by cancelling its result future, from here or from the outside.
+ */
+public class ChunkScheduler {
+
+    /**
+     * How far (in chunks) a task of a generation stage may be away from the view radius per stage it is in front of
+     * {@link ChunkStatus#MESH}, slightly more than sqrt(2) for the diagonal neighbours.
+     */
+    private static final float MARGIN_PER_STAGE = 1.5F;
+
+    private final Executor executor;
+    private final int maxInFlight;
+
+    /** Guarded by <code>this</code>. */
+    private final PriorityQueue<Task> pending;
+    private int inFlight;
+
+    private int centerX;
+    private int centerZ;
+    private int viewRadius;
+
+    public ChunkScheduler(Executor executor, int maxInFlight, int viewRadius) {
+        if (maxInFlight < 1) throw new IllegalArgumentException("At least one task has to be allowed in flight");
+
+        this.executor = executor;
+        this.maxInFlight = maxInFlight;
+        this.viewRadius = viewRadius;
+        this.pending = new PriorityQueue<>((a, b) -> Long.compare(a.priority, b.priority));
+    }
+
+    /**
+     * Queue work for the chunk at the given position.
+     *
+     * @param margin the number of neighbour rings the work is needed for beyond the view radius
+     * @param result the future the work completes, the work is skipped if it is done before the work started
+     */
+    public void submit(int x, int z, int margin, CompletableFuture<?> result, Runnable work) {
+        synchronized (this) {
+            if (result.isDone()) return;
+            this.pending.add(new Task(x, z, margin, result, work, this.priority(x, z)));
+        }
+        this.dispatch();
+    }
+
+    /**
+     * Move the view center. Pending tasks are re-sorted by their new distance and tasks
+     * outside of the view radius are cancelled.
+     */
+    public void setCenter(int x, int z) {
+        List<Task> cancelled = new ArrayList<>();
+
+        synchronized (this) {
+            if (this.centerX == x && this.centerZ == z) return;
+            this.centerX = x;
+            this.centerZ = z;
+
+            Task[] tasks = this.pending.toArray(new Task[0]);
+            this.pending.clear();
+
+            for (Task task : tasks) {
+                if (task.result.isDone()) continue;
+
+                if (this.isInRange(task.x, task.z, task.margin)) {
+                    task.priority = this.priority(task.x, task.z);
+                    this.pending.add(task);
+                } else {
+                    cancelled.add(task);
+                }
+            }
+        }
+
+        /* Cancel outside of the lock, the futures notify their dependents synchronously */
+        for (Task task : cancelled) {
+            task.result.cancel(false);
+        }
+    }
+
+    public synchronized void setViewRadius(int viewRadius) {
+        this.viewRadius = viewRadius;
+    }
+
+    /**
+     * @return <code>true</code> if work for the given chunk that is needed <code>margin</code> rings beyond the view radius should be kept
+     */
+    public synchronized boolean isInRange(int x, int z, int margin) {
+        long dx = x - this.centerX;
+        long dz = z - this.centerZ;
+        float radius = this.viewRadius + margin * MARGIN_PER_STAGE;
+        return dx * dx + dz * dz <= radius * radius;
+    }
+
+    private long priority(int x, int z) {
+        long dx = x - this.centerX;
+        long dz = z - this.centerZ;
+        return dx * dx + dz * dz;
+    }
+
+    private void dispatch() {
+        while (true) {
+            Task task;
+            synchronized (this) {
+                if (this.inFlight >= this.maxInFlight) return;
+
+                task = this.pending.poll();
+                if (task == null) return;
+                if (task.result.isDone()) continue;
+
+                this.inFlight++;
+            }
+
+            try {
+                this.executor.execute(() -> this.run(task));
+            } catch (RejectedExecutionException e) {
+                synchronized (this) {
+                    this.inFlight--;
+                }
+                task.result.cancel(false);
+                return;
+            }
+        }
+    }
+
+    private void run(Task task) {
+        try {
+            if (!task.result.isDone()) {
+                task.work.run();
+            }
+        } finally {
+            synchronized (this) {
+                this.inFlight--;
+            }
+            this.dispatch();
+        }
+    }
+
+    public synchronized int getPendingCount() {
+        return this.pending.size();
+    }
+
+    public synchronized int getInFlightCount() {
+        return inFlight;
+    }
+
+    public int getMaxInFlight() {
+        return maxInFlight;
+    }
+
+    public synchronized int getViewRadius() {
+        return viewRadius;
+    }
+
+    private static class Task {
+
+        private final int x;
+        private final int z;
+        private final int margin;
+        private final CompletableFuture<?> result;
+        private final Runnable work;
+        private long priority;
+
+        private Task(int x, int z, int margin, CompletableFuture<?> result, Runnable work, long priority) {
+            this.x = x;
+            this.z = z;
+            this.margin = margin;
+            this.result = result;
+            this.work = work;
+            this.priority = priority;
+        }
+    }
+}
@@ -0,0 +1,396 @@
+package de.skyengine.game.world.chunk;
+
+import de.skyengine.game.world.block.Blocks;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * A 16x16x16 cube of blocks stored as a palette of block ids plus bit-packed palette indices.
+ * <p>
+ * Sections that contain only one block id (e.g. all air or all stone) keep no index array at all.
+ * As soon as a second id is placed the indices start at 1 bit per entry and widen to 2, 4 and 8 bits
+ * as the palette grows. Beyond 256 distinct ids the palette is dropped and the ids are stored directly with 16 bits.
+ * <p>
+ * A section is not thread safe, writers have to be synchronized by the owner of the chunk.
+ */
+public class ChunkSection {
+
+    public static final int SIZE = Chunk.CHUNK_WIDTH;
+    public static final int SHIFT = Chunk.CHUNK_SHIFT_WIDTH;
+    public static final int VOLUME = SIZE * SIZE * SIZE;
+
+    /** The widest palette, sections with more distinct ids store them directly. */
+    private static final int MAX_PALETTE_BITS = 8;
+    private static final int DIRECT_BITS = 16;
+
+    /** Size of the reverse lookup table for 8 bit palettes, must be a power of two bigger than 256. */
+    private static final int LOOKUP_SIZE = 512;
+
+    /** Block ids by palette index, <code>null</code> if the ids are stored directly. */
+    private short[] palette;
+    private int paletteSize;
+
+    /** Reverse (id -> palette index) hash for large palettes, <code>null</code> for small palettes that are scanned linearly. */
+    private int[] lookup;
+
+    /** Packed palette indices, <code>null</code> if the whole section consists of palette[0]. */
+    private BitStorage storage;
+
+    private int nonAirCount;
+    private int opaqueCount;
+
+    /**
+     * Create a section that is completely filled with the given block.
+     */
+    public ChunkSection(int id) {
+        this.fill(id);
+    }
+
+    /**
+     * @return the index of a local block position (0-15 on each axis) inside a section
+     */
+    public static int index(int x, int y, int z) {
+        return (y << (SHIFT << 1)) | (z << SHIFT) | x;
+    }
+
+    public int get(int x, int y, int z) {
+        return this.get(index(x, y, z));
+    }
+
+    public int get(int index) {
+        if (this.storage == null) return this.palette[0] & 0xFFFF;
+
+        int value = this.storage.get(index);
+        return this.palette == null ? value : this.palette[value] & 0xFFFF;
+    }
+
+    public int set(int x, int y, int z, int id) {
+        return this.set(index(x, y, z), id);
+    }
+
+    /**
+     * Set the block at the given index.
+     *
+     * @return the id of the block that was replaced
+     */
+    public int set(int index, int id) {
+        id &= 0xFFFF;
+
+        if (this.storage == null) {
+            int current = this.palette[0] & 0xFFFF;
+            if (current == id) return current;
+
+            /* Leave the single value mode, every index still points to palette[0] */
+            this.storage = new BitStorage(1, VOLUME);
+            this.palette = Arrays.copyOf(this.palette, 2);
+        }
+
+        int value = this.valueFor(id);
+        int previousValue = this.storage.getAndSet(index, value);
+        int previous = this.palette == null ? previousValue : this.palette[previousValue] & 0xFFFF;
+
+        if (previous == Blocks.AIR && id != Blocks.AIR) this.nonAirCount++;
+        else if (previous != Blocks.AIR && id == Blocks.AIR) this.nonAirCount--;
+
+        boolean wasOpaque = Blocks.isOpaque(previous);
+        if (!wasOpaque && Blocks.isOpaque(id)) this.opaqueCount++;
+        else if (wasOpaque && !Blocks.isOpaque(id)) this.opaqueCount--;
+
+        return previous;
+    }
+
+    /**
+     * Replace every block of this section with the given block and release the index array.
+     */
+    public void fill(int id) {
+        id &= 0xFFFF;
+
+        this.palette = new short[] {(short) id};
+        this.paletteSize = 1;
+        this.lookup = null;
+        this.storage = null;
+        this.nonAirCount = id == Blocks.AIR ? 0 : VOLUME;
+        this.opaqueCount = Blocks.isOpaque(id) ? VOLUME : 0;
+    }
+
+    /**
+     * Rebuild the palette from the blocks that are actually used. Palettes never shrink on their own,
+     * so this should be called after large edits (e.g. generation or explosions).
+     */
+    public void compact() {
+        if (this.storage == null) return;
+
+        ChunkSection compacted = new ChunkSection(this.get(0));
+        for (int i = 1; i < VOLUME; i++) {
+            compacted.set(i, this.get(i));
+        }
+
+        this.palette = compacted.palette;
+        this.paletteSize = compacted.paletteSize;
+        this.lookup = compacted.lookup;
+        this.storage = compacted.storage;
+        this.nonAirCount = compacted.nonAirCount;
+        this.opaqueCount = compacted.opaqueCount;
+    }
+
+    /**
+     * @return an independent copy of this section, e.g. to read it on another thread while this one is changed
+     */
+    public ChunkSection copy() {
+        ChunkSection copy = new ChunkSection(Blocks.AIR);
+        copy.palette = this.palette == null ? null : this.palette.clone();
+        copy.paletteSize = this.paletteSize;
+        copy.lookup = this.lookup == null ? null : this.lookup.clone();
+        copy.storage = this.storage == null ? null : this.storage.copy();
+        copy.nonAirCount = this.nonAirCount;
+        copy.opaqueCount = this.opaqueCount;
+        return copy;
+    }
+
+    /**
+     * @return the number of bytes {@link #write(ByteBuffer)} writes
+     */
+    public int getSerializedSize() {
+        int bytes = 1;
+        if (this.palette != null) bytes += Short.BYTES + this.paletteSize * Short.BYTES;
+        if (this.storage != null) bytes += this.storage.getData().length * Long.BYTES;
+        return bytes;
+    }
+
+    /**
+     * Write the palette and the packed indices as they are, call {@link #compact()} before to store the smallest form.
+     */
+    public void write(ByteBuffer out) {
+        out.put((byte) this.getBitsPerEntry());
+
+        if (this.palette != null) {
+            out.putShort((short) this.paletteSize);
+            for (int i = 0; i < this.paletteSize; i++) {
+                out.putShort(this.palette[i]);
+            }
+        }
+
+        if (this.storage != null) {
+            out.asLongBuffer().put(this.storage.getData());
+            out.position(out.position() + this.storage.getData().length * Long.BYTES);
+        }
+    }
+
+    /**
+     * Read a section written with {@link #write(ByteBuffer)}.
+     */
+    public static ChunkSection read(ByteBuffer in) throws IOException {
+        int bits = in.get() & 0xFF;
+        if (bits != 0 && bits != DIRECT_BITS && (Integer.bitCount(bits) != 1 || bits > MAX_PALETTE_BITS)) {
+            throw new IOException("Invalid section with " + bits + " bits per entry");
+        }
+
+        short[] palette = null;
+        int paletteSize = 0;
+        if (bits != DIRECT_BITS) {
+            paletteSize = in.getShort() & 0xFFFF;
+            if (paletteSize < 1 || paletteSize > 1 << bits) throw new IOException("Invalid palette size " + paletteSize + " for " + bits + " bits");
+
+            palette = new short[1 << bits];
+            in.asShortBuffer().get(palette, 0, paletteSize);
+            in.position(in.position() + paletteSize * Short.BYTES);
+        }
+
+        ChunkSection section = new ChunkSection(bits == 0 ? palette[0] : Blocks.AIR);
+        if (bits == 0) return section;
+
+        BitStorage storage = new BitStorage(bits, VOLUME);
+        long[] data = storage.getData();
+        in.asLongBuffer().get(data);
+        in.position(in.position() + data.length * Long.BYTES);
+
+        section.palette = palette;
+        section.paletteSize = paletteSize;
+        section.storage = storage;
+        if (bits == MAX_PALETTE_BITS) {
+            section.lookup = new int[LOOKUP_SIZE];
+            for (int i = 0; i < paletteSize; i++) {
+                section.insertLookup(palette[i] & 0xFFFF, i);
+            }
+        }
+
+        section.countBlocks();
+        return section;
+    }
+
+    /**
+     * Recount the non-air and opaque blocks from the packed values, much faster than reading every block.
+     */
+    private void countBlocks() {
+        int entriesPerLong = Long.SIZE / this.storage.getBits();
+        int[] counts = new int[1 << this.storage.getBits()];
+        int mask = counts.length - 1;
+        int bits = this.storage.getBits();
+
+        int remaining = VOLUME;
+        for (long word : this.storage.getData()) {
+            int entries = Math.min(entriesPerLong, remaining);
+            for (int i = 0; i < entries; i++) {
+                counts[(int) (word >>> (i * bits)) & mask]++;
+            }
+            remaining -= entries;
+        }
+
+        this.nonAirCount = 0;
+        this.opaqueCount = 0;
+        for (int value = 0; value < counts.length; value++) {
+            if (counts[value] == 0) continue;
+
+            int id = this.palette == null ? value : this.palette[value] & 0xFFFF;
+            if (id != Blocks.AIR) this.nonAirCount += counts[value];
+            if (Blocks.isOpaque(id)) this.opaqueCount += counts[value];
+        }
+    }
+
+    /**
+     * @return the value that has to be stored for the given id, growing the palette if required
+     */
+    private int valueFor(int id) {
+        if (this.palette == null) return id;
+
+        int index = this.indexOf(id);
+        if (index >= 0) return index;
+
+        if (this.paletteSize == 1 << this.storage.getBits()) {
+            this.resize(this.storage.getBits() << 1);
+            if (this.palette == null) return id;
+        }
+
+        index = this.paletteSize++;
+        this.palette[index] = (short) id;
+        if (this.lookup != null) {
+            this.insertLookup(id, index);
+        }
+        return index;
+    }
+
+    private int indexOf(int id) {
+        if (this.lookup == null) {
+            for (int i = 0; i < this.paletteSize; i++) {
+                if ((this.palette[i] & 0xFFFF) == id) return i;
+            }
+            return -1;
+        }
+
+        int slot = lookupSlot(id);
+        int entry;
+        while ((entry = this.lookup[slot]) != 0) {
+            if (entry >>> 16 == id) return (entry & 0xFFFF) - 1;
+            slot = (slot + 1) & (LOOKUP_SIZE - 1);
+        }
+        return -1;
+    }
+
+    private void insertLookup(int id, int index) {
+        int slot = lookupSlot(id);
+        while (this.lookup[slot] != 0) {
+            slot = (slot + 1) & (LOOKUP_SIZE - 1);
+        }
+        this.lookup[slot] = (id << 16) | (index + 1);
+    }
+
+    private static int lookupSlot(int id) {
+        return (id * 0x9E3779B9) >>> (Integer.SIZE - Integer.numberOfTrailingZeros(LOOKUP_SIZE));
+    }
+
+    private void resize(int bits) {
+        BitStorage old = this.storage;
+
+        if (bits > MAX_PALETTE_BITS) {
+            BitStorage direct = new BitStorage(DIRECT_BITS, VOLUME);
+            for (int i = 0; i < VOLUME; i++) {
+                direct.set(i, this.palette[old.get(i)] & 0xFFFF);
+            }
+
+            this.storage = direct;
+            this.palette = null;
+            this.paletteSize = 0;
+            this.lookup = null;
+            return;
+        }
+
+        BitStorage resized = new BitStorage(bits, VOLUME);
+        for (int i = 0; i < VOLUME; i++) {
+            resized.set(i, old.get(i));
+        }
+
+        this.storage = resized;
+        this.palette = Arrays.copyOf(this.palette, 1 << bits);
+
+        if (bits == MAX_PALETTE_BITS) {
+            this.lookup = new int[LOOKUP_SIZE];
+            for (int i = 0; i < this.paletteSize; i++) {
+                this.insertLookup(this.palette[i] & 0xFFFF, i);
+            }
+        }
+    }
+
+    /**
+     * @return <code>false</code> if no block of the section emits light, <code>true</code> if one might
+     */
+    public boolean hasLightSource() {
+        if (this.palette == null) return true;
+
+        for (int i = 0; i < this.paletteSize; i++) {
+            if (Blocks.getLightEmission(this.palette[i] & 0xFFFF) > 0) return true;
+        }
+        return false;
+    }
+
+    /**
+     * @return <code>true</code> if the whole section consists of one block
+     */
+    public boolean isSingleValue() {
+        return this.storage == null;
+    }
+
+    /**
+     * @return <code>true</code> if the section only contains air
+     */
+    public boolean isEmpty() {
+        return this.nonAirCount == 0;
+    }
+
+    /**
+     * @return <code>true</code> if every block of the section is opaque, so nothing inside of it can be seen
+     */
+    public boolean isFull() {
+        return this.opaqueCount == VOLUME;
+    }
+
+    public int getNonAirCount() {
+        return nonAirCount;
+    }
+
+    public int getOpaqueCount() {
+        return opaqueCount;
+    }
+
+    /**
+     * @return the bits used per block, 0 if the section consists of one block
+     */
+    public int getBitsPerEntry() {
+        return this.storage == null ? 0 : this.storage.getBits();
+    }
+
+    public int getPaletteSize() {
+        return paletteSize;
+    }
+
+    /**
+     * @return the approximate heap usage of the block data in bytes
+     */
+    public int getMemoryUsage() {
+        int bytes = this.palette == null ? 0 : this.palette.length * Short.BYTES;
+        if (this.lookup != null) bytes += this.lookup.length * Integer.BYTES;
+        if (this.storage != null) bytes += this.storage.getData().length * Long.BYTES;
+        return bytes;
+    }
+}
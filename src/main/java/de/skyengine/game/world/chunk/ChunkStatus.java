@@ -0,0 +1,44 @@
+package de.skyengine.game.world.chunk;
+
+/**
+ * The generation stages a chunk passes in order. The status of a chunk is the last stage it completed.
+ */
+public enum ChunkStatus {
+
+    EMPTY(false),
+    NOISE(false),
+    SURFACE(true),
+    DECORATION(true),
+    LIGHT(true),
+    MESH(true);
+
+    private static final ChunkStatus[] VALUES = values();
+
+    private final boolean requiresNeighbours;
+
+    ChunkStatus(boolean requiresNeighbours) {
+        this.requiresNeighbours = requiresNeighbours;
+    }
+
+    /**
+     * @return <code>true</code> if all 8 neighbours have to reach the previous stage before a chunk can enter this one
+     */
+    public boolean isRequiresNeighbours() {
+        return requiresNeighbours;
+    }
+
+    /**
+     * @return the stage before this one, <code>null</code> for {@link #EMPTY}
+     */
+    public ChunkStatus previous() {
+        return this == EMPTY ? null : VALUES[this.ordinal() - 1];
+    }
+
+    public boolean isAtLeast(ChunkStatus status) {
+        return this.ordinal() >= status.ordinal();
+    }
+
+    public static ChunkStatus[] getValues() {
+        return VALUES;
+    }
+}
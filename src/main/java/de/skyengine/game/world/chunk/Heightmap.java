@@ -0,0 +1,146 @@
+package de.skyengine.game.world.chunk;
+
+import de.skyengine.game.world.block.Blocks;
+
+import java.util.Arrays;
+
+/**
+ * The y coordinate of the highest block of each column of a chunk that matches the {@link Type}.
+ * Columns without any matching block have the height {@link #NONE}.
+ * <p>
+ * The chunk keeps its heightmaps up to date on every block change. Placing a block is O(1), only removing
+ * the top block of a column scans down to the next matching block and skips sections that only contain air.
+ */
+public class Heightmap {
+
+    public static final int NONE = -1;
+
+    public enum Type {
+
+        /** Any block except air, including fluids. */
+        WORLD_SURFACE,
+        /** Solid blocks, the ground below fluids. */
+        OCEAN_FLOOR,
+        /** Opaque blocks, nothing above them blocks the sky light. */
+        OPAQUE;
+
+        private static final Type[] VALUES = values();
+
+        public boolean matches(int id) {
+            switch (this) {
+                case WORLD_SURFACE:
+                    return id != Blocks.AIR;
+                case OCEAN_FLOOR:
+                    return Blocks.isSolid(id);
+                default:
+                    return Blocks.isOpaque(id);
+            }
+        }
+
+        public static Type[] getValues() {
+            return VALUES;
+        }
+    }
+
+    private final Type type;
+    private final short[] heights = new short[Chunk.CHUNK_WIDTH * Chunk.CHUNK_WIDTH];
+
+    public Heightmap(Type type) {
+        this.type = type;
+        Arrays.fill(this.heights, (short) NONE);
+    }
+
+    /**
+     * @param x local x coordinate (0-15)
+     * @param z local z coordinate (0-15)
+     * @return the y coordinate of the highest matching block or {@link #NONE}
+     */
+    public int get(int x, int z) {
+        return this.heights[index(x, z)];
+    }
+
+    /**
+     * @return the highest height of all columns, {@link #NONE} if no column has a matching block
+     */
+    public int getMax() {
+        int max = NONE;
+        for (short height : this.heights) {
+            max = Math.max(max, height);
+        }
+        return max;
+    }
+
+    /**
+     * Update the column after the block at the given position was set to the given id.
+     */
+    void onBlockChanged(Chunk chunk, int x, int y, int z, int id) {
+        int index = index(x, z);
+        int height = this.heights[index];
+
+        if (this.type.matches(id)) {
+            if (y > height) this.heights[index] = (short) y;
+        } else if (y == height) {
+            this.heights[index] = (short) this.scanDown(chunk, x, y - 1, z);
+        }
+    }
+
+    /**
+     * Update all columns after a whole section was filled with the given id.
+     */
+    void onSectionFilled(Chunk chunk, int sectionY, int id) {
+        int bottom = sectionY << Chunk.CHUNK_SHIFT_WIDTH;
+        int top = bottom + Chunk.CHUNK_WIDTH - 1;
+        boolean matches = this.type.matches(id);
+
+        for (int index = 0; index < this.heights.length; index++) {
+            int height = this.heights[index];
+            if (matches) {
+                if (top > height) this.heights[index] = (short) top;
+            } else if (height >= bottom && height <= top) {
+                this.heights[index] = (short) this.scanDown(chunk, index & (Chunk.CHUNK_WIDTH - 1), bottom - 1, index >> Chunk.CHUNK_SHIFT_WIDTH);
+            }
+        }
+    }
+
+    /**
+     * Recompute all columns from the blocks of the chunk, for example after the sections were replaced.
+     */
+    void recompute(Chunk chunk) {
+        for (int index = 0; index < this.heights.length; index++) {
+            this.heights[index] = (short) this.scanDown(chunk, index & (Chunk.CHUNK_WIDTH - 1), Chunk.CHUNK_HEIGHT - 1, index >> Chunk.CHUNK_SHIFT_WIDTH);
+        }
+    }
+
+    /**
+     * @return the highest matching block at or below the given y coordinate
+     */
+    private int scanDown(Chunk chunk, int x, int y, int z) {
+        while (y >= 0) {
+            ChunkSection section = chunk.getSection(y >> Chunk.CHUNK_SHIFT_WIDTH);
+            if (section == null || section.isEmpty()) {
+                /* Continue at the top of the section below */
+                y = (y & ~(Chunk.CHUNK_WIDTH - 1)) - 1;
+                continue;
+            }
+
+            if (this.type.matches(section.get(x, y & (Chunk.CHUNK_WIDTH - 1), z))) return y;
+            y--;
+        }
+        return NONE;
+    }
+
+    private static int index(int x, int z) {
+        return ((z & (Chunk.CHUNK_WIDTH - 1)) << Chunk.CHUNK_SHIFT_WIDTH) | (x & (Chunk.CHUNK_WIDTH - 1));
+    }
+
+    /**
+     * @return the raw heights indexed with <code>z * 16 + x</code>, for saving and loading
+     */
+    public short[] getData() {
+        return heights;
+    }
+
+    public Type getType() {
+        return type;
+    }
+}
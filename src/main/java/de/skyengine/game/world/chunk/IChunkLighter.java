@@ -0,0 +1,25 @@
+package de.skyengine.game.world.chunk;
+
+/**
+ * Computes the light of chunks on the chunk worker threads, for the {@link ChunkStatus#LIGHT} stage and after
+ * block changes. Light spreads at most 15 blocks, so all work for a chunk stays inside its 3x3 neighbourhood.
+ */
+public interface IChunkLighter {
+
+    /**
+     * Compute the initial sky and block light of the chunk and spread it into the neighbours.
+     *
+     * @param neighbours the 3x3 neighbourhood of the chunk indexed with <code>(dz + 1) * 3 + (dx + 1)</code>
+     */
+    void light(Chunk chunk, Chunk[] neighbours);
+
+    /**
+     * Update the light after blocks of the chunk changed.
+     *
+     * @param neighbours      the 3x3 neighbourhood of the chunk, missing chunks are <code>null</code>
+     * @param positions       the changed blocks packed as <code>y &lt;&lt; 8 | z &lt;&lt; 4 | x</code> in local coordinates
+     * @param count           the number of valid entries of <code>positions</code>
+     * @param changedSections filled with the bit mask of the sections per neighbour whose faces show changed light
+     */
+    void update(Chunk chunk, Chunk[] neighbours, int[] positions, int count, int[] changedSections);
+}
@@ -0,0 +1,21 @@
+package de.skyengine.game.world.chunk;
+
+import de.skyengine.game.world.mesh.ChunkMesh;
+
+import java.util.function.BooleanSupplier;
+
+/**
+ * Builds the meshes of chunk sections on the chunk worker threads, for the {@link ChunkStatus#MESH} stage and
+ * for remeshing sections after block changes.
+ */
+@FunctionalInterface
+public interface IChunkMesher {
+
+    /**
+     * @param neighbours the 3x3 neighbourhood of the chunk indexed with <code>(dz + 1) * 3 + (dx + 1)</code>
+     * @param sections   bit mask of the sections to build
+     * @param cancelled  returns <code>true</code> once the result is not needed anymore
+     * @return a mesh containing the given sections or <code>null</code> if it was cancelled
+     */
+    ChunkMesh mesh(Chunk chunk, Chunk[] neighbours, int sections, BooleanSupplier cancelled);
+}
@@ -0,0 +1,16 @@
+package de.skyengine.game.world.chunk;
+
+/**
+ * The work of one {@link ChunkStatus} stage. Stages run on the chunk worker threads.
+ */
+@FunctionalInterface
+public interface IChunkStage {
+
+    /**
+     * @param chunk      the chunk to advance
+     * @param neighbours the 3x3 neighbourhood of the chunk indexed with <code>(dz + 1) * 3 + (dx + 1)</code>.
+     *                   For stages that require neighbours all of them have reached the previous stage,
+     *                   otherwise only the center is set.
+     */
+    void process(Chunk chunk, Chunk[] neighbours);
+}
@@ -0,0 +1,22 @@
+package de.skyengine.game.world.chunk;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Persists chunks outside of the {@link ChunkManager}. Loaded chunks skip the generation stages they already passed.
+ */
+public interface IChunkStorage {
+
+    /**
+     * Read the saved state of the chunk into it, including its {@link ChunkStatus}.
+     *
+     * @return a future that completes with <code>true</code> if a saved state was found and loaded,
+     * <code>false</code> if the chunk has to be generated
+     */
+    CompletableFuture<Boolean> load(Chunk chunk);
+
+    /**
+     * Save the current state of the chunk. The chunk may be changed or disposed as soon as the method returns.
+     */
+    void save(Chunk chunk);
+}
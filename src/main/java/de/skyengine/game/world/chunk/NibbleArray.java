@@ -0,0 +1,71 @@
+package de.skyengine.game.world.chunk;
+
+import java.util.Arrays;
+
+/**
+ * One 4 bit value per block of a section, used for the light levels.
+ * <p>
+ * As long as all values are the same no array is allocated, so the sky light of sections above the terrain and
+ * the block light of unlit sections cost nothing. Reads without synchronization see either the old or the new
+ * value of an entry, writers have to be synchronized by the light engine.
+ */
+public class NibbleArray {
+
+    public static final int BYTES = ChunkSection.VOLUME / 2;
+
+    /** Two values per byte, the even index in the lower 4 bits. <code>null</code> while all values are {@link #uniform}. */
+    private volatile byte[] data;
+    private int uniform;
+
+    public NibbleArray(int value) {
+        this.uniform = value & 0xF;
+    }
+
+    /**
+     * @param index the block index, see {@link ChunkSection#index(int, int, int)}
+     */
+    public int get(int index) {
+        byte[] data = this.data;
+        if (data == null) return this.uniform;
+
+        return (data[index >> 1] >> ((index & 1) << 2)) & 0xF;
+    }
+
+    public void set(int index, int value) {
+        byte[] data = this.data;
+        if (data == null) {
+            if (value == this.uniform) return;
+
+            data = new byte[BYTES];
+            Arrays.fill(data, (byte) (this.uniform | this.uniform << 4));
+            this.data = data;
+        }
+
+        int shift = (index & 1) << 2;
+        int i = index >> 1;
+        data[i] = (byte) ((data[i] & ~(0xF << shift)) | (value & 0xF) << shift);
+    }
+
+    /**
+     * Set all values and release the array.
+     */
+    public void fill(int value) {
+        this.uniform = value & 0xF;
+        this.data = null;
+    }
+
+    /**
+     * @return <code>true</code> if all values are {@link #getUniformValue()}
+     */
+    public boolean isUniform() {
+        return this.data == null;
+    }
+
+    public int getUniformValue() {
+        return uniform;
+    }
+
+    public int getMemoryUsage() {
+        return this.data == null ? 0 : BYTES;
+    }
+}
@@ -0,0 +1,357 @@
+package de.skyengine.game.world.generation;
+
+import de.skyengine.core.io.IDisposable;
+import de.skyengine.game.world.chunk.ChunkMap;
+import de.skyengine.game.world.chunk.ChunkPosition;
+import de.skyengine.util.logging.LogManager;
+import de.skyengine.util.logging.Logger;
+import de.skyengine.util.math.FBM;
+import de.skyengine.util.math.MathUtils;
+import org.lwjgl.system.MemoryUtil;
+
+import java.nio.FloatBuffer;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded off-heap LRU cache of {@link #TILE_SIZE}x{@link #TILE_SIZE} tiles of {@link FBM} values.
+ * <p>
+ * Tiles are keyed by their tile coordinate, their level and {@link FBM#getConfigHash()}, so differently configured
+ * noise can share one cache. A tile of level <code>n</code> samples every <code>2^n</code>th block, the far terrain
+ * uses them to cover large areas with few values. The cache is split into segments with their own lock, LRU list and
+ * native memory. A hit copies the requested rows out of the tile while holding the lock of its segment. A miss
+ * evaluates the whole tile outside of the lock with {@link FBM#fillGrid} and inserts it, evicting the least recently
+ * used tile of the segment.
+ * Two threads missing the same tile at once both evaluate it, which is cheaper than waiting for each other.
+ */
+public class NoiseTileCache implements IDisposable {
+
+    private final Logger logger = LogManager.getLogger(NoiseTileCache.class.getName());
+
+    public static final int TILE_SHIFT = 6;
+    public static final int TILE_SIZE = 1 << TILE_SHIFT;
+    public static final int TILE_AREA = TILE_SIZE * TILE_SIZE;
+
+    /** 256 tiles are 4 MB and cover a view radius of more than 30 chunks. */
+    public static final int DEFAULT_CAPACITY = 256;
+
+    /** A tile of the highest level covers 16384 blocks. */
+    public static final int MAX_LEVEL = 8;
+
+    private static final int MAX_SEGMENTS = 16;
+
+    private final int capacity;
+    private final Segment[] segments;
+    private final int segmentShift;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    /** Tile that is evaluated on a miss. */
+    private final ThreadLocal<float[]> tileBuffer = ThreadLocal.withInitial(() -> new float[TILE_AREA]);
+
+    public NoiseTileCache() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param capacity the maximum number of cached tiles
+     */
+    public NoiseTileCache(int capacity) {
+        if (capacity < 1) throw new IllegalArgumentException("Capacity needs to be at least 1, got " + capacity);
+
+        int segmentCount = Integer.highestOneBit(Math.min(MAX_SEGMENTS, capacity));
+        this.capacity = capacity;
+        this.segments = new Segment[segmentCount];
+        this.segmentShift = Integer.numberOfTrailingZeros(segmentCount);
+
+        for (int i = 0; i < segmentCount; i++) {
+            int slots = capacity / segmentCount + (i < capacity % segmentCount ? 1 : 0);
+            this.segments[i] = new Segment(slots);
+        }
+
+        if (this.logger.isDebugEnabled()) {
+            this.logger.debug("Created noise tile cache with [" + capacity + "] tiles in [" + segmentCount + "] segments, "
+                    + "[" + MathUtils.round((long) capacity * TILE_AREA * Float.BYTES / 1024F / 1024F, 2) + " MB]");
+        }
+    }
+
+    /**
+     * Fill <code>out[iz * nx + ix]</code> with the value of the given noise at <code>(x0 + ix, z0 + iz)</code>,
+     * the same values {@link FBM#fillGrid} returns for a step of 1.
+     */
+    public void fillGrid(FBM fbm, float[] out, int x0, int z0, int nx, int nz) {
+        this.fillGrid(fbm, out, x0, z0, nx, nz, 0);
+    }
+
+    /**
+     * Fill <code>out[iz * nx + ix]</code> with the value of the given noise at <code>((x0 + ix) &lt;&lt; level, (z0 + iz) &lt;&lt; level)</code>,
+     * the same values {@link FBM#fillGrid} returns for a step of <code>2^level</code>.
+     *
+     * @param x0 the x coordinate of the first value in units of <code>2^level</code> blocks
+     * @param z0 the z coordinate of the first value in units of <code>2^level</code> blocks
+     */
+    public void fillGrid(FBM fbm, float[] out, int x0, int z0, int nx, int nz, int level) {
+        if (level < 0 || level > MAX_LEVEL) throw new IllegalArgumentException("Level needs to be between 0 and " + MAX_LEVEL + ", got " + level);
+        if (nx < 0 || nz < 0) throw new IllegalArgumentException("Negative grid size " + nx + "x" + nz);
+        if (out.length < nx * nz) throw new IllegalArgumentException("Output holds " + out.length + " values but the grid has " + nx * nz);
+        if (nx == 0 || nz == 0) return;
+
+        /* Level 0 keeps the plain config hash, higher levels mix the level in */
+        long config = fbm.getConfigHash() ^ level * 0x9E3779B97F4A7C15L;
+        int x1 = x0 + nx - 1;
+        int z1 = z0 + nz - 1;
+        for (int tileZ = z0 >> TILE_SHIFT; tileZ <= z1 >> TILE_SHIFT; tileZ++) {
+            for (int tileX = x0 >> TILE_SHIFT; tileX <= x1 >> TILE_SHIFT; tileX++) {
+                /* The part of the grid inside of this tile */
+                int minX = Math.max(x0, tileX << TILE_SHIFT);
+                int minZ = Math.max(z0, tileZ << TILE_SHIFT);
+                int width = Math.min(x1, (tileX << TILE_SHIFT) + TILE_SIZE - 1) - minX + 1;
+                int height = Math.min(z1, (tileZ << TILE_SHIFT) + TILE_SIZE - 1) - minZ + 1;
+
+                this.copyTile(fbm, config, level, tileX, tileZ, minX & (TILE_SIZE - 1), minZ & (TILE_SIZE - 1), width, height,
+                        out, (minZ - z0) * nx + (minX - x0), nx);
+            }
+        }
+    }
+
+    private void copyTile(FBM fbm, long config, int level, int tileX, int tileZ, int localX, int localZ, int width, int height,
+                          float[] out, int offset, int stride) {
+        long position = ChunkPosition.pack(tileX, tileZ);
+        int hash = ChunkMap.hash(position ^ config);
+        Segment segment = this.segments[hash & (this.segments.length - 1)];
+        int bucketHash = hash >>> this.segmentShift;
+
+        if (segment.copy(bucketHash, config, position, localX, localZ, width, height, out, offset, stride)) {
+            this.hits.incrementAndGet();
+            return;
+        }
+
+        this.misses.incrementAndGet();
+        float[] tile = this.tileBuffer.get();
+        fbm.fillGrid(tile, (float) tileX * (TILE_SIZE << level), (float) tileZ * (TILE_SIZE << level), TILE_SIZE, TILE_SIZE, 1 << level);
+        if (segment.insert(bucketHash, config, position, tile)) {
+            this.evictions.incrementAndGet();
+        }
+
+        for (int z = 0; z < height; z++) {
+            System.arraycopy(tile, ((localZ + z) << TILE_SHIFT) + localX, out, offset + z * stride, width);
+        }
+    }
+
+    /**
+     * Drop all cached tiles.
+     */
+    public void clear() {
+        for (Segment segment : this.segments) {
+            segment.clear();
+        }
+    }
+
+    /**
+     * Free the native memory, afterwards every lookup is a miss and nothing is cached anymore.
+     */
+    @Override
+    public void dispose() {
+        for (Segment segment : this.segments) {
+            segment.dispose();
+        }
+
+        if (this.logger.isDebugEnabled()) {
+            this.logger.debug("Disposed " + this);
+        }
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * @return the number of cached tiles
+     */
+    public int getSize() {
+        int size = 0;
+        for (Segment segment : this.segments) {
+            size += segment.getSize();
+        }
+        return size;
+    }
+
+    public long getHitCount() {
+        return this.hits.get();
+    }
+
+    public long getMissCount() {
+        return this.misses.get();
+    }
+
+    public long getEvictionCount() {
+        return this.evictions.get();
+    }
+
+    /**
+     * @return the fraction of tile lookups that were hits, 0 if there was no lookup yet
+     */
+    public float getHitRate() {
+        long hits = this.hits.get();
+        long total = hits + this.misses.get();
+        return total == 0 ? 0 : hits / (float) total;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("NoiseTileCache={tiles=%s/%s, hits=%s, misses=%s, evictions=%s, hitRate=%s%%}",
+                this.getSize(), this.capacity, this.getHitCount(), this.getMissCount(), this.getEvictionCount(),
+                MathUtils.round(this.getHitRate() * 100, 1));
+    }
+
+    /**
+     * A fixed number of tile slots in one native block. Slots are found with a chained hash table
+     * and ordered by a doubly linked list from the most to the least recently used one.
+     */
+    private static class Segment {
+
+        private static final int NONE = -1;
+
+        private final int slots;
+        private long address;
+        private FloatBuffer data;
+
+        private final long[] configs;
+        private final long[] positions;
+        private final int[] hashes;
+
+        private final int[] buckets;
+        private final int bucketMask;
+        private final int[] chain;
+
+        private final int[] newer;
+        private final int[] older;
+        private int newest = NONE;
+        private int oldest = NONE;
+        private int size;
+
+        private Segment(int slots) {
+            this.slots = slots;
+            this.address = MemoryUtil.nmemAlloc((long) slots * TILE_AREA * Float.BYTES);
+            if (this.address == MemoryUtil.NULL) {
+                throw new RuntimeException("Could not allocate " + (long) slots * TILE_AREA * Float.BYTES + " bytes of native memory!");
+            }
+            this.data = MemoryUtil.memFloatBuffer(this.address, slots * TILE_AREA);
+
+            this.configs = new long[slots];
+            this.positions = new long[slots];
+            this.hashes = new int[slots];
+            this.buckets = new int[Integer.highestOneBit(slots) << 1];
+            this.bucketMask = this.buckets.length - 1;
+            this.chain = new int[slots];
+            this.newer = new int[slots];
+            this.older = new int[slots];
+            Arrays.fill(this.buckets, NONE);
+        }
+
+        private synchronized boolean copy(int hash, long config, long position, int localX, int localZ, int width, int height,
+                                          float[] out, int offset, int stride) {
+            if (this.data == null) return false;
+
+            int slot = this.find(hash, config, position);
+            if (slot == NONE) return false;
+
+            this.unlink(slot);
+            this.linkNewest(slot);
+
+            int base = slot * TILE_AREA + localX;
+            for (int z = 0; z < height; z++) {
+                this.data.get(base + ((localZ + z) << TILE_SHIFT), out, offset + z * stride, width);
+            }
+            return true;
+        }
+
+        /**
+         * @return <code>true</code> if a tile was evicted for the new one
+         */
+        private synchronized boolean insert(int hash, long config, long position, float[] tile) {
+            /* Disposed or another thread inserted the same tile in the meantime */
+            if (this.data == null || this.find(hash, config, position) != NONE) return false;
+
+            int slot;
+            boolean evicted = false;
+            if (this.size < this.slots) {
+                slot = this.size++;
+            } else {
+                slot = this.oldest;
+                this.unlink(slot);
+                this.removeFromBucket(slot);
+                evicted = true;
+            }
+
+            this.configs[slot] = config;
+            this.positions[slot] = position;
+            this.hashes[slot] = hash;
+
+            int bucket = hash & this.bucketMask;
+            this.chain[slot] = this.buckets[bucket];
+            this.buckets[bucket] = slot;
+            this.linkNewest(slot);
+
+            this.data.put(slot * TILE_AREA, tile, 0, TILE_AREA);
+            return evicted;
+        }
+
+        private int find(int hash, long config, long position) {
+            for (int slot = this.buckets[hash & this.bucketMask]; slot != NONE; slot = this.chain[slot]) {
+                if (this.positions[slot] == position && this.configs[slot] == config) return slot;
+            }
+            return NONE;
+        }
+
+        private void removeFromBucket(int slot) {
+            int bucket = this.hashes[slot] & this.bucketMask;
+            if (this.buckets[bucket] == slot) {
+                this.buckets[bucket] = this.chain[slot];
+                return;
+            }
+
+            int previous = this.buckets[bucket];
+            while (this.chain[previous] != slot) {
+                previous = this.chain[previous];
+            }
+            this.chain[previous] = this.chain[slot];
+        }
+
+        private void linkNewest(int slot) {
+            this.older[slot] = this.newest;
+            this.newer[slot] = NONE;
+            if (this.newest != NONE) this.newer[this.newest] = slot;
+            this.newest = slot;
+            if (this.oldest == NONE) this.oldest = slot;
+        }
+
+        private void unlink(int slot) {
+            int newer = this.newer[slot];
+            int older = this.older[slot];
+            if (newer != NONE) this.older[newer] = older; else this.newest = older;
+            if (older != NONE) this.newer[older] = newer; else this.oldest = newer;
+        }
+
+        private synchronized void clear() {
+            Arrays.fill(this.buckets, NONE);
+            this.newest = this.oldest = NONE;
+            this.size = 0;
+        }
+
+        private synchronized int getSize() {
+            return this.size;
+        }
+
+        private synchronized void dispose() {
+            if (this.data == null) return;
+
+            MemoryUtil.nmemFree(this.address);
+            this.address = MemoryUtil.NULL;
+            this.data = null;
+            this.size = 0;
+        }
+    }
+}
@@ -0,0 +1,243 @@
+package de.skyengine.game.world.generation;
+
+import de.skyengine.core.io.IDisposable;
+import de.skyengine.game.world.biome.Biome;
+import de.skyengine.game.world.block.Blocks;
+import de.skyengine.game.world.chunk.Chunk;
+import de.skyengine.game.world.chunk.ChunkManager;
+import de.skyengine.game.world.chunk.ChunkStatus;
+import de.skyengine.game.world.chunk.Heightmap;
+import de.skyengine.util.math.FBM;
+import de.skyengine.util.math.SplitMix64;
+
+/**
+ * Generates the terrain of a chunk in the {@link ChunkStatus#NOISE}, {@link ChunkStatus#SURFACE} and
+ * {@link ChunkStatus#DECORATION} stages. All methods only read shared state and can be called from multiple
+ * chunk workers at once. Every random decision is drawn from a {@link SplitMix64} stream of the world seed and
+ * the chunk position, so a chunk always comes out the same, independent of the number of workers and the order
+ * in which they finish.
+ */
+public class TerrainGenerator implements IDisposable {
+
+    public static final int SEA_LEVEL = 62;
+
+    private static final int BASE_HEIGHT = 64;
+    private static final int HEIGHT_VARIATION = 32;
+    private static final int DIRT_DEPTH = 3;
+
+    private static final long TREE_SALT = 1;
+    private static final int MAX_TREES = 3;
+    private static final int TREE_MIN_TRUNK = 4;
+    private static final int TREE_MAX_TRUNK = 6;
+    private static final int LEAVES_RADIUS = 2;
+
+    private final long seed;
+    private final FBM fbm;
+    private final NoiseTileCache tileCache;
+
+    public TerrainGenerator(long seed) {
+        this.seed = seed;
+        this.fbm = new FBM((int) (seed ^ (seed >>> 32)));
+        this.tileCache = new NoiseTileCache();
+    }
+
+    /**
+     * Register the generation stages of this generator at the given chunk manager.
+     */
+    public void register(ChunkManager chunkManager) {
+        chunkManager.setStage(ChunkStatus.NOISE, (chunk, neighbours) -> this.generateNoise(chunk));
+        chunkManager.setStage(ChunkStatus.SURFACE, (chunk, neighbours) -> this.generateSurface(chunk));
+        chunkManager.setStage(ChunkStatus.DECORATION, (chunk, neighbours) -> this.decorate(chunk));
+    }
+
+    public int getHeight(int worldX, int worldZ) {
+        return this.toHeight(this.fbm.fbm(worldX, worldZ));
+    }
+
+    /**
+     * Fill <code>out[iz * nx + ix]</code> with the terrain height at <code>((x0 + ix) &lt;&lt; level, (z0 + iz) &lt;&lt; level)</code>
+     * from the cached noise, without generating any blocks. The far terrain is built from these heights.
+     *
+     * @param x0 the x coordinate of the first height in units of <code>2^level</code> blocks
+     * @param z0 the z coordinate of the first height in units of <code>2^level</code> blocks
+     */
+    public void fillHeights(int[] out, int x0, int z0, int nx, int nz, int level) {
+        float[] noise = new float[nx * nz];
+        this.tileCache.fillGrid(this.fbm, noise, x0, z0, nx, nz, level);
+        for (int i = 0; i < noise.length; i++) {
+            out[i] = this.toHeight(noise[i]);
+        }
+    }
+
+    /**
+     * @return the block on top of a column of the given terrain height, sand at the shore and grass above
+     */
+    public static int getSurfaceBlock(int height) {
+        return height <= SEA_LEVEL + 1 ? Blocks.SAND : Blocks.GRASS;
+    }
+
+    private int toHeight(float value) {
+        return Math.min(BASE_HEIGHT + (int) (value * HEIGHT_VARIATION), Chunk.CHUNK_HEIGHT - 1);
+    }
+
+    /**
+     * Fill the chunk with stone up to the terrain height and with water up to the sea level.
+     */
+    public void generateNoise(Chunk chunk) {
+        int originX = chunk.getPosition().getWorldX();
+        int originZ = chunk.getPosition().getWorldZ();
+
+        float[] noise = new float[Chunk.CHUNK_WIDTH * Chunk.CHUNK_WIDTH];
+        this.tileCache.fillGrid(this.fbm, noise, originX, originZ, Chunk.CHUNK_WIDTH, Chunk.CHUNK_WIDTH);
+
+        int[] heights = new int[noise.length];
+        int minHeight = Chunk.CHUNK_HEIGHT;
+        for (int i = 0; i < noise.length; i++) {
+            int height = this.toHeight(noise[i]);
+            heights[i] = height;
+            minHeight = Math.min(minHeight, height);
+        }
+
+        /* Sections completely below the lowest column don't need any per block work */
+        int solidSections = (minHeight + 1) >> Chunk.CHUNK_SHIFT_WIDTH;
+        for (int sectionY = 0; sectionY < solidSections; sectionY++) {
+            chunk.fillSection(sectionY, Blocks.STONE);
+        }
+
+        this.generateBiomes(chunk, heights);
+
+        int startY = solidSections << Chunk.CHUNK_SHIFT_WIDTH;
+        for (int z = 0; z < Chunk.CHUNK_WIDTH; z++) {
+            for (int x = 0; x < Chunk.CHUNK_WIDTH; x++) {
+                int height = heights[(z << Chunk.CHUNK_SHIFT_WIDTH) | x];
+                for (int y = startY; y <= height; y++) {
+                    chunk.setBlock(x, y, z, Blocks.STONE);
+                }
+                for (int y = Math.max(startY, height + 1); y <= SEA_LEVEL; y++) {
+                    chunk.setBlock(x, y, z, Blocks.WATER);
+                }
+            }
+        }
+    }
+
+    /**
+     * Assign the biome of every biome column from the terrain height at its center.
+     */
+    private void generateBiomes(Chunk chunk, int[] heights) {
+        int center = 1 << (Chunk.BIOME_SHIFT - 1);
+        for (int cellZ = 0; cellZ < Chunk.BIOME_WIDTH; cellZ++) {
+            for (int cellX = 0; cellX < Chunk.BIOME_WIDTH; cellX++) {
+                int x = (cellX << Chunk.BIOME_SHIFT) + center;
+                int z = (cellZ << Chunk.BIOME_SHIFT) + center;
+                Biome biome = getBiome(heights[(z << Chunk.CHUNK_SHIFT_WIDTH) | x]);
+
+                for (int cellY = 0; cellY < Chunk.BIOME_HEIGHT; cellY++) {
+                    chunk.setBiome(cellX, cellY, cellZ, biome);
+                }
+            }
+        }
+    }
+
+    private static Biome getBiome(int height) {
+        if (height < SEA_LEVEL) return Biome.OCEAN;
+        if (height <= SEA_LEVEL + 1) return Biome.BEACH;
+        if (height >= BASE_HEIGHT + HEIGHT_VARIATION / 2) return Biome.HILLS;
+        return Biome.PLAINS;
+    }
+
+    /**
+     * Replace the top stone layers with grass, dirt or sand and place bedrock at the bottom.
+     */
+    public void generateSurface(Chunk chunk) {
+        /* Stone is the only solid block so far */
+        Heightmap ground = chunk.getHeightmap(Heightmap.Type.OCEAN_FLOOR);
+        for (int z = 0; z < Chunk.CHUNK_WIDTH; z++) {
+            for (int x = 0; x < Chunk.CHUNK_WIDTH; x++) {
+                int top = Math.max(0, ground.get(x, z));
+
+                int surface = getSurfaceBlock(top);
+                chunk.setBlock(x, top, z, surface);
+                for (int y = Math.max(1, top - DIRT_DEPTH); y < top; y++) {
+                    chunk.setBlock(x, y, z, surface == Blocks.SAND ? Blocks.SAND : Blocks.DIRT);
+                }
+                chunk.setBlock(x, 0, z, Blocks.BEDROCK);
+            }
+        }
+    }
+
+    /**
+     * Place trees. Trees of the neighbour chunks can reach into this chunk, so the trees of the whole 3x3
+     * neighbourhood are generated from their own chunk streams and only the blocks inside this chunk are set.
+     * The ground height comes from the noise instead of the neighbour blocks, which might be decorated at the same time.
+     */
+    public void decorate(Chunk chunk) {
+        int chunkX = chunk.getPosition().getX();
+        int chunkZ = chunk.getPosition().getZ();
+
+        for (int dz = -1; dz <= 1; dz++) {
+            for (int dx = -1; dx <= 1; dx++) {
+                SplitMix64 random = SplitMix64.forChunk(this.seed, chunkX + dx, chunkZ + dz, TREE_SALT);
+                int trees = random.nextInt(MAX_TREES + 1);
+
+                for (int i = 0; i < trees; i++) {
+                    /* Always draw all values of a tree so rejected trees don't shift the following ones */
+                    int localX = random.nextInt(Chunk.CHUNK_WIDTH);
+                    int localZ = random.nextInt(Chunk.CHUNK_WIDTH);
+                    int trunk = random.nextInt(TREE_MIN_TRUNK, TREE_MAX_TRUNK);
+
+                    int x = (dx << Chunk.CHUNK_SHIFT_WIDTH) + localX;
+                    int z = (dz << Chunk.CHUNK_SHIFT_WIDTH) + localZ;
+                    int ground = this.getHeight(chunk.getPosition().getWorldX() + x, chunk.getPosition().getWorldZ() + z);
+                    if (ground <= SEA_LEVEL + 1 || ground + trunk + 2 >= Chunk.CHUNK_HEIGHT) continue;
+
+                    this.placeTree(chunk, x, ground + 1, z, trunk);
+                }
+            }
+        }
+
+        chunk.compact();
+    }
+
+    /**
+     * @param x the x coordinate of the trunk relative to the chunk, may be outside of it
+     * @param z the z coordinate of the trunk relative to the chunk, may be outside of it
+     */
+    private void placeTree(Chunk chunk, int x, int y, int z, int trunk) {
+        int top = y + trunk - 1;
+        for (int leavesY = top - 2; leavesY <= top + 1; leavesY++) {
+            int radius = leavesY > top - 1 ? LEAVES_RADIUS - 1 : LEAVES_RADIUS;
+            for (int leavesZ = z - radius; leavesZ <= z + radius; leavesZ++) {
+                for (int leavesX = x - radius; leavesX <= x + radius; leavesX++) {
+                    if (!isInside(leavesX, leavesZ)) continue;
+                    /* Leave out the corners of the full layers */
+                    if (radius == LEAVES_RADIUS && Math.abs(leavesX - x) == radius && Math.abs(leavesZ - z) == radius) continue;
+
+                    if (chunk.getBlock(leavesX, leavesY, leavesZ) == Blocks.AIR) {
+                        chunk.setBlock(leavesX, leavesY, leavesZ, Blocks.LEAVES);
+                    }
+                }
+            }
+        }
+
+        if (!isInside(x, z)) return;
+        for (int logY = y; logY <= top; logY++) {
+            int block = chunk.getBlock(x, logY, z);
+            if (block == Blocks.AIR || block == Blocks.LEAVES) {
+                chunk.setBlock(x, logY, z, Blocks.LOG);
+            }
+        }
+    }
+
+    private static boolean isInside(int x, int z) {
+        return ((x | z) & ~(Chunk.CHUNK_WIDTH - 1)) == 0;
+    }
+
+    public NoiseTileCache getTileCache() {
+        return tileCache;
+    }
+
+    @Override
+    public void dispose() {
+        this.tileCache.dispose();
+    }
+}
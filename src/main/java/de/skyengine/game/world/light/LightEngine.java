@@ -0,0 +1,353 @@
+package de.skyengine.game.world.light;
+
+import de.skyengine.game.world.block.Blocks;
+import de.skyengine.game.world.chunk.Chunk;
+import de.skyengine.game.world.chunk.ChunkSection;
+import de.skyengine.game.world.chunk.Heightmap;
+import de.skyengine.game.world.chunk.IChunkLighter;
+import de.skyengine.game.world.chunk.NibbleArray;
+
+import java.util.Arrays;
+
+/**
+ * Flood fill engine for the 4 bit block light and sky light.
+ * <p>
+ * Light spreads with a breadth first search, every step to a neighbour that is not opaque costs one level.
+ * Sky light of level 15 moves down without any loss, so every block below the open sky has full sky light.
+ * Raising light is one increase pass from the new sources. Removing light first runs a decrease pass that clears
+ * everything the old light reached and collects the brighter blocks at its border, then an increase pass from those.
+ * All changes of a chunk within one update are batched into one decrease and one increase pass per light type.
+ * <p>
+ * The queues are <code>int</code> arrays that only grow, an entry packs a position inside the 3x3 neighbourhood
+ * (6 bits x, 6 bits z, 8 bits y) and for the decrease pass the old level (4 bits). Every worker thread has its own
+ * queues, so running the engine doesn't allocate.
+ * <p>
+ * Light of one chunk never reaches further than its direct neighbours, so a job locks the light of the 3x3
+ * neighbourhood. The locks are taken in the order of the neighbours array (by z, then x), which is the same
+ * global order for every job, so jobs of overlapping neighbourhoods wait for each other but never deadlock.
+ * Readers like the mesher don't lock, they are rebuilt when the light of their sections changed.
+ */
+public class LightEngine implements IChunkLighter {
+
+    public static final int MAX_LEVEL = 15;
+
+    /** Width of the 3x3 neighbourhood in blocks, positions in the queues are relative to its corner. */
+    private static final int SPAN = 3 * Chunk.CHUNK_WIDTH;
+    private static final int LOCAL_MASK = Chunk.CHUNK_WIDTH - 1;
+
+    private static final int COORD_BITS = 6;
+    private static final int COORD_MASK = (1 << COORD_BITS) - 1;
+    private static final int Z_SHIFT = COORD_BITS;
+    private static final int Y_SHIFT = 2 * COORD_BITS;
+    private static final int LEVEL_SHIFT = Y_SHIFT + Chunk.CHUNK_SHIFT_HEIGHT;
+
+    /** Neighbour offsets in the order of the mesher faces, -X, +X, -Y, +Y, -Z, +Z. */
+    private static final int[] DX = {-1, 1, 0, 0, 0, 0};
+    private static final int[] DY = {0, 0, -1, 1, 0, 0};
+    private static final int[] DZ = {0, 0, 0, 0, -1, 1};
+    private static final int FACE_DOWN = 2;
+
+    private final ThreadLocal<Worker> workers = ThreadLocal.withInitial(Worker::new);
+
+    @Override
+    public void light(Chunk chunk, Chunk[] neighbours) {
+        lock(neighbours);
+        try {
+            Worker worker = this.workers.get();
+            worker.begin(neighbours, null);
+            worker.lightSky(chunk);
+            worker.lightBlocks(chunk);
+            worker.end();
+        } finally {
+            unlock(neighbours);
+        }
+    }
+
+    @Override
+    public void update(Chunk chunk, Chunk[] neighbours, int[] positions, int count, int[] changedSections) {
+        lock(neighbours);
+        try {
+            Worker worker = this.workers.get();
+            worker.begin(neighbours, changedSections);
+            worker.update(chunk, positions, count, true);
+            worker.update(chunk, positions, count, false);
+            worker.end();
+        } finally {
+            unlock(neighbours);
+        }
+    }
+
+    private static void lock(Chunk[] neighbours) {
+        for (Chunk neighbour : neighbours) {
+            if (neighbour != null) neighbour.getLightLock().lock();
+        }
+    }
+
+    private static void unlock(Chunk[] neighbours) {
+        for (int i = neighbours.length - 1; i >= 0; i--) {
+            if (neighbours[i] != null) neighbours[i].getLightLock().unlock();
+        }
+    }
+
+    private static int pack(int x, int y, int z) {
+        return x | z << Z_SHIFT | y << Y_SHIFT;
+    }
+
+    /**
+     * The queues and state of one thread.
+     */
+    private static class Worker {
+
+        private int[] increase = new int[4096];
+        private int increaseSize;
+        private int[] decrease = new int[4096];
+        private int decreaseSize;
+
+        private Chunk[] neighbours;
+        private int[] changedSections;
+        private boolean sky;
+
+        private void begin(Chunk[] neighbours, int[] changedSections) {
+            this.neighbours = neighbours;
+            this.changedSections = changedSections;
+        }
+
+        private void end() {
+            this.neighbours = null;
+            this.changedSections = null;
+        }
+
+        /**
+         * Fill everything above the opaque heightmap with full sky light and spread it sideways
+         * under overhangs and into the neighbour columns that reach higher.
+         */
+        private void lightSky(Chunk chunk) {
+            this.sky = true;
+            Heightmap heightmap = chunk.getHeightmap(Heightmap.Type.OPAQUE);
+            int max = heightmap.getMax();
+
+            for (int sectionY = 0; sectionY < Chunk.SECTION_COUNT; sectionY++) {
+                int bottom = sectionY << Chunk.CHUNK_SHIFT_WIDTH;
+                if (bottom > max) {
+                    chunk.getSkyLight(sectionY).fill(MAX_LEVEL);
+                    continue;
+                }
+
+                NibbleArray light = chunk.getSkyLight(sectionY);
+                for (int z = 0; z < Chunk.CHUNK_WIDTH; z++) {
+                    for (int x = 0; x < Chunk.CHUNK_WIDTH; x++) {
+                        for (int y = Math.max(bottom, heightmap.get(x, z) + 1); y < bottom + Chunk.CHUNK_WIDTH; y++) {
+                            light.set(ChunkSection.index(x, y & LOCAL_MASK, z), MAX_LEVEL);
+                        }
+                    }
+                }
+            }
+
+            for (int z = 0; z < Chunk.CHUNK_WIDTH; z++) {
+                for (int x = 0; x < Chunk.CHUNK_WIDTH; x++) {
+                    int height = heightmap.get(x, z);
+                    int x0 = x + Chunk.CHUNK_WIDTH;
+                    int z0 = z + Chunk.CHUNK_WIDTH;
+                    int neighbourHeight = Math.max(Math.max(this.getHeight(x0 - 1, z0), this.getHeight(x0 + 1, z0)),
+                            Math.max(this.getHeight(x0, z0 - 1), this.getHeight(x0, z0 + 1)));
+
+                    for (int y = height + 1; y <= neighbourHeight; y++) {
+                        this.pushIncrease(pack(x0, y, z0));
+                    }
+                }
+            }
+            this.propagateIncrease();
+        }
+
+        private void lightBlocks(Chunk chunk) {
+            this.sky = false;
+            for (int sectionY = 0; sectionY < Chunk.SECTION_COUNT; sectionY++) {
+                ChunkSection section = chunk.getSection(sectionY);
+                if (section == null || !section.hasLightSource()) continue;
+
+                NibbleArray light = chunk.getBlockLight(sectionY);
+                for (int index = 0; index < ChunkSection.VOLUME; index++) {
+                    int emission = Blocks.getLightEmission(section.get(index));
+                    if (emission == 0) continue;
+
+                    light.set(index, emission);
+                    int x = (index & LOCAL_MASK) + Chunk.CHUNK_WIDTH;
+                    int z = ((index >> Chunk.CHUNK_SHIFT_WIDTH) & LOCAL_MASK) + Chunk.CHUNK_WIDTH;
+                    int y = (sectionY << Chunk.CHUNK_SHIFT_WIDTH) | index >> (Chunk.CHUNK_SHIFT_WIDTH << 1);
+                    this.pushIncrease(pack(x, y, z));
+                }
+            }
+            this.propagateIncrease();
+        }
+
+        /**
+         * Reset the light at the changed blocks to what they emit themselves, clear the light that came through
+         * them and refill it from the remaining sources.
+         */
+        private void update(Chunk chunk, int[] positions, int count, boolean sky) {
+            this.sky = sky;
+            Heightmap heightmap = chunk.getHeightmap(Heightmap.Type.OPAQUE);
+
+            for (int i = 0; i < count; i++) {
+                int local = positions[i];
+                int x = (local & LOCAL_MASK) + Chunk.CHUNK_WIDTH;
+                int z = ((local >> Chunk.CHUNK_SHIFT_WIDTH) & LOCAL_MASK) + Chunk.CHUNK_WIDTH;
+                int y = local >>> (Chunk.CHUNK_SHIFT_WIDTH << 1);
+                int position = pack(x, y, z);
+
+                int block = chunk.getBlock(x, y, z);
+                int level;
+                if (sky) {
+                    level = !Blocks.isOpaque(block) && y > heightmap.get(x & LOCAL_MASK, z & LOCAL_MASK) ? MAX_LEVEL : 0;
+                } else {
+                    level = Blocks.getLightEmission(block);
+                }
+
+                int old = this.getLight(chunk, x, y, z);
+                this.setLight(chunk, x, y, z, level);
+                /* Even without light to remove the neighbours have to refill the block if it became transparent */
+                this.pushDecrease(position, old);
+                if (level > 0) this.pushIncrease(position);
+            }
+
+            this.propagateDecrease();
+            this.propagateIncrease();
+        }
+
+        private void propagateIncrease() {
+            for (int head = 0; head < this.increaseSize; head++) {
+                int entry = this.increase[head];
+                int x = entry & COORD_MASK;
+                int z = (entry >> Z_SHIFT) & COORD_MASK;
+                int y = (entry >> Y_SHIFT) & 0xFF;
+
+                /* The level is read again, a decrease or a brighter source might have changed it since the push */
+                int level = this.getLight(this.chunkAt(x, z), x, y, z);
+                if (level <= 1) continue;
+
+                for (int face = 0; face < 6; face++) {
+                    int nx = x + DX[face];
+                    int ny = y + DY[face];
+                    int nz = z + DZ[face];
+                    if (nx < 0 || nx >= SPAN || nz < 0 || nz >= SPAN || ny >>> Chunk.CHUNK_SHIFT_HEIGHT != 0) continue;
+
+                    Chunk neighbour = this.chunkAt(nx, nz);
+                    if (neighbour == null) continue;
+
+                    int target = this.sky && face == FACE_DOWN && level == MAX_LEVEL ? MAX_LEVEL : level - 1;
+                    if (this.getLight(neighbour, nx, ny, nz) >= target) continue;
+                    if (Blocks.isOpaque(neighbour.getBlock(nx, ny, nz))) continue;
+
+                    this.setLight(neighbour, nx, ny, nz, target);
+                    this.pushIncrease(pack(nx, ny, nz));
+                }
+            }
+            this.increaseSize = 0;
+        }
+
+        private void propagateDecrease() {
+            for (int head = 0; head < this.decreaseSize; head++) {
+                int entry = this.decrease[head];
+                int x = entry & COORD_MASK;
+                int z = (entry >> Z_SHIFT) & COORD_MASK;
+                int y = (entry >> Y_SHIFT) & 0xFF;
+                int level = entry >>> LEVEL_SHIFT;
+
+                for (int face = 0; face < 6; face++) {
+                    int nx = x + DX[face];
+                    int ny = y + DY[face];
+                    int nz = z + DZ[face];
+                    if (nx < 0 || nx >= SPAN || nz < 0 || nz >= SPAN || ny >>> Chunk.CHUNK_SHIFT_HEIGHT != 0) continue;
+
+                    Chunk neighbour = this.chunkAt(nx, nz);
+                    if (neighbour == null) continue;
+
+                    int current = this.getLight(neighbour, nx, ny, nz);
+                    if (current == 0) continue;
+
+                    int position = pack(nx, ny, nz);
+                    boolean fromHere = current < level || (this.sky && face == FACE_DOWN && level == MAX_LEVEL);
+                    if (fromHere) {
+                        /* The light came from the cleared block, clear it too unless the block is a source itself */
+                        int emission = this.sky ? 0 : Blocks.getLightEmission(neighbour.getBlock(nx, ny, nz));
+                        this.setLight(neighbour, nx, ny, nz, emission);
+                        this.pushDecrease(position, current);
+                        if (emission > 0) this.pushIncrease(position);
+                    } else {
+                        /* An independent brighter block, it refills the cleared area in the increase pass */
+                        this.pushIncrease(position);
+                    }
+                }
+            }
+            this.decreaseSize = 0;
+        }
+
+        private void pushIncrease(int entry) {
+            if (this.increaseSize == this.increase.length) {
+                this.increase = Arrays.copyOf(this.increase, this.increaseSize << 1);
+            }
+            this.increase[this.increaseSize++] = entry;
+        }
+
+        private void pushDecrease(int position, int level) {
+            if (this.decreaseSize == this.decrease.length) {
+                this.decrease = Arrays.copyOf(this.decrease, this.decreaseSize << 1);
+            }
+            this.decrease[this.decreaseSize++] = position | level << LEVEL_SHIFT;
+        }
+
+        /**
+         * @param x x coordinate inside the neighbourhood (0-47)
+         * @param z z coordinate inside the neighbourhood (0-47)
+         */
+        private Chunk chunkAt(int x, int z) {
+            return this.neighbours[(z >> Chunk.CHUNK_SHIFT_WIDTH) * 3 + (x >> Chunk.CHUNK_SHIFT_WIDTH)];
+        }
+
+        /**
+         * @return the height of the opaque heightmap at the position inside the neighbourhood, -1 outside of it
+         */
+        private int getHeight(int x, int z) {
+            if (x < 0 || x >= SPAN || z < 0 || z >= SPAN) return Heightmap.NONE;
+
+            Chunk chunk = this.chunkAt(x, z);
+            return chunk == null ? Heightmap.NONE : chunk.getHeightmap(Heightmap.Type.OPAQUE).get(x & LOCAL_MASK, z & LOCAL_MASK);
+        }
+
+        private int getLight(Chunk chunk, int x, int y, int z) {
+            return this.sky ? chunk.getSkyLight(x, y, z) : chunk.getBlockLight(x, y, z);
+        }
+
+        private void setLight(Chunk chunk, int x, int y, int z, int level) {
+            int sectionY = y >> Chunk.CHUNK_SHIFT_WIDTH;
+            NibbleArray light = this.sky ? chunk.getSkyLight(sectionY) : chunk.getBlockLight(sectionY);
+            light.set(ChunkSection.index(x & LOCAL_MASK, y & LOCAL_MASK, z & LOCAL_MASK), level);
+
+            if (this.changedSections != null) {
+                this.markChanged(x, y, z, sectionY);
+            }
+        }
+
+        /**
+         * Mark the sections of the 6 blocks around the position, their faces show its light.
+         */
+        private void markChanged(int x, int y, int z, int sectionY) {
+            int chunkX = x >> Chunk.CHUNK_SHIFT_WIDTH;
+            int chunkZ = z >> Chunk.CHUNK_SHIFT_WIDTH;
+            int index = chunkZ * 3 + chunkX;
+
+            int sections = 1 << sectionY;
+            int localY = y & LOCAL_MASK;
+            if (localY == 0 && sectionY > 0) sections |= sections >> 1;
+            if (localY == LOCAL_MASK && sectionY < Chunk.SECTION_COUNT - 1) sections |= sections << 1;
+            this.changedSections[index] |= sections;
+
+            int localX = x & LOCAL_MASK;
+            int localZ = z & LOCAL_MASK;
+            if (localX == 0 && chunkX > 0) this.changedSections[index - 1] |= 1 << sectionY;
+            if (localX == LOCAL_MASK && chunkX < 2) this.changedSections[index + 1] |= 1 << sectionY;
+            if (localZ == 0 && chunkZ > 0) this.changedSections[index - 3] |= 1 << sectionY;
+            if (localZ == LOCAL_MASK && chunkZ < 2) this.changedSections[index + 3] |= 1 << sectionY;
+        }
+    }
+}
@@ -0,0 +1,295 @@
+package de.skyengine.game.world.lod;
+
+import de.skyengine.core.io.IDisposable;
+import de.skyengine.game.world.chunk.Chunk;
+import de.skyengine.game.world.chunk.ChunkManager;
+import de.skyengine.game.world.chunk.ChunkMap;
+import de.skyengine.game.world.chunk.ChunkPosition;
+import de.skyengine.game.world.chunk.ChunkStatus;
+import de.skyengine.game.world.generation.NoiseTileCache;
+import de.skyengine.game.world.generation.TerrainGenerator;
+import de.skyengine.game.world.mesh.ChunkMesh;
+import de.skyengine.game.world.mesh.LodMesher;
+import de.skyengine.util.logging.LogManager;
+import de.skyengine.util.logging.Logger;
+
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Draws the terrain beyond the loaded chunks with {@link LodTile}s, out to several times the view radius.
+ * <p>
+ * The tiles form rings around the view center, level 1 (one height per 2x2 blocks) up to the first radius,
+ * level 2 up to the second and level 3 up to the third. They are picked like a quadtree: a tile is split into its
+ * four children as long as its nearest chunk is inside the radius of the next finer level, so the rings always meet
+ * at tile edges. Chunks that reached {@link ChunkStatus#MESH} are drawn in full detail and left out of the tiles that
+ * cover them, the tiles are rebuilt when that changes.
+ * <p>
+ * Tiles are built on the chunk workers from the {@link NoiseTileCache} of the generator without generating any blocks,
+ * so changes to the terrain only show up in full detail. All methods have to be called from the update thread.
+ */
+public class LodManager implements IDisposable {
+
+    private final Logger logger = LogManager.getLogger(LodManager.class.getName());
+
+    public static final int LEVELS = LodMesher.MAX_LEVEL;
+
+    /** The outer radii in chunks of the rings of level 1, 2 and 3, four times the default view radius. */
+    private static final int[] DEFAULT_RADII = {16, 24, 32};
+
+    private final TerrainGenerator generator;
+    private final ChunkManager chunkManager;
+    private final ThreadLocal<LodMesher> meshers;
+
+    /** The tiles of each level by their packed tile position, indexed by <code>level - 1</code>. */
+    private ChunkMap<LodTile>[] tiles;
+    /** Filled by the next selection and swapped with {@link #tiles}. */
+    private ChunkMap<LodTile>[] selected;
+
+    private int[] radii = DEFAULT_RADII.clone();
+
+    private int centerX = Integer.MIN_VALUE;
+    private int centerZ = Integer.MIN_VALUE;
+    private boolean selectionDirty;
+
+    @SuppressWarnings("unchecked")
+    public LodManager(TerrainGenerator generator, ChunkManager chunkManager) {
+        this.generator = generator;
+        this.chunkManager = chunkManager;
+        this.meshers = ThreadLocal.withInitial(LodMesher::new);
+
+        this.tiles = new ChunkMap[LEVELS];
+        this.selected = new ChunkMap[LEVELS];
+        for (int i = 0; i < LEVELS; i++) {
+            this.tiles[i] = new ChunkMap<>(256);
+            this.selected[i] = new ChunkMap<>(256);
+        }
+    }
+
+    /**
+     * Move the center of the rings to the given chunk.
+     */
+    public void setCenter(int x, int z) {
+        if (this.centerX == x && this.centerZ == z) return;
+        this.centerX = x;
+        this.centerZ = z;
+        this.selectionDirty = true;
+    }
+
+    /**
+     * @param radii the outer radius in chunks of the ring of each level, from level 1 to {@link #LEVELS}
+     */
+    public void setRadii(int... radii) {
+        if (radii.length != LEVELS) throw new IllegalArgumentException("Expected " + LEVELS + " radii, got " + radii.length);
+        for (int i = 0; i < LEVELS; i++) {
+            if (radii[i] < 0 || (i > 0 && radii[i] < radii[i - 1])) {
+                throw new IllegalArgumentException("Radii have to be positive and ascending, got " + Arrays.toString(radii));
+            }
+        }
+
+        this.radii = radii.clone();
+        this.selectionDirty = true;
+    }
+
+    /**
+     * Select the tiles around the center if it moved, leave out the chunks that are loaded in full detail and start
+     * the builds of changed tiles.
+     */
+    public void update() {
+        if (this.centerX == Integer.MIN_VALUE) return;
+
+        if (this.selectionDirty) {
+            this.selectionDirty = false;
+            this.select();
+        }
+
+        this.updateCoverage();
+
+        for (int level = 1; level <= LEVELS; level++) {
+            ChunkMap<LodTile> tiles = this.tiles[level - 1];
+            for (int slot = tiles.firstSlot(); slot >= 0; slot = tiles.nextSlot(slot)) {
+                this.updateTile(tiles.valueAt(slot));
+            }
+        }
+    }
+
+    /**
+     * Mark the chunks that are drawn in full detail in the tiles that cover them, see
+     * {@link LodMesher#mesh(int[], int, long)}. Chunks can stay loaded outside of the view radius until the center
+     * moves again, so the loaded chunks are looked up instead of the tiles near the center.
+     */
+    private void updateCoverage() {
+        for (ChunkMap<LodTile> tiles : this.tiles) {
+            for (int slot = tiles.firstSlot(); slot >= 0; slot = tiles.nextSlot(slot)) {
+                tiles.valueAt(slot).coverage = 0L;
+            }
+        }
+
+        ChunkMap<Chunk> chunks = this.chunkManager.getChunks();
+        for (int slot = chunks.firstSlot(); slot >= 0; slot = chunks.nextSlot(slot)) {
+            if (chunks.valueAt(slot).getStatus() != ChunkStatus.MESH) continue;
+
+            long key = chunks.keyAt(slot);
+            int x = ChunkPosition.unpackX(key);
+            int z = ChunkPosition.unpackZ(key);
+            for (int level = 1; level <= LEVELS; level++) {
+                LodTile tile = this.tiles[level - 1].get(ChunkPosition.pack(x >> level, z >> level));
+                if (tile != null) {
+                    int mask = (1 << level) - 1;
+                    tile.coverage |= 1L << (((z & mask) << level) + (x & mask));
+                }
+            }
+        }
+    }
+
+    private void updateTile(LodTile tile) {
+        CompletableFuture<Void> build = tile.build;
+        if (build != null) {
+            if (!build.isDone()) return;
+
+            if (build.isCancelled()) {
+                /* Cancelled by the scheduler when the center moved away, built again if the tile is still needed */
+                tile.built = false;
+            } else if (build.isCompletedExceptionally()) {
+                build.exceptionally(t -> {
+                    this.logger.error("Failed to build " + tile, t);
+                    return null;
+                });
+            }
+            tile.build = null;
+        }
+
+        if (!tile.built || tile.coverage != tile.builtCoverage) {
+            this.build(tile);
+        }
+    }
+
+    private void build(LodTile tile) {
+        int level = tile.getLevel();
+        long coverage = tile.coverage;
+        tile.builtCoverage = coverage;
+        tile.built = true;
+
+        /* Tiles completely drawn in full detail don't need their heights */
+        if (coverage == getFullCoverage(level)) {
+            tile.setMesh(new ChunkMesh());
+            return;
+        }
+
+        CompletableFuture<Void> build = new CompletableFuture<>();
+        tile.build = build;
+
+        int half = 1 << (level - 1);
+        int margin = this.radii[LEVELS - 1] + (1 << LEVELS);
+        this.chunkManager.getScheduler().submit((tile.getX() << level) + half, (tile.getZ() << level) + half, margin, build, () -> {
+            try {
+                if (tile.heights == null) {
+                    int[] heights = new int[LodMesher.SIZE * LodMesher.SIZE];
+                    this.generator.fillHeights(heights, tile.getX() * LodMesher.SIZE, tile.getZ() * LodMesher.SIZE, LodMesher.SIZE, LodMesher.SIZE, level);
+                    tile.heights = heights;
+                }
+
+                tile.setMesh(this.meshers.get().mesh(tile.heights, level, coverage));
+                build.complete(null);
+            } catch (Throwable t) {
+                build.completeExceptionally(t);
+            }
+        });
+    }
+
+    /**
+     * Pick the tiles of all levels around the center. Tiles that stay selected keep their mesh,
+     * tiles that are no longer needed are disposed.
+     */
+    private void select() {
+        int radius = this.radii[LEVELS - 1];
+        int minX = (this.centerX - radius) >> LEVELS;
+        int maxX = (this.centerX + radius) >> LEVELS;
+        int minZ = (this.centerZ - radius) >> LEVELS;
+        int maxZ = (this.centerZ + radius) >> LEVELS;
+
+        for (int z = minZ; z <= maxZ; z++) {
+            for (int x = minX; x <= maxX; x++) {
+                if (this.getDistanceSquared(LEVELS, x, z) <= (long) radius * radius) {
+                    this.visit(LEVELS, x, z);
+                }
+            }
+        }
+
+        for (int i = 0; i < LEVELS; i++) {
+            ChunkMap<LodTile> previous = this.tiles[i];
+            for (int slot = previous.firstSlot(); slot >= 0; slot = previous.nextSlot(slot)) {
+                if (this.selected[i].get(previous.keyAt(slot)) != previous.valueAt(slot)) {
+                    previous.valueAt(slot).dispose();
+                }
+            }
+            previous.clear();
+
+            this.tiles[i] = this.selected[i];
+            this.selected[i] = previous;
+        }
+    }
+
+    /**
+     * Select the tile or its children if the next finer ring reaches into it.
+     */
+    private void visit(int level, int x, int z) {
+        if (level > 1) {
+            int finer = this.radii[level - 2];
+            if (this.getDistanceSquared(level, x, z) <= (long) finer * finer) {
+                for (int dz = 0; dz <= 1; dz++) {
+                    for (int dx = 0; dx <= 1; dx++) {
+                        this.visit(level - 1, (x << 1) + dx, (z << 1) + dz);
+                    }
+                }
+                return;
+            }
+        }
+
+        long key = ChunkPosition.pack(x, z);
+        LodTile tile = this.tiles[level - 1].get(key);
+        this.selected[level - 1].put(key, tile != null ? tile : new LodTile(level, x, z));
+    }
+
+    /**
+     * @return the squared distance in chunks from the center to the nearest chunk of the tile
+     */
+    private long getDistanceSquared(int level, int x, int z) {
+        long dx = Math.max(x << level, Math.min(this.centerX, ((x + 1) << level) - 1)) - this.centerX;
+        long dz = Math.max(z << level, Math.min(this.centerZ, ((z + 1) << level) - 1)) - this.centerZ;
+        return dx * dx + dz * dz;
+    }
+
+    private static long getFullCoverage(int level) {
+        int chunks = 1 << (level << 1);
+        return chunks == Long.SIZE ? -1L : (1L << chunks) - 1;
+    }
+
+    /**
+     * @param level the level from 1 to {@link #LEVELS}
+     * @return the selected tiles of the level by their packed tile position
+     */
+    public ChunkMap<LodTile> getTiles(int level) {
+        return this.tiles[level - 1];
+    }
+
+    public int getTileCount() {
+        int count = 0;
+        for (ChunkMap<LodTile> tiles : this.tiles) {
+            count += tiles.size();
+        }
+        return count;
+    }
+
+    public int[] getRadii() {
+        return this.radii.clone();
+    }
+
+    @Override
+    public void dispose() {
+        for (ChunkMap<LodTile> tiles : this.tiles) {
+            tiles.forEachValue(LodTile::dispose);
+            tiles.clear();
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package de.skyengine.game.world.lod;
+
+import de.skyengine.core.io.IDisposable;
+import de.skyengine.game.world.chunk.Chunk;
+import de.skyengine.game.world.mesh.ChunkMesh;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * A square of <code>2^level</code>x<code>2^level</code> chunks of the far terrain, drawn from one height per
+ * <code>2^level</code>x<code>2^level</code> blocks.
+ */
+public class LodTile implements IDisposable {
+
+    private final int level;
+    private final int x;
+    private final int z;
+
+    /** The sampled heights, only accessed by the build job of the tile. */
+    int[] heights;
+
+    /** The chunks drawn in full detail the next build leaves out and the ones the last build left out. */
+    long coverage;
+    long builtCoverage;
+    /** <code>false</code> until the first build started and after a build was cancelled. */
+    boolean built;
+
+    /** The running build, <code>null</code> before the first one. Only accessed by the update thread. */
+    CompletableFuture<Void> build;
+
+    private ChunkMesh mesh;
+    private boolean disposed;
+
+    /**
+     * @param x the x coordinate in tiles of this level
+     * @param z the z coordinate in tiles of this level
+     */
+    LodTile(int level, int x, int z) {
+        this.level = level;
+        this.x = x;
+        this.z = z;
+    }
+
+    /**
+     * Replace the mesh that was not taken yet. If the tile was already disposed the mesh is freed right away.
+     */
+    synchronized void setMesh(ChunkMesh mesh) {
+        if (this.disposed) {
+            mesh.dispose();
+            return;
+        }
+
+        if (this.mesh != null) {
+            this.mesh.dispose();
+        }
+        this.mesh = mesh;
+    }
+
+    /**
+     * Remove the mesh from this tile without freeing it, the caller owns it afterwards.
+     *
+     * @return the mesh or <code>null</code> if no new mesh was built since the last call
+     */
+    public synchronized ChunkMesh takeMesh() {
+        ChunkMesh mesh = this.mesh;
+        this.mesh = null;
+        return mesh;
+    }
+
+    public int getLevel() {
+        return level;
+    }
+
+    public int getX() {
+        return x;
+    }
+
+    public int getZ() {
+        return z;
+    }
+
+    public int getWorldX() {
+        return this.x << (this.level + Chunk.CHUNK_SHIFT_WIDTH);
+    }
+
+    public int getWorldZ() {
+        return this.z << (this.level + Chunk.CHUNK_SHIFT_WIDTH);
+    }
+
+    /**
+     * @return the edge length in blocks
+     */
+    public int getWorldSize() {
+        return Chunk.CHUNK_WIDTH << this.level;
+    }
+
+    @Override
+    public synchronized void dispose() {
+        this.disposed = true;
+        if (this.build != null) {
+            this.build.cancel(false);
+        }
+        if (this.mesh != null) {
+            this.mesh.dispose();
+            this.mesh = null;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "LodTile={level=" + this.level + ", x=" + this.x + ", z=" + this.z + "}";
+    }
+}
@@ -0,0 +1,102 @@
+package de.skyengine.game.world.mesh;
+
+import de.skyengine.core.io.IDisposable;
+import de.skyengine.game.world.chunk.Chunk;
+import de.skyengine.util.DynamicByteBuffer;
+
+/**
+ * The CPU side vertex data of a chunk, one buffer per section. Sections without any visible face have no buffer.
+ * <p>
+ * A mesh either covers all sections or only the ones that were rebuilt after a block change, see
+ * {@link #getSectionMask()}. Sections outside of the mask keep the mesh that was uploaded before.
+ */
+public class ChunkMesh implements IDisposable {
+
+    public static final int ALL_SECTIONS = (1 << Chunk.SECTION_COUNT) - 1;
+
+    private final DynamicByteBuffer[] sections;
+    private final int[] quadCounts;
+
+    /** Bit per section that this mesh replaces. */
+    private int sectionMask;
+
+    public ChunkMesh() {
+        this(ALL_SECTIONS);
+    }
+
+    public ChunkMesh(int sectionMask) {
+        this.sections = new DynamicByteBuffer[Chunk.SECTION_COUNT];
+        this.quadCounts = new int[Chunk.SECTION_COUNT];
+        this.sectionMask = sectionMask;
+    }
+
+    public void setSection(int sectionY, DynamicByteBuffer vertices, int quadCount) {
+        if (this.sections[sectionY] != null) {
+            this.sections[sectionY].free();
+        }
+
+        this.sections[sectionY] = vertices;
+        this.quadCounts[sectionY] = quadCount;
+    }
+
+    /**
+     * @return the packed vertices of the section (see {@link ChunkMesher}) or <code>null</code> if it has no visible faces
+     */
+    public DynamicByteBuffer getSection(int sectionY) {
+        return this.sections[sectionY];
+    }
+
+    public int getQuadCount(int sectionY) {
+        return this.quadCounts[sectionY];
+    }
+
+    public int getVertexCount(int sectionY) {
+        return this.quadCounts[sectionY] * 4;
+    }
+
+    /**
+     * @return <code>true</code> if this mesh replaces the given section, even if it has no faces
+     */
+    public boolean containsSection(int sectionY) {
+        return (this.sectionMask & (1 << sectionY)) != 0;
+    }
+
+    public int getSectionMask() {
+        return sectionMask;
+    }
+
+    /**
+     * Take over the sections of a newer mesh, sections the newer mesh doesn't contain are kept.
+     * The buffers are moved, the newer mesh is empty afterwards.
+     */
+    public void merge(ChunkMesh newer) {
+        for (int sectionY = 0; sectionY < Chunk.SECTION_COUNT; sectionY++) {
+            if (!newer.containsSection(sectionY)) continue;
+
+            this.setSection(sectionY, newer.sections[sectionY], newer.quadCounts[sectionY]);
+            newer.sections[sectionY] = null;
+            newer.quadCounts[sectionY] = 0;
+        }
+        this.sectionMask |= newer.sectionMask;
+        newer.sectionMask = 0;
+    }
+
+    public int getTotalQuadCount() {
+        int quads = 0;
+        for (int count : this.quadCounts) {
+            quads += count;
+        }
+        return quads;
+    }
+
+    @Override
+    public void dispose() {
+        for (int i = 0; i < this.sections.length; i++) {
+            if (this.sections[i] != null) {
+                this.sections[i].free();
+                this.sections[i] = null;
+                this.quadCounts[i] = 0;
+            }
+        }
+    }
+}
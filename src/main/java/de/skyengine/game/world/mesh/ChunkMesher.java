@@ -0,0 +1,305 @@
+package de.skyengine.game.world.mesh;
+
+import de.skyengine.game.world.block.Blocks;
+import de.skyengine.game.world.chunk.Chunk;
+import de.skyengine.game.world.chunk.ChunkSection;
+import de.skyengine.game.world.light.LightEngine;
+import de.skyengine.util.DynamicByteBuffer;
+
+import java.util.function.BooleanSupplier;
+
+/**
+ * Greedy mesher that merges coplanar faces of the same texture, light and ambient occlusion into one quad
+ * and writes the vertices directly into a {@link DynamicByteBuffer}.
+ * <p>
+ * Every quad consists of 4 vertices, triangles are formed with a shared <code>0, 1, 2, 2, 3, 0</code> index pattern.
+ * A vertex has 8 bytes:
+ * <pre>
+ * int   bits  0- 4 x, 5-9 y, 10-14 z (section local, 0-16)
+ *       bits 15-17 face/normal index (0 = -X, 1 = +X, 2 = -Y, 3 = +Y, 4 = -Z, 5 = +Z)
+ *       bits 18-19 ambient occlusion (0 = darkest, 3 = no occlusion)
+ * short texture layer
+ * short bits 0-3 block light, 4-7 sky light of the block in front of the face
+ * </pre>
+ * A mesher keeps scratch buffers and must only be used by one thread at a time, use one instance per worker thread.
+ */
+public class ChunkMesher {
+
+    public static final int VERTEX_SIZE = 8;
+
+    public static final int FACE_WEST = 0;
+    public static final int FACE_EAST = 1;
+    public static final int FACE_DOWN = 2;
+    public static final int FACE_UP = 3;
+    public static final int FACE_NORTH = 4;
+    public static final int FACE_SOUTH = 5;
+
+    private static final int SIZE = ChunkSection.SIZE;
+    private static final int SHIFT = ChunkSection.SHIFT;
+
+    /** Edge length of the copied blocks including one block of each neighbour. */
+    private static final int PADDED = SIZE + 2;
+    private static final int STRIDE_X = 1;
+    private static final int STRIDE_Y = PADDED * PADDED;
+    private static final int STRIDE_Z = PADDED;
+    private static final int[] AXIS_STRIDES = {STRIDE_X, STRIDE_Y, STRIDE_Z};
+
+    private static final int INITIAL_CAPACITY = 4096;
+
+    private final short[] blocks = new short[PADDED * PADDED * PADDED];
+    /** The light of the copied blocks, <code>sky &lt;&lt; 4 | block</code>. */
+    private final byte[] light = new byte[PADDED * PADDED * PADDED];
+    private final int[] mask = new int[SIZE * SIZE];
+    private final int[] position = new int[3];
+
+    /** The buffer of the section that is currently meshed, only allocated once a face is visible. */
+    private DynamicByteBuffer vertices;
+
+    /**
+     * Build the meshes of all sections of a chunk.
+     *
+     * @param neighbours the 3x3 chunks around the chunk indexed with <code>(dz + 1) * 3 + (dx + 1)</code>,
+     *                   missing neighbours are treated as air
+     */
+    public ChunkMesh mesh(Chunk chunk, Chunk[] neighbours) {
+        return this.mesh(chunk, neighbours, ChunkMesh.ALL_SECTIONS, () -> false);
+    }
+
+    /**
+     * Build the meshes of some sections of a chunk.
+     *
+     * @param neighbours the 3x3 chunks around the chunk, see {@link #mesh(Chunk, Chunk[])}
+     * @param sections   bit mask of the sections to build
+     * @param cancelled  checked before every section
+     * @return a mesh containing the given sections or <code>null</code> if it was cancelled
+     */
+    public ChunkMesh mesh(Chunk chunk, Chunk[] neighbours, int sections, BooleanSupplier cancelled) {
+        ChunkMesh mesh = new ChunkMesh(sections);
+        try {
+            for (int remaining = sections; remaining != 0; remaining &= remaining - 1) {
+                if (cancelled.getAsBoolean()) return null;
+
+                int sectionY = Integer.numberOfTrailingZeros(remaining);
+                /* Empty sections have no faces and all faces of buried sections are hidden by their neighbours */
+                if (chunk.isSectionEmpty(sectionY) || chunk.isSectionBuried(sectionY, neighbours)) continue;
+
+                this.copyBlocks(neighbours, sectionY);
+
+                int quads = this.meshSection();
+                if (quads > 0) {
+                    mesh.setSection(sectionY, this.vertices, quads);
+                }
+                this.vertices = null;
+            }
+
+            ChunkMesh result = mesh;
+            mesh = null;
+            return result;
+        } finally {
+            /* Cancelled or failed, the buffers built so far go back to the pool */
+            if (this.vertices != null) {
+                this.vertices.free();
+                this.vertices = null;
+            }
+            if (mesh != null) mesh.dispose();
+        }
+    }
+
+    /**
+     * Copy the section and a one block border of its neighbours together with their light, so the meshing loops
+     * never have to leave the arrays. Missing neighbours are air under the open sky.
+     */
+    private void copyBlocks(Chunk[] neighbours, int sectionY) {
+        int baseY = sectionY << SHIFT;
+        int index = 0;
+        for (int y = -1; y <= SIZE; y++) {
+            for (int z = -1; z <= SIZE; z++) {
+                int row = z < 0 ? 0 : (z < SIZE ? 3 : 6);
+                for (int x = -1; x <= SIZE; x++) {
+                    Chunk chunk = neighbours[row + (x < 0 ? 0 : (x < SIZE ? 1 : 2))];
+                    if (chunk == null) {
+                        this.blocks[index] = Blocks.AIR;
+                        this.light[index++] = (byte) (LightEngine.MAX_LEVEL << 4);
+                        continue;
+                    }
+
+                    int localX = x & (SIZE - 1);
+                    int localZ = z & (SIZE - 1);
+                    this.blocks[index] = (short) chunk.getBlock(localX, baseY + y, localZ);
+                    this.light[index++] = (byte) (chunk.getSkyLight(localX, baseY + y, localZ) << 4 | chunk.getBlockLight(localX, baseY + y, localZ));
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the number of quads written to {@link #vertices}
+     */
+    private int meshSection() {
+        int quads = 0;
+
+        for (int face = 0; face < 6; face++) {
+            int axis = face >> 1;
+            boolean positive = (face & 1) == 1;
+            int u = (axis + 1) % 3;
+            int v = (axis + 2) % 3;
+
+            int strideA = AXIS_STRIDES[axis];
+            int strideU = AXIS_STRIDES[u];
+            int strideV = AXIS_STRIDES[v];
+            int normal = positive ? strideA : -strideA;
+
+            for (int d = 0; d < SIZE; d++) {
+                if (!this.buildMask(face, d, strideA, strideU, strideV, normal)) continue;
+
+                for (int j = 0; j < SIZE; j++) {
+                    for (int i = 0; i < SIZE; ) {
+                        int key = this.mask[j * SIZE + i];
+                        if (key == 0) {
+                            i++;
+                            continue;
+                        }
+
+                        int width = 1;
+                        while (i + width < SIZE && this.mask[j * SIZE + i + width] == key) {
+                            width++;
+                        }
+
+                        int height = 1;
+                        grow:
+                        while (j + height < SIZE) {
+                            int row = (j + height) * SIZE + i;
+                            for (int k = 0; k < width; k++) {
+                                if (this.mask[row + k] != key) break grow;
+                            }
+                            height++;
+                        }
+
+                        for (int h = 0; h < height; h++) {
+                            int row = (j + h) * SIZE + i;
+                            for (int k = 0; k < width; k++) {
+                                this.mask[row + k] = 0;
+                            }
+                        }
+
+                        if (this.vertices == null) {
+                            this.vertices = new DynamicByteBuffer(INITIAL_CAPACITY);
+                        }
+                        emitQuad(this.vertices, this.position, face, d, i, j, width, height, key);
+                        quads++;
+                        i += width;
+                    }
+                }
+            }
+        }
+
+        return quads;
+    }
+
+    /**
+     * Fill the mask of a slice with a key per visible face (texture layer, light and the ambient occlusion of the 4 corners).
+     *
+     * @return <code>true</code> if at least one face is visible
+     */
+    private boolean buildMask(int face, int d, int strideA, int strideU, int strideV, int normal) {
+        boolean any = false;
+        int base = (d + 1) * strideA;
+
+        for (int j = 0; j < SIZE; j++) {
+            for (int i = 0; i < SIZE; i++) {
+                int index = base + (i + 1) * strideU + (j + 1) * strideV;
+                int block = this.blocks[index];
+                int neighbour = this.blocks[index + normal];
+
+                if (block == Blocks.AIR || neighbour == block || Blocks.isOpaque(neighbour)) {
+                    this.mask[j * SIZE + i] = 0;
+                    continue;
+                }
+
+                int front = index + normal;
+                int ao = this.ambientOcclusion(front, -strideU, -strideV)
+                        | this.ambientOcclusion(front, strideU, -strideV) << 2
+                        | this.ambientOcclusion(front, strideU, strideV) << 4
+                        | this.ambientOcclusion(front, -strideU, strideV) << 6;
+
+                this.mask[j * SIZE + i] = (Blocks.getTextureLayer(block, face) + 1) << 16 | (this.light[front] & 0xFF) << 8 | ao;
+                any = true;
+            }
+        }
+
+        return any;
+    }
+
+    private int ambientOcclusion(int front, int du, int dv) {
+        boolean side1 = Blocks.isOpaque(this.blocks[front + du]);
+        boolean side2 = Blocks.isOpaque(this.blocks[front + dv]);
+        if (side1 && side2) return 0;
+
+        boolean corner = Blocks.isOpaque(this.blocks[front + du + dv]);
+        return 3 - ((side1 ? 1 : 0) + (side2 ? 1 : 0) + (corner ? 1 : 0));
+    }
+
+    /**
+     * Write one quad of a face, also used by the {@link LodMesher}.
+     *
+     * @param position scratch array of 3 ints
+     * @param d        the coordinate of the block along the face normal
+     * @param i        the start of the quad along the first axis after the normal (y for x faces, z for y faces, x for z faces)
+     * @param j        the start of the quad along the second axis after the normal
+     * @param key      <code>(layer + 1) &lt;&lt; 16 | light &lt;&lt; 8 | ao</code> with 2 bits of ambient occlusion per corner
+     */
+    static void emitQuad(DynamicByteBuffer buffer, int[] position, int face, int d, int i, int j, int width, int height, int key) {
+        int axis = face >> 1;
+        boolean positive = (face & 1) == 1;
+        int u = (axis + 1) % 3;
+        int v = (axis + 2) % 3;
+
+        int layer = (key >>> 16) - 1;
+        int light = (key >>> 8) & 0xFF;
+        int ao00 = key & 3;
+        int ao10 = (key >>> 2) & 3;
+        int ao11 = (key >>> 4) & 3;
+        int ao01 = (key >>> 6) & 3;
+
+        /* Split the quad along the diagonal that interpolates the occlusion without anisotropy artifacts */
+        boolean flip = ao00 + ao11 > ao10 + ao01;
+        buffer.ensureCapacity(4 * VERTEX_SIZE);
+
+        int plane = positive ? d + 1 : d;
+        if (positive) {
+            if (flip) {
+                emitVertex(buffer, position, face, axis, u, v, plane, i + width, j, ao10, layer, light);
+                emitVertex(buffer, position, face, axis, u, v, plane, i + width, j + height, ao11, layer, light);
+                emitVertex(buffer, position, face, axis, u, v, plane, i, j + height, ao01, layer, light);
+                emitVertex(buffer, position, face, axis, u, v, plane, i, j, ao00, layer, light);
+            } else {
+                emitVertex(buffer, position, face, axis, u, v, plane, i, j, ao00, layer, light);
+                emitVertex(buffer, position, face, axis, u, v, plane, i + width, j, ao10, layer, light);
+                emitVertex(buffer, position, face, axis, u, v, plane, i + width, j + height, ao11, layer, light);
+                emitVertex(buffer, position, face, axis, u, v, plane, i, j + height, ao01, layer, light);
+            }
+        } else {
+            if (flip) {
+                emitVertex(buffer, position, face, axis, u, v, plane, i, j + height, ao01, layer, light);
+                emitVertex(buffer, position, face, axis, u, v, plane, i + width, j + height, ao11, layer, light);
+                emitVertex(buffer, position, face, axis, u, v, plane, i + width, j, ao10, layer, light);
+                emitVertex(buffer, position, face, axis, u, v, plane, i, j, ao00, layer, light);
+            } else {
+                emitVertex(buffer, position, face, axis, u, v, plane, i, j, ao00, layer, light);
+                emitVertex(buffer, position, face, axis, u, v, plane, i, j + height, ao01, layer, light);
+                emitVertex(buffer, position, face, axis, u, v, plane, i + width, j + height, ao11, layer, light);
+                emitVertex(buffer, position, face, axis, u, v, plane, i + width, j, ao10, layer, light);
+            }
+        }
+    }
+
+    private static void emitVertex(DynamicByteBuffer buffer, int[] position, int face, int axis, int u, int v, int a, int pu, int pv, int ao, int layer, int light) {
+        position[axis] = a;
+        position[u] = pu;
+        position[v] = pv;
+
+        buffer.putIntNoGrow(position[0] | position[1] << 5 | position[2] << 10 | face << 15 | ao << 18);
+        buffer.putShortNoGrow(layer);
+        buffer.putShortNoGrow(light);
+    }
+}
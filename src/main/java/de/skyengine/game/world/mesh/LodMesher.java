@@ -0,0 +1,225 @@
+package de.skyengine.game.world.mesh;
+
+import de.skyengine.game.world.block.Blocks;
+import de.skyengine.game.world.chunk.Chunk;
+import de.skyengine.game.world.chunk.ChunkSection;
+import de.skyengine.game.world.generation.TerrainGenerator;
+import de.skyengine.game.world.light.LightEngine;
+import de.skyengine.util.DynamicByteBuffer;
+
+/**
+ * Builds the mesh of a far terrain tile from a grid of {@link #SIZE}x{@link #SIZE} terrain heights.
+ * <p>
+ * Every height is a column of <code>2^level</code>x<code>2^level</code> blocks with the surface block on top, water
+ * columns end at the sea level. Tops of the same height and texture are merged greedily and walls are only built where
+ * a column is higher than its neighbour. At the edges of the tile and next to chunks that are drawn in full detail
+ * the walls reach down below the lowest column of the tile as skirts, so the cracks between tiles of different levels
+ * and the full chunks never let the sky shine through.
+ * <p>
+ * The vertices have the format of the {@link ChunkMesher}, but x and z count columns instead of blocks,
+ * the renderer scales them by <code>2^level</code>. All faces get full sky light and no ambient occlusion.
+ * A mesher keeps scratch buffers and must only be used by one thread at a time.
+ */
+public class LodMesher {
+
+    public static final int SIZE = ChunkSection.SIZE;
+
+    /** A tile of level 3 covers 8x8 chunks, one bit per chunk still fits the coverage mask. */
+    public static final int MAX_LEVEL = 3;
+
+    /** How far the skirts reach below the lowest column of the tile. */
+    private static final int SKIRT_DEPTH = 16;
+
+    /** Light and ambient occlusion part of the quad keys, full sky light and no occlusion. */
+    private static final int LIGHT_AO = LightEngine.MAX_LEVEL << 12 | 0xFF;
+
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private final int[] tops = new int[SIZE * SIZE];
+    private final int[] topLayers = new int[SIZE * SIZE];
+    private final int[] wallLayers = new int[SIZE * SIZE];
+    private final int[] mask = new int[SIZE * SIZE];
+    private final int[] position = new int[3];
+
+    private final DynamicByteBuffer[] sections = new DynamicByteBuffer[Chunk.SECTION_COUNT];
+    private final int[] quadCounts = new int[Chunk.SECTION_COUNT];
+
+    /**
+     * @param heights  the terrain heights indexed with <code>z * 16 + x</code>
+     * @param level    the tile covers <code>16 * 2^level</code> blocks, at most {@link #MAX_LEVEL}
+     * @param coverage bit per chunk of the tile that is drawn in full detail, indexed with
+     *                 <code>z * 2^level + x</code> in chunks. Its columns are left out.
+     */
+    public ChunkMesh mesh(int[] heights, int level, long coverage) {
+        if (level < 1 || level > MAX_LEVEL) throw new IllegalArgumentException("Level needs to be between 1 and " + MAX_LEVEL + ", got " + level);
+
+        int cellShift = ChunkSection.SHIFT - level;
+        int lowest = Chunk.CHUNK_HEIGHT;
+        for (int z = 0; z < SIZE; z++) {
+            for (int x = 0; x < SIZE; x++) {
+                int index = z * SIZE + x;
+                int chunk = (z >> cellShift << level) + (x >> cellShift);
+                if ((coverage & (1L << chunk)) != 0) {
+                    this.tops[index] = -1;
+                    continue;
+                }
+
+                int height = heights[index];
+                if (height < TerrainGenerator.SEA_LEVEL) {
+                    this.tops[index] = TerrainGenerator.SEA_LEVEL;
+                    this.topLayers[index] = Blocks.getTextureLayer(Blocks.WATER, ChunkMesher.FACE_UP);
+                    this.wallLayers[index] = Blocks.getTextureLayer(Blocks.SAND, ChunkMesher.FACE_WEST);
+                } else {
+                    int surface = TerrainGenerator.getSurfaceBlock(height);
+                    this.tops[index] = height;
+                    this.topLayers[index] = Blocks.getTextureLayer(surface, ChunkMesher.FACE_UP);
+                    this.wallLayers[index] = Blocks.getTextureLayer(surface, ChunkMesher.FACE_WEST);
+                }
+                lowest = Math.min(lowest, this.tops[index]);
+            }
+        }
+
+        ChunkMesh mesh = new ChunkMesh();
+        if (lowest == Chunk.CHUNK_HEIGHT) return mesh;
+
+        this.meshTops();
+        this.meshWalls(Math.max(0, lowest - SKIRT_DEPTH));
+
+        for (int sectionY = 0; sectionY < Chunk.SECTION_COUNT; sectionY++) {
+            if (this.sections[sectionY] != null) {
+                mesh.setSection(sectionY, this.sections[sectionY], this.quadCounts[sectionY]);
+            }
+            this.sections[sectionY] = null;
+            this.quadCounts[sectionY] = 0;
+        }
+        return mesh;
+    }
+
+    /**
+     * Merge the tops of neighbouring columns with the same height and texture. The top faces run along z first
+     * and x second, see {@link ChunkMesher#emitQuad}.
+     */
+    private void meshTops() {
+        for (int x = 0; x < SIZE; x++) {
+            for (int z = 0; z < SIZE; z++) {
+                int index = z * SIZE + x;
+                this.mask[x * SIZE + z] = this.tops[index] < 0 ? 0 : (this.tops[index] + 1) << 16 | (this.topLayers[index] + 1);
+            }
+        }
+
+        for (int j = 0; j < SIZE; j++) {
+            for (int i = 0; i < SIZE; ) {
+                int key = this.mask[j * SIZE + i];
+                if (key == 0) {
+                    i++;
+                    continue;
+                }
+
+                int width = 1;
+                while (i + width < SIZE && this.mask[j * SIZE + i + width] == key) {
+                    width++;
+                }
+
+                int height = 1;
+                grow:
+                while (j + height < SIZE) {
+                    int row = (j + height) * SIZE + i;
+                    for (int k = 0; k < width; k++) {
+                        if (this.mask[row + k] != key) break grow;
+                    }
+                    height++;
+                }
+
+                for (int h = 0; h < height; h++) {
+                    int row = (j + h) * SIZE + i;
+                    for (int k = 0; k < width; k++) {
+                        this.mask[row + k] = 0;
+                    }
+                }
+
+                int top = (key >>> 16) - 1;
+                int layer = (key & 0xFFFF) - 1;
+                this.emit(top >> ChunkSection.SHIFT, ChunkMesher.FACE_UP, top & (SIZE - 1), i, j, width, height, layer);
+                i += width;
+            }
+        }
+    }
+
+    /**
+     * Build the walls of every column down to its lower neighbour, or down to the skirt bottom at the edges of the
+     * tile and next to left out columns. Walls of neighbouring columns with the same top, bottom and texture are merged.
+     */
+    private void meshWalls(int skirtBottom) {
+        for (int face = ChunkMesher.FACE_WEST; face <= ChunkMesher.FACE_SOUTH; face++) {
+            if (face == ChunkMesher.FACE_DOWN || face == ChunkMesher.FACE_UP) continue;
+
+            boolean alongZ = face == ChunkMesher.FACE_WEST || face == ChunkMesher.FACE_EAST;
+            int step = face == ChunkMesher.FACE_WEST || face == ChunkMesher.FACE_NORTH ? -1 : 1;
+            for (int d = 0; d < SIZE; d++) {
+                for (int i = 0; i < SIZE; ) {
+                    int top = this.getTop(alongZ, d, i);
+                    int bottom = this.getWallBottom(alongZ, d + step, i, skirtBottom);
+                    if (top < 0 || bottom > top) {
+                        i++;
+                        continue;
+                    }
+
+                    int layer = this.wallLayers[alongZ ? i * SIZE + d : d * SIZE + i];
+                    int length = 1;
+                    while (i + length < SIZE && this.getTop(alongZ, d, i + length) == top
+                            && this.getWallBottom(alongZ, d + step, i + length, skirtBottom) == bottom
+                            && this.wallLayers[alongZ ? (i + length) * SIZE + d : d * SIZE + i + length] == layer) {
+                        length++;
+                    }
+
+                    this.meshWall(face, d, i, length, top, bottom, layer);
+                    i += length;
+                }
+            }
+        }
+    }
+
+    /**
+     * @param alongZ <code>true</code> if <code>d</code> is the x coordinate and <code>i</code> runs along z
+     */
+    private int getTop(boolean alongZ, int d, int i) {
+        return this.tops[alongZ ? i * SIZE + d : d * SIZE + i];
+    }
+
+    private int getWallBottom(boolean alongZ, int d, int i, int skirtBottom) {
+        if (d < 0 || d >= SIZE) return skirtBottom;
+
+        int top = this.getTop(alongZ, d, i);
+        return top < 0 ? skirtBottom : top + 1;
+    }
+
+    /**
+     * Build the wall of the blocks from <code>bottom</code> to <code>top</code> in front of <code>length</code>
+     * columns, one quad per section.
+     */
+    private void meshWall(int face, int d, int i, int length, int top, int bottom, int layer) {
+        for (int y = bottom; y <= top; ) {
+            int sectionY = y >> ChunkSection.SHIFT;
+            int localY = y & (SIZE - 1);
+            int height = Math.min(top, (sectionY << ChunkSection.SHIFT) + SIZE - 1) - y + 1;
+
+            if (face == ChunkMesher.FACE_WEST || face == ChunkMesher.FACE_EAST) {
+                this.emit(sectionY, face, d, localY, i, height, length, layer);
+            } else {
+                this.emit(sectionY, face, d, i, localY, length, height, layer);
+            }
+            y += height;
+        }
+    }
+
+    private void emit(int sectionY, int face, int d, int i, int j, int width, int height, int layer) {
+        DynamicByteBuffer buffer = this.sections[sectionY];
+        if (buffer == null) {
+            buffer = new DynamicByteBuffer(INITIAL_CAPACITY);
+            this.sections[sectionY] = buffer;
+        }
+
+        ChunkMesher.emitQuad(buffer, this.position, face, d, i, j, width, height, (layer + 1) << 16 | LIGHT_AO);
+        this.quadCounts[sectionY]++;
+    }
+}
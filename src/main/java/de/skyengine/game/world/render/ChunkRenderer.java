@@ -0,0 +1,498 @@
+package de.skyengine.game.world.render;
+
+import de.skyengine.core.EngineProperties;
+import de.skyengine.core.SkyEngine;
+import de.skyengine.core.file.Files;
+import de.skyengine.core.io.IDisposable;
+import de.skyengine.game.world.chunk.Chunk;
+import de.skyengine.game.world.chunk.ChunkManager;
+import de.skyengine.game.world.chunk.ChunkMap;
+import de.skyengine.game.world.chunk.ChunkPosition;
+import de.skyengine.game.world.chunk.ChunkSection;
+import de.skyengine.game.world.lod.LodManager;
+import de.skyengine.game.world.lod.LodTile;
+import de.skyengine.game.world.mesh.ChunkMesh;
+import de.skyengine.game.world.mesh.ChunkMesher;
+import de.skyengine.graphics.buffer.VertexArena;
+import de.skyengine.graphics.framebuffer.FrameBuffer;
+import de.skyengine.graphics.shader.Shader;
+import de.skyengine.graphics.shader.ShaderProgram;
+import de.skyengine.graphics.shader.ShaderType;
+import de.skyengine.util.DynamicByteBuffer;
+import de.skyengine.util.logging.LogManager;
+import de.skyengine.util.logging.Logger;
+import org.joml.Matrix4f;
+import org.lwjgl.opengl.GL11;
+import org.lwjgl.opengl.GL13;
+import org.lwjgl.opengl.GL15;
+import org.lwjgl.opengl.GL20;
+import org.lwjgl.opengl.GL30;
+import org.lwjgl.opengl.GL31;
+import org.lwjgl.opengl.GL32;
+import org.lwjgl.opengl.GL40;
+import org.lwjgl.opengl.GL43;
+
+import java.util.Arrays;
+
+/**
+ * Draws all chunk sections of a {@link ChunkManager} from one {@link VertexArena}.
+ * <p>
+ * Every section is one draw of the shared quad index buffer with the first vertex of its arena range as base vertex.
+ * With <code>GL_ARB_multi_draw_indirect</code> the draws are written as <code>DrawElementsIndirectCommand</code>s
+ * and the whole terrain is submitted with a single <code>glMultiDrawElementsIndirect</code>, otherwise the same draws
+ * go through <code>glMultiDrawElementsBaseVertex</code>. The sections are culled on the CPU by a {@link CpuChunkCuller},
+ * or if the draws can be generated by a shader, culled and written on the GPU by a {@link GpuChunkCuller}.
+ * <p>
+ * The vertices only store the position inside their section. The arena is split into pages of
+ * {@link #PAGE_VERTICES} and every allocation is page aligned, so each page belongs to one section. The origin of
+ * that section is stored in a texture buffer and looked up in the vertex shader with <code>gl_VertexID</code>,
+ * which works the same for both draw paths and does not need <code>gl_DrawID</code> or base instances.
+ * <p>
+ * The {@link LodTile}s of a {@link LodManager} are drawn the same way. Their pages also store the level of detail,
+ * the vertex shader scales the horizontal vertex positions of tiles by <code>2^level</code>.
+ * <p>
+ * All methods have to be called from the render thread.
+ */
+public class ChunkRenderer implements IDisposable {
+
+    private final Logger logger = LogManager.getLogger(ChunkRenderer.class.getName());
+
+    public static final int PAGE_SHIFT = 8;
+    public static final int PAGE_VERTICES = 1 << PAGE_SHIFT;
+    public static final int PAGE_SIZE = PAGE_VERTICES * ChunkMesher.VERTEX_SIZE;
+
+    /**
+     * Upper bound of a section, the greedy mesher emits at most one quad per block face. A checkerboard already
+     * has 12288 quads and different light or ambient occlusion per face keeps more of them from being merged.
+     */
+    public static final int MAX_QUADS_PER_SECTION = ChunkSection.VOLUME * 6;
+
+    /** A section can have more than 65536 vertices, so the shared indices need 32 bits. */
+    public static final int INDEX_TYPE = GL11.GL_UNSIGNED_INT;
+
+    /** 65536 pages, the smallest texture buffer every GL 3.3 driver has to support. */
+    public static final int DEFAULT_ARENA_SIZE = 65536 * PAGE_SIZE;
+
+    /** count, instanceCount, firstIndex, baseVertex, baseInstance */
+    public static final int COMMAND_SIZE = 5 * Integer.BYTES;
+
+    private static final int PAGE_ENTRY_SIZE = 4 * Integer.BYTES;
+    private static final int PAGE_TEXTURE_UNIT = 1;
+
+    private static final String UNIFORM_PAGES = "u_pages";
+    private static final String UNIFORM_PAGE_SHIFT = "u_pageShift";
+
+    private final EngineProperties properties;
+    private final VertexArena arena;
+    private final GpuChunkCuller gpuCuller;
+    private final CpuChunkCuller cpuCuller;
+    private final IChunkCuller culler;
+    private final ChunkMap<RenderChunk> renderChunks;
+    /** The render chunks of the far terrain tiles of each level, indexed by <code>level - 1</code>. */
+    private final ChunkMap<RenderChunk>[] lodRenderChunks;
+    private long[] removed;
+
+    private final DynamicByteBuffer commands;
+    private final DynamicByteBuffer counts;
+    private final DynamicByteBuffer indexOffsets;
+    private final DynamicByteBuffer baseVertices;
+    private final DynamicByteBuffer pageEntries;
+    private int drawCount;
+
+    private ShaderProgram shader;
+    private int vertexArrayId;
+    private int indexBufferId;
+    private int commandBufferId;
+    private int pageBufferId;
+    private int pageTextureId;
+
+    private boolean arenaFull;
+
+    public ChunkRenderer(EngineProperties properties) {
+        this(properties, DEFAULT_ARENA_SIZE);
+    }
+
+    @SuppressWarnings("unchecked")
+    public ChunkRenderer(EngineProperties properties, int arenaSize) {
+        this.properties = properties;
+        this.arena = new VertexArena(properties, arenaSize, PAGE_SIZE);
+        this.gpuCuller = properties.isGenerateDrawCallsViaShader() && properties.isUseMultiDrawIndirect() ? new GpuChunkCuller(properties) : null;
+        this.cpuCuller = this.gpuCuller == null ? new CpuChunkCuller() : null;
+        this.culler = this.gpuCuller != null ? this.gpuCuller : this.cpuCuller;
+        this.renderChunks = new ChunkMap<>();
+        this.lodRenderChunks = new ChunkMap[LodManager.LEVELS];
+        for (int i = 0; i < LodManager.LEVELS; i++) {
+            this.lodRenderChunks[i] = new ChunkMap<>();
+        }
+        this.removed = new long[64];
+
+        this.commands = new DynamicByteBuffer(1024 * COMMAND_SIZE);
+        this.counts = new DynamicByteBuffer(1024 * Integer.BYTES);
+        this.indexOffsets = new DynamicByteBuffer(1024 * Long.BYTES);
+        this.baseVertices = new DynamicByteBuffer(1024 * Integer.BYTES);
+        this.pageEntries = new DynamicByteBuffer(64 * PAGE_ENTRY_SIZE);
+    }
+
+    public void create() {
+        this.arena.create();
+
+        Files files = SkyEngine.get().getFiles();
+        this.shader = new ShaderProgram(
+                new Shader(files.resource("engine/shaders/terrain.vert"), ShaderType.VERTEX),
+                new Shader(files.resource("engine/shaders/terrain.frag"), ShaderType.FRAGMENT)
+        );
+        this.shader.bind();
+        this.shader.setUniformi(UNIFORM_PAGES, PAGE_TEXTURE_UNIT);
+        this.shader.setUniformi(UNIFORM_PAGE_SHIFT, PAGE_SHIFT);
+        this.shader.unbind();
+
+        this.vertexArrayId = GL30.glGenVertexArrays();
+        GL30.glBindVertexArray(this.vertexArrayId);
+
+        GL15.glBindBuffer(GL15.GL_ARRAY_BUFFER, this.arena.getBufferId());
+        GL20.glEnableVertexAttribArray(0);
+        GL30.glVertexAttribIPointer(0, 1, GL11.GL_UNSIGNED_INT, ChunkMesher.VERTEX_SIZE, 0);
+        GL20.glEnableVertexAttribArray(1);
+        GL30.glVertexAttribIPointer(1, 1, GL11.GL_UNSIGNED_SHORT, ChunkMesher.VERTEX_SIZE, Integer.BYTES);
+        GL20.glEnableVertexAttribArray(2);
+        GL30.glVertexAttribIPointer(2, 1, GL11.GL_UNSIGNED_SHORT, ChunkMesher.VERTEX_SIZE, Integer.BYTES + Short.BYTES);
+
+        /* Every section uses the same indices, enough for the most quads a section can have */
+        DynamicByteBuffer indices = new DynamicByteBuffer(MAX_QUADS_PER_SECTION * 6 * Integer.BYTES);
+        for (int quad = 0; quad < MAX_QUADS_PER_SECTION; quad++) {
+            int vertex = quad * 4;
+            indices.putIntNoGrow(vertex);
+            indices.putIntNoGrow(vertex + 1);
+            indices.putIntNoGrow(vertex + 2);
+            indices.putIntNoGrow(vertex + 2);
+            indices.putIntNoGrow(vertex + 3);
+            indices.putIntNoGrow(vertex);
+        }
+
+        this.indexBufferId = GL15.glGenBuffers();
+        GL15.glBindBuffer(GL15.GL_ELEMENT_ARRAY_BUFFER, this.indexBufferId);
+        GL15.nglBufferData(GL15.GL_ELEMENT_ARRAY_BUFFER, indices.getPosition(), indices.getAddress(), GL15.GL_STATIC_DRAW);
+        indices.free();
+
+        GL30.glBindVertexArray(0);
+        GL15.glBindBuffer(GL15.GL_ARRAY_BUFFER, 0);
+        GL15.glBindBuffer(GL15.GL_ELEMENT_ARRAY_BUFFER, 0);
+
+        int pageCount = this.arena.getAllocator().getCapacity() / PAGE_SIZE;
+        this.pageBufferId = GL15.glGenBuffers();
+        GL15.glBindBuffer(GL31.GL_TEXTURE_BUFFER, this.pageBufferId);
+        GL15.glBufferData(GL31.GL_TEXTURE_BUFFER, (long) pageCount * PAGE_ENTRY_SIZE, GL15.GL_DYNAMIC_DRAW);
+        GL15.glBindBuffer(GL31.GL_TEXTURE_BUFFER, 0);
+
+        this.pageTextureId = GL11.glGenTextures();
+        GL11.glBindTexture(GL31.GL_TEXTURE_BUFFER, this.pageTextureId);
+        GL31.glTexBuffer(GL31.GL_TEXTURE_BUFFER, GL30.GL_RGBA32I, this.pageBufferId);
+        GL11.glBindTexture(GL31.GL_TEXTURE_BUFFER, 0);
+
+        if (this.gpuCuller != null) {
+            this.gpuCuller.create();
+        } else if (this.properties.isUseMultiDrawIndirect()) {
+            this.commandBufferId = GL15.glGenBuffers();
+        }
+
+        this.logger.debug("Create chunk renderer (" + (this.gpuCuller != null ? "gpu culled multi draw indirect"
+                : this.properties.isUseMultiDrawIndirect() ? "multi draw indirect" : "multi draw base vertex") + ")");
+    }
+
+    /**
+     * Upload the meshes that were built since the last frame and draw all visible sections into the framebuffer.
+     */
+    public void render(ChunkManager chunkManager, Matrix4f viewProjection, FrameBuffer frameBuffer) {
+        this.render(chunkManager, null, viewProjection, frameBuffer);
+    }
+
+    /**
+     * Upload the meshes that were built since the last frame and draw all visible sections together with the far
+     * terrain tiles into the framebuffer.
+     *
+     * @param lodManager the far terrain around the chunks or <code>null</code>
+     */
+    public void render(ChunkManager chunkManager, LodManager lodManager, Matrix4f viewProjection, FrameBuffer frameBuffer) {
+        this.arena.beginFrame();
+
+        this.syncChunks(chunkManager);
+        if (lodManager != null) {
+            this.syncLodTiles(lodManager);
+        }
+
+        if (this.gpuCuller != null) {
+            this.gpuCuller.cull(viewProjection);
+            this.drawCount = this.gpuCuller.getSlotCount();
+        } else {
+            this.buildDrawCommands(viewProjection);
+        }
+
+        if (this.drawCount > 0) {
+            /* Faces are wound counter-clockwise seen from the front, see ChunkMesher#emitQuad */
+            GL11.glEnable(GL11.GL_DEPTH_TEST);
+            GL11.glEnable(GL11.GL_CULL_FACE);
+            GL11.glCullFace(GL11.GL_BACK);
+
+            this.shader.bind();
+            this.shader.setUniformMatrix4f(ShaderProgram.UNIFORM_PROJECTION, viewProjection);
+
+            GL13.glActiveTexture(GL13.GL_TEXTURE0 + PAGE_TEXTURE_UNIT);
+            GL11.glBindTexture(GL31.GL_TEXTURE_BUFFER, this.pageTextureId);
+            GL13.glActiveTexture(GL13.GL_TEXTURE0);
+
+            GL30.glBindVertexArray(this.vertexArrayId);
+            if (this.gpuCuller != null) {
+                this.gpuCuller.draw();
+            } else if (this.properties.isUseMultiDrawIndirect()) {
+                this.drawIndirect();
+            } else {
+                this.drawBaseVertex();
+            }
+            GL30.glBindVertexArray(0);
+
+            this.shader.unbind();
+
+            GL11.glDisable(GL11.GL_CULL_FACE);
+            GL11.glDisable(GL11.GL_DEPTH_TEST);
+        }
+
+        if (this.gpuCuller != null) {
+            this.gpuCuller.updateDepthPyramid(frameBuffer, viewProjection);
+        }
+
+        this.arena.endFrame();
+    }
+
+    /**
+     * Drop the sections of unloaded chunks and upload the new meshes of loaded ones.
+     */
+    private void syncChunks(ChunkManager chunkManager) {
+        ChunkMap<Chunk> chunks = chunkManager.getChunks();
+        this.removeStale(this.renderChunks, chunks);
+
+        for (int slot = chunks.firstSlot(); slot >= 0; slot = chunks.nextSlot(slot)) {
+            Chunk chunk = chunks.valueAt(slot);
+            ChunkMesh mesh = chunk.takeMesh();
+            if (mesh == null) continue;
+
+            RenderChunk renderChunk = this.renderChunks.get(chunks.keyAt(slot));
+            if (renderChunk == null) {
+                renderChunk = new RenderChunk(chunk);
+                this.renderChunks.put(chunks.keyAt(slot), renderChunk);
+            }
+
+            ChunkPosition position = chunk.getPosition();
+            this.upload(renderChunk, mesh, position.getWorldX(), position.getWorldZ(), ChunkSection.SIZE, 0);
+            mesh.dispose();
+        }
+    }
+
+    /**
+     * Drop the sections of tiles that are no longer selected and upload the new meshes of the others.
+     */
+    private void syncLodTiles(LodManager lodManager) {
+        for (int level = 1; level <= LodManager.LEVELS; level++) {
+            ChunkMap<LodTile> tiles = lodManager.getTiles(level);
+            ChunkMap<RenderChunk> renderTiles = this.lodRenderChunks[level - 1];
+            this.removeStale(renderTiles, tiles);
+
+            for (int slot = tiles.firstSlot(); slot >= 0; slot = tiles.nextSlot(slot)) {
+                LodTile tile = tiles.valueAt(slot);
+                ChunkMesh mesh = tile.takeMesh();
+                if (mesh == null) continue;
+
+                RenderChunk renderTile = renderTiles.get(tiles.keyAt(slot));
+                if (renderTile == null) {
+                    renderTile = new RenderChunk(tile);
+                    renderTiles.put(tiles.keyAt(slot), renderTile);
+                }
+
+                this.upload(renderTile, mesh, tile.getWorldX(), tile.getWorldZ(), tile.getWorldSize(), level);
+                mesh.dispose();
+            }
+        }
+    }
+
+    /**
+     * Free the render chunks whose chunk or tile is no longer in the given map.
+     */
+    private void removeStale(ChunkMap<RenderChunk> renderChunks, ChunkMap<?> sources) {
+        int removedCount = 0;
+        for (int slot = renderChunks.firstSlot(); slot >= 0; slot = renderChunks.nextSlot(slot)) {
+            if (sources.get(renderChunks.keyAt(slot)) != renderChunks.valueAt(slot).getSource()) {
+                if (removedCount == this.removed.length) {
+                    this.removed = Arrays.copyOf(this.removed, removedCount * 2);
+                }
+                this.removed[removedCount++] = renderChunks.keyAt(slot);
+            }
+        }
+
+        /* Removing shifts entries between slots, so it can't happen while iterating */
+        for (int i = 0; i < removedCount; i++) {
+            renderChunks.remove(this.removed[i]).free(this.arena, this.culler);
+        }
+    }
+
+    /**
+     * @param width the horizontal size of the chunk or tile in blocks
+     * @param level the level of detail, 0 for chunks
+     */
+    private void upload(RenderChunk renderChunk, ChunkMesh mesh, int worldX, int worldZ, int width, int level) {
+        for (int sectionY = 0; sectionY < Chunk.SECTION_COUNT; sectionY++) {
+            /* Meshes rebuilt after a block change only contain the changed sections */
+            if (!mesh.containsSection(sectionY)) continue;
+
+            renderChunk.freeSection(sectionY, this.arena, this.culler);
+
+            DynamicByteBuffer vertices = mesh.getSection(sectionY);
+            if (vertices == null) continue;
+
+            VertexArena.Allocation allocation = this.arena.upload(vertices);
+            if (allocation == null) {
+                if (!this.arenaFull) {
+                    this.logger.warning("The chunk vertex arena is full, sections are skipped until memory is freed");
+                    this.arenaFull = true;
+                }
+                continue;
+            }
+            this.arenaFull = false;
+
+            int worldY = sectionY << ChunkSection.SHIFT;
+            int quadCount = mesh.getQuadCount(sectionY);
+            int cullSlot = this.culler.addSection(worldX, worldY, worldZ, width, quadCount * 6, allocation.getFirstVertex(ChunkMesher.VERTEX_SIZE));
+
+            renderChunk.setSection(sectionY, allocation, quadCount, cullSlot);
+            this.writePages(allocation, worldX, worldY, worldZ, level);
+        }
+    }
+
+    /**
+     * Store the origin and level of detail of the section in every page of its range.
+     */
+    private void writePages(VertexArena.Allocation allocation, int worldX, int worldY, int worldZ, int level) {
+        int firstPage = allocation.getOffset() / PAGE_SIZE;
+        int pageCount = (allocation.getSize() + PAGE_SIZE - 1) / PAGE_SIZE;
+
+        this.pageEntries.reset();
+        this.pageEntries.ensureCapacity(pageCount * PAGE_ENTRY_SIZE);
+        for (int i = 0; i < pageCount; i++) {
+            this.pageEntries.putIntNoGrow(worldX);
+            this.pageEntries.putIntNoGrow(worldY);
+            this.pageEntries.putIntNoGrow(worldZ);
+            this.pageEntries.putIntNoGrow(level);
+        }
+
+        GL15.glBindBuffer(GL31.GL_TEXTURE_BUFFER, this.pageBufferId);
+        GL15.nglBufferSubData(GL31.GL_TEXTURE_BUFFER, (long) firstPage * PAGE_ENTRY_SIZE, this.pageEntries.getPosition(), this.pageEntries.getAddress());
+        GL15.glBindBuffer(GL31.GL_TEXTURE_BUFFER, 0);
+    }
+
+    /**
+     * Write one draw per visible section, either as indirect command or into the arrays of the fallback.
+     */
+    private void buildDrawCommands(Matrix4f viewProjection) {
+        boolean indirect = this.properties.isUseMultiDrawIndirect();
+
+        this.commands.reset();
+        this.counts.reset();
+        this.indexOffsets.reset();
+        this.baseVertices.reset();
+
+        int visibleCount = this.cpuCuller.cull(viewProjection);
+        int[] visible = this.cpuCuller.getVisible();
+
+        for (int i = 0; i < visibleCount; i++) {
+            int indexCount = this.cpuCuller.getIndexCount(visible[i]);
+            int baseVertex = this.cpuCuller.getBaseVertex(visible[i]);
+
+            if (indirect) {
+                this.commands.ensureCapacity(COMMAND_SIZE);
+                this.commands.putIntNoGrow(indexCount);
+                this.commands.putIntNoGrow(1);
+                this.commands.putIntNoGrow(0);
+                this.commands.putIntNoGrow(baseVertex);
+                this.commands.putIntNoGrow(0);
+            } else {
+                this.counts.putInt(indexCount);
+                this.indexOffsets.putLong(0L);
+                this.baseVertices.putInt(baseVertex);
+            }
+        }
+        this.drawCount = visibleCount;
+    }
+
+    private void drawIndirect() {
+        GL15.glBindBuffer(GL40.GL_DRAW_INDIRECT_BUFFER, this.commandBufferId);
+        GL15.nglBufferData(GL40.GL_DRAW_INDIRECT_BUFFER, this.commands.getPosition(), this.commands.getAddress(), GL15.GL_STREAM_DRAW);
+        GL43.glMultiDrawElementsIndirect(GL11.GL_TRIANGLES, INDEX_TYPE, 0L, this.drawCount, 0);
+        GL15.glBindBuffer(GL40.GL_DRAW_INDIRECT_BUFFER, 0);
+    }
+
+    private void drawBaseVertex() {
+        GL32.nglMultiDrawElementsBaseVertex(GL11.GL_TRIANGLES, this.counts.getAddress(), INDEX_TYPE,
+                this.indexOffsets.getAddress(), this.drawCount, this.baseVertices.getAddress());
+    }
+
+    /**
+     * @return the number of draws of the last frame, with gpu culling the number of section slots before culling
+     */
+    public int getDrawCount() {
+        return drawCount;
+    }
+
+    public int getRenderChunkCount() {
+        return this.renderChunks.size();
+    }
+
+    public int getRenderLodTileCount() {
+        int count = 0;
+        for (ChunkMap<RenderChunk> renderTiles : this.lodRenderChunks) {
+            count += renderTiles.size();
+        }
+        return count;
+    }
+
+    public VertexArena getArena() {
+        return arena;
+    }
+
+    /**
+     * @return the culler of the sections, a {@link GpuChunkCuller} or a {@link CpuChunkCuller}
+     */
+    public IChunkCuller getCuller() {
+        return culler;
+    }
+
+    @Override
+    public void dispose() {
+        this.logger.debug("delete chunk renderer");
+
+        this.renderChunks.forEachValue(renderChunk -> renderChunk.free(this.arena, this.culler));
+        this.renderChunks.clear();
+        for (ChunkMap<RenderChunk> renderTiles : this.lodRenderChunks) {
+            renderTiles.forEachValue(renderTile -> renderTile.free(this.arena, this.culler));
+            renderTiles.clear();
+        }
+
+        if (this.shader != null) {
+            this.shader.dispose();
+            GL30.glDeleteVertexArrays(this.vertexArrayId);
+            GL15.glDeleteBuffers(this.indexBufferId);
+            GL15.glDeleteBuffers(this.pageBufferId);
+            GL11.glDeleteTextures(this.pageTextureId);
+            if (this.commandBufferId != 0) {
+                GL15.glDeleteBuffers(this.commandBufferId);
+            }
+            if (this.gpuCuller != null) {
+                this.gpuCuller.dispose();
+            }
+            this.arena.dispose();
+        }
+
+        this.commands.free();
+        this.counts.free();
+        this.indexOffsets.free();
+        this.baseVertices.free();
+        this.pageEntries.free();
+    }
+}
@@ -0,0 +1,160 @@
+package de.skyengine.game.world.render;
+
+import de.skyengine.game.world.chunk.ChunkSection;
+import org.joml.Matrix4f;
+import org.joml.Vector4f;
+
+import java.util.Arrays;
+
+/**
+ * Frustum culling of chunk sections on the CPU, used when the draws can't be generated by a shader.
+ * <p>
+ * The bounds are stored as structure of arrays, one float column per coordinate. Every frustum plane is applied to
+ * all sections in its own loop without branches, which keeps the loops simple enough for the JIT to auto-vectorize
+ * them. The corner to test is picked per plane and not per section, so the loops only read the columns.
+ * <p>
+ * Needs no OpenGL context.
+ */
+public class CpuChunkCuller implements IChunkCuller {
+
+    private static final int INITIAL_SLOTS = 1024;
+
+    private float[] minX;
+    private float[] minY;
+    private float[] minZ;
+    private float[] maxX;
+    private float[] maxY;
+    private float[] maxZ;
+
+    private int[] indexCounts;
+    private int[] baseVertices;
+
+    /** The smallest signed distance of each section to a plane, negative means it is outside */
+    private float[] distances;
+    private int[] visible;
+    private int visibleCount;
+
+    private int slotCount;
+    private int[] freeSlots;
+    private int freeSlotCount;
+
+    private final Vector4f plane;
+
+    public CpuChunkCuller() {
+        this.resize(INITIAL_SLOTS);
+        this.freeSlots = new int[256];
+        this.plane = new Vector4f();
+    }
+
+    @Override
+    public int addSection(int worldX, int worldY, int worldZ, int width, int indexCount, int baseVertex) {
+        return this.addBounds(worldX, worldY, worldZ, worldX + width, worldY + ChunkSection.SIZE, worldZ + width, indexCount, baseVertex);
+    }
+
+    /**
+     * Register arbitrary bounds, e.g. the bounds of the faces of a section instead of the whole section.
+     */
+    public int addBounds(float minX, float minY, float minZ, float maxX, float maxY, float maxZ, int indexCount, int baseVertex) {
+        int slot = this.freeSlotCount > 0 ? this.freeSlots[--this.freeSlotCount] : this.slotCount++;
+        if (slot >= this.indexCounts.length) {
+            this.resize(this.indexCounts.length * 2);
+        }
+
+        this.minX[slot] = minX;
+        this.minY[slot] = minY;
+        this.minZ[slot] = minZ;
+        this.maxX[slot] = maxX;
+        this.maxY[slot] = maxY;
+        this.maxZ[slot] = maxZ;
+        this.indexCounts[slot] = indexCount;
+        this.baseVertices[slot] = baseVertex;
+        return slot;
+    }
+
+    @Override
+    public void removeSection(int slot) {
+        /* An index count of 0 marks the slot as unused */
+        this.indexCounts[slot] = 0;
+
+        if (this.freeSlotCount == this.freeSlots.length) {
+            this.freeSlots = Arrays.copyOf(this.freeSlots, this.freeSlotCount * 2);
+        }
+        this.freeSlots[this.freeSlotCount++] = slot;
+    }
+
+    private void resize(int slots) {
+        this.minX = this.minX == null ? new float[slots] : Arrays.copyOf(this.minX, slots);
+        this.minY = this.minY == null ? new float[slots] : Arrays.copyOf(this.minY, slots);
+        this.minZ = this.minZ == null ? new float[slots] : Arrays.copyOf(this.minZ, slots);
+        this.maxX = this.maxX == null ? new float[slots] : Arrays.copyOf(this.maxX, slots);
+        this.maxY = this.maxY == null ? new float[slots] : Arrays.copyOf(this.maxY, slots);
+        this.maxZ = this.maxZ == null ? new float[slots] : Arrays.copyOf(this.maxZ, slots);
+        this.indexCounts = this.indexCounts == null ? new int[slots] : Arrays.copyOf(this.indexCounts, slots);
+        this.baseVertices = this.baseVertices == null ? new int[slots] : Arrays.copyOf(this.baseVertices, slots);
+        this.distances = new float[slots];
+        this.visible = new int[slots];
+    }
+
+    /**
+     * Find the sections that intersect the frustum of the given matrix.
+     *
+     * @return the number of visible sections, their slots are in {@link #getVisible()}
+     */
+    public int cull(Matrix4f viewProjection) {
+        int count = this.slotCount;
+        float[] distances = this.distances;
+        Arrays.fill(distances, 0, count, Float.POSITIVE_INFINITY);
+
+        for (int i = Matrix4f.PLANE_NX; i <= Matrix4f.PLANE_PZ; i++) {
+            viewProjection.frustumPlane(i, this.plane);
+            float a = this.plane.x, b = this.plane.y, c = this.plane.z, d = this.plane.w;
+
+            /* The corner furthest along the plane normal, if it is behind the plane the whole box is */
+            float[] xs = a >= 0.0F ? this.maxX : this.minX;
+            float[] ys = b >= 0.0F ? this.maxY : this.minY;
+            float[] zs = c >= 0.0F ? this.maxZ : this.minZ;
+
+            for (int j = 0; j < count; j++) {
+                distances[j] = Math.min(distances[j], a * xs[j] + b * ys[j] + c * zs[j] + d);
+            }
+        }
+
+        int[] indexCounts = this.indexCounts;
+        int visibleCount = 0;
+        for (int j = 0; j < count; j++) {
+            if (distances[j] >= 0.0F && indexCounts[j] != 0) {
+                this.visible[visibleCount++] = j;
+            }
+        }
+
+        this.visibleCount = visibleCount;
+        return visibleCount;
+    }
+
+    /**
+     * @return the slots found by the last {@link #cull(Matrix4f)}, only the first {@link #getVisibleCount()} are valid
+     */
+    public int[] getVisible() {
+        return visible;
+    }
+
+    public int getVisibleCount() {
+        return visibleCount;
+    }
+
+    public int getIndexCount(int slot) {
+        return this.indexCounts[slot];
+    }
+
+    public int getBaseVertex(int slot) {
+        return this.baseVertices[slot];
+    }
+
+    public int getSlotCount() {
+        return slotCount;
+    }
+
+    public int getSectionCount() {
+        return this.slotCount - this.freeSlotCount;
+    }
+}
@@ -0,0 +1,360 @@
+package de.skyengine.game.world.render;
+
+import de.skyengine.core.EngineProperties;
+import de.skyengine.core.SkyEngine;
+import de.skyengine.core.file.Files;
+import de.skyengine.core.io.IDisposable;
+import de.skyengine.game.world.chunk.ChunkSection;
+import de.skyengine.graphics.framebuffer.FrameBuffer;
+import de.skyengine.graphics.shader.Shader;
+import de.skyengine.graphics.shader.ShaderProgram;
+import de.skyengine.graphics.shader.ShaderType;
+import de.skyengine.util.DynamicByteBuffer;
+import de.skyengine.util.logging.LogManager;
+import de.skyengine.util.logging.Logger;
+import org.joml.Matrix4f;
+import org.lwjgl.opengl.ARBIndirectParameters;
+import org.lwjgl.opengl.GL11;
+import org.lwjgl.opengl.GL12;
+import org.lwjgl.opengl.GL13;
+import org.lwjgl.opengl.GL15;
+import org.lwjgl.opengl.GL30;
+import org.lwjgl.opengl.GL31;
+import org.lwjgl.opengl.GL40;
+import org.lwjgl.opengl.GL42;
+import org.lwjgl.opengl.GL43;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Generates the draw commands of the chunk sections with a compute shader.
+ * <p>
+ * Every section with visible faces owns a slot in a shader storage buffer with its bounds and draw parameters. The
+ * slots only change when a section is uploaded or freed, so a frame costs no CPU work per section. Each frame the
+ * compute shader tests all slots against the frustum and, if {@link EngineProperties#isUseOcclusionCulling()} is
+ * set, against a depth pyramid (Hi-Z) of the previous frame. There is no depth prepass, so the pyramid is built from
+ * the terrain depth after drawing and used with the view projection of that frame in the next one (temporal
+ * coherence). Sections that became visible are drawn one frame late at most.
+ * <p>
+ * With <code>GL_ARB_indirect_parameters</code> visible draws are appended with an atomic counter and drawn with
+ * <code>glMultiDrawElementsIndirectCount</code>. Without it every slot keeps its command and hidden sections get an
+ * instance count of 0.
+ * <p>
+ * All methods have to be called from the render thread.
+ */
+public class GpuChunkCuller implements IChunkCuller, IDisposable {
+
+    private final Logger logger = LogManager.getLogger(GpuChunkCuller.class.getName());
+
+    /** vec4 minimum, vec4 maximum, uvec4 draw */
+    public static final int SECTION_RECORD_SIZE = 12 * Integer.BYTES;
+
+    private static final int INITIAL_SLOTS = 4096;
+    private static final int CULL_GROUP_SIZE = 64;
+    private static final int DEPTH_GROUP_SIZE = 8;
+    private static final int DEPTH_PYRAMID_TEXTURE_UNIT = 2;
+
+    private final EngineProperties properties;
+    private final boolean compact;
+    private final boolean occlusion;
+
+    private ShaderProgram cullProgram;
+    private ShaderProgram depthProgram;
+
+    private int sectionBufferId;
+    private int commandBufferId;
+    private int parameterBufferId;
+    private int capacity;
+
+    private int slotCount;
+    private int[] freeSlots;
+    private int freeSlotCount;
+    private final DynamicByteBuffer record;
+
+    private int depthFramebufferId;
+    private int depthTextureId;
+    private int depthPyramidId;
+    private int depthWidth;
+    private int depthHeight;
+    private int depthLevels;
+    private boolean depthPyramidValid;
+    private final Matrix4f depthViewProjection;
+
+    public GpuChunkCuller(EngineProperties properties) {
+        this.properties = properties;
+        this.compact = properties.isSourceIndirectDrawCallCountFromBuffer();
+        this.occlusion = properties.isUseOcclusionCulling() && properties.isUseTemporalCoherenceOcclusionCulling();
+
+        this.freeSlots = new int[256];
+        this.record = new DynamicByteBuffer(SECTION_RECORD_SIZE);
+        this.depthViewProjection = new Matrix4f();
+    }
+
+    public void create() {
+        Files files = SkyEngine.get().getFiles();
+        this.cullProgram = new ShaderProgram(new Shader(files.resource("engine/shaders/cull.comp"), ShaderType.COMPUTE));
+        this.depthProgram = new ShaderProgram(new Shader(files.resource("engine/shaders/depth_pyramid.comp"), ShaderType.COMPUTE));
+
+        this.commandBufferId = GL15.glGenBuffers();
+        this.parameterBufferId = GL15.glGenBuffers();
+        this.resize(INITIAL_SLOTS);
+
+        GL15.glBindBuffer(GL43.GL_SHADER_STORAGE_BUFFER, this.parameterBufferId);
+        GL15.glBufferData(GL43.GL_SHADER_STORAGE_BUFFER, Integer.BYTES, GL15.GL_DYNAMIC_DRAW);
+        GL15.glBindBuffer(GL43.GL_SHADER_STORAGE_BUFFER, 0);
+
+        if (this.occlusion) {
+            this.depthFramebufferId = GL30.glGenFramebuffers();
+        }
+
+        this.logger.debug("Create gpu chunk culler (" + (this.compact ? "indirect count" : "instance count") + ", occlusion " + this.occlusion + ")");
+    }
+
+    @Override
+    public int addSection(int worldX, int worldY, int worldZ, int width, int indexCount, int baseVertex) {
+        int slot = this.freeSlotCount > 0 ? this.freeSlots[--this.freeSlotCount] : this.slotCount++;
+        if (slot >= this.capacity) {
+            this.resize(this.capacity * 2);
+        }
+
+        this.writeSlot(slot, worldX, worldY, worldZ, width, indexCount, baseVertex);
+        return slot;
+    }
+
+    @Override
+    public void removeSection(int slot) {
+        /* An index count of 0 marks the slot as unused for the shader */
+        this.writeSlot(slot, 0, 0, 0, 0, 0, 0);
+
+        if (this.freeSlotCount == this.freeSlots.length) {
+            this.freeSlots = Arrays.copyOf(this.freeSlots, this.freeSlotCount * 2);
+        }
+        this.freeSlots[this.freeSlotCount++] = slot;
+    }
+
+    private void writeSlot(int slot, int worldX, int worldY, int worldZ, int width, int indexCount, int baseVertex) {
+        this.record.reset();
+        this.record.putFloatNoGrow(worldX);
+        this.record.putFloatNoGrow(worldY);
+        this.record.putFloatNoGrow(worldZ);
+        this.record.putFloatNoGrow(0.0F);
+        this.record.putFloatNoGrow(worldX + width);
+        this.record.putFloatNoGrow(worldY + ChunkSection.SIZE);
+        this.record.putFloatNoGrow(worldZ + width);
+        this.record.putFloatNoGrow(0.0F);
+        this.record.putIntNoGrow(indexCount);
+        this.record.putIntNoGrow(baseVertex);
+        this.record.putIntNoGrow(0);
+        this.record.putIntNoGrow(0);
+
+        GL15.glBindBuffer(GL43.GL_SHADER_STORAGE_BUFFER, this.sectionBufferId);
+        GL15.nglBufferSubData(GL43.GL_SHADER_STORAGE_BUFFER, (long) slot * SECTION_RECORD_SIZE, SECTION_RECORD_SIZE, this.record.getAddress());
+        GL15.glBindBuffer(GL43.GL_SHADER_STORAGE_BUFFER, 0);
+    }
+
+    /**
+     * Grow the slot buffers, the registered sections are copied on the GPU.
+     */
+    private void resize(int slots) {
+        int buffer = GL15.glGenBuffers();
+        GL15.glBindBuffer(GL31.GL_COPY_WRITE_BUFFER, buffer);
+        GL15.glBufferData(GL31.GL_COPY_WRITE_BUFFER, (long) slots * SECTION_RECORD_SIZE, GL15.GL_DYNAMIC_DRAW);
+
+        if (this.capacity > 0) {
+            GL15.glBindBuffer(GL31.GL_COPY_READ_BUFFER, this.sectionBufferId);
+            GL31.glCopyBufferSubData(GL31.GL_COPY_READ_BUFFER, GL31.GL_COPY_WRITE_BUFFER, 0, 0, (long) this.capacity * SECTION_RECORD_SIZE);
+            GL15.glBindBuffer(GL31.GL_COPY_READ_BUFFER, 0);
+        }
+        GL15.glBindBuffer(GL31.GL_COPY_WRITE_BUFFER, 0);
+        GL15.glDeleteBuffers(this.sectionBufferId);
+        this.sectionBufferId = buffer;
+
+        /* The commands are written from scratch every frame */
+        GL15.glBindBuffer(GL40.GL_DRAW_INDIRECT_BUFFER, this.commandBufferId);
+        GL15.glBufferData(GL40.GL_DRAW_INDIRECT_BUFFER, (long) slots * ChunkRenderer.COMMAND_SIZE, GL15.GL_DYNAMIC_DRAW);
+        GL15.glBindBuffer(GL40.GL_DRAW_INDIRECT_BUFFER, 0);
+
+        this.capacity = slots;
+    }
+
+    /**
+     * Write the draw commands of all sections visible with the given view projection.
+     */
+    public void cull(Matrix4f viewProjection) {
+        if (this.slotCount == 0) return;
+
+        if (this.compact) {
+            /* Reset the draw count on the GPU, without data the range is filled with zeros */
+            GL15.glBindBuffer(GL43.GL_SHADER_STORAGE_BUFFER, this.parameterBufferId);
+            GL43.glClearBufferSubData(GL43.GL_SHADER_STORAGE_BUFFER, GL30.GL_R32UI, 0, Integer.BYTES, GL30.GL_RED_INTEGER, GL11.GL_UNSIGNED_INT, (ByteBuffer) null);
+            GL15.glBindBuffer(GL43.GL_SHADER_STORAGE_BUFFER, 0);
+        }
+
+        boolean useDepthPyramid = this.occlusion && this.depthPyramidValid;
+
+        this.cullProgram.bind();
+        this.cullProgram.setUniformMatrix4f("u_viewProjection", viewProjection);
+        this.cullProgram.setUniformi("u_sectionCount", this.slotCount);
+        this.cullProgram.setUniformi("u_compact", this.compact ? 1 : 0);
+        this.cullProgram.setUniformi("u_occlusion", useDepthPyramid ? 1 : 0);
+        this.cullProgram.setUniformi("u_inverseDepth", this.properties.isUseInverseDepth() ? 1 : 0);
+
+        if (useDepthPyramid) {
+            this.cullProgram.setUniformMatrix4f("u_lastViewProjection", this.depthViewProjection);
+            this.cullProgram.setUniformi("u_depthLevels", this.depthLevels);
+            this.cullProgram.setUniformi("u_depthPyramid", DEPTH_PYRAMID_TEXTURE_UNIT);
+
+            GL13.glActiveTexture(GL13.GL_TEXTURE0 + DEPTH_PYRAMID_TEXTURE_UNIT);
+            GL11.glBindTexture(GL11.GL_TEXTURE_2D, this.depthPyramidId);
+            GL13.glActiveTexture(GL13.GL_TEXTURE0);
+        }
+
+        GL30.glBindBufferBase(GL43.GL_SHADER_STORAGE_BUFFER, 0, this.sectionBufferId);
+        GL30.glBindBufferBase(GL43.GL_SHADER_STORAGE_BUFFER, 1, this.commandBufferId);
+        GL30.glBindBufferBase(GL43.GL_SHADER_STORAGE_BUFFER, 2, this.parameterBufferId);
+
+        GL43.glDispatchCompute((this.slotCount + CULL_GROUP_SIZE - 1) / CULL_GROUP_SIZE, 1, 1);
+        GL42.glMemoryBarrier(GL42.GL_COMMAND_BARRIER_BIT | GL42.GL_SHADER_STORAGE_BARRIER_BIT);
+
+        this.cullProgram.unbind();
+    }
+
+    /**
+     * Draw the commands of the last {@link #cull(Matrix4f)}, the vertex array and shader have to be bound.
+     */
+    public void draw() {
+        if (this.slotCount == 0) return;
+
+        GL15.glBindBuffer(GL40.GL_DRAW_INDIRECT_BUFFER, this.commandBufferId);
+        if (this.compact) {
+            GL15.glBindBuffer(ARBIndirectParameters.GL_PARAMETER_BUFFER_ARB, this.parameterBufferId);
+            ARBIndirectParameters.glMultiDrawElementsIndirectCountARB(GL11.GL_TRIANGLES, ChunkRenderer.INDEX_TYPE, 0L, 0L, this.slotCount, 0);
+            GL15.glBindBuffer(ARBIndirectParameters.GL_PARAMETER_BUFFER_ARB, 0);
+        } else {
+            GL43.glMultiDrawElementsIndirect(GL11.GL_TRIANGLES, ChunkRenderer.INDEX_TYPE, 0L, this.slotCount, 0);
+        }
+        GL15.glBindBuffer(GL40.GL_DRAW_INDIRECT_BUFFER, 0);
+    }
+
+    /**
+     * Build the depth pyramid for the next frame from the depth of the given framebuffer, which stays bound. The
+     * framebuffer has to be cleared at the start of the frame and the terrain drawn with depth test, see
+     * {@link ChunkRenderer}.
+     */
+    public void updateDepthPyramid(FrameBuffer frameBuffer, Matrix4f viewProjection) {
+        if (!this.occlusion) return;
+
+        int width = frameBuffer.getWidth(), height = frameBuffer.getHeight();
+        if (width != this.depthWidth || height != this.depthHeight) {
+            this.createDepthTextures(width, height);
+        }
+
+        /* Resolve the multisampled depth into a texture the compute shader can read */
+        GL30.glBindFramebuffer(GL30.GL_READ_FRAMEBUFFER, frameBuffer.getId());
+        GL30.glBindFramebuffer(GL30.GL_DRAW_FRAMEBUFFER, this.depthFramebufferId);
+        GL30.glBlitFramebuffer(0, 0, width, height, 0, 0, width, height, GL11.GL_DEPTH_BUFFER_BIT, GL11.GL_NEAREST);
+        GL30.glBindFramebuffer(GL30.GL_FRAMEBUFFER, frameBuffer.getId());
+
+        this.depthProgram.bind();
+        this.depthProgram.setUniformi("u_source", DEPTH_PYRAMID_TEXTURE_UNIT);
+        this.depthProgram.setUniformi("u_inverseDepth", this.properties.isUseInverseDepth() ? 1 : 0);
+        GL13.glActiveTexture(GL13.GL_TEXTURE0 + DEPTH_PYRAMID_TEXTURE_UNIT);
+
+        for (int level = 0; level < this.depthLevels; level++) {
+            GL11.glBindTexture(GL11.GL_TEXTURE_2D, level == 0 ? this.depthTextureId : this.depthPyramidId);
+            this.depthProgram.setUniformi("u_copy", level == 0 ? 1 : 0);
+            this.depthProgram.setUniformi("u_sourceLevel", Math.max(level - 1, 0));
+            GL42.glBindImageTexture(0, this.depthPyramidId, level, false, 0, GL15.GL_WRITE_ONLY, GL30.GL_R32F);
+
+            int levelWidth = Math.max(width >> level, 1), levelHeight = Math.max(height >> level, 1);
+            GL43.glDispatchCompute((levelWidth + DEPTH_GROUP_SIZE - 1) / DEPTH_GROUP_SIZE, (levelHeight + DEPTH_GROUP_SIZE - 1) / DEPTH_GROUP_SIZE, 1);
+            GL42.glMemoryBarrier(GL42.GL_TEXTURE_FETCH_BARRIER_BIT);
+        }
+
+        GL11.glBindTexture(GL11.GL_TEXTURE_2D, 0);
+        GL13.glActiveTexture(GL13.GL_TEXTURE0);
+        this.depthProgram.unbind();
+
+        this.depthViewProjection.set(viewProjection);
+        this.depthPyramidValid = true;
+    }
+
+    private void createDepthTextures(int width, int height) {
+        this.deleteDepthTextures();
+
+        this.depthWidth = width;
+        this.depthHeight = height;
+        this.depthLevels = 32 - Integer.numberOfLeadingZeros(Math.max(width, height));
+
+        this.depthTextureId = GL11.glGenTextures();
+        GL11.glBindTexture(GL11.GL_TEXTURE_2D, this.depthTextureId);
+        GL42.glTexStorage2D(GL11.GL_TEXTURE_2D, 1, GL30.GL_DEPTH_COMPONENT32F, width, height);
+        GL11.glTexParameteri(GL11.GL_TEXTURE_2D, GL11.GL_TEXTURE_MIN_FILTER, GL11.GL_NEAREST);
+        GL11.glTexParameteri(GL11.GL_TEXTURE_2D, GL11.GL_TEXTURE_MAG_FILTER, GL11.GL_NEAREST);
+
+        this.depthPyramidId = GL11.glGenTextures();
+        GL11.glBindTexture(GL11.GL_TEXTURE_2D, this.depthPyramidId);
+        GL42.glTexStorage2D(GL11.GL_TEXTURE_2D, this.depthLevels, GL30.GL_R32F, width, height);
+        GL11.glTexParameteri(GL11.GL_TEXTURE_2D, GL11.GL_TEXTURE_MIN_FILTER, GL11.GL_NEAREST_MIPMAP_NEAREST);
+        GL11.glTexParameteri(GL11.GL_TEXTURE_2D, GL11.GL_TEXTURE_MAG_FILTER, GL11.GL_NEAREST);
+        GL11.glTexParameteri(GL11.GL_TEXTURE_2D, GL12.GL_TEXTURE_MAX_LEVEL, this.depthLevels - 1);
+        GL11.glBindTexture(GL11.GL_TEXTURE_2D, 0);
+
+        GL30.glBindFramebuffer(GL30.GL_DRAW_FRAMEBUFFER, this.depthFramebufferId);
+        GL30.glFramebufferTexture2D(GL30.GL_DRAW_FRAMEBUFFER, GL30.GL_DEPTH_ATTACHMENT, GL11.GL_TEXTURE_2D, this.depthTextureId, 0);
+        GL11.glDrawBuffer(GL11.GL_NONE);
+
+        int status = GL30.glCheckFramebufferStatus(GL30.GL_DRAW_FRAMEBUFFER);
+        if (status != GL30.GL_FRAMEBUFFER_COMPLETE) {
+            this.logger.error("Depth pyramid framebuffer is not complete! Status: " + status);
+        }
+        GL30.glBindFramebuffer(GL30.GL_DRAW_FRAMEBUFFER, 0);
+
+        this.depthPyramidValid = false;
+    }
+
+    private void deleteDepthTextures() {
+        if (this.depthTextureId != 0) {
+            GL11.glDeleteTextures(this.depthTextureId);
+            GL11.glDeleteTextures(this.depthPyramidId);
+            this.depthTextureId = 0;
+            this.depthPyramidId = 0;
+        }
+    }
+
+    /**
+     * @return the number of slots the compute shader has to look at, including free ones
+     */
+    public int getSlotCount() {
+        return slotCount;
+    }
+
+    public int getSectionCount() {
+        return this.slotCount - this.freeSlotCount;
+    }
+
+    public boolean isOcclusion() {
+        return occlusion;
+    }
+
+    @Override
+    public void dispose() {
+        this.logger.debug("delete gpu chunk culler");
+
+        if (this.cullProgram != null) {
+            this.cullProgram.dispose();
+            this.depthProgram.dispose();
+            GL15.glDeleteBuffers(this.sectionBufferId);
+            GL15.glDeleteBuffers(this.commandBufferId);
+            GL15.glDeleteBuffers(this.parameterBufferId);
+
+            this.deleteDepthTextures();
+            if (this.depthFramebufferId != 0) {
+                GL30.glDeleteFramebuffers(this.depthFramebufferId);
+            }
+        }
+
+        this.record.free();
+    }
+}
@@ -0,0 +1,19 @@
+package de.skyengine.game.world.render;
+
+/**
+ * Keeps the bounds and draw parameters of the chunk sections the {@link ChunkRenderer} can draw and decides which
+ * of them are visible.
+ */
+public interface IChunkCuller {
+
+    /**
+     * Register a section with visible faces.
+     *
+     * @param width the horizontal size of the section in blocks, larger than a chunk for far terrain tiles
+     *
+     * @return the slot of the section, it has to be given back with {@link #removeSection(int)}
+     */
+    int addSection(int worldX, int worldY, int worldZ, int width, int indexCount, int baseVertex);
+
+    void removeSection(int slot);
+}
@@ -0,0 +1,64 @@
+package de.skyengine.game.world.render;
+
+import de.skyengine.game.world.chunk.Chunk;
+import de.skyengine.game.world.lod.LodTile;
+import de.skyengine.graphics.buffer.VertexArena;
+
+/**
+ * The GPU side of a chunk or a {@link LodTile}: the range of the vertex arena for every section that has visible faces.
+ */
+class RenderChunk {
+
+    /** The chunk or far terrain tile the sections were built from. */
+    private final Object source;
+    private final VertexArena.Allocation[] sections;
+    private final int[] quadCounts;
+    private final int[] cullSlots;
+
+    RenderChunk(Object source) {
+        this.source = source;
+        this.sections = new VertexArena.Allocation[Chunk.SECTION_COUNT];
+        this.quadCounts = new int[Chunk.SECTION_COUNT];
+        this.cullSlots = new int[Chunk.SECTION_COUNT];
+    }
+
+    /**
+     * @param cullSlot the slot of the section in the {@link IChunkCuller}
+     */
+    void setSection(int sectionY, VertexArena.Allocation allocation, int quadCount, int cullSlot) {
+        this.sections[sectionY] = allocation;
+        this.quadCounts[sectionY] = quadCount;
+        this.cullSlots[sectionY] = cullSlot;
+    }
+
+    /**
+     * @param culler the culler the section is registered in
+     */
+    void freeSection(int sectionY, VertexArena arena, IChunkCuller culler) {
+        if (this.sections[sectionY] != null) {
+            arena.free(this.sections[sectionY]);
+            culler.removeSection(this.cullSlots[sectionY]);
+
+            this.sections[sectionY] = null;
+            this.quadCounts[sectionY] = 0;
+        }
+    }
+
+    void free(VertexArena arena, IChunkCuller culler) {
+        for (int i = 0; i < this.sections.length; i++) {
+            this.freeSection(i, arena, culler);
+        }
+    }
+
+    VertexArena.Allocation getSection(int sectionY) {
+        return this.sections[sectionY];
+    }
+
+    int getQuadCount(int sectionY) {
+        return this.quadCounts[sectionY];
+    }
+
+    Object getSource() {
+        return source;
+    }
+}
@@ -0,0 +1,267 @@
+package de.skyengine.game.world.storage;
+
+import de.skyengine.core.io.IDisposable;
+import de.skyengine.game.world.chunk.Chunk;
+import de.skyengine.util.logging.LogManager;
+import de.skyengine.util.logging.Logger;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Append-only log of the block changes made since the last completed save, so a crash between two saves
+ * doesn't lose them. Every change is one record of {@value #RECORD_BYTES} bytes:
+ * <pre>
+ * int   chunk x
+ * int   chunk z
+ * short local position: y &lt;&lt; 8 | z &lt;&lt; 4 | x
+ * short block id
+ * </pre>
+ * Records are collected in memory and appended to the current segment file <code>chunks.[segment].journal</code>
+ * by a background thread every {@value #COMMIT_INTERVAL_MILLIS} ms, so appending never waits for the disk and a crash
+ * loses at most the changes of the last interval. A save starts a new segment with {@link #rotate()} and deletes
+ * the older ones with {@link #delete(int)} once its chunks are written.
+ */
+public class ChunkJournal implements IDisposable {
+
+    private final Logger logger = LogManager.getLogger(ChunkJournal.class.getName());
+
+    public static final int RECORD_BYTES = 2 * Integer.BYTES + 2 * Short.BYTES;
+
+    private static final int COMMIT_INTERVAL_MILLIS = 50;
+
+    private static final String PREFIX = "chunks.";
+    private static final String SUFFIX = ".journal";
+
+    public interface IRecordConsumer {
+        void accept(int chunkX, int chunkZ, int x, int y, int z, int id);
+    }
+
+    private final File directory;
+    private final ScheduledExecutorService executor;
+
+    /** Records that are not written yet and the segment new records belong to, guarded by <code>this</code>. */
+    private ByteBuffer pending;
+    private int segment;
+
+    /** The open segment file, only accessed by the journal thread. */
+    private FileChannel channel;
+    private int channelSegment = -1;
+
+    /**
+     * Segments that already exist in the directory are kept for {@link #replay(IRecordConsumer)},
+     * new records go into a new segment.
+     */
+    public ChunkJournal(File directory) {
+        this.directory = directory;
+
+        int[] segments = this.listSegments();
+        this.segment = segments.length == 0 ? 0 : segments[segments.length - 1] + 1;
+        this.pending = ByteBuffer.allocate(RECORD_BYTES * 256);
+
+        this.executor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r);
+            t.setName("Chunk Journal");
+            t.setDaemon(true);
+            return t;
+        });
+        this.executor.scheduleWithFixedDelay(this::commit, COMMIT_INTERVAL_MILLIS, COMMIT_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Record that the block at the given position was set to the given id.
+     *
+     * @param x local x coordinate (0-15)
+     * @param y world y coordinate (0-255)
+     * @param z local z coordinate (0-15)
+     */
+    public synchronized void append(int chunkX, int chunkZ, int x, int y, int z, int id) {
+        if (this.pending.remaining() < RECORD_BYTES) {
+            ByteBuffer grown = ByteBuffer.allocate(this.pending.capacity() << 1);
+            this.pending.flip();
+            this.pending = grown.put(this.pending);
+        }
+
+        this.pending.putInt(chunkX);
+        this.pending.putInt(chunkZ);
+        this.pending.putShort((short) (y << (Chunk.CHUNK_SHIFT_WIDTH << 1) | (z & 0xF) << Chunk.CHUNK_SHIFT_WIDTH | (x & 0xF)));
+        this.pending.putShort((short) id);
+    }
+
+    /**
+     * Start a new segment for the following records.
+     *
+     * @return the last segment that only contains records appended before this call
+     */
+    public int rotate() {
+        ByteBuffer records;
+        int closed;
+        synchronized (this) {
+            records = this.takePending();
+            closed = this.segment++;
+        }
+
+        if (records != null) {
+            this.executor.execute(() -> this.write(closed, records));
+        }
+        return closed;
+    }
+
+    /**
+     * Delete all segments up to and including the given one in the background, after their changes were saved.
+     */
+    public void delete(int lastSegment) {
+        this.executor.execute(() -> {
+            if (this.channel != null && this.channelSegment <= lastSegment) {
+                this.closeChannel();
+            }
+
+            for (int segment : this.listSegments()) {
+                if (segment <= lastSegment && !this.getFile(segment).delete()) {
+                    this.logger.error("Could not delete journal segment " + this.getFile(segment));
+                }
+            }
+        });
+    }
+
+    /**
+     * Pass all records of the segments that existed when the journal was opened to the consumer, oldest first.
+     * An incomplete record at the end of a segment (the process died while writing it) is ignored.
+     *
+     * @return the number of records
+     */
+    public int replay(IRecordConsumer consumer) throws IOException {
+        int records = 0;
+        for (int segment : this.listSegments()) {
+            if (segment >= this.segment) break;
+
+            ByteBuffer in = ByteBuffer.wrap(Files.readAllBytes(this.getFile(segment).toPath()));
+            while (in.remaining() >= RECORD_BYTES) {
+                int chunkX = in.getInt();
+                int chunkZ = in.getInt();
+                int position = in.getShort() & 0xFFFF;
+                int id = in.getShort() & 0xFFFF;
+
+                consumer.accept(chunkX, chunkZ, position & 0xF, position >> (Chunk.CHUNK_SHIFT_WIDTH << 1),
+                        (position >> Chunk.CHUNK_SHIFT_WIDTH) & 0xF, id);
+                records++;
+            }
+        }
+        return records;
+    }
+
+    /**
+     * @return the segment new records are appended to
+     */
+    public synchronized int getSegment() {
+        return segment;
+    }
+
+    private void commit() {
+        ByteBuffer records;
+        int segment;
+        synchronized (this) {
+            records = this.takePending();
+            segment = this.segment;
+        }
+
+        if (records != null) {
+            this.write(segment, records);
+        }
+    }
+
+    /**
+     * @return the pending records ready to be written or <code>null</code> if there are none
+     */
+    private ByteBuffer takePending() {
+        if (this.pending.position() == 0) return null;
+
+        ByteBuffer records = this.pending;
+        this.pending = ByteBuffer.allocate(records.capacity());
+        return records.flip();
+    }
+
+    private void write(int segment, ByteBuffer records) {
+        try {
+            if (this.channel == null || this.channelSegment != segment) {
+                this.closeChannel();
+                this.channel = FileChannel.open(this.getFile(segment).toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+                this.channelSegment = segment;
+            }
+
+            while (records.hasRemaining()) {
+                this.channel.write(records);
+            }
+            this.channel.force(false);
+        } catch (IOException e) {
+            this.logger.error("Could not write " + (records.limit() / RECORD_BYTES) + " block changes to the journal", e);
+        }
+    }
+
+    private void closeChannel() {
+        if (this.channel == null) return;
+
+        try {
+            this.channel.close();
+        } catch (IOException e) {
+            this.logger.error("Could not close journal segment " + this.getFile(this.channelSegment), e);
+        }
+        this.channel = null;
+        this.channelSegment = -1;
+    }
+
+    /**
+     * @return the numbers of the existing segment files in ascending order
+     */
+    private int[] listSegments() {
+        String[] names = this.directory.list((dir, name) -> name.startsWith(PREFIX) && name.endsWith(SUFFIX));
+        if (names == null) return new int[0];
+
+        int[] segments = new int[names.length];
+        int count = 0;
+        for (String name : names) {
+            try {
+                segments[count] = Integer.parseInt(name.substring(PREFIX.length(), name.length() - SUFFIX.length()));
+                count++;
+            } catch (NumberFormatException e) {
+                this.logger.warning("Ignoring unknown journal file " + name);
+            }
+        }
+
+        segments = Arrays.copyOf(segments, count);
+        Arrays.sort(segments);
+        return segments;
+    }
+
+    private File getFile(int segment) {
+        return new File(this.directory, PREFIX + segment + SUFFIX);
+    }
+
+    /**
+     * Write the pending records and close the current segment.
+     */
+    @Override
+    public void dispose() {
+        this.executor.execute(() -> {
+            this.commit();
+            this.closeChannel();
+        });
+        this.executor.shutdown();
+
+        try {
+            if (!this.executor.awaitTermination(10, TimeUnit.SECONDS)) {
+                this.logger.error("Journal did not finish in time, the last block changes might be lost");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
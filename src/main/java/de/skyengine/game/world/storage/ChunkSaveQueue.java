@@ -0,0 +1,261 @@
+package de.skyengine.game.world.storage;
+
+import de.skyengine.core.io.IDisposable;
+import de.skyengine.game.world.chunk.Chunk;
+import de.skyengine.game.world.chunk.ChunkMap;
+import de.skyengine.game.world.chunk.ChunkPosition;
+import de.skyengine.game.world.chunk.IChunkStorage;
+import de.skyengine.util.logging.LogManager;
+import de.skyengine.util.logging.Logger;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+
+/**
+ * Saves chunks that changed in the background without blocking the update thread.
+ * <p>
+ * Block changes made by the game are written to a {@link ChunkJournal} and the chunk is added to a dirty set,
+ * so any number of changes to the same chunk is saved once. Every autosave interval the dirty chunks are sorted
+ * by their region file and serialized over the following updates, at most 1 ms per update. Compressing and
+ * writing happens on the I/O thread of the {@link RegionStorage}. Once the region files are flushed the journal
+ * segments covered by the autosave are deleted. After a chunk could not be saved no segment is deleted anymore,
+ * so its changes are replayed by {@link #recover(Consumer)} on the next start.
+ * <p>
+ * As the storage of the chunk manager it only saves unloaded chunks that changed since they were loaded.
+ * Except for {@link #load(Chunk)} all methods have to be called from the update thread.
+ */
+public class ChunkSaveQueue implements IChunkStorage, IDisposable {
+
+    private final Logger logger = LogManager.getLogger(ChunkSaveQueue.class.getName());
+
+    public static final long DEFAULT_AUTOSAVE_INTERVAL_MILLIS = 30_000L;
+
+    private static final long SNAPSHOT_BUDGET_NANOS = 1_000_000L;
+
+    /** Chunks of the same region file are saved after each other. */
+    private static final Comparator<Chunk> REGION_ORDER = Comparator
+            .comparingInt((Chunk chunk) -> chunk.getPosition().getZ() >> RegionFile.SHIFT)
+            .thenComparingInt(chunk -> chunk.getPosition().getX() >> RegionFile.SHIFT)
+            .thenComparingInt(chunk -> chunk.getPosition().getZ())
+            .thenComparingInt(chunk -> chunk.getPosition().getX());
+
+    private final RegionStorage storage;
+    private final ChunkJournal journal;
+
+    /** Chunks changed by the game since the last autosave started. */
+    private final ChunkMap<Chunk> dirty;
+
+    private long autosaveInterval = DEFAULT_AUTOSAVE_INTERVAL_MILLIS;
+    private long nextAutosave;
+
+    /** Chunks of the running autosave in region order, <code>null</code> if no autosave is running. */
+    private Chunk[] batch;
+    private int batchIndex;
+    private int batchSegment;
+
+    /** Set by the I/O thread once a save failed, the journal up to that point is needed by the next start. */
+    private volatile boolean saveFailed;
+
+    /**
+     * @param directory the world directory that holds the journal
+     */
+    public ChunkSaveQueue(RegionStorage storage, File directory) {
+        this.storage = storage;
+        this.journal = new ChunkJournal(directory);
+        this.dirty = new ChunkMap<>(256);
+        this.nextAutosave = System.currentTimeMillis() + this.autosaveInterval;
+    }
+
+    /**
+     * Apply the block changes that are left in the journal after a crash to the saved chunks and save them.
+     * Chunks with changes that were never saved are generated first. Has to be called before any chunk is loaded.
+     *
+     * @param generator brings a new chunk to {@link ChunkSerializer#SAVED_STATUS}
+     */
+    public void recover(Consumer<Chunk> generator) {
+        ChunkMap<Chunk> chunks = new ChunkMap<>();
+        int records;
+        try {
+            records = this.journal.replay((chunkX, chunkZ, x, y, z, id) -> {
+                long key = ChunkPosition.pack(chunkX, chunkZ);
+                Chunk chunk = chunks.get(key);
+                if (chunk == null) {
+                    chunk = new Chunk(new ChunkPosition(chunkX, chunkZ));
+                    if (!this.storage.load(chunk).join()) {
+                        generator.accept(chunk);
+                    }
+                    chunks.put(key, chunk);
+                }
+                chunk.setBlock(x, y, z, id);
+            });
+        } catch (IOException e) {
+            throw new RuntimeException("Could not read the chunk journal", e);
+        }
+
+        if (records == 0) return;
+
+        @SuppressWarnings("unchecked")
+        CompletableFuture<Boolean>[] saves = new CompletableFuture[chunks.size()];
+        int count = 0;
+        for (int slot = chunks.firstSlot(); slot >= 0; slot = chunks.nextSlot(slot)) {
+            saves[count++] = this.storage.saveAsync(chunks.valueAt(slot));
+        }
+        boolean saved = CompletableFuture.allOf(saves).thenCompose(v -> this.storage.flush()).join();
+        for (CompletableFuture<Boolean> save : saves) {
+            saved &= save.join();
+        }
+        if (!saved) {
+            this.saveFailed = true;
+            this.logger.error("Could not save all recovered chunks, keeping the journal for the next start");
+            return;
+        }
+        this.journal.delete(this.journal.getSegment() - 1);
+
+        this.logger.info("Recovered " + records + " block changes in " + chunks.size() + " chunks from the journal");
+    }
+
+    /**
+     * Record a block change made by the game. Changes made by the generation stages are not recorded,
+     * they can be repeated.
+     *
+     * @param x local x coordinate (0-15)
+     * @param y world y coordinate (0-255)
+     * @param z local z coordinate (0-15)
+     */
+    public void onBlockChanged(Chunk chunk, int x, int y, int z, int id) {
+        ChunkPosition position = chunk.getPosition();
+        this.journal.append(position.getX(), position.getZ(), x, y, z, id);
+        this.dirty.put(position.toLong(), chunk);
+    }
+
+    /**
+     * Start an autosave when it is due and continue the running one.
+     */
+    public void update() {
+        if (this.batch == null) {
+            if (this.dirty.isEmpty() || System.currentTimeMillis() < this.nextAutosave) return;
+            this.startAutosave();
+        }
+
+        long deadline = System.nanoTime() + SNAPSHOT_BUDGET_NANOS;
+        do {
+            this.snapshot(this.batch[this.batchIndex++]);
+        } while (this.batchIndex < this.batch.length && System.nanoTime() < deadline);
+
+        if (this.batchIndex == this.batch.length) {
+            /* The flush runs on the I/O thread after all saves of the batch, so their results are known */
+            int segment = this.batchSegment;
+            this.storage.flush().thenAccept(flushed -> this.deleteJournal(segment, flushed));
+
+            this.logger.debug("Autosaved " + this.batch.length + " chunks");
+            this.batch = null;
+            this.nextAutosave = System.currentTimeMillis() + this.autosaveInterval;
+        }
+    }
+
+    private void startAutosave() {
+        /* Everything appended before the rotation is part of a chunk in the batch or was saved on unload */
+        this.batchSegment = this.journal.rotate();
+        this.batch = this.takeDirty();
+        this.batchIndex = 0;
+        Arrays.sort(this.batch, REGION_ORDER);
+    }
+
+    private Chunk[] takeDirty() {
+        Chunk[] chunks = new Chunk[this.dirty.size()];
+        int count = 0;
+        for (int slot = this.dirty.firstSlot(); slot >= 0; slot = this.dirty.nextSlot(slot)) {
+            chunks[count++] = this.dirty.valueAt(slot);
+        }
+        this.dirty.clear();
+        return chunks;
+    }
+
+    /**
+     * Serialize the chunk if it changed since its last save and pass it to the I/O thread.
+     */
+    private void snapshot(Chunk chunk) {
+        if (!chunk.isDirty() || !ChunkSerializer.isSaveable(chunk)) return;
+
+        chunk.setDirty(false);
+        this.storage.saveAsync(chunk).thenAccept(saved -> {
+            if (!saved) this.saveFailed = true;
+        });
+    }
+
+    /**
+     * Delete the journal up to the given segment after its chunks were flushed, unless a save or the flush failed.
+     */
+    private void deleteJournal(int segment, boolean flushed) {
+        if (!flushed) this.saveFailed = true;
+        if (this.saveFailed) {
+            this.logger.warning("Keeping the chunk journal, a chunk could not be saved and is recovered on the next start");
+            return;
+        }
+        this.journal.delete(segment);
+    }
+
+    /**
+     * Save all changed chunks right away and wait until they are written.
+     */
+    public void saveAll() {
+        int segment = this.journal.rotate();
+        if (this.batch != null) {
+            while (this.batchIndex < this.batch.length) {
+                this.snapshot(this.batch[this.batchIndex++]);
+            }
+            this.batch = null;
+        }
+
+        for (Chunk chunk : this.takeDirty()) {
+            this.snapshot(chunk);
+        }
+
+        this.deleteJournal(segment, this.storage.flush().join());
+        this.nextAutosave = System.currentTimeMillis() + this.autosaveInterval;
+    }
+
+    @Override
+    public CompletableFuture<Boolean> load(Chunk chunk) {
+        return this.storage.load(chunk);
+    }
+
+    /**
+     * Save the chunk if it changed since it was loaded, it leaves the dirty set.
+     */
+    @Override
+    public void save(Chunk chunk) {
+        this.dirty.remove(chunk.getPosition().toLong());
+        this.snapshot(chunk);
+    }
+
+    public void setAutosaveInterval(long autosaveInterval) {
+        this.autosaveInterval = autosaveInterval;
+        this.nextAutosave = System.currentTimeMillis() + autosaveInterval;
+    }
+
+    public long getAutosaveInterval() {
+        return autosaveInterval;
+    }
+
+    public int getDirtyChunkCount() {
+        return this.dirty.size();
+    }
+
+    public ChunkJournal getJournal() {
+        return journal;
+    }
+
+    /**
+     * Save all changed chunks and close the journal. The region storage stays open.
+     */
+    @Override
+    public void dispose() {
+        this.saveAll();
+        this.journal.dispose();
+    }
+}
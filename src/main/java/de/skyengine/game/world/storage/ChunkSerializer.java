@@ -0,0 +1,100 @@
+package de.skyengine.game.world.storage;
+
+import de.skyengine.game.world.chunk.Chunk;
+import de.skyengine.game.world.chunk.ChunkSection;
+import de.skyengine.game.world.chunk.ChunkStatus;
+import de.skyengine.game.world.chunk.Heightmap;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+
+/**
+ * Converts the blocks, biomes and status of a chunk to bytes and back.
+ * <pre>
+ * int   format version
+ * byte  status ordinal
+ * short bit mask of the sections that are not air
+ *       the sections, see {@link ChunkSection#write}
+ *       the biome ids, see {@link Chunk#getBiomeData()}
+ * short the heightmaps in the order of {@link Heightmap.Type}, see {@link Heightmap#getData()}
+ * </pre>
+ */
+public class ChunkSerializer {
+
+    public static final int VERSION = 1;
+
+    /** The last status with data that is saved, later stages are repeated after loading. */
+    public static final ChunkStatus SAVED_STATUS = ChunkStatus.DECORATION;
+
+    private static final int HEIGHTMAP_BYTES = Heightmap.Type.getValues().length * Chunk.CHUNK_WIDTH * Chunk.CHUNK_WIDTH * Short.BYTES;
+
+    /**
+     * @return <code>true</code> if the chunk has reached a status that is worth saving
+     */
+    public static boolean isSaveable(Chunk chunk) {
+        return chunk.getStatus().isAtLeast(SAVED_STATUS);
+    }
+
+    public static byte[] write(Chunk chunk) {
+        int mask = 0;
+        int size = Integer.BYTES + 1 + Short.BYTES + chunk.getBiomeData().length + HEIGHTMAP_BYTES;
+        for (int sectionY = 0; sectionY < Chunk.SECTION_COUNT; sectionY++) {
+            if (chunk.isSectionEmpty(sectionY)) continue;
+
+            mask |= 1 << sectionY;
+            size += chunk.getSection(sectionY).getSerializedSize();
+        }
+
+        ByteBuffer out = ByteBuffer.allocate(size);
+        out.putInt(VERSION);
+
+        ChunkStatus status = chunk.getStatus().isAtLeast(SAVED_STATUS) ? SAVED_STATUS : chunk.getStatus();
+        out.put((byte) status.ordinal());
+        out.putShort((short) mask);
+
+        for (int sectionY = 0; sectionY < Chunk.SECTION_COUNT; sectionY++) {
+            if ((mask & (1 << sectionY)) != 0) {
+                chunk.getSection(sectionY).write(out);
+            }
+        }
+
+        out.put(chunk.getBiomeData());
+        for (Heightmap.Type type : Heightmap.Type.getValues()) {
+            for (short height : chunk.getHeightmap(type).getData()) {
+                out.putShort(height);
+            }
+        }
+        return out.array();
+    }
+
+    /**
+     * Replace the blocks, biomes, heightmaps and status of the chunk with the given data.
+     */
+    public static void read(Chunk chunk, byte[] data) throws IOException {
+        ByteBuffer in = ByteBuffer.wrap(data);
+        try {
+            int version = in.getInt();
+            if (version != VERSION) throw new IOException("Unsupported chunk format version " + version);
+
+            int status = in.get() & 0xFF;
+            if (status >= ChunkStatus.getValues().length) throw new IOException("Invalid chunk status " + status);
+
+            int mask = in.getShort() & 0xFFFF;
+            for (int sectionY = 0; sectionY < Chunk.SECTION_COUNT; sectionY++) {
+                chunk.setSection(sectionY, (mask & (1 << sectionY)) != 0 ? ChunkSection.read(in) : null);
+            }
+
+            in.get(chunk.getBiomeData());
+            for (Heightmap.Type type : Heightmap.Type.getValues()) {
+                in.asShortBuffer().get(chunk.getHeightmap(type).getData());
+                in.position(in.position() + HEIGHTMAP_BYTES / Heightmap.Type.getValues().length);
+            }
+
+            chunk.setStatus(ChunkStatus.getValues()[status]);
+            chunk.setDirty(false);
+        } catch (BufferUnderflowException e) {
+            throw new IOException("Chunk data ended after " + data.length + " bytes", e);
+        }
+    }
+}
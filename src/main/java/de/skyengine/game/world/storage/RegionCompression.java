@@ -0,0 +1,101 @@
+package de.skyengine.game.world.storage;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Compression of the chunk payloads in a {@link RegionFile}. Every payload stores the id of its compression,
+ * so files can contain a mix and the compression can be changed for existing worlds.
+ */
+public enum RegionCompression {
+
+    /** Fastest to load, about 3-5 times bigger than {@link #DEFLATE}. */
+    NONE(0) {
+        @Override
+        public byte[] compress(byte[] data) {
+            return data;
+        }
+
+        @Override
+        public void decompress(ByteBuffer source, byte[] target) throws IOException {
+            if (source.remaining() != target.length) throw new IOException("Payload has " + source.remaining() + " bytes but " + target.length + " were expected");
+            source.get(target);
+        }
+    },
+
+    /** zlib with the fastest level, chunk data is mostly runs of the same palette index. */
+    DEFLATE(1) {
+        private final ThreadLocal<Deflater> deflater = ThreadLocal.withInitial(() -> new Deflater(Deflater.BEST_SPEED));
+        private final ThreadLocal<Inflater> inflater = ThreadLocal.withInitial(Inflater::new);
+
+        @Override
+        public byte[] compress(byte[] data) {
+            Deflater deflater = this.deflater.get();
+            deflater.reset();
+            deflater.setInput(data);
+            deflater.finish();
+
+            byte[] buffer = new byte[Math.max(64, data.length / 4)];
+            int length = 0;
+            while (!deflater.finished()) {
+                if (length == buffer.length) {
+                    buffer = Arrays.copyOf(buffer, buffer.length << 1);
+                }
+                length += deflater.deflate(buffer, length, buffer.length - length);
+            }
+            return Arrays.copyOf(buffer, length);
+        }
+
+        @Override
+        public void decompress(ByteBuffer source, byte[] target) throws IOException {
+            Inflater inflater = this.inflater.get();
+            inflater.reset();
+            inflater.setInput(source);
+
+            try {
+                int length = 0;
+                while (length < target.length && !inflater.finished()) {
+                    int read = inflater.inflate(target, length, target.length - length);
+                    if (read == 0 && (inflater.needsInput() || inflater.needsDictionary())) break;
+                    length += read;
+                }
+                if (length != target.length || !inflater.finished()) throw new IOException("Payload ended after " + length + " of " + target.length + " bytes");
+            } catch (DataFormatException e) {
+                throw new IOException("Corrupted payload", e);
+            }
+        }
+    };
+
+    private static final RegionCompression[] VALUES = values();
+
+    private final int id;
+
+    RegionCompression(int id) {
+        this.id = id;
+    }
+
+    public abstract byte[] compress(byte[] data);
+
+    /**
+     * Decompress the remaining bytes of the source into the whole target array.
+     */
+    public abstract void decompress(ByteBuffer source, byte[] target) throws IOException;
+
+    public int getId() {
+        return id;
+    }
+
+    /**
+     * @return the compression with the given id or <code>null</code> if it is unknown
+     */
+    public static RegionCompression byId(int id) {
+        for (RegionCompression compression : VALUES) {
+            if (compression.id == id) return compression;
+        }
+        return null;
+    }
+}
@@ -0,0 +1,235 @@
+package de.skyengine.game.world.storage;
+
+import de.skyengine.core.io.IDisposable;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.BitSet;
+
+/**
+ * One file holding the chunks of a {@value #SIZE}x{@value #SIZE} chunk area, split into sectors of {@value #SECTOR_BYTES} bytes.
+ * <pre>
+ * sector 0   int per chunk: sector offset (upper 24 bits) and sector count (lower 8 bits), 0 if not saved
+ * sector 1   int per chunk: time of the last save in seconds since the epoch
+ * sector 2.. chunk payloads, each starting at a sector:
+ *            int  payload length in bytes (including the following header bytes)
+ *            byte compression id, see {@link RegionCompression}
+ *            int  uncompressed length
+ *            the compressed chunk data
+ * </pre>
+ * Reads go through a read only mapping of the file that is renewed when the file grew.
+ * Writes use positional channel writes. A payload goes into free sectors right away, the header entries only
+ * change in memory. {@link #flush()} forces the payloads to the disk before it writes the header and only then
+ * frees the sectors of the replaced versions, so a crash of the process or the system leaves either the old or the
+ * new version of a chunk. Writes since the last flush can be lost by a system crash. All methods are synchronized.
+ */
+public class RegionFile implements IDisposable {
+
+    public static final int SHIFT = 5;
+    public static final int SIZE = 1 << SHIFT;
+    public static final int CHUNKS = SIZE * SIZE;
+
+    public static final int SECTOR_BYTES = 4096;
+    private static final int HEADER_SECTORS = 2;
+    private static final int MAX_SECTORS = 255;
+
+    /** Length, compression and uncompressed length in front of every payload. */
+    private static final int PAYLOAD_HEADER_BYTES = Integer.BYTES + 1 + Integer.BYTES;
+
+    private final Path path;
+    private final FileChannel channel;
+
+    private final int[] offsets = new int[CHUNKS];
+    private final int[] timestamps = new int[CHUNKS];
+    private final BitSet usedSectors = new BitSet();
+    /** Sectors of replaced versions, the header on the disk may still point to them until it is forced. */
+    private final BitSet releasedSectors = new BitSet();
+    /** Set when {@link #offsets} or {@link #timestamps} differ from the header on the disk. */
+    private boolean headerChanged;
+
+    private MappedByteBuffer mapping;
+
+    public RegionFile(Path path) throws IOException {
+        this.path = path;
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+
+        try {
+            if (this.channel.size() < HEADER_SECTORS * SECTOR_BYTES) {
+                this.channel.write(ByteBuffer.allocate(HEADER_SECTORS * SECTOR_BYTES), 0);
+            }
+            this.usedSectors.set(0, HEADER_SECTORS);
+
+            ByteBuffer header = this.map().duplicate();
+            int fileSectors = (int) (this.channel.size() / SECTOR_BYTES);
+            for (int i = 0; i < CHUNKS; i++) {
+                this.timestamps[i] = header.getInt(SECTOR_BYTES + i * Integer.BYTES);
+
+                int entry = header.getInt(i * Integer.BYTES);
+                int offset = entry >>> 8;
+                int count = entry & 0xFF;
+                /* Entries pointing into the header or past the end of the file are dropped, the chunk is generated again */
+                if (entry == 0 || offset < HEADER_SECTORS || offset + count > fileSectors) continue;
+
+                this.offsets[i] = entry;
+                this.usedSectors.set(offset, offset + count);
+            }
+        } catch (IOException e) {
+            this.channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * @param localX chunk x coordinate inside the region (0-31)
+     * @param localZ chunk z coordinate inside the region (0-31)
+     * @return the uncompressed chunk data or <code>null</code> if the chunk was never saved
+     */
+    public synchronized byte[] read(int localX, int localZ) throws IOException {
+        int entry = this.offsets[index(localX, localZ)];
+        if (entry == 0) return null;
+
+        long start = (long) (entry >>> 8) * SECTOR_BYTES;
+        int capacity = (entry & 0xFF) * SECTOR_BYTES;
+        MappedByteBuffer mapping = this.mapping;
+        if (mapping == null || start + capacity > mapping.capacity()) {
+            mapping = this.map();
+        }
+
+        ByteBuffer payload = mapping.duplicate();
+        payload.position((int) start).limit((int) start + capacity);
+
+        int length = payload.getInt();
+        if (length < PAYLOAD_HEADER_BYTES - Integer.BYTES || length > capacity - Integer.BYTES) {
+            throw new IOException("Invalid payload length " + length + " of chunk " + localX + ", " + localZ + " in " + this.path);
+        }
+        RegionCompression compression = RegionCompression.byId(payload.get());
+        if (compression == null) throw new IOException("Unknown compression of chunk " + localX + ", " + localZ + " in " + this.path);
+
+        int uncompressed = payload.getInt();
+        if (uncompressed < 0) throw new IOException("Invalid uncompressed length " + uncompressed + " in " + this.path);
+
+        payload.limit(payload.position() + length - (PAYLOAD_HEADER_BYTES - Integer.BYTES));
+        byte[] data = new byte[uncompressed];
+        compression.decompress(payload, data);
+        return data;
+    }
+
+    /**
+     * Store the already compressed chunk data, replacing the previous version.
+     *
+     * @param uncompressedLength the length of the data before the compression
+     * @param timestamp          the time of the save in seconds since the epoch
+     */
+    public synchronized void write(int localX, int localZ, byte[] compressed, RegionCompression compression, int uncompressedLength, int timestamp) throws IOException {
+        int index = index(localX, localZ);
+        int sectors = (PAYLOAD_HEADER_BYTES + compressed.length + SECTOR_BYTES - 1) / SECTOR_BYTES;
+        if (sectors > MAX_SECTORS) {
+            throw new IOException("Chunk " + localX + ", " + localZ + " needs " + sectors + " sectors, at most " + MAX_SECTORS + " are supported");
+        }
+
+        int entry = this.offsets[index];
+        int oldOffset = entry >>> 8;
+        int oldSectors = entry & 0xFF;
+
+        /* Never overwrite the current version in place, a crash in the middle would destroy it */
+        int offset = this.allocate(sectors);
+
+        ByteBuffer buffer = ByteBuffer.allocate(sectors * SECTOR_BYTES);
+        buffer.putInt(compressed.length + PAYLOAD_HEADER_BYTES - Integer.BYTES);
+        buffer.put((byte) compression.getId());
+        buffer.putInt(uncompressedLength);
+        buffer.put(compressed);
+        buffer.clear();
+        this.writeFully(buffer, (long) offset * SECTOR_BYTES);
+
+        this.offsets[index] = offset << 8 | sectors;
+        this.timestamps[index] = timestamp;
+        this.headerChanged = true;
+        if (entry != 0) {
+            this.releasedSectors.set(oldOffset, oldOffset + oldSectors);
+        }
+    }
+
+    /**
+     * @return <code>true</code> if the chunk is saved in this region
+     */
+    public synchronized boolean contains(int localX, int localZ) {
+        return this.offsets[index(localX, localZ)] != 0;
+    }
+
+    /**
+     * @return the time of the last save of the chunk in seconds since the epoch, 0 if it was never saved
+     */
+    public synchronized int getTimestamp(int localX, int localZ) {
+        return this.timestamps[index(localX, localZ)];
+    }
+
+    /**
+     * Write all changes to the disk and free the sectors of the versions they replaced.
+     */
+    public synchronized void flush() throws IOException {
+        if (!this.headerChanged) return;
+
+        /* The header write may reach the disk first otherwise and point to sectors that were never written */
+        this.channel.force(false);
+
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SECTORS * SECTOR_BYTES);
+        header.asIntBuffer().put(this.offsets).position(SECTOR_BYTES / Integer.BYTES).put(this.timestamps);
+        this.writeFully(header, 0);
+        this.channel.force(true);
+
+        this.headerChanged = false;
+        this.usedSectors.andNot(this.releasedSectors);
+        this.releasedSectors.clear();
+    }
+
+    /**
+     * @return the first sector of a free range with the given length, the range is marked as used
+     */
+    private int allocate(int sectors) {
+        int start = this.usedSectors.nextClearBit(HEADER_SECTORS);
+        while (true) {
+            int end = this.usedSectors.nextSetBit(start);
+            if (end < 0 || end - start >= sectors) break;
+            start = this.usedSectors.nextClearBit(end);
+        }
+
+        this.usedSectors.set(start, start + sectors);
+        return start;
+    }
+
+    private void writeFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += this.channel.write(buffer, position);
+        }
+    }
+
+    private MappedByteBuffer map() throws IOException {
+        this.mapping = this.channel.map(FileChannel.MapMode.READ_ONLY, 0, this.channel.size());
+        return this.mapping;
+    }
+
+    private static int index(int localX, int localZ) {
+        return ((localZ & (SIZE - 1)) << SHIFT) | (localX & (SIZE - 1));
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    @Override
+    public synchronized void dispose() {
+        this.mapping = null;
+        try {
+            this.flush();
+            this.channel.force(true);
+            this.channel.close();
+        } catch (IOException e) {
+            throw new RuntimeException("Could not close region file " + this.path, e);
+        }
+    }
+}
@@ -0,0 +1,191 @@
+package de.skyengine.game.world.storage;
+
+import de.skyengine.core.io.IDisposable;
+import de.skyengine.game.world.chunk.Chunk;
+import de.skyengine.game.world.chunk.ChunkPosition;
+import de.skyengine.game.world.chunk.IChunkStorage;
+import de.skyengine.util.logging.LogManager;
+import de.skyengine.util.logging.Logger;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Saves chunks into {@link RegionFile}s named <code>r.[regionX].[regionZ].region</code> inside one directory.
+ * <p>
+ * All file access happens on a single I/O thread that is separate from the chunk workers, so slow disks never
+ * block generation. Saving serializes the chunk on the calling thread and leaves the compression and the write
+ * to the I/O thread. Loading reads, decompresses and deserializes on the I/O thread.
+ * The most recently used region files are kept open.
+ */
+public class RegionStorage implements IChunkStorage, IDisposable {
+
+    private final Logger logger = LogManager.getLogger(RegionStorage.class.getName());
+
+    private static final int MAX_OPEN_REGIONS = 64;
+
+    private final File directory;
+    private final RegionCompression compression;
+    private final ExecutorService executor;
+
+    /** Open region files in access order, only accessed by the I/O thread. */
+    private final LinkedHashMap<Long, RegionFile> regions;
+
+    public RegionStorage(File directory) {
+        this(directory, RegionCompression.DEFLATE);
+    }
+
+    /**
+     * @param compression the compression of newly saved chunks, existing chunks can be loaded with any compression
+     */
+    public RegionStorage(File directory, RegionCompression compression) {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new RuntimeException("Could not create region directory " + directory);
+        }
+
+        this.directory = directory;
+        this.compression = compression;
+        this.executor = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r);
+            t.setName("Region I/O");
+            t.setDaemon(true);
+            return t;
+        });
+        this.regions = new LinkedHashMap<>(16, 0.75F, true);
+    }
+
+    @Override
+    public CompletableFuture<Boolean> load(Chunk chunk) {
+        return CompletableFuture.supplyAsync(() -> {
+            ChunkPosition position = chunk.getPosition();
+            try {
+                RegionFile region = this.getRegion(position.getX(), position.getZ(), false);
+                byte[] data = region == null ? null : region.read(position.getX(), position.getZ());
+                if (data == null) return false;
+
+                ChunkSerializer.read(chunk, data);
+                return true;
+            } catch (IOException | RuntimeException e) {
+                /* Corrupt data can fail anywhere in the section palettes, the chunk may be half read */
+                this.logger.error("Could not load chunk at " + position + ", generating it again", e);
+                for (int sectionY = 0; sectionY < Chunk.SECTION_COUNT; sectionY++) {
+                    chunk.setSection(sectionY, null);
+                }
+                return false;
+            }
+        }, this.executor);
+    }
+
+    /**
+     * Save the chunk if it passed {@link ChunkSerializer#SAVED_STATUS}, chunks that are still generated are skipped.
+     */
+    @Override
+    public void save(Chunk chunk) {
+        this.saveAsync(chunk);
+    }
+
+    /**
+     * @return a future that completes once the chunk is written, with <code>false</code> if it was skipped or failed
+     */
+    public CompletableFuture<Boolean> saveAsync(Chunk chunk) {
+        if (!ChunkSerializer.isSaveable(chunk)) return CompletableFuture.completedFuture(false);
+
+        ChunkPosition position = chunk.getPosition();
+        byte[] data = ChunkSerializer.write(chunk);
+        int timestamp = (int) (System.currentTimeMillis() / 1000L);
+
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                byte[] compressed = this.compression.compress(data);
+                this.getRegion(position.getX(), position.getZ(), true)
+                        .write(position.getX(), position.getZ(), compressed, this.compression, data.length, timestamp);
+                return true;
+            } catch (IOException e) {
+                this.logger.error("Could not save chunk at " + position, e);
+                return false;
+            }
+        }, this.executor);
+    }
+
+    /**
+     * @param create <code>true</code> to create the file if it doesn't exist
+     * @return the region file containing the given chunk, <code>null</code> if it doesn't exist and should not be created
+     */
+    private RegionFile getRegion(int chunkX, int chunkZ, boolean create) throws IOException {
+        int regionX = chunkX >> RegionFile.SHIFT;
+        int regionZ = chunkZ >> RegionFile.SHIFT;
+        long key = ChunkPosition.pack(regionX, regionZ);
+
+        RegionFile region = this.regions.get(key);
+        if (region != null) return region;
+
+        File file = new File(this.directory, "r." + regionX + "." + regionZ + ".region");
+        if (!create && !file.isFile()) return null;
+
+        if (this.regions.size() >= MAX_OPEN_REGIONS) {
+            Iterator<Map.Entry<Long, RegionFile>> eldest = this.regions.entrySet().iterator();
+            eldest.next().getValue().dispose();
+            eldest.remove();
+        }
+
+        region = new RegionFile(file.toPath());
+        this.regions.put(key, region);
+        return region;
+    }
+
+    /**
+     * @return a future that completes once all saves that were requested before are written to the disk,
+     * with <code>false</code> if a region file could not be flushed
+     */
+    public CompletableFuture<Boolean> flush() {
+        return CompletableFuture.supplyAsync(() -> {
+            boolean flushed = true;
+            for (RegionFile region : this.regions.values()) {
+                try {
+                    region.flush();
+                } catch (IOException e) {
+                    this.logger.error("Could not flush " + region.getPath(), e);
+                    flushed = false;
+                }
+            }
+            return flushed;
+        }, this.executor);
+    }
+
+    public File getDirectory() {
+        return directory;
+    }
+
+    public RegionCompression getCompression() {
+        return compression;
+    }
+
+    /**
+     * Finish all pending saves and close the region files.
+     */
+    @Override
+    public void dispose() {
+        this.executor.execute(() -> {
+            for (RegionFile region : this.regions.values()) {
+                region.dispose();
+            }
+            this.regions.clear();
+        });
+        this.executor.shutdown();
+
+        try {
+            if (!this.executor.awaitTermination(30, TimeUnit.SECONDS)) {
+                this.logger.error("Region I/O did not finish in time, the last chunks might be lost");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package de.skyengine.graphics.buffer;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * Best fit free list allocator for ranges of one big buffer. Neighbouring free ranges are merged on free.
+ * The allocator only does the bookkeeping, it never touches memory.
+ * <p>
+ * Not thread safe.
+ */
+public class ArenaAllocator {
+
+    private final int capacity;
+    private final int alignment;
+
+    /** Free ranges by offset, used to find the neighbours of a freed range. */
+    private final TreeMap<Integer, Integer> freeByOffset;
+    /** Free ranges ordered by size and offset packed into one long, used for the best fit search. */
+    private final TreeSet<Long> freeBySize;
+
+    private int usedBytes;
+
+    /**
+     * @param alignment every offset and size is a multiple of this, must be a power of two
+     */
+    public ArenaAllocator(int capacity, int alignment) {
+        if (Integer.bitCount(alignment) != 1) throw new IllegalArgumentException("Alignment must be a power of two but was " + alignment);
+
+        this.capacity = capacity & -alignment;
+        this.alignment = alignment;
+        this.freeByOffset = new TreeMap<>();
+        this.freeBySize = new TreeSet<>();
+
+        this.addFree(0, this.capacity);
+    }
+
+    /**
+     * @return the aligned size that is reserved for the given size
+     */
+    public int align(int size) {
+        return (size + this.alignment - 1) & -this.alignment;
+    }
+
+    /**
+     * @return the offset of the reserved range or -1 if no free range is big enough
+     */
+    public int allocate(int size) {
+        if (size <= 0) throw new IllegalArgumentException("Size must be bigger than 0");
+        size = this.align(size);
+
+        Long best = this.freeBySize.ceiling(pack(size, 0));
+        if (best == null) return -1;
+
+        int offset = (int) (long) best;
+        int blockSize = (int) (best >>> 32);
+        this.removeFree(offset, blockSize);
+
+        if (blockSize > size) {
+            this.addFree(offset + size, blockSize - size);
+        }
+
+        this.usedBytes += size;
+        return offset;
+    }
+
+    /**
+     * Give a range back to the allocator.
+     *
+     * @param size the size that was passed to {@link #allocate(int)}
+     */
+    public void free(int offset, int size) {
+        size = this.align(size);
+        this.usedBytes -= size;
+
+        Map.Entry<Integer, Integer> previous = this.freeByOffset.floorEntry(offset);
+        if (previous != null && previous.getKey() + previous.getValue() == offset) {
+            this.removeFree(previous.getKey(), previous.getValue());
+            offset = previous.getKey();
+            size += previous.getValue();
+        }
+
+        Integer nextSize = this.freeByOffset.get(offset + size);
+        if (nextSize != null) {
+            this.removeFree(offset + size, nextSize);
+            size += nextSize;
+        }
+
+        this.addFree(offset, size);
+    }
+
+    private void addFree(int offset, int size) {
+        this.freeByOffset.put(offset, size);
+        this.freeBySize.add(pack(size, offset));
+    }
+
+    private void removeFree(int offset, int size) {
+        this.freeByOffset.remove(offset);
+        this.freeBySize.remove(pack(size, offset));
+    }
+
+    private static long pack(int size, int offset) {
+        return ((long) size << 32) | (offset & 0xFFFFFFFFL);
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public int getUsedBytes() {
+        return usedBytes;
+    }
+
+    public int getFreeBytes() {
+        return this.capacity - this.usedBytes;
+    }
+
+    /**
+     * @return the biggest size that can currently be allocated
+     */
+    public int getLargestFreeBlock() {
+        return this.freeBySize.isEmpty() ? 0 : (int) (this.freeBySize.last() >>> 32);
+    }
+
+    /**
+     * @return the number of free ranges, a high count compared to the free bytes means fragmentation
+     */
+    public int getFreeBlockCount() {
+        return this.freeByOffset.size();
+    }
+}
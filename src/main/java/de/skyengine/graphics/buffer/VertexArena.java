@@ -0,0 +1,210 @@
+package de.skyengine.graphics.buffer;
+
+import de.skyengine.core.EngineProperties;
+import de.skyengine.core.io.IDisposable;
+import de.skyengine.util.DynamicByteBuffer;
+import de.skyengine.util.logging.LogManager;
+import de.skyengine.util.logging.Logger;
+import de.skyengine.util.math.MathUtils;
+import org.lwjgl.opengl.GL15;
+import org.lwjgl.opengl.GL30;
+import org.lwjgl.opengl.GL32;
+import org.lwjgl.opengl.GL44;
+import org.lwjgl.system.MemoryUtil;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * One big vertex buffer that chunk meshes are sub-allocated from.
+ * <p>
+ * With <code>GL_ARB_buffer_storage</code> the buffer is allocated once with immutable storage and stays mapped
+ * (persistent and coherent), an upload is a plain memcpy into the mapped range. Without it, or if mapping fails, uploads
+ * use <code>glBufferSubData</code>.
+ * <p>
+ * A freed range may still be read by up to {@link #FRAMES_IN_FLIGHT} frames that are queued on the GPU. Freed ranges
+ * are therefore only given back to the allocator once the fence of the frame they were freed in has signaled.
+ * Uploads always go into ranges the GPU is done with, so no upload has to wait for the GPU.
+ * <p>
+ * All methods have to be called from the render thread.
+ */
+public class VertexArena implements IDisposable {
+
+    private final Logger logger = LogManager.getLogger(VertexArena.class.getName());
+
+    public static final int FRAMES_IN_FLIGHT = 3;
+
+    /** Upper bound for waiting on a frame fence, after that we assume the GPU hangs and continue anyway. */
+    private static final long FENCE_TIMEOUT_NANOS = 1_000_000_000L;
+
+    private final EngineProperties properties;
+    private final ArenaAllocator allocator;
+
+    private int bufferId;
+    private long mappedAddress = MemoryUtil.NULL;
+
+    private final long[] fences;
+    private final List<List<Allocation>> pendingFrees;
+    private int frameIndex;
+
+    /**
+     * @param capacity  the size of the buffer in bytes
+     * @param alignment every allocation starts at a multiple of this, e.g. the size of a vertex or a quad
+     */
+    public VertexArena(EngineProperties properties, int capacity, int alignment) {
+        this.properties = properties;
+        this.allocator = new ArenaAllocator(capacity, alignment);
+
+        this.fences = new long[FRAMES_IN_FLIGHT];
+        this.pendingFrees = new ArrayList<>(FRAMES_IN_FLIGHT);
+        for (int i = 0; i < FRAMES_IN_FLIGHT; i++) {
+            this.pendingFrees.add(new ArrayList<>());
+        }
+    }
+
+    public void create() {
+        long size = this.allocator.getCapacity();
+
+        this.bufferId = GL15.glGenBuffers();
+        GL15.glBindBuffer(GL15.GL_ARRAY_BUFFER, this.bufferId);
+
+        if (this.properties.isUseBufferStorage()) {
+            int flags = GL30.GL_MAP_WRITE_BIT | GL44.GL_MAP_PERSISTENT_BIT | GL44.GL_MAP_COHERENT_BIT;
+            /* Dynamic storage keeps glBufferSubData allowed in case mapping fails */
+            GL44.glBufferStorage(GL15.GL_ARRAY_BUFFER, size, flags | GL44.GL_DYNAMIC_STORAGE_BIT);
+            this.mappedAddress = GL30.nglMapBufferRange(GL15.GL_ARRAY_BUFFER, 0, size, flags);
+
+            if (this.mappedAddress == MemoryUtil.NULL) {
+                this.logger.error("Could not map the vertex arena, falling back to glBufferSubData uploads");
+            }
+        } else {
+            GL15.glBufferData(GL15.GL_ARRAY_BUFFER, size, GL15.GL_DYNAMIC_DRAW);
+        }
+
+        GL15.glBindBuffer(GL15.GL_ARRAY_BUFFER, 0);
+
+        this.logger.debug("Create vertex arena with id " + this.bufferId + " and [" + MathUtils.round(size / 1024F / 1024F, 2) + " MB] ("
+                + (this.isPersistentlyMapped() ? "persistent mapped" : "buffer sub data") + ")");
+    }
+
+    /**
+     * Copy the written bytes of the buffer into a new range of the arena.
+     *
+     * @return the range or <code>null</code> if the arena is full
+     */
+    public Allocation upload(DynamicByteBuffer vertices) {
+        int size = vertices.getPosition();
+        int offset = this.allocator.allocate(size);
+        if (offset < 0) return null;
+
+        if (this.isPersistentlyMapped()) {
+            MemoryUtil.memCopy(vertices.getAddress(), this.mappedAddress + offset, size);
+        } else {
+            GL15.glBindBuffer(GL15.GL_ARRAY_BUFFER, this.bufferId);
+            GL15.nglBufferSubData(GL15.GL_ARRAY_BUFFER, offset, size, vertices.getAddress());
+            GL15.glBindBuffer(GL15.GL_ARRAY_BUFFER, 0);
+        }
+
+        return new Allocation(offset, size);
+    }
+
+    /**
+     * Release a range. It is reused once all frames that could still read it are finished on the GPU.
+     */
+    public void free(Allocation allocation) {
+        this.pendingFrees.get(this.frameIndex).add(allocation);
+    }
+
+    /**
+     * Call before anything is uploaded or drawn in a frame. Waits (if necessary) until the GPU finished the frame
+     * that used the same slot {@link #FRAMES_IN_FLIGHT} frames ago and releases the ranges freed in that frame.
+     */
+    public void beginFrame() {
+        long fence = this.fences[this.frameIndex];
+        if (fence != MemoryUtil.NULL) {
+            int result = GL32.glClientWaitSync(fence, GL32.GL_SYNC_FLUSH_COMMANDS_BIT, FENCE_TIMEOUT_NANOS);
+            if (result == GL32.GL_TIMEOUT_EXPIRED || result == GL32.GL_WAIT_FAILED) {
+                this.logger.warning("Waiting for the vertex arena fence failed (" + result + ")");
+            }
+
+            GL32.glDeleteSync(fence);
+            this.fences[this.frameIndex] = MemoryUtil.NULL;
+        }
+
+        List<Allocation> frees = this.pendingFrees.get(this.frameIndex);
+        for (Allocation allocation : frees) {
+            this.allocator.free(allocation.getOffset(), allocation.getSize());
+        }
+        frees.clear();
+    }
+
+    /**
+     * Call after all draw calls of a frame were issued.
+     */
+    public void endFrame() {
+        this.fences[this.frameIndex] = GL32.glFenceSync(GL32.GL_SYNC_GPU_COMMANDS_COMPLETE, 0);
+        this.frameIndex = (this.frameIndex + 1) % FRAMES_IN_FLIGHT;
+    }
+
+    public boolean isPersistentlyMapped() {
+        return this.mappedAddress != MemoryUtil.NULL;
+    }
+
+    public int getBufferId() {
+        return bufferId;
+    }
+
+    public ArenaAllocator getAllocator() {
+        return allocator;
+    }
+
+    @Override
+    public void dispose() {
+        this.logger.debug("delete vertex arena with id " + this.bufferId);
+
+        for (int i = 0; i < FRAMES_IN_FLIGHT; i++) {
+            if (this.fences[i] != MemoryUtil.NULL) {
+                GL32.glDeleteSync(this.fences[i]);
+                this.fences[i] = MemoryUtil.NULL;
+            }
+        }
+
+        if (this.isPersistentlyMapped()) {
+            GL15.glBindBuffer(GL15.GL_ARRAY_BUFFER, this.bufferId);
+            GL15.glUnmapBuffer(GL15.GL_ARRAY_BUFFER);
+            GL15.glBindBuffer(GL15.GL_ARRAY_BUFFER, 0);
+            this.mappedAddress = MemoryUtil.NULL;
+        }
+
+        GL15.glDeleteBuffers(this.bufferId);
+    }
+
+    /**
+     * A range of the arena.
+     */
+    public static class Allocation {
+
+        private final int offset;
+        private final int size;
+
+        private Allocation(int offset, int size) {
+            this.offset = offset;
+            this.size = size;
+        }
+
+        public int getOffset() {
+            return offset;
+        }
+
+        public int getSize() {
+            return size;
+        }
+
+        /**
+         * @return the index of the first vertex of this range, e.g. the base vertex of a draw call
+         */
+        public int getFirstVertex(int vertexSize) {
+            return this.offset / vertexSize;
+        }
+    }
+}
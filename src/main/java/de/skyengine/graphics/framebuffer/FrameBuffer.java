@@ -96,6 +96,18 @@ public class FrameBuffer implements IDisposable {
         }
     }
 
+    public int getId() {
+        return id;
+    }
+
+    public int getWidth() {
+        return this.config.getWindowWidth();
+    }
+
+    public int getHeight() {
+        return this.config.getWindowHeight();
+    }
+
     @Override
     public void dispose() {
         this.logger.debug("delete framebuffer with id " + this.id);
@@ -9,7 +9,6 @@ import org.joml.*;
 import org.lwjgl.opengl.GL20;
 import org.lwjgl.system.MemoryStack;
 
-import java.lang.Math;
 import java.nio.FloatBuffer;
 import java.nio.IntBuffer;
 import java.util.HashMap;
@@ -169,15 +168,9 @@ public class ShaderProgram implements IDisposable {
         GL20.glUniform2f(this.getUniformLocation(location), (float) vector.x, (float) vector.y);
     }
 
-    // TODO : Check if matrix conversion is working
     public void setUniformMatrix4f(String location, Matrix4f matrix) {
         try (MemoryStack stack = MemoryStack.stackPush()) {
-            FloatBuffer fb = new Matrix4f()
-                    .perspective((float) Math.toRadians(45.0f), 1.0f, 0.01f, 100.0f)
-                    .lookAt(0.0f, 0.0f, 10.0f,
-                            0.0f, 0.0f, 0.0f,
-                            0.0f, 1.0f, 0.0f)
-                    .get(stack.mallocFloat(16));
+            FloatBuffer fb = matrix.get(stack.mallocFloat(16));
             GL20.glUniformMatrix4fv(this.getUniformLocation(location), false, fb);
         }
     }
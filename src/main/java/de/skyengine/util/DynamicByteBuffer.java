@@ -1,40 +1,68 @@
 package de.skyengine.util;
 
-import de.skyengine.core.EngineConfig;
-import de.skyengine.core.SkyEngine;
 import de.skyengine.util.logging.LogManager;
 import de.skyengine.util.logging.Logger;
 import de.skyengine.util.math.MathUtils;
 import org.lwjgl.system.MemoryUtil;
 
+import java.nio.ByteBuffer;
+
 public class DynamicByteBuffer {
 
-    private final Logger logger = LogManager.getLogger(DynamicByteBuffer.class.getName());
+    private static final Logger logger = LogManager.getLogger(DynamicByteBuffer.class.getName());
+
+    private final DynamicByteBufferPool pool;
 
     private long address;
     private int position;
     private int capacity;
 
     /**
-     * Allocate a ByteBuffer with the given initial capacity.
+     * Allocate a ByteBuffer with the given initial capacity from the default pool.
      */
     public DynamicByteBuffer(int initialCapacity) {
+        this(initialCapacity, DynamicByteBufferPool.getDefault());
+    }
+
+    /**
+     * Allocate a ByteBuffer with at least the given initial capacity from the given pool.
+     */
+    public DynamicByteBuffer(int initialCapacity, DynamicByteBufferPool pool) {
         if (initialCapacity < 1) throw new RuntimeException("Intitial capacity needs to be bigger than 0!");
 
-        this.address = MemoryUtil.nmemAlloc(initialCapacity);
-        this.capacity = initialCapacity;
+        this.pool = pool;
+        this.capacity = DynamicByteBufferPool.sizeFor(initialCapacity);
+        this.address = pool.allocate(this.capacity);
         this.position = 0;
 
-        if (SkyEngine.get().getConfig().getDebugMode().equals(EngineConfig.DebugMode.FULL)) {
-            this.logger.debug("Creating new DynamicByteBuffer with capacity [" + MathUtils.round(this.capacity / 1024F, 2) + " KB]");
+        if (logger.isDebugEnabled()) {
+            logger.debug("Creating new DynamicByteBuffer with capacity [" + MathUtils.round(this.capacity / 1024F, 2) + " KB]");
         }
     }
 
-    private void grow() {
-        int newCapacity = (int) (this.capacity * 1.75F);
-        this.logger.debug("Growing DynamicByteBuffer from [" + MathUtils.round(this.capacity / 1024F, 2) + " KB] to [" + MathUtils.round(newCapacity / 1024F, 2) + " KB]");
+    /**
+     * Make sure that at least the given number of bytes can be written without growing.
+     * After this call the <code>...NoGrow</code> methods can be used for up to that many bytes.
+     */
+    public DynamicByteBuffer ensureCapacity(int bytes) {
+        if (this.capacity - this.position < bytes) {
+            this.grow((long) this.position + bytes);
+        }
+        return this;
+    }
+
+    private void grow(long required) {
+        if (required > Integer.MAX_VALUE) throw new RuntimeException("DynamicByteBuffer can't grow beyond 2 GB!");
+
+        int newCapacity = DynamicByteBufferPool.sizeFor((int) Math.min(Integer.MAX_VALUE, Math.max((long) (this.capacity * 1.75F), required)));
+        if (logger.isDebugEnabled()) {
+            logger.debug("Growing DynamicByteBuffer from [" + MathUtils.round(this.capacity / 1024F, 2) + " KB] to [" + MathUtils.round(newCapacity / 1024F, 2) + " KB]");
+        }
+
+        long newAddress = this.pool.allocate(newCapacity);
+        MemoryUtil.memCopy(this.address, newAddress, this.position);
+        this.pool.release(this.address, this.capacity);
 
-        long newAddress = MemoryUtil.nmemRealloc(this.address, newCapacity);
         this.capacity = newCapacity;
         this.address = newAddress;
     }
@@ -42,12 +70,12 @@ public class DynamicByteBuffer {
     // Short
     public DynamicByteBuffer putShort(int v) {
         if (this.capacity - this.position < Short.BYTES) {
-            this.grow();
+            this.grow((long) this.position + Short.BYTES);
         }
         return putShortNoGrow(v);
     }
 
-    private DynamicByteBuffer putShortNoGrow(int v) {
+    public DynamicByteBuffer putShortNoGrow(int v) {
         MemoryUtil.memPutShort(this.address + this.position, (short) v);
         this.position += Short.BYTES;
         return this;
@@ -56,12 +84,12 @@ public class DynamicByteBuffer {
     // Int
     public DynamicByteBuffer putInt(int v) {
         if (this.capacity - this.position < Integer.BYTES) {
-            this.grow();
+            this.grow((long) this.position + Integer.BYTES);
         }
         return this.putIntNoGrow(v);
     }
 
-    private DynamicByteBuffer putIntNoGrow(int v) {
+    public DynamicByteBuffer putIntNoGrow(int v) {
         MemoryUtil.memPutInt(this.address + this.position, v);
         this.position += Integer.BYTES;
         return this;
@@ -70,12 +98,12 @@ public class DynamicByteBuffer {
     // Float
     public DynamicByteBuffer putFloat(float v) {
         if (this.capacity - this.position < Float.BYTES) {
-            this.grow();
+            this.grow((long) this.position + Float.BYTES);
         }
         return this.putFloatNoGrow(v);
     }
 
-    private DynamicByteBuffer putFloatNoGrow(float v) {
+    public DynamicByteBuffer putFloatNoGrow(float v) {
         MemoryUtil.memPutFloat(this.address + this.position, v);
         this.position += Float.BYTES;
         return this;
@@ -84,12 +112,12 @@ public class DynamicByteBuffer {
     // Double
     public DynamicByteBuffer putDouble(double v) {
         if (this.capacity - this.position < Double.BYTES) {
-            this.grow();
+            this.grow((long) this.position + Double.BYTES);
         }
         return this.putDoubleNoGrow(v);
     }
 
-    private DynamicByteBuffer putDoubleNoGrow(double v) {
+    public DynamicByteBuffer putDoubleNoGrow(double v) {
         MemoryUtil.memPutDouble(this.address + this.position, v);
         this.position += Double.BYTES;
         return this;
@@ -98,23 +126,76 @@ public class DynamicByteBuffer {
     // Long
     public DynamicByteBuffer putLong(long v) {
         if (this.capacity - this.position < Long.BYTES) {
-            this.grow();
+            this.grow((long) this.position + Long.BYTES);
         }
         return this.putLongNoGrow(v);
     }
 
-    private DynamicByteBuffer putLongNoGrow(long v) {
+    public DynamicByteBuffer putLongNoGrow(long v) {
         MemoryUtil.memPutLong(this.address + this.position, v);
         this.position += Long.BYTES;
         return this;
     }
 
+    /**
+     * Copy bytes from native memory into this buffer.
+     */
+    public DynamicByteBuffer put(long srcAddress, int bytes) {
+        this.ensureCapacity(bytes);
+        MemoryUtil.memCopy(srcAddress, this.address + this.position, bytes);
+        this.position += bytes;
+        return this;
+    }
+
+    /**
+     * Copy the remaining bytes of the given buffer into this buffer. The position of the source is moved to its limit.
+     */
+    public DynamicByteBuffer put(ByteBuffer src) {
+        int bytes = src.remaining();
+        this.ensureCapacity(bytes);
+
+        if (src.isDirect()) {
+            MemoryUtil.memCopy(MemoryUtil.memAddress(src), this.address + this.position, bytes);
+        } else {
+            for (int i = 0; i < bytes; i++) {
+                MemoryUtil.memPutByte(this.address + this.position + i, src.get(src.position() + i));
+            }
+        }
+
+        src.position(src.limit());
+        this.position += bytes;
+        return this;
+    }
+
+    /**
+     * Set the position back to the start. The memory stays allocated and is overwritten by the next writes.
+     */
+    public DynamicByteBuffer reset() {
+        this.position = 0;
+        return this;
+    }
+
+    /**
+     * @return a view of the written bytes (from 0 to the current position) without copying them, e.g. for uploads to OpenGL.
+     * The view is only valid until the buffer grows or is freed.
+     */
+    public ByteBuffer asByteBuffer() {
+        return MemoryUtil.memByteBuffer(this.address, this.position);
+    }
+
+    /**
+     * Give the memory back to the pool. The buffer must not be used afterwards.
+     */
     public void free() {
-        if (SkyEngine.get().getConfig().getDebugMode().equals(EngineConfig.DebugMode.FULL)) {
-            this.logger.debug("Freeing DynamicByteBuffer (used " + MathUtils.round((float) this.position / this.capacity, 2) + "% of capacity)");
+        if (this.address == MemoryUtil.NULL) return;
+
+        if (logger.isDebugEnabled()) {
+            logger.debug("Freeing DynamicByteBuffer (used " + MathUtils.round((float) this.position / this.capacity, 2) + "% of capacity)");
         }
 
-        MemoryUtil.nmemFree(this.address);
+        this.pool.release(this.address, this.capacity);
+        this.address = MemoryUtil.NULL;
+        this.position = 0;
     }
 
     public long getAddress() {
@@ -130,6 +211,7 @@ public class DynamicByteBuffer {
     }
 
     public void setPosition(int position) {
-        this.position = 0;
+        if (position < 0 || position > this.capacity) throw new IndexOutOfBoundsException("Position " + position + " is outside of the capacity " + this.capacity);
+        this.position = position;
     }
 }
@@ -0,0 +1,277 @@
+package de.skyengine.util;
+
+import de.skyengine.util.logging.LogManager;
+import de.skyengine.util.logging.Logger;
+import de.skyengine.util.math.MathUtils;
+import org.lwjgl.system.MemoryUtil;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Recycles the native memory of {@link DynamicByteBuffer}s.
+ * <p>
+ * Requests are rounded up to power of two size classes between {@link #MIN_BLOCK_SIZE} and {@link #MAX_BLOCK_SIZE}.
+ * Released blocks go to a small free list of the releasing thread first and to a shared free list when that is full,
+ * so workers that allocate and release buffers all the time (e.g. while meshing) rarely touch the native allocator.
+ * Larger requests are not pooled.
+ * <p>
+ * All native memory owned by the pool (in use and cached) is limited by a budget, allocations beyond it fail.
+ * Before failing the shared free lists are freed. Free lists of other threads can't be reached, so each thread caches
+ * at most {@link #LOCAL_CACHE_BYTES} and larger blocks always go to the shared free lists.
+ */
+public class DynamicByteBufferPool {
+
+    private static final Logger logger = LogManager.getLogger(DynamicByteBufferPool.class.getName());
+
+    public static final int MIN_BLOCK_SIZE = 1024;
+    public static final int MAX_BLOCK_SIZE = 16 * 1024 * 1024;
+
+    public static final long DEFAULT_BUDGET = 1024L * 1024L * 1024L;
+
+    private static final int MIN_SHIFT = Integer.numberOfTrailingZeros(MIN_BLOCK_SIZE);
+    private static final int CLASS_COUNT = Integer.numberOfTrailingZeros(MAX_BLOCK_SIZE) - MIN_SHIFT + 1;
+
+    /** Cached blocks per size class and thread. */
+    private static final int LOCAL_CACHE_SIZE = 4;
+    /** Cached bytes per thread over all size classes, the idle memory the budget can't get back from a thread. */
+    public static final int LOCAL_CACHE_BYTES = 256 * 1024;
+    /** Cached blocks per size class shared by all threads. */
+    private static final int SHARED_CACHE_SIZE = 64;
+
+    private static final DynamicByteBufferPool DEFAULT = new DynamicByteBufferPool(DEFAULT_BUDGET);
+
+    private final long budget;
+
+    /** Native memory owned by this pool, handed out and cached. */
+    private final AtomicLong reservedBytes = new AtomicLong();
+    /** Native memory currently handed out. */
+    private final AtomicLong usedBytes = new AtomicLong();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    private final ThreadLocal<LocalCache> localCaches;
+    private final FreeList[] sharedCaches;
+
+    public DynamicByteBufferPool(long budget) {
+        this.budget = budget;
+        this.localCaches = ThreadLocal.withInitial(LocalCache::new);
+        this.sharedCaches = createFreeLists(SHARED_CACHE_SIZE);
+    }
+
+    /**
+     * @return the pool used by {@link DynamicByteBuffer}s that are created without an explicit pool
+     */
+    public static DynamicByteBufferPool getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * @return the capacity of the block that is handed out for the given size
+     */
+    public static int sizeFor(int size) {
+        if (size > MAX_BLOCK_SIZE) return size;
+        return Math.max(MIN_BLOCK_SIZE, Integer.highestOneBit(size - 1) << 1);
+    }
+
+    /**
+     * Create a new buffer whose memory comes from this pool.
+     */
+    public DynamicByteBuffer acquire(int initialCapacity) {
+        return new DynamicByteBuffer(initialCapacity, this);
+    }
+
+    /**
+     * @param capacity must be a value returned by {@link #sizeFor(int)}
+     * @return the address of a block with the given capacity
+     */
+    public long allocate(int capacity) {
+        int sizeClass = sizeClass(capacity);
+
+        if (sizeClass >= 0) {
+            long address = this.localCaches.get().pop(sizeClass);
+            if (address == MemoryUtil.NULL) {
+                address = this.sharedCaches[sizeClass].popSynchronized();
+            }
+
+            if (address != MemoryUtil.NULL) {
+                this.hits.incrementAndGet();
+                this.usedBytes.addAndGet(capacity);
+                return address;
+            }
+        }
+
+        this.misses.incrementAndGet();
+        this.reserve(capacity);
+
+        long address = MemoryUtil.nmemAlloc(capacity);
+        if (address == MemoryUtil.NULL) {
+            this.reservedBytes.addAndGet(-capacity);
+            throw new RuntimeException("Could not allocate " + capacity + " bytes of native memory!");
+        }
+
+        this.usedBytes.addAndGet(capacity);
+        return address;
+    }
+
+    /**
+     * Give a block back to the pool.
+     *
+     * @param capacity the capacity the block was allocated with
+     */
+    public void release(long address, int capacity) {
+        this.usedBytes.addAndGet(-capacity);
+
+        int sizeClass = sizeClass(capacity);
+        if (sizeClass >= 0) {
+            if (this.localCaches.get().push(sizeClass, address)) return;
+            if (this.sharedCaches[sizeClass].pushSynchronized(address)) return;
+        }
+
+        MemoryUtil.nmemFree(address);
+        this.reservedBytes.addAndGet(-capacity);
+    }
+
+    /**
+     * Free all blocks in the shared free lists and in the free lists of the calling thread.
+     */
+    public void trim() {
+        this.trim(this.localCaches.get().lists, false);
+        this.localCaches.get().bytes = 0;
+        this.trim(this.sharedCaches, true);
+    }
+
+    private void reserve(int capacity) {
+        if (this.reservedBytes.addAndGet(capacity) <= this.budget) return;
+
+        /* Over budget, give the cached blocks back to the system and try again */
+        this.reservedBytes.addAndGet(-capacity);
+        this.trim();
+
+        if (this.reservedBytes.addAndGet(capacity) > this.budget) {
+            this.reservedBytes.addAndGet(-capacity);
+            throw new RuntimeException("Off-heap budget of [" + MathUtils.round(this.budget / 1024F / 1024F, 2) + " MB] exceeded, "
+                    + "[" + MathUtils.round(this.usedBytes.get() / 1024F / 1024F, 2) + " MB] are in use!");
+        }
+    }
+
+    private void trim(FreeList[] caches, boolean shared) {
+        long freed = 0;
+        for (int sizeClass = 0; sizeClass < CLASS_COUNT; sizeClass++) {
+            FreeList cache = caches[sizeClass];
+            int capacity = MIN_BLOCK_SIZE << sizeClass;
+
+            long address;
+            while ((address = shared ? cache.popSynchronized() : cache.pop()) != MemoryUtil.NULL) {
+                MemoryUtil.nmemFree(address);
+                this.reservedBytes.addAndGet(-capacity);
+                freed += capacity;
+            }
+        }
+
+        if (freed > 0 && logger.isDebugEnabled()) {
+            logger.debug("Freed [" + MathUtils.round(freed / 1024F, 2) + " KB] of cached buffers");
+        }
+    }
+
+    private static int sizeClass(int capacity) {
+        if (capacity > MAX_BLOCK_SIZE || Integer.bitCount(capacity) != 1 || capacity < MIN_BLOCK_SIZE) return -1;
+        return Integer.numberOfTrailingZeros(capacity) - MIN_SHIFT;
+    }
+
+    private static FreeList[] createFreeLists(int size) {
+        FreeList[] lists = new FreeList[CLASS_COUNT];
+        for (int i = 0; i < CLASS_COUNT; i++) {
+            lists[i] = new FreeList(size);
+        }
+        return lists;
+    }
+
+    public long getBudget() {
+        return budget;
+    }
+
+    /**
+     * @return the bytes currently handed out to buffers
+     */
+    public long getUsedBytes() {
+        return this.usedBytes.get();
+    }
+
+    /**
+     * @return the bytes of native memory owned by the pool, in use and cached
+     */
+    public long getReservedBytes() {
+        return this.reservedBytes.get();
+    }
+
+    public long getHitCount() {
+        return this.hits.get();
+    }
+
+    public long getMissCount() {
+        return this.misses.get();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("DynamicByteBufferPool={used=%s KB, reserved=%s KB, budget=%s KB, hits=%s, misses=%s}",
+                this.getUsedBytes() / 1024, this.getReservedBytes() / 1024, this.budget / 1024, this.getHitCount(), this.getMissCount());
+    }
+
+    /**
+     * The free lists of one thread, limited to {@link #LOCAL_CACHE_BYTES}.
+     */
+    private static class LocalCache {
+
+        private final FreeList[] lists = createFreeLists(LOCAL_CACHE_SIZE);
+        private int bytes;
+
+        private long pop(int sizeClass) {
+            long address = this.lists[sizeClass].pop();
+            if (address != MemoryUtil.NULL) {
+                this.bytes -= MIN_BLOCK_SIZE << sizeClass;
+            }
+            return address;
+        }
+
+        private boolean push(int sizeClass, long address) {
+            int capacity = MIN_BLOCK_SIZE << sizeClass;
+            if (this.bytes + capacity > LOCAL_CACHE_BYTES || !this.lists[sizeClass].push(address)) return false;
+
+            this.bytes += capacity;
+            return true;
+        }
+    }
+
+    /**
+     * Fixed size stack of block addresses.
+     */
+    private static class FreeList {
+
+        private final long[] addresses;
+        private int size;
+
+        private FreeList(int capacity) {
+            this.addresses = new long[capacity];
+        }
+
+        private long pop() {
+            return this.size == 0 ? MemoryUtil.NULL : this.addresses[--this.size];
+        }
+
+        private boolean push(long address) {
+            if (this.size == this.addresses.length) return false;
+            this.addresses[this.size++] = address;
+            return true;
+        }
+
+        private synchronized long popSynchronized() {
+            return this.pop();
+        }
+
+        private synchronized boolean pushSynchronized(long address) {
+            return this.push(address);
+        }
+    }
+}
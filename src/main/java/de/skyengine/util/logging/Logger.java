@@ -68,6 +68,14 @@ public class Logger {
         this.message(null, LogLevel.FATAL, throwable);
     }
 
+    /**
+     * @return <code>true</code> if debug messages are printed. Without a running engine debug output is disabled.
+     */
+    public boolean isDebugEnabled() {
+        SkyEngine engine = SkyEngine.get();
+        return engine != null && engine.getConfig().getDebugMode().equals(EngineConfig.DebugMode.FULL);
+    }
+
     private void message(String message, LogLevel level, Throwable throwable) {
         LocalDateTime ldt = LocalDateTime.now();
 
@@ -86,7 +94,7 @@ public class Logger {
                 System.out.println("[" + time + "] " + "[" + threadName + "/" + ANSI.WHITE + level.toString() + ANSI.RESET + "] " + this.name + " " + method + " : " + message);
                 break;
             case DEBUG:
-                if (SkyEngine.get().getConfig().getDebugMode().equals(EngineConfig.DebugMode.FULL)) {
+                if (this.isDebugEnabled()) {
                     System.out.println("[" + time + "] " + "[" + threadName + "/" + ANSI.CYAN + level.toString() + ANSI.RESET + "] " + this.name + " " + method + " : " + message);
                 }
                 break;
@@ -1,73 +1,251 @@
 package de.skyengine.util.math;
 
+/**
+ * Fractal brownian motion on top of a single {@link FastNoiseLite} noise.
+ * Every octave samples the noise at <code>lacunarity</code> times the coordinates of the previous octave,
+ * shifted by the octave offset, and adds it with <code>gain</code> times the previous amplitude.
+ * The fractal settings of the noise itself are disabled, every octave is exactly one noise evaluation.
+ * <p>
+ * The defaults are 4 OpenSimplex2 octaves with a frequency of 0.01, lacunarity 2, gain 0.5, a start
+ * amplitude of 0.5 and an offset of 100 blocks along x. A configured instance can be used by multiple threads.
+ */
 public class FBM {
 
-    private FastNoiseLite noise;
+    private final FastNoiseLite noise;
+
+    private final int seed;
+    private FastNoiseLite.NoiseType noiseType = FastNoiseLite.NoiseType.OpenSimplex2;
+    private float frequency = 0.01f;
+
+    private int octaves = 4;
+    private float lacunarity = 2.0f;
+    private float gain = 0.5f;
+    private float amplitude = 0.5f;
+
+    private float offsetX = 100.0f;
+    private float offsetZ = 0.0f;
+
+    /** Octave buffer of the grid functions. */
+    private final ThreadLocal<float[]> octaveBuffer = ThreadLocal.withInitial(() -> new float[0]);
 
     public FBM(int seed) {
+        this.seed = seed;
         this.noise = new FastNoiseLite(seed);
+        this.noise.SetFractalType(FastNoiseLite.FractalType.None);
+        this.noise.SetNoiseType(this.noiseType);
+        this.noise.SetFrequency(this.frequency);
     }
 
-    public double GetNoise(float x, float z) {
-        return this.noise.GetNoise(x, z);
+    /**
+     * @return the value of all octaves at the given position
+     */
+    public float fbm(float x, float z) {
+        float value = 0.0f;
+        float amplitude = this.amplitude;
+
+        for (int octave = 0; octave < this.octaves; octave++) {
+            value += amplitude * this.noise.GetNoise(x, z);
+
+            x = x * this.lacunarity + this.offsetX;
+            z = z * this.lacunarity + this.offsetZ;
+            amplitude *= this.gain;
+        }
+        return value;
     }
 
-    public float fbmRidged(float x, float z) {
-        // Initial values
+    /**
+     * Like {@link #fbm(float, float)} but every octave adds the negated absolute noise,
+     * which turns the zero crossings of the noise into sharp ridges.
+     */
+    public float ridged(float x, float z) {
         float value = 0.0f;
-        float amplitude = 0.5f;
-
-        value += amplitude * -Math.abs(GetNoise(x, z));
-        x = x * 2.0F + 100;
-        z *= 2.0F;
-        amplitude *= 0.5F;
-
-        value += amplitude * -Math.abs(GetNoise(x, z));
-        x = x * 2.0F + 100;
-        z *= 2.0F;
-        amplitude *= 0.5F;
-
-        value += amplitude * -Math.abs(GetNoise(x, z));
-        x = x * 2.0F + 100;
-        z *= 2.0F;
-        amplitude *= 0.5F;
-
-        value += amplitude * -Math.abs(GetNoise(x, z));
-        x = x * 2.0F + 100;
-        z *= 2.0F;
-        amplitude *= 0.5F;
-
-        value += amplitude * -Math.abs(GetNoise(x, z));
-        x = x * 2.0F + 100;
-        z *= 2.0F;
-        amplitude *= 0.5F;
+        float amplitude = this.amplitude;
+
+        for (int octave = 0; octave < this.octaves; octave++) {
+            value += amplitude * -Math.abs(this.noise.GetNoise(x, z));
+
+            x = x * this.lacunarity + this.offsetX;
+            z = z * this.lacunarity + this.offsetZ;
+            amplitude *= this.gain;
+        }
         return value;
     }
 
-    public float fbmSimplex(float x, float z) {
-        // Initial values
+    /**
+     * {@link #fbm(float, float)} together with its analytic partial derivatives, for example to erode
+     * steep slopes. Only supported for OpenSimplex2 and Perlin noise.
+     *
+     * @param derivative receives the slope along x at index 0 and along z at index 1
+     */
+    public float fbm(float x, float z, float[] derivative) {
         float value = 0.0f;
-        float amplitude = 0.5f;
-
-        value += amplitude * GetNoise(x, z);
-        x = x * 2.0F + 100;
-        z *= 2.0F;
-        amplitude *= 0.5F;
-
-        value += amplitude * GetNoise(x, z);
-        x = x * 2.0F + 100;
-        z *= 2.0F;
-        amplitude *= 0.5F;
-
-        value += amplitude * GetNoise(x, z);
-        x = x * 2.0F + 100;
-        z *= 2.0F;
-        amplitude *= 0.5F;
-
-        value += amplitude * GetNoise(x, z);
-        x = x * 2.0F + 100;
-        z *= 2.0F;
-        amplitude *= 0.5F;
+        float dx = 0.0f;
+        float dz = 0.0f;
+        float amplitude = this.amplitude;
+        float scale = 1.0f;
+
+        for (int octave = 0; octave < this.octaves; octave++) {
+            value += amplitude * this.noise.GetNoiseDerivative(x, z, derivative);
+
+            /* The octave coordinates change scale times as fast as the input */
+            dx += amplitude * scale * derivative[0];
+            dz += amplitude * scale * derivative[1];
+
+            x = x * this.lacunarity + this.offsetX;
+            z = z * this.lacunarity + this.offsetZ;
+            amplitude *= this.gain;
+            scale *= this.lacunarity;
+        }
+
+        derivative[0] = dx;
+        derivative[1] = dz;
         return value;
     }
+
+    /**
+     * {@link #fbm(float, float)} for a grid of points, <code>out[iz * nx + ix]</code> receives the value at
+     * <code>(x0 + ix * step, z0 + iz * step)</code>. Every octave is sampled with
+     * {@link FastNoiseLite#FillGrid2D}. The octave coordinates are computed once per grid instead of
+     * once per point, for integer positions the result is identical to the point version.
+     */
+    public void fillGrid(float[] out, float x0, float z0, int nx, int nz, float step) {
+        this.fillGrid(out, x0, z0, nx, nz, step, false);
+    }
+
+    /**
+     * {@link #ridged(float, float)} for a grid of points, see {@link #fillGrid}.
+     */
+    public void fillGridRidged(float[] out, float x0, float z0, int nx, int nz, float step) {
+        this.fillGrid(out, x0, z0, nx, nz, step, true);
+    }
+
+    private void fillGrid(float[] out, float x0, float z0, int nx, int nz, float step, boolean ridged) {
+        if (nx < 0 || nz < 0) throw new IllegalArgumentException("Negative grid size " + nx + "x" + nz);
+
+        int count = nx * nz;
+        if (out.length < count) throw new IllegalArgumentException("Output holds " + out.length + " values but the grid has " + count);
+
+        float[] octave = this.octaveBuffer.get();
+        if (octave.length < count) {
+            octave = new float[count];
+            this.octaveBuffer.set(octave);
+        }
+
+        float amplitude = this.amplitude;
+        for (int i = 0; i < count; i++) {
+            out[i] = 0.0f;
+        }
+
+        for (int o = 0; o < this.octaves; o++) {
+            this.noise.FillGrid2D(octave, x0, z0, nx, nz, step);
+
+            if (ridged) {
+                for (int i = 0; i < count; i++) {
+                    out[i] += amplitude * -Math.abs(octave[i]);
+                }
+            } else {
+                for (int i = 0; i < count; i++) {
+                    out[i] += amplitude * octave[i];
+                }
+            }
+
+            x0 = x0 * this.lacunarity + this.offsetX;
+            z0 = z0 * this.lacunarity + this.offsetZ;
+            step *= this.lacunarity;
+            amplitude *= this.gain;
+        }
+    }
+
+    public void setNoiseType(FastNoiseLite.NoiseType noiseType) {
+        this.noiseType = noiseType;
+        this.noise.SetNoiseType(noiseType);
+    }
+
+    /**
+     * @param frequency the frequency of the first octave
+     */
+    public void setFrequency(float frequency) {
+        this.frequency = frequency;
+        this.noise.SetFrequency(frequency);
+    }
+
+    public void setOctaves(int octaves) {
+        if (octaves < 1) throw new IllegalArgumentException("At least one octave is required, got " + octaves);
+        this.octaves = octaves;
+    }
+
+    /**
+     * @param lacunarity the frequency multiplier between two octaves
+     */
+    public void setLacunarity(float lacunarity) {
+        this.lacunarity = lacunarity;
+    }
+
+    /**
+     * @param gain the amplitude multiplier between two octaves
+     */
+    public void setGain(float gain) {
+        this.gain = gain;
+    }
+
+    /**
+     * @param amplitude the amplitude of the first octave
+     */
+    public void setAmplitude(float amplitude) {
+        this.amplitude = amplitude;
+    }
+
+    /**
+     * Set the shift that is added to the coordinates of every following octave,
+     * so the octaves don't share their origin.
+     */
+    public void setOffset(float offsetX, float offsetZ) {
+        this.offsetX = offsetX;
+        this.offsetZ = offsetZ;
+    }
+
+    /**
+     * @return a 64 bit hash of everything that affects the values of this instance,
+     * two instances with the same hash produce the same values
+     */
+    public long getConfigHash() {
+        long hash = this.seed;
+        hash = hash * 0x9E3779B97F4A7C15L + this.noiseType.ordinal();
+        hash = hash * 0x9E3779B97F4A7C15L + Float.floatToIntBits(this.frequency);
+        hash = hash * 0x9E3779B97F4A7C15L + this.octaves;
+        hash = hash * 0x9E3779B97F4A7C15L + Float.floatToIntBits(this.lacunarity);
+        hash = hash * 0x9E3779B97F4A7C15L + Float.floatToIntBits(this.gain);
+        hash = hash * 0x9E3779B97F4A7C15L + Float.floatToIntBits(this.amplitude);
+        hash = hash * 0x9E3779B97F4A7C15L + Float.floatToIntBits(this.offsetX);
+        hash = hash * 0x9E3779B97F4A7C15L + Float.floatToIntBits(this.offsetZ);
+        return hash ^ (hash >>> 29);
+    }
+
+    public int getSeed() {
+        return seed;
+    }
+
+    public FastNoiseLite.NoiseType getNoiseType() {
+        return noiseType;
+    }
+
+    public float getFrequency() {
+        return frequency;
+    }
+
+    public int getOctaves() {
+        return octaves;
+    }
+
+    public float getLacunarity() {
+        return lacunarity;
+    }
+
+    public float getGain() {
+        return gain;
+    }
+
+    public float getAmplitude() {
+        return amplitude;
+    }
 }
@@ -31,6 +31,12 @@ package de.skyengine.util.math;
 import org.joml.Vector2f;
 import org.joml.Vector3f;
 
+/**
+ * @deprecated {@link FastNoiseLite} is faster or on par for every noise type both libraries implement.
+ * Use {@link INoiseSource#create(FastNoiseLite.NoiseType, int)}, or {@link FastNoiseSource} where the values
+ * of this implementation are needed.
+ */
+@Deprecated
 public class FastNoise {
 	public enum NoiseType {Value, ValueFractal, Perlin, PerlinFractal, Simplex, SimplexFractal, Cellular, WhiteNoise, Cubic, CubicFractal}
 	public enum Interp {Linear, Hermite, Quintic}
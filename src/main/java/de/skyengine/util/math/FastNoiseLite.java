@@ -139,6 +139,8 @@ public class FastNoiseLite
     private TransformType3D mWarpTransformType3D = TransformType3D.DefaultOpenSimplex2;
     private float mDomainWarpAmp = 1.0f;
 
+    private INoiseKernel mVectorKernel = VECTORIZED_BY_DEFAULT ? VectorKernel.INSTANCE : null;
+
     /// <summary>
     /// Create new FastNoise object with default seed
     /// </summary>
@@ -301,6 +303,17 @@ public class FastNoiseLite
     public void SetDomainWarpAmp(float domainWarpAmp) { mDomainWarpAmp = domainWarpAmp; }
 
 
+    /// <summary>
+    /// Sets whether the batched functions evaluate OpenSimplex2 and Perlin noise with SIMD instructions
+    /// </summary>
+    /// <remarks>
+    /// Default: -Dskyengine.noise.vector, false if not set
+    /// Needs the jdk.incubator.vector module, without it the scalar code is used anyway.
+    /// The results are identical either way.
+    /// </remarks>
+    public void SetVectorized(boolean vectorized) { mVectorKernel = vectorized ? VectorKernel.INSTANCE : null; }
+
+
     /// <summary>
     /// 2D noise at given position using current settings
     /// </summary>
@@ -451,6 +464,361 @@ public class FastNoiseLite
     }
 
 
+    /// <summary>
+    /// 2D warps the input positions in place using current domain warp settings
+    /// </summary>
+    /// <remarks>
+    /// xs[i] and ys[i] receive the same values as DomainWarp(Vector2) for every point, without allocating.
+    /// Fractal and warp type are dispatched once per octave instead of once per point.
+    /// </remarks>
+    /// <example>
+    /// Example usage with the batched GetNoise
+    /// <code>DomainWarp(xs, ys, count)
+    /// GetNoise(xs, ys, out, count)</code>
+    /// </example>
+    public void DomainWarp(float[] xs, float[] ys, int count)
+    {
+        CheckPoints(count, xs, ys);
+
+        GridScratch scratch = GRID_SCRATCH.get();
+        float[] ws = scratch.Floats(0, count);
+        float[] vs = scratch.Floats(1, count);
+
+        boolean independent = mFractalType == FractalType.DomainWarpIndependent;
+        int octaves = independent || mFractalType == FractalType.DomainWarpProgressive ? mOctaves : 1;
+        int seed = mSeed;
+        float amp = mDomainWarpAmp * mFractalBounding;
+        float freq = mFrequency;
+
+        // Independent octaves all sample the warp at the original position, progressive ones at the warped one
+        if (independent) TransformWarpCoordinates2D(xs, ys, ws, vs, count);
+
+        for (int o = 0; o < octaves; o++)
+        {
+            if (!independent) TransformWarpCoordinates2D(xs, ys, ws, vs, count);
+            WarpOctave2D(seed++, amp, freq, ws, vs, xs, ys, count, scratch.coord2);
+
+            amp *= mGain;
+            freq *= mLacunarity;
+        }
+    }
+
+    /// <summary>
+    /// 3D warps the input positions in place using current domain warp settings
+    /// </summary>
+    /// <remarks>
+    /// See DomainWarp(float[], float[], int)
+    /// </remarks>
+    public void DomainWarp(float[] xs, float[] ys, float[] zs, int count)
+    {
+        CheckPoints(count, xs, ys, zs);
+
+        GridScratch scratch = GRID_SCRATCH.get();
+        float[] ws = scratch.Floats(0, count);
+        float[] vs = scratch.Floats(1, count);
+        float[] us = scratch.Floats(2, count);
+
+        boolean independent = mFractalType == FractalType.DomainWarpIndependent;
+        int octaves = independent || mFractalType == FractalType.DomainWarpProgressive ? mOctaves : 1;
+        int seed = mSeed;
+        float amp = mDomainWarpAmp * mFractalBounding;
+        float freq = mFrequency;
+
+        if (independent) TransformWarpCoordinates3D(xs, ys, zs, ws, vs, us, count);
+
+        for (int o = 0; o < octaves; o++)
+        {
+            if (!independent) TransformWarpCoordinates3D(xs, ys, zs, ws, vs, us, count);
+            WarpOctave3D(seed++, amp, freq, ws, vs, us, xs, ys, zs, count, scratch.coord3);
+
+            amp *= mGain;
+            freq *= mLacunarity;
+        }
+    }
+
+    /// <summary>
+    /// 2D noise at the given positions using current settings
+    /// </summary>
+    /// <remarks>
+    /// out[i] = GetNoise(xs[i], ys[i]), with identical results. Uses the same batched octaves as FillGrid2D(...),
+    /// so warped positions are as cheap to sample as a grid.
+    /// </remarks>
+    public void GetNoise(float[] xs, float[] ys, float[] out, int count)
+    {
+        CheckPoints(count, xs, ys, out);
+
+        if (mWeightedStrength != 0 && IsFractalNoise())
+        {
+            for (int i = 0; i < count; i++) out[i] = GetNoise(xs[i], ys[i]);
+            return;
+        }
+
+        GridScratch scratch = GRID_SCRATCH.get();
+        float[] noiseXs = scratch.Floats(0, count);
+        float[] noiseYs = scratch.Floats(1, count);
+        for (int i = 0; i < count; i++)
+        {
+            TransformNoiseCoordinate2D(xs[i] * mFrequency, ys[i] * mFrequency, noiseXs, noiseYs, i);
+        }
+
+        java.util.Arrays.fill(out, 0, count, 0);
+
+        int mode = GridMode();
+        int octaves = mode == GRID_SINGLE ? 1 : mOctaves;
+        int seed = mSeed;
+        float amp = mFractalBounding;
+
+        for (int o = 0; o < octaves; o++)
+        {
+            GridOctave(seed++, noiseXs, noiseYs, count, out, mode, amp, scratch);
+
+            if (o + 1 < octaves) ScaleGrid(noiseXs, count, noiseYs, count, null, 0);
+            amp *= mGain;
+        }
+    }
+
+    /// <summary>
+    /// 3D noise at the given positions using current settings
+    /// </summary>
+    /// <remarks>
+    /// out[i] = GetNoise(xs[i], ys[i], zs[i]), with identical results.
+    /// </remarks>
+    public void GetNoise(float[] xs, float[] ys, float[] zs, float[] out, int count)
+    {
+        CheckPoints(count, xs, ys, zs, out);
+
+        if (mWeightedStrength != 0 && IsFractalNoise())
+        {
+            for (int i = 0; i < count; i++) out[i] = GetNoise(xs[i], ys[i], zs[i]);
+            return;
+        }
+
+        GridScratch scratch = GRID_SCRATCH.get();
+        float[] noiseXs = scratch.Floats(0, count);
+        float[] noiseYs = scratch.Floats(1, count);
+        float[] noiseZs = scratch.Floats(2, count);
+        for (int i = 0; i < count; i++)
+        {
+            TransformNoiseCoordinate3D(xs[i] * mFrequency, ys[i] * mFrequency, zs[i] * mFrequency, noiseXs, noiseYs, noiseZs, i);
+        }
+
+        java.util.Arrays.fill(out, 0, count, 0);
+
+        int mode = GridMode();
+        int octaves = mode == GRID_SINGLE ? 1 : mOctaves;
+        int seed = mSeed;
+        float amp = mFractalBounding;
+
+        for (int o = 0; o < octaves; o++)
+        {
+            GridOctave(seed++, noiseXs, noiseYs, noiseZs, count, out, mode, amp, scratch);
+
+            if (o + 1 < octaves) ScaleGrid(noiseXs, count, noiseYs, count, noiseZs, count);
+            amp *= mGain;
+        }
+    }
+
+
+    /// <summary>
+    /// 2D noise and its partial derivatives at given position using current settings
+    /// </summary>
+    /// <remarks>
+    /// Only OpenSimplex2 and Perlin noise have analytic derivatives. Fractal settings are not applied,
+    /// the returned value is identical to GetNoise(x, y) with FractalType.None.
+    /// derivative[0] receives the slope along x and derivative[1] the slope along y.
+    /// </remarks>
+    /// <returns>
+    /// Noise output bounded between -1...1
+    /// </returns>
+    public float GetNoiseDerivative(/*FNLfloat*/ float x, /*FNLfloat*/ float y, float[] derivative)
+    {
+        x *= mFrequency;
+        y *= mFrequency;
+
+        float value;
+        switch (mNoiseType)
+        {
+            case OpenSimplex2:
+            {
+                final /*FNLfloat*/ float SQRT3 = (/*FNLfloat*/ float)1.7320508075688772935274463415059;
+                final /*FNLfloat*/ float F2 = 0.5f * (SQRT3 - 1);
+                /*FNLfloat*/ float t = (x + y) * F2;
+
+                // The unskew inside the noise cancels the skew, so the derivatives are already along x and y
+                value = SingleSimplexDerivative(mSeed, x + t, y + t, derivative);
+            }
+            break;
+            case Perlin:
+                value = SinglePerlinDerivative(mSeed, x, y, derivative);
+                break;
+            default:
+                throw new IllegalStateException("Noise type " + mNoiseType + " has no analytic derivatives");
+        }
+
+        derivative[0] *= mFrequency;
+        derivative[1] *= mFrequency;
+        return value;
+    }
+
+
+    /// <summary>
+    /// 2D noise for a grid of points using current settings
+    /// </summary>
+    /// <remarks>
+    /// out[iy * nx + ix] = GetNoise(x0 + ix * step, y0 + iy * step), with identical results.
+    /// Noise and fractal type are dispatched once per octave instead of once per point. For Perlin and Value
+    /// noise the lattice cell of every column is computed once per octave and the corner hashes are reused
+    /// between neighbouring points in the same cell.
+    /// OpenSimplex2 and Perlin noise use SIMD instructions when IsVectorized() is true, see SetVectorized(boolean).
+    /// </remarks>
+    public void FillGrid2D(float[] out, /*FNLfloat*/ float x0, /*FNLfloat*/ float y0, int nx, int ny, /*FNLfloat*/ float step)
+    {
+        int count = CheckGrid(out, nx, ny, 1);
+
+        // A weighted amplitude depends on every single point
+        if (mWeightedStrength != 0 && IsFractalNoise())
+        {
+            for (int iy = 0, i = 0; iy < ny; iy++)
+                for (int ix = 0; ix < nx; ix++)
+                    out[i++] = GetNoise(x0 + ix * step, y0 + iy * step);
+            return;
+        }
+
+        GridScratch scratch = GRID_SCRATCH.get();
+        boolean separable = mNoiseType == NoiseType.Value || (mNoiseType == NoiseType.Perlin && mVectorKernel == null);
+
+        float[] xs, ys;
+        if (separable)
+        {
+            xs = scratch.Floats(0, nx);
+            ys = scratch.Floats(1, ny);
+            for (int ix = 0; ix < nx; ix++) xs[ix] = (x0 + ix * step) * mFrequency;
+            for (int iy = 0; iy < ny; iy++) ys[iy] = (y0 + iy * step) * mFrequency;
+        }
+        else
+        {
+            xs = scratch.Floats(0, count);
+            ys = scratch.Floats(1, count);
+            for (int iy = 0, i = 0; iy < ny; iy++)
+            {
+                for (int ix = 0; ix < nx; ix++, i++)
+                {
+                    /*FNLfloat*/ float x = (x0 + ix * step) * mFrequency;
+                    /*FNLfloat*/ float y = (y0 + iy * step) * mFrequency;
+                    TransformNoiseCoordinate2D(x, y, xs, ys, i);
+                }
+            }
+        }
+
+        java.util.Arrays.fill(out, 0, count, 0);
+
+        int mode = GridMode();
+        int octaves = mode == GRID_SINGLE ? 1 : mOctaves;
+        int seed = mSeed;
+        float amp = mFractalBounding;
+
+        for (int o = 0; o < octaves; o++)
+        {
+            if (separable)
+            {
+                if (mNoiseType == NoiseType.Perlin) GridPerlin(seed++, xs, nx, ys, ny, out, mode, amp, scratch);
+                else GridValue(seed++, xs, nx, ys, ny, out, mode, amp, scratch);
+
+                if (o + 1 < octaves) ScaleGrid(xs, nx, ys, ny, null, 0);
+            }
+            else
+            {
+                GridOctave(seed++, xs, ys, count, out, mode, amp, scratch);
+
+                if (o + 1 < octaves) ScaleGrid(xs, count, ys, count, null, 0);
+            }
+
+            amp *= mGain;
+        }
+    }
+
+    /// <summary>
+    /// 3D noise for a grid of points using current settings
+    /// </summary>
+    /// <remarks>
+    /// out[(iy * nz + iz) * nx + ix] = GetNoise(x0 + ix * step, y0 + iy * step, z0 + iz * step), with identical results.
+    /// The layout matches the block index of a chunk section, y major and x minor.
+    /// See FillGrid2D(...) for the optimizations.
+    /// </remarks>
+    public void FillGrid3D(float[] out, /*FNLfloat*/ float x0, /*FNLfloat*/ float y0, /*FNLfloat*/ float z0, int nx, int ny, int nz, /*FNLfloat*/ float step)
+    {
+        int count = CheckGrid(out, nx, ny, nz);
+
+        if (mWeightedStrength != 0 && IsFractalNoise())
+        {
+            for (int iy = 0, i = 0; iy < ny; iy++)
+                for (int iz = 0; iz < nz; iz++)
+                    for (int ix = 0; ix < nx; ix++)
+                        out[i++] = GetNoise(x0 + ix * step, y0 + iy * step, z0 + iz * step);
+            return;
+        }
+
+        GridScratch scratch = GRID_SCRATCH.get();
+        boolean separable = mTransformType3D == TransformType3D.None &&
+                (mNoiseType == NoiseType.Value || (mNoiseType == NoiseType.Perlin && mVectorKernel == null));
+
+        float[] xs, ys, zs;
+        if (separable)
+        {
+            xs = scratch.Floats(0, nx);
+            ys = scratch.Floats(1, ny);
+            zs = scratch.Floats(2, nz);
+            for (int ix = 0; ix < nx; ix++) xs[ix] = (x0 + ix * step) * mFrequency;
+            for (int iy = 0; iy < ny; iy++) ys[iy] = (y0 + iy * step) * mFrequency;
+            for (int iz = 0; iz < nz; iz++) zs[iz] = (z0 + iz * step) * mFrequency;
+        }
+        else
+        {
+            xs = scratch.Floats(0, count);
+            ys = scratch.Floats(1, count);
+            zs = scratch.Floats(2, count);
+            for (int iy = 0, i = 0; iy < ny; iy++)
+            {
+                for (int iz = 0; iz < nz; iz++)
+                {
+                    for (int ix = 0; ix < nx; ix++, i++)
+                    {
+                        /*FNLfloat*/ float x = (x0 + ix * step) * mFrequency;
+                        /*FNLfloat*/ float y = (y0 + iy * step) * mFrequency;
+                        /*FNLfloat*/ float z = (z0 + iz * step) * mFrequency;
+                        TransformNoiseCoordinate3D(x, y, z, xs, ys, zs, i);
+                    }
+                }
+            }
+        }
+
+        java.util.Arrays.fill(out, 0, count, 0);
+
+        int mode = GridMode();
+        int octaves = mode == GRID_SINGLE ? 1 : mOctaves;
+        int seed = mSeed;
+        float amp = mFractalBounding;
+
+        for (int o = 0; o < octaves; o++)
+        {
+            if (separable)
+            {
+                if (mNoiseType == NoiseType.Perlin) GridPerlin(seed++, xs, nx, ys, ny, zs, nz, out, mode, amp, scratch);
+                else GridValue(seed++, xs, nx, ys, ny, zs, nz, out, mode, amp, scratch);
+
+                if (o + 1 < octaves) ScaleGrid(xs, nx, ys, ny, zs, nz);
+            }
+            else
+            {
+                GridOctave(seed++, xs, ys, zs, count, out, mode, amp, scratch);
+
+                if (o + 1 < octaves) ScaleGrid(xs, count, ys, count, zs, count);
+            }
+
+            amp *= mGain;
+        }
+    }
+
     private static final float[] Gradients2D = {
             0.130526192220052f,  0.99144486137381f,   0.38268343236509f,   0.923879532511287f,  0.608761429008721f,  0.793353340291235f,  0.793353340291235f,  0.608761429008721f,
             0.923879532511287f,  0.38268343236509f,   0.99144486137381f,   0.130526192220051f,  0.99144486137381f,  -0.130526192220051f,  0.923879532511287f, -0.38268343236509f,
@@ -594,6 +962,8 @@ public class FastNoiseLite
 
     private static float InterpQuintic(float t) { return t * t * t * (t * (t * 6 - 15) + 10); }
 
+    private static float InterpQuinticDerivative(float t) { return t * t * (t * (t * 30 - 60) + 30); }
+
     private static float CubicLerp(float a, float b, float c, float d, float t)
     {
         float p = (d - c) - (a - b);
@@ -986,6 +1356,85 @@ public class FastNoiseLite
         return (n0 + n1 + n2) * 99.83685446303647f;
     }
 
+    private float SingleSimplexDerivative(int seed, /*FNLfloat*/ float x, /*FNLfloat*/ float y, float[] derivative)
+    {
+        // Same as SingleSimplex, every corner a^4 * dot(g, d) adds a^4 * g - 8 * a^3 * dot(g, d) * d to the gradient
+
+        final float SQRT3 = 1.7320508075688772935274463415059f;
+        final float G2 = (3 - SQRT3) / 6;
+
+        int i = FastFloor(x);
+        int j = FastFloor(y);
+        float xi = x - i;
+        float yi = y - j;
+
+        float t = (xi + yi) * G2;
+        float x0 = xi - t;
+        float y0 = yi - t;
+
+        i *= PrimeX;
+        j *= PrimeY;
+
+        float n0 = 0, n1 = 0, n2 = 0;
+        float dx = 0, dy = 0;
+
+        float a = 0.5f - x0 * x0 - y0 * y0;
+        if (a > 0)
+        {
+            int g = GradIndex(seed, i, j);
+            float dot = GradDot(g, x0, y0);
+            float a4 = (a * a) * (a * a);
+            float da = 8 * (a * a) * a * dot;
+            n0 = a4 * dot;
+            dx += a4 * Gradients2D[g] - da * x0;
+            dy += a4 * Gradients2D[g | 1] - da * y0;
+        }
+
+        float c = 2 * (1 - 2 * G2) * (1 / G2 - 2) * t + (-2 * (1 - 2 * G2) * (1 - 2 * G2) + a);
+        if (c > 0)
+        {
+            float x2 = x0 + (2 * G2 - 1);
+            float y2 = y0 + (2 * G2 - 1);
+            int g = GradIndex(seed, i + PrimeX, j + PrimeY);
+            float dot = GradDot(g, x2, y2);
+            float c4 = (c * c) * (c * c);
+            float dc = 8 * (c * c) * c * dot;
+            n2 = c4 * dot;
+            dx += c4 * Gradients2D[g] - dc * x2;
+            dy += c4 * Gradients2D[g | 1] - dc * y2;
+        }
+
+        float x1, y1;
+        int g1;
+        if (y0 > x0)
+        {
+            x1 = x0 + G2;
+            y1 = y0 + (G2 - 1);
+            g1 = GradIndex(seed, i, j + PrimeY);
+        }
+        else
+        {
+            x1 = x0 + (G2 - 1);
+            y1 = y0 + G2;
+            g1 = GradIndex(seed, i + PrimeX, j);
+        }
+
+        float b = 0.5f - x1 * x1 - y1 * y1;
+        if (b > 0)
+        {
+            float dot = GradDot(g1, x1, y1);
+            float b4 = (b * b) * (b * b);
+            float db = 8 * (b * b) * b * dot;
+            n1 = b4 * dot;
+            dx += b4 * Gradients2D[g1] - db * x1;
+            dy += b4 * Gradients2D[g1 | 1] - db * y1;
+        }
+
+        derivative[0] = dx * 99.83685446303647f;
+        derivative[1] = dy * 99.83685446303647f;
+        return (n0 + n1 + n2) * 99.83685446303647f;
+    }
+
     private float SingleOpenSimplex2(int seed, /*FNLfloat*/ float x, /*FNLfloat*/ float y, /*FNLfloat*/ float z)
     {
         // 3D OpenSimplex2 case uses two offset rotated cube grids.
@@ -1717,43 +2166,86 @@ public class FastNoiseLite
         return Lerp(xf0, xf1, ys) * 1.4247691104677813f;
     }
 
-    private float SinglePerlin(int seed, /*FNLfloat*/ float x, /*FNLfloat*/ float y, /*FNLfloat*/ float z)
+    private float SinglePerlinDerivative(int seed, /*FNLfloat*/ float x, /*FNLfloat*/ float y, float[] derivative)
     {
         int x0 = FastFloor(x);
         int y0 = FastFloor(y);
-        int z0 = FastFloor(z);
 
-        float xd0 = (float)(x - x0);
-        float yd0 = (float)(y - y0);
-        float zd0 = (float)(z - z0);
+        float xd0 = x - x0;
+        float yd0 = y - y0;
         float xd1 = xd0 - 1;
         float yd1 = yd0 - 1;
-        float zd1 = zd0 - 1;
 
         float xs = InterpQuintic(xd0);
         float ys = InterpQuintic(yd0);
-        float zs = InterpQuintic(zd0);
 
         x0 *= PrimeX;
         y0 *= PrimeY;
-        z0 *= PrimeZ;
         int x1 = x0 + PrimeX;
         int y1 = y0 + PrimeY;
-        int z1 = z0 + PrimeZ;
 
-        float xf00 = Lerp(GradCoord(seed, x0, y0, z0, xd0, yd0, zd0), GradCoord(seed, x1, y0, z0, xd1, yd0, zd0), xs);
-        float xf10 = Lerp(GradCoord(seed, x0, y1, z0, xd0, yd1, zd0), GradCoord(seed, x1, y1, z0, xd1, yd1, zd0), xs);
-        float xf01 = Lerp(GradCoord(seed, x0, y0, z1, xd0, yd0, zd1), GradCoord(seed, x1, y0, z1, xd1, yd0, zd1), xs);
-        float xf11 = Lerp(GradCoord(seed, x0, y1, z1, xd0, yd1, zd1), GradCoord(seed, x1, y1, z1, xd1, yd1, zd1), xs);
+        int g00 = GradIndex(seed, x0, y0);
+        int g10 = GradIndex(seed, x1, y0);
+        int g01 = GradIndex(seed, x0, y1);
+        int g11 = GradIndex(seed, x1, y1);
 
-        float yf0 = Lerp(xf00, xf10, ys);
-        float yf1 = Lerp(xf01, xf11, ys);
+        float v00 = GradDot(g00, xd0, yd0);
+        float v10 = GradDot(g10, xd1, yd0);
+        float v01 = GradDot(g01, xd0, yd1);
+        float v11 = GradDot(g11, xd1, yd1);
 
-        return Lerp(yf0, yf1, zs) * 0.964921414852142333984375f;
-    }
+        float xf0 = Lerp(v00, v10, xs);
+        float xf1 = Lerp(v01, v11, xs);
 
+        // The gradient of every corner dot product is the corner gradient, the fade curves add their slope
+        float dxs = InterpQuinticDerivative(xd0);
+        float dx0 = Lerp(Gradients2D[g00], Gradients2D[g10], xs) + dxs * (v10 - v00);
+        float dx1 = Lerp(Gradients2D[g01], Gradients2D[g11], xs) + dxs * (v11 - v01);
+        float dy0 = Lerp(Gradients2D[g00 | 1], Gradients2D[g10 | 1], xs);
+        float dy1 = Lerp(Gradients2D[g01 | 1], Gradients2D[g11 | 1], xs);
 
-    // Value Cubic Noise
+        derivative[0] = Lerp(dx0, dx1, ys) * 1.4247691104677813f;
+        derivative[1] = (Lerp(dy0, dy1, ys) + InterpQuinticDerivative(yd0) * (xf1 - xf0)) * 1.4247691104677813f;
+        return Lerp(xf0, xf1, ys) * 1.4247691104677813f;
+    }
+
+    private float SinglePerlin(int seed, /*FNLfloat*/ float x, /*FNLfloat*/ float y, /*FNLfloat*/ float z)
+    {
+        int x0 = FastFloor(x);
+        int y0 = FastFloor(y);
+        int z0 = FastFloor(z);
+
+        float xd0 = (float)(x - x0);
+        float yd0 = (float)(y - y0);
+        float zd0 = (float)(z - z0);
+        float xd1 = xd0 - 1;
+        float yd1 = yd0 - 1;
+        float zd1 = zd0 - 1;
+
+        float xs = InterpQuintic(xd0);
+        float ys = InterpQuintic(yd0);
+        float zs = InterpQuintic(zd0);
+
+        x0 *= PrimeX;
+        y0 *= PrimeY;
+        z0 *= PrimeZ;
+        int x1 = x0 + PrimeX;
+        int y1 = y0 + PrimeY;
+        int z1 = z0 + PrimeZ;
+
+        float xf00 = Lerp(GradCoord(seed, x0, y0, z0, xd0, yd0, zd0), GradCoord(seed, x1, y0, z0, xd1, yd0, zd0), xs);
+        float xf10 = Lerp(GradCoord(seed, x0, y1, z0, xd0, yd1, zd0), GradCoord(seed, x1, y1, z0, xd1, yd1, zd0), xs);
+        float xf01 = Lerp(GradCoord(seed, x0, y0, z1, xd0, yd0, zd1), GradCoord(seed, x1, y0, z1, xd1, yd0, zd1), xs);
+        float xf11 = Lerp(GradCoord(seed, x0, y1, z1, xd0, yd1, zd1), GradCoord(seed, x1, y1, z1, xd1, yd1, zd1), xs);
+
+        float yf0 = Lerp(xf00, xf10, ys);
+        float yf1 = Lerp(xf01, xf11, ys);
+
+        return Lerp(yf0, yf1, zs) * 0.964921414852142333984375f;
+    }
+
+
+    // Value Cubic Noise
 
     private float SingleValueCubic(int seed, /*FNLfloat*/ float x, /*FNLfloat*/ float y)
     {
@@ -1888,6 +2380,693 @@ public class FastNoiseLite
     }
 
 
+    // Batched grid sampling
+
+    private static final int GRID_SINGLE = 0;
+    private static final int GRID_FBM = 1;
+    private static final int GRID_RIDGED = 2;
+    private static final int GRID_PINGPONG = 3;
+
+    private static final ThreadLocal<GridScratch> GRID_SCRATCH = ThreadLocal.withInitial(GridScratch::new);
+
+    private static final boolean VECTORIZED_BY_DEFAULT = Boolean.getBoolean("skyengine.noise.vector");
+
+    /// <summary>
+    /// Loads the SIMD kernel on first use, so the incubating module is only touched when it is turned on
+    /// </summary>
+    private static class VectorKernel
+    {
+        private static final INoiseKernel INSTANCE = LoadVectorKernel();
+    }
+
+    /// <summary>
+    /// The SIMD kernel needs the jdk.incubator.vector module (--add-modules jdk.incubator.vector),
+    /// without it the scalar code is used
+    /// </summary>
+    private static INoiseKernel LoadVectorKernel()
+    {
+        if (!ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent()) return null;
+
+        try
+        {
+            return (INoiseKernel)Class.forName("de.skyengine.util.math.VectorNoiseKernel")
+                    .getDeclaredConstructor(float[].class, float[].class)
+                    .newInstance(Gradients2D, Gradients3D);
+        }
+        catch (ReflectiveOperationException | LinkageError e)
+        {
+            return null;
+        }
+    }
+
+    /// <summary>
+    /// Whether the batched functions evaluate OpenSimplex2 and Perlin noise with SIMD instructions
+    /// </summary>
+    public boolean IsVectorized() { return mVectorKernel != null; }
+
+    /// <summary>
+    /// Whether SetVectorized(true) can turn on the SIMD instructions
+    /// </summary>
+    public static boolean IsVectorSupported() { return VectorKernel.INSTANCE != null; }
+
+    /// <summary>
+    /// Reused per thread so batched sampling doesn't allocate and instances stay safe to share between threads
+    /// </summary>
+    private static class GridScratch
+    {
+        private final float[][] floats = new float[4][0];
+        private int[] cells = new int[0];
+        private float[] fracs = new float[0];
+        private float[] fades = new float[0];
+
+        // Warp output of a single point for the batched domain warp
+        private final Vector2 coord2 = new Vector2(0, 0);
+        private final Vector3 coord3 = new Vector3(0, 0, 0);
+
+        float[] Floats(int index, int size)
+        {
+            if (floats[index].length < size) floats[index] = new float[size];
+            return floats[index];
+        }
+
+        void EnsureColumns(int size)
+        {
+            if (cells.length < size)
+            {
+                cells = new int[size];
+                fracs = new float[size];
+                fades = new float[size];
+            }
+        }
+    }
+
+    private static int CheckGrid(float[] out, int nx, int ny, int nz)
+    {
+        if (nx < 0 || ny < 0 || nz < 0)
+            throw new IllegalArgumentException("Grid size can't be negative (" + nx + ", " + ny + ", " + nz + ")");
+
+        int count = nx * ny * nz;
+        if (out.length < count)
+            throw new IllegalArgumentException("Output array is too small for the grid (" + out.length + " < " + count + ")");
+        return count;
+    }
+
+    // Fixed arities, a varargs array would be allocated on every batched call
+    private static void CheckPoints(int count, float[] xs, float[] ys)
+    {
+        CheckPoints(count, xs, ys, xs, ys);
+    }
+
+    private static void CheckPoints(int count, float[] xs, float[] ys, float[] zs)
+    {
+        CheckPoints(count, xs, ys, zs, zs);
+    }
+
+    private static void CheckPoints(int count, float[] a, float[] b, float[] c, float[] d)
+    {
+        if (count < 0)
+            throw new IllegalArgumentException("Point count can't be negative (" + count + ")");
+        if (a.length < count || b.length < count || c.length < count || d.length < count)
+            throw new IllegalArgumentException("Array is too small for the points (" +
+                    Math.min(Math.min(a.length, b.length), Math.min(c.length, d.length)) + " < " + count + ")");
+    }
+
+    private boolean IsFractalNoise()
+    {
+        return mFractalType == FractalType.FBm || mFractalType == FractalType.Ridged || mFractalType == FractalType.PingPong;
+    }
+
+    private int GridMode()
+    {
+        switch (mFractalType)
+        {
+            case FBm:
+                return GRID_FBM;
+            case Ridged:
+                return GRID_RIDGED;
+            case PingPong:
+                return GRID_PINGPONG;
+            default:
+                return GRID_SINGLE;
+        }
+    }
+
+    // Same arithmetic as the fractal functions, so the results stay bit identical to GetNoise(...)
+    private float Accumulate(int mode, float sum, float noise, float amp)
+    {
+        switch (mode)
+        {
+            case GRID_FBM:
+                return sum + noise * amp;
+            case GRID_RIDGED:
+                return sum + (FastAbs(noise) * -2 + 1) * amp;
+            case GRID_PINGPONG:
+                return sum + (PingPong((noise + 1) * mPingPongStength) - 0.5f) * 2 * amp;
+            default:
+                return noise;
+        }
+    }
+
+    private void AccumulateGrid(float[] noise, int count, float[] out, int mode, float amp)
+    {
+        for (int i = 0; i < count; i++) out[i] = Accumulate(mode, out[i], noise[i], amp);
+    }
+
+    private void ScaleGrid(float[] xs, int nx, float[] ys, int ny, float[] zs, int nz)
+    {
+        for (int i = 0; i < nx; i++) xs[i] *= mLacunarity;
+        for (int i = 0; i < ny; i++) ys[i] *= mLacunarity;
+        for (int i = 0; i < nz; i++) zs[i] *= mLacunarity;
+    }
+
+    private void TransformNoiseCoordinate2D(/*FNLfloat*/ float x, /*FNLfloat*/ float y, float[] xs, float[] ys, int i)
+    {
+        switch (mNoiseType)
+        {
+            case OpenSimplex2:
+            case OpenSimplex2S:
+            {
+                final /*FNLfloat*/ float SQRT3 = (/*FNLfloat*/ float)1.7320508075688772935274463415059;
+                final /*FNLfloat*/ float F2 = 0.5f * (SQRT3 - 1);
+                /*FNLfloat*/ float t = (x + y) * F2;
+                x += t;
+                y += t;
+            }
+            break;
+            default:
+                break;
+        }
+
+        xs[i] = x;
+        ys[i] = y;
+    }
+
+    private void TransformNoiseCoordinate3D(/*FNLfloat*/ float x, /*FNLfloat*/ float y, /*FNLfloat*/ float z, float[] xs, float[] ys, float[] zs, int i)
+    {
+        switch (mTransformType3D)
+        {
+            case ImproveXYPlanes:
+            {
+                /*FNLfloat*/ float xy = x + y;
+                /*FNLfloat*/ float s2 = xy * -(/*FNLfloat*/ float)0.211324865405187;
+                z *= (/*FNLfloat*/ float)0.577350269189626;
+                x += s2 - z;
+                y = y + s2 - z;
+                z += xy * (/*FNLfloat*/ float)0.577350269189626;
+            }
+            break;
+            case ImproveXZPlanes:
+            {
+                /*FNLfloat*/ float xz = x + z;
+                /*FNLfloat*/ float s2 = xz * -(/*FNLfloat*/ float)0.211324865405187;
+                y *= (/*FNLfloat*/ float)0.577350269189626;
+                x += s2 - y;
+                z += s2 - y;
+                y += xz * (/*FNLfloat*/ float)0.577350269189626;
+            }
+            break;
+            case DefaultOpenSimplex2:
+            {
+                final /*FNLfloat*/ float R3 = (/*FNLfloat*/ float)(2.0 / 3.0);
+                /*FNLfloat*/ float r = (x + y + z) * R3; // Rotation, not skew
+                x = r - x;
+                y = r - y;
+                z = r - z;
+            }
+            break;
+            default:
+                break;
+        }
+
+        xs[i] = x;
+        ys[i] = y;
+        zs[i] = z;
+    }
+
+    private void GridOctave(int seed, float[] xs, float[] ys, int count, float[] out, int mode, float amp, GridScratch scratch)
+    {
+        switch (mNoiseType)
+        {
+            case OpenSimplex2:
+            {
+                int i = 0;
+                if (mVectorKernel != null)
+                {
+                    float[] noise = scratch.Floats(3, count);
+                    i = mVectorKernel.simplex(seed, xs, ys, noise, count);
+                    AccumulateGrid(noise, i, out, mode, amp);
+                }
+                for (; i < count; i++) out[i] = Accumulate(mode, out[i], SingleSimplex(seed, xs[i], ys[i]), amp);
+            }
+            break;
+            case OpenSimplex2S:
+                for (int i = 0; i < count; i++) out[i] = Accumulate(mode, out[i], SingleOpenSimplex2S(seed, xs[i], ys[i]), amp);
+                break;
+            case Cellular:
+                for (int i = 0; i < count; i++) out[i] = Accumulate(mode, out[i], SingleCellular(seed, xs[i], ys[i]), amp);
+                break;
+            case Perlin:
+            {
+                int i = 0;
+                if (mVectorKernel != null)
+                {
+                    float[] noise = scratch.Floats(3, count);
+                    i = mVectorKernel.perlin(seed, xs, ys, noise, count);
+                    AccumulateGrid(noise, i, out, mode, amp);
+                }
+                for (; i < count; i++) out[i] = Accumulate(mode, out[i], SinglePerlin(seed, xs[i], ys[i]), amp);
+            }
+            break;
+            case ValueCubic:
+                for (int i = 0; i < count; i++) out[i] = Accumulate(mode, out[i], SingleValueCubic(seed, xs[i], ys[i]), amp);
+                break;
+            case Value:
+                for (int i = 0; i < count; i++) out[i] = Accumulate(mode, out[i], SingleValue(seed, xs[i], ys[i]), amp);
+                break;
+            default:
+                for (int i = 0; i < count; i++) out[i] = Accumulate(mode, out[i], 0, amp);
+                break;
+        }
+    }
+
+    private void GridOctave(int seed, float[] xs, float[] ys, float[] zs, int count, float[] out, int mode, float amp, GridScratch scratch)
+    {
+        switch (mNoiseType)
+        {
+            case OpenSimplex2:
+            {
+                int i = 0;
+                if (mVectorKernel != null)
+                {
+                    float[] noise = scratch.Floats(3, count);
+                    i = mVectorKernel.simplex(seed, xs, ys, zs, noise, count);
+                    AccumulateGrid(noise, i, out, mode, amp);
+                }
+                for (; i < count; i++) out[i] = Accumulate(mode, out[i], SingleOpenSimplex2(seed, xs[i], ys[i], zs[i]), amp);
+            }
+            break;
+            case OpenSimplex2S:
+                for (int i = 0; i < count; i++) out[i] = Accumulate(mode, out[i], SingleOpenSimplex2S(seed, xs[i], ys[i], zs[i]), amp);
+                break;
+            case Cellular:
+                for (int i = 0; i < count; i++) out[i] = Accumulate(mode, out[i], SingleCellular(seed, xs[i], ys[i], zs[i]), amp);
+                break;
+            case Perlin:
+            {
+                int i = 0;
+                if (mVectorKernel != null)
+                {
+                    float[] noise = scratch.Floats(3, count);
+                    i = mVectorKernel.perlin(seed, xs, ys, zs, noise, count);
+                    AccumulateGrid(noise, i, out, mode, amp);
+                }
+                for (; i < count; i++) out[i] = Accumulate(mode, out[i], SinglePerlin(seed, xs[i], ys[i], zs[i]), amp);
+            }
+            break;
+            case ValueCubic:
+                for (int i = 0; i < count; i++) out[i] = Accumulate(mode, out[i], SingleValueCubic(seed, xs[i], ys[i], zs[i]), amp);
+                break;
+            case Value:
+                for (int i = 0; i < count; i++) out[i] = Accumulate(mode, out[i], SingleValue(seed, xs[i], ys[i], zs[i]), amp);
+                break;
+            default:
+                for (int i = 0; i < count; i++) out[i] = Accumulate(mode, out[i], 0, amp);
+                break;
+        }
+    }
+
+    // The lattice cell, offset and interpolation weight of every column, shared by all rows
+    private static void GridColumns(float[] xs, int nx, GridScratch scratch, boolean quintic)
+    {
+        scratch.EnsureColumns(nx);
+        for (int ix = 0; ix < nx; ix++)
+        {
+            int x0 = FastFloor(xs[ix]);
+            float xd0 = xs[ix] - x0;
+            scratch.cells[ix] = x0 * PrimeX;
+            scratch.fracs[ix] = xd0;
+            scratch.fades[ix] = quintic ? InterpQuintic(xd0) : InterpHermite(xd0);
+        }
+    }
+
+    private static int GradIndex(int seed, int xPrimed, int yPrimed)
+    {
+        int hash = Hash(seed, xPrimed, yPrimed);
+        hash ^= hash >> 15;
+        return hash & (127 << 1);
+    }
+
+    private static int GradIndex(int seed, int xPrimed, int yPrimed, int zPrimed)
+    {
+        int hash = Hash(seed, xPrimed, yPrimed, zPrimed);
+        hash ^= hash >> 15;
+        return hash & (63 << 2);
+    }
+
+    private static float GradDot(int index, float xd, float yd)
+    {
+        return xd * Gradients2D[index] + yd * Gradients2D[index | 1];
+    }
+
+    private static float GradDot(int index, float xd, float yd, float zd)
+    {
+        return xd * Gradients3D[index] + yd * Gradients3D[index | 1] + zd * Gradients3D[index | 2];
+    }
+
+    private void GridPerlin(int seed, float[] xs, int nx, float[] ys, int ny, float[] out, int mode, float amp, GridScratch scratch)
+    {
+        GridColumns(xs, nx, scratch, true);
+        int[] cells = scratch.cells;
+        float[] fracs = scratch.fracs;
+        float[] fades = scratch.fades;
+
+        for (int iy = 0, i = 0; iy < ny; iy++)
+        {
+            int y0 = FastFloor(ys[iy]);
+            float yd0 = ys[iy] - y0;
+            float yd1 = yd0 - 1;
+            float yf = InterpQuintic(yd0);
+            y0 *= PrimeY;
+            int y1 = y0 + PrimeY;
+
+            int cell = 0, g00 = 0, g10 = 0, g01 = 0, g11 = 0;
+            for (int ix = 0; ix < nx; ix++, i++)
+            {
+                int x0 = cells[ix];
+                if (ix == 0 || x0 != cell)
+                {
+                    int x1 = x0 + PrimeX;
+                    g00 = GradIndex(seed, x0, y0);
+                    g10 = GradIndex(seed, x1, y0);
+                    g01 = GradIndex(seed, x0, y1);
+                    g11 = GradIndex(seed, x1, y1);
+                    cell = x0;
+                }
+
+                float xd0 = fracs[ix];
+                float xd1 = xd0 - 1;
+                float xf0 = Lerp(GradDot(g00, xd0, yd0), GradDot(g10, xd1, yd0), fades[ix]);
+                float xf1 = Lerp(GradDot(g01, xd0, yd1), GradDot(g11, xd1, yd1), fades[ix]);
+
+                out[i] = Accumulate(mode, out[i], Lerp(xf0, xf1, yf) * 1.4247691104677813f, amp);
+            }
+        }
+    }
+
+    private void GridPerlin(int seed, float[] xs, int nx, float[] ys, int ny, float[] zs, int nz, float[] out, int mode, float amp, GridScratch scratch)
+    {
+        GridColumns(xs, nx, scratch, true);
+        int[] cells = scratch.cells;
+        float[] fracs = scratch.fracs;
+        float[] fades = scratch.fades;
+
+        for (int iy = 0, i = 0; iy < ny; iy++)
+        {
+            int y0 = FastFloor(ys[iy]);
+            float yd0 = ys[iy] - y0;
+            float yd1 = yd0 - 1;
+            float yf = InterpQuintic(yd0);
+            y0 *= PrimeY;
+            int y1 = y0 + PrimeY;
+
+            for (int iz = 0; iz < nz; iz++)
+            {
+                int z0 = FastFloor(zs[iz]);
+                float zd0 = zs[iz] - z0;
+                float zd1 = zd0 - 1;
+                float zf = InterpQuintic(zd0);
+                z0 *= PrimeZ;
+                int z1 = z0 + PrimeZ;
+
+                int cell = 0, g000 = 0, g100 = 0, g010 = 0, g110 = 0, g001 = 0, g101 = 0, g011 = 0, g111 = 0;
+                for (int ix = 0; ix < nx; ix++, i++)
+                {
+                    int x0 = cells[ix];
+                    if (ix == 0 || x0 != cell)
+                    {
+                        int x1 = x0 + PrimeX;
+                        g000 = GradIndex(seed, x0, y0, z0);
+                        g100 = GradIndex(seed, x1, y0, z0);
+                        g010 = GradIndex(seed, x0, y1, z0);
+                        g110 = GradIndex(seed, x1, y1, z0);
+                        g001 = GradIndex(seed, x0, y0, z1);
+                        g101 = GradIndex(seed, x1, y0, z1);
+                        g011 = GradIndex(seed, x0, y1, z1);
+                        g111 = GradIndex(seed, x1, y1, z1);
+                        cell = x0;
+                    }
+
+                    float xd0 = fracs[ix];
+                    float xd1 = xd0 - 1;
+                    float xf = fades[ix];
+                    float xf00 = Lerp(GradDot(g000, xd0, yd0, zd0), GradDot(g100, xd1, yd0, zd0), xf);
+                    float xf10 = Lerp(GradDot(g010, xd0, yd1, zd0), GradDot(g110, xd1, yd1, zd0), xf);
+                    float xf01 = Lerp(GradDot(g001, xd0, yd0, zd1), GradDot(g101, xd1, yd0, zd1), xf);
+                    float xf11 = Lerp(GradDot(g011, xd0, yd1, zd1), GradDot(g111, xd1, yd1, zd1), xf);
+
+                    float yf0 = Lerp(xf00, xf10, yf);
+                    float yf1 = Lerp(xf01, xf11, yf);
+
+                    out[i] = Accumulate(mode, out[i], Lerp(yf0, yf1, zf) * 0.964921414852142333984375f, amp);
+                }
+            }
+        }
+    }
+
+    private void GridValue(int seed, float[] xs, int nx, float[] ys, int ny, float[] out, int mode, float amp, GridScratch scratch)
+    {
+        GridColumns(xs, nx, scratch, false);
+        int[] cells = scratch.cells;
+        float[] fades = scratch.fades;
+
+        for (int iy = 0, i = 0; iy < ny; iy++)
+        {
+            int y0 = FastFloor(ys[iy]);
+            float yf = InterpHermite(ys[iy] - y0);
+            y0 *= PrimeY;
+            int y1 = y0 + PrimeY;
+
+            int cell = 0;
+            float v00 = 0, v10 = 0, v01 = 0, v11 = 0;
+            for (int ix = 0; ix < nx; ix++, i++)
+            {
+                int x0 = cells[ix];
+                if (ix == 0 || x0 != cell)
+                {
+                    int x1 = x0 + PrimeX;
+                    v00 = ValCoord(seed, x0, y0);
+                    v10 = ValCoord(seed, x1, y0);
+                    v01 = ValCoord(seed, x0, y1);
+                    v11 = ValCoord(seed, x1, y1);
+                    cell = x0;
+                }
+
+                float xf0 = Lerp(v00, v10, fades[ix]);
+                float xf1 = Lerp(v01, v11, fades[ix]);
+
+                out[i] = Accumulate(mode, out[i], Lerp(xf0, xf1, yf), amp);
+            }
+        }
+    }
+
+    private void GridValue(int seed, float[] xs, int nx, float[] ys, int ny, float[] zs, int nz, float[] out, int mode, float amp, GridScratch scratch)
+    {
+        GridColumns(xs, nx, scratch, false);
+        int[] cells = scratch.cells;
+        float[] fades = scratch.fades;
+
+        for (int iy = 0, i = 0; iy < ny; iy++)
+        {
+            int y0 = FastFloor(ys[iy]);
+            float yf = InterpHermite(ys[iy] - y0);
+            y0 *= PrimeY;
+            int y1 = y0 + PrimeY;
+
+            for (int iz = 0; iz < nz; iz++)
+            {
+                int z0 = FastFloor(zs[iz]);
+                float zf = InterpHermite(zs[iz] - z0);
+                z0 *= PrimeZ;
+                int z1 = z0 + PrimeZ;
+
+                int cell = 0;
+                float v000 = 0, v100 = 0, v010 = 0, v110 = 0, v001 = 0, v101 = 0, v011 = 0, v111 = 0;
+                for (int ix = 0; ix < nx; ix++, i++)
+                {
+                    int x0 = cells[ix];
+                    if (ix == 0 || x0 != cell)
+                    {
+                        int x1 = x0 + PrimeX;
+                        v000 = ValCoord(seed, x0, y0, z0);
+                        v100 = ValCoord(seed, x1, y0, z0);
+                        v010 = ValCoord(seed, x0, y1, z0);
+                        v110 = ValCoord(seed, x1, y1, z0);
+                        v001 = ValCoord(seed, x0, y0, z1);
+                        v101 = ValCoord(seed, x1, y0, z1);
+                        v011 = ValCoord(seed, x0, y1, z1);
+                        v111 = ValCoord(seed, x1, y1, z1);
+                        cell = x0;
+                    }
+
+                    float xf = fades[ix];
+                    float xf00 = Lerp(v000, v100, xf);
+                    float xf10 = Lerp(v010, v110, xf);
+                    float xf01 = Lerp(v001, v101, xf);
+                    float xf11 = Lerp(v011, v111, xf);
+
+                    float yf0 = Lerp(xf00, xf10, yf);
+                    float yf1 = Lerp(xf01, xf11, yf);
+
+                    out[i] = Accumulate(mode, out[i], Lerp(yf0, yf1, zf), amp);
+                }
+            }
+        }
+    }
+
+
+    // Batched Domain Warp
+
+    private void TransformWarpCoordinates2D(float[] xs, float[] ys, float[] ws, float[] vs, int count)
+    {
+        switch (mDomainWarpType)
+        {
+            case OpenSimplex2:
+            case OpenSimplex2Reduced:
+            {
+                final /*FNLfloat*/ float SQRT3 = (/*FNLfloat*/ float)1.7320508075688772935274463415059;
+                final /*FNLfloat*/ float F2 = 0.5f * (SQRT3 - 1);
+                for (int i = 0; i < count; i++)
+                {
+                    /*FNLfloat*/ float t = (xs[i] + ys[i]) * F2;
+                    ws[i] = xs[i] + t;
+                    vs[i] = ys[i] + t;
+                }
+            }
+            break;
+            default:
+                System.arraycopy(xs, 0, ws, 0, count);
+                System.arraycopy(ys, 0, vs, 0, count);
+                break;
+        }
+    }
+
+    private void TransformWarpCoordinates3D(float[] xs, float[] ys, float[] zs, float[] ws, float[] vs, float[] us, int count)
+    {
+        switch (mWarpTransformType3D)
+        {
+            case ImproveXYPlanes:
+                for (int i = 0; i < count; i++)
+                {
+                    /*FNLfloat*/ float xy = xs[i] + ys[i];
+                    /*FNLfloat*/ float s2 = xy * -(/*FNLfloat*/ float)0.211324865405187;
+                    /*FNLfloat*/ float z = zs[i] * (/*FNLfloat*/ float)0.577350269189626;
+                    ws[i] = xs[i] + (s2 - z);
+                    vs[i] = ys[i] + s2 - z;
+                    us[i] = z + xy * (/*FNLfloat*/ float)0.577350269189626;
+                }
+                break;
+            case ImproveXZPlanes:
+                for (int i = 0; i < count; i++)
+                {
+                    /*FNLfloat*/ float xz = xs[i] + zs[i];
+                    /*FNLfloat*/ float s2 = xz * -(/*FNLfloat*/ float)0.211324865405187;
+                    /*FNLfloat*/ float y = ys[i] * (/*FNLfloat*/ float)0.577350269189626;
+                    ws[i] = xs[i] + (s2 - y);
+                    us[i] = zs[i] + (s2 - y);
+                    vs[i] = y + xz * (/*FNLfloat*/ float)0.577350269189626;
+                }
+                break;
+            case DefaultOpenSimplex2:
+            {
+                final /*FNLfloat*/ float R3 = (/*FNLfloat*/ float)(2.0 / 3.0);
+                for (int i = 0; i < count; i++)
+                {
+                    /*FNLfloat*/ float r = (xs[i] + ys[i] + zs[i]) * R3; // Rotation, not skew
+                    ws[i] = r - xs[i];
+                    vs[i] = r - ys[i];
+                    us[i] = r - zs[i];
+                }
+            }
+            break;
+            default:
+                System.arraycopy(xs, 0, ws, 0, count);
+                System.arraycopy(ys, 0, vs, 0, count);
+                System.arraycopy(zs, 0, us, 0, count);
+                break;
+        }
+    }
+
+    // Adds one warp octave sampled at (ws, vs) to (xs, ys), coord carries a single point through the scalar code
+    private void WarpOctave2D(int seed, float amp, float freq, float[] ws, float[] vs, float[] xs, float[] ys, int count, Vector2 coord)
+    {
+        switch (mDomainWarpType)
+        {
+            case OpenSimplex2:
+            case OpenSimplex2Reduced:
+            {
+                boolean reduced = mDomainWarpType == DomainWarpType.OpenSimplex2Reduced;
+                float warpAmp = amp * (reduced ? 16.0f : 38.283687591552734375f);
+                for (int i = 0; i < count; i++)
+                {
+                    coord.x = xs[i];
+                    coord.y = ys[i];
+                    SingleDomainWarpSimplexGradient(seed, warpAmp, freq, ws[i], vs[i], coord, reduced);
+                    xs[i] = coord.x;
+                    ys[i] = coord.y;
+                }
+            }
+            break;
+            case BasicGrid:
+                for (int i = 0; i < count; i++)
+                {
+                    coord.x = xs[i];
+                    coord.y = ys[i];
+                    SingleDomainWarpBasicGrid(seed, amp, freq, ws[i], vs[i], coord);
+                    xs[i] = coord.x;
+                    ys[i] = coord.y;
+                }
+                break;
+        }
+    }
+
+    private void WarpOctave3D(int seed, float amp, float freq, float[] ws, float[] vs, float[] us,
+                              float[] xs, float[] ys, float[] zs, int count, Vector3 coord)
+    {
+        switch (mDomainWarpType)
+        {
+            case OpenSimplex2:
+            case OpenSimplex2Reduced:
+            {
+                boolean reduced = mDomainWarpType == DomainWarpType.OpenSimplex2Reduced;
+                float warpAmp = amp * (reduced ? 7.71604938271605f : 32.69428253173828125f);
+                for (int i = 0; i < count; i++)
+                {
+                    coord.x = xs[i];
+                    coord.y = ys[i];
+                    coord.z = zs[i];
+                    SingleDomainWarpOpenSimplex2Gradient(seed, warpAmp, freq, ws[i], vs[i], us[i], coord, reduced);
+                    xs[i] = coord.x;
+                    ys[i] = coord.y;
+                    zs[i] = coord.z;
+                }
+            }
+            break;
+            case BasicGrid:
+                for (int i = 0; i < count; i++)
+                {
+                    coord.x = xs[i];
+                    coord.y = ys[i];
+                    coord.z = zs[i];
+                    SingleDomainWarpBasicGrid(seed, amp, freq, ws[i], vs[i], us[i], coord);
+                    xs[i] = coord.x;
+                    ys[i] = coord.y;
+                    zs[i] = coord.z;
+                }
+                break;
+        }
+    }
+
+
     // Domain Warp
 
     private void DoSingleDomainWarp(int seed, float amp, float freq, /*FNLfloat*/ float x, /*FNLfloat*/ float y, Vector2 coord)
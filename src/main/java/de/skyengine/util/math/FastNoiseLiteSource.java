@@ -0,0 +1,40 @@
+package de.skyengine.util.math;
+
+/**
+ * {@link INoiseSource} backed by {@link FastNoiseLite}, the grids use its batched and vectorized sampling.
+ */
+public class FastNoiseLiteSource implements INoiseSource {
+
+    private final FastNoiseLite noise;
+
+    public FastNoiseLiteSource(FastNoiseLite noise) {
+        this.noise = noise;
+    }
+
+    @Override
+    public float getNoise(float x, float y) {
+        return this.noise.GetNoise(x, y);
+    }
+
+    @Override
+    public float getNoise(float x, float y, float z) {
+        return this.noise.GetNoise(x, y, z);
+    }
+
+    @Override
+    public void fillGrid(float[] out, float x0, float y0, int nx, int ny, float step) {
+        this.noise.FillGrid2D(out, x0, y0, nx, ny, step);
+    }
+
+    @Override
+    public void fillGrid(float[] out, float x0, float y0, float z0, int nx, int ny, int nz, float step) {
+        this.noise.FillGrid3D(out, x0, y0, z0, nx, ny, nz, step);
+    }
+
+    /**
+     * @return the wrapped noise to change its settings
+     */
+    public FastNoiseLite getFastNoiseLite() {
+        return noise;
+    }
+}
@@ -0,0 +1,31 @@
+package de.skyengine.util.math;
+
+/**
+ * {@link INoiseSource} backed by the legacy {@link FastNoise}, for worlds that depend on its exact values.
+ * The grids are sampled point by point.
+ */
+public class FastNoiseSource implements INoiseSource {
+
+    private final FastNoise noise;
+
+    public FastNoiseSource(FastNoise noise) {
+        this.noise = noise;
+    }
+
+    @Override
+    public float getNoise(float x, float y) {
+        return this.noise.GetNoise(x, y);
+    }
+
+    @Override
+    public float getNoise(float x, float y, float z) {
+        return this.noise.GetNoise(x, y, z);
+    }
+
+    /**
+     * @return the wrapped noise to change its settings
+     */
+    public FastNoise getFastNoise() {
+        return noise;
+    }
+}
@@ -0,0 +1,23 @@
+package de.skyengine.util.math;
+
+/**
+ * Batched versions of the single noise generators of {@link FastNoiseLite}.
+ * Every method evaluates the points <code>0</code> until the returned count and writes the raw noise
+ * to <code>out</code>, the caller evaluates the remaining points with the scalar code.
+ */
+interface INoiseKernel {
+
+    /**
+     * 2D OpenSimplex2 noise for already skewed coordinates.
+     */
+    int simplex(int seed, float[] xs, float[] ys, float[] out, int count);
+
+    /**
+     * 3D OpenSimplex2 noise for already rotated coordinates.
+     */
+    int simplex(int seed, float[] xs, float[] ys, float[] zs, float[] out, int count);
+
+    int perlin(int seed, float[] xs, float[] ys, float[] out, int count);
+
+    int perlin(int seed, float[] xs, float[] ys, float[] zs, float[] out, int count);
+}
@@ -0,0 +1,65 @@
+package de.skyengine.util.math;
+
+/**
+ * Coherent noise in 2D and 3D, independent of the library behind it.
+ * <p>
+ * {@link #create(FastNoiseLite.NoiseType, int)} returns the default implementation. Comparing both bundled
+ * libraries per noise type, {@link FastNoiseLite} was faster or on par for every type that both of them
+ * implement (Value, Perlin, Simplex/OpenSimplex2, Cubic, Cellular). Its batched grids are several times faster,
+ * so it is the default for every noise type. {@link FastNoise} is only loaded through {@link FastNoiseSource}
+ * when the values of the legacy library are needed.
+ */
+public interface INoiseSource {
+
+    /**
+     * Create the default noise source with the given type and seed and without any fractal.
+     */
+    static INoiseSource create(FastNoiseLite.NoiseType noiseType, int seed) {
+        FastNoiseLite noise = new FastNoiseLite(seed);
+        noise.SetNoiseType(noiseType);
+        noise.SetFractalType(FastNoiseLite.FractalType.None);
+        return new FastNoiseLiteSource(noise);
+    }
+
+    /**
+     * @return the noise at the given position, bounded between -1 and 1
+     */
+    float getNoise(float x, float y);
+
+    /**
+     * @return the noise at the given position, bounded between -1 and 1
+     */
+    float getNoise(float x, float y, float z);
+
+    /**
+     * Sample a 2D grid, <code>out[iy * nx + ix]</code> receives the noise at <code>(x0 + ix * step, y0 + iy * step)</code>.
+     */
+    default void fillGrid(float[] out, float x0, float y0, int nx, int ny, float step) {
+        if (nx < 0 || ny < 0 || out.length < (long) nx * ny) throw new IllegalArgumentException("Invalid grid " + nx + "x" + ny + " for " + out.length + " values");
+
+        for (int iy = 0; iy < ny; iy++) {
+            for (int ix = 0; ix < nx; ix++) {
+                out[iy * nx + ix] = this.getNoise(x0 + ix * step, y0 + iy * step);
+            }
+        }
+    }
+
+    /**
+     * Sample a 3D grid, <code>out[(iy * nz + iz) * nx + ix]</code> receives the noise at
+     * <code>(x0 + ix * step, y0 + iy * step, z0 + iz * step)</code>. Columns of the same height are next to each
+     * other, like the blocks of a chunk section.
+     */
+    default void fillGrid(float[] out, float x0, float y0, float z0, int nx, int ny, int nz, float step) {
+        if (nx < 0 || ny < 0 || nz < 0 || out.length < (long) nx * ny * nz) {
+            throw new IllegalArgumentException("Invalid grid " + nx + "x" + ny + "x" + nz + " for " + out.length + " values");
+        }
+
+        for (int iy = 0; iy < ny; iy++) {
+            for (int iz = 0; iz < nz; iz++) {
+                for (int ix = 0; ix < nx; ix++) {
+                    out[(iy * nz + iz) * nx + ix] = this.getNoise(x0 + ix * step, y0 + iy * step, z0 + iz * step);
+                }
+            }
+        }
+    }
+}
@@ -6,14 +6,28 @@ import java.util.concurrent.ThreadLocalRandom;
 
 public class MathUtils {
 
-    public static ThreadLocalRandom RANDOM = ThreadLocalRandom.current();
-
+    /**
+     * Random value of the calling thread for effects like colors, not reproducible.
+     * World generation uses {@link SplitMix64} instead.
+     *
+     * @return a value between 0 and range (both inclusive)
+     */
     public static int random(int range) {
-        return RANDOM.nextInt(range + 1);
+        return ThreadLocalRandom.current().nextInt(range + 1);
     }
 
+    /**
+     * @see #random(int)
+     */
     public static float randomAsFloat() {
-        return RANDOM.nextFloat();
+        return ThreadLocalRandom.current().nextFloat();
+    }
+
+    /**
+     * @see #random(int)
+     */
+    public static long randomAsLong() {
+        return ThreadLocalRandom.current().nextLong();
     }
 
     public static int clamp(int value, int min, int max) {
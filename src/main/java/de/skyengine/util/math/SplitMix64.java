@@ -0,0 +1,85 @@
+package de.skyengine.util.math;
+
+/**
+ * Small deterministic random number generator (SplitMix64).
+ * The same seed always gives the same sequence, independent of the thread that uses it.
+ * Instances are not thread safe but cheap enough to create one per chunk and task.
+ * <p>
+ * World generation derives a stream per chunk with {@link #forChunk}, so the result of a chunk
+ * does not depend on the order in which the chunk workers finish.
+ */
+public class SplitMix64 {
+
+    private static final long GOLDEN_GAMMA = 0x9E3779B97F4A7C15L;
+
+    private long state;
+
+    public SplitMix64(long seed) {
+        this.state = seed;
+    }
+
+    /**
+     * @param worldSeed the seed of the world
+     * @param chunkX    chunk x coordinate
+     * @param chunkZ    chunk z coordinate
+     * @param salt      separates the streams of different features in the same chunk
+     * @return a new generator whose sequence only depends on the given values
+     */
+    public static SplitMix64 forChunk(long worldSeed, int chunkX, int chunkZ, long salt) {
+        long seed = mix(worldSeed + GOLDEN_GAMMA * mix(salt));
+        long position = ((long) chunkX << 32) | (chunkZ & 0xFFFFFFFFL);
+        return new SplitMix64(mix(seed ^ position));
+    }
+
+    /**
+     * The SplitMix64 output function, a bijection that spreads every input bit over the whole result.
+     */
+    public static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    public long nextLong() {
+        return mix(this.state += GOLDEN_GAMMA);
+    }
+
+    public int nextInt() {
+        return (int) (this.nextLong() >>> 32);
+    }
+
+    /**
+     * @return a value between 0 (inclusive) and the bound (exclusive)
+     */
+    public int nextInt(int bound) {
+        if (bound <= 0) throw new IllegalArgumentException("Bound must be positive, got " + bound);
+        /* Multiply instead of modulo, the bias is below 2^-32 */
+        return (int) (((this.nextLong() >>> 32) * bound) >>> 32);
+    }
+
+    /**
+     * @return a value between min and max (both inclusive)
+     */
+    public int nextInt(int min, int max) {
+        if (min > max) throw new IllegalArgumentException("min value is higher than max value");
+        return min + this.nextInt(max - min + 1);
+    }
+
+    /**
+     * @return a value between 0 (inclusive) and 1 (exclusive)
+     */
+    public float nextFloat() {
+        return (this.nextLong() >>> 40) * 0x1.0p-24f;
+    }
+
+    public boolean nextBoolean() {
+        return this.nextLong() < 0;
+    }
+
+    /**
+     * @return a new generator seeded from this one, its sequence is independent of the following values of this one
+     */
+    public SplitMix64 split() {
+        return new SplitMix64(mix(this.nextLong()));
+    }
+}
@@ -0,0 +1,36 @@
+#version 330 core
+
+in vec3 v_position;
+in vec3 v_normal;
+in float v_ao;
+in float v_light;
+flat in uint v_layer;
+
+out vec4 fragColor;
+
+/* One color per texture layer of Blocks.getTextureLayer until there are block textures */
+const vec3 LAYER_COLORS[10] = vec3[10](
+    vec3(1.0, 0.0, 1.0),    /* air, never meshed */
+    vec3(0.5, 0.5, 0.5),    /* stone */
+    vec3(0.45, 0.32, 0.2),  /* dirt */
+    vec3(0.35, 0.6, 0.25),  /* grass */
+    vec3(0.86, 0.8, 0.55),  /* sand */
+    vec3(0.2, 0.35, 0.75),  /* water */
+    vec3(0.2, 0.2, 0.2),    /* bedrock */
+    vec3(0.4, 0.3, 0.18),   /* log */
+    vec3(0.25, 0.5, 0.2),   /* leaves */
+    vec3(0.95, 0.85, 0.5)   /* glowstone */
+);
+
+void main() {
+    /* Unknown layers stand out in magenta */
+    vec3 color = v_layer < 10u ? LAYER_COLORS[v_layer] : LAYER_COLORS[0];
+
+    /* A little brightness noise per block, so the blocks of greedy quads can still be told apart */
+    vec3 block = floor(v_position - v_normal * 0.5);
+    float noise = fract(sin(dot(block, vec3(12.9898, 78.233, 37.719))) * 43758.5453);
+    color *= 0.94 + 0.12 * noise;
+
+    float light = 0.8 + 0.2 * v_normal.y + 0.1 * abs(v_normal.x);
+    fragColor = vec4(color * light * v_ao * v_light, 1.0);
+}
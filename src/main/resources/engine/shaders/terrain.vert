@@ -0,0 +1,48 @@
+#version 330 core
+
+/* Packed vertex, see ChunkMesher: x | y << 5 | z << 10 | face << 15 | ao << 18 */
+layout(location = 0) in uint a_packed;
+layout(location = 1) in uint a_layer;
+/* Light of the block in front of the face: block | sky << 4 */
+layout(location = 2) in uint a_light;
+
+uniform mat4 u_Projection;
+
+/* One section origin and level of detail per page of the vertex arena, see ChunkRenderer.PAGE_VERTICES */
+uniform isamplerBuffer u_pages;
+uniform int u_pageShift;
+
+const vec3 NORMALS[6] = vec3[6](
+    vec3(-1.0, 0.0, 0.0), vec3(1.0, 0.0, 0.0),
+    vec3(0.0, -1.0, 0.0), vec3(0.0, 1.0, 0.0),
+    vec3(0.0, 0.0, -1.0), vec3(0.0, 0.0, 1.0)
+);
+
+out vec3 v_position;
+out vec3 v_normal;
+out float v_ao;
+out float v_light;
+flat out uint v_layer;
+
+void main() {
+    /* gl_VertexID includes the base vertex of the draw, so it is the index of the vertex in the arena */
+    ivec4 page = texelFetch(u_pages, gl_VertexID >> u_pageShift);
+    ivec3 origin = page.xyz;
+
+    vec3 local = vec3(float(a_packed & 31u), float((a_packed >> 5u) & 31u), float((a_packed >> 10u) & 31u));
+    /* Far terrain tiles count columns of 2^level blocks horizontally, see LodMesher */
+    local.xz *= float(1 << page.w);
+    uint face = (a_packed >> 15u) & 7u;
+    uint ao = (a_packed >> 18u) & 3u;
+
+    v_position = vec3(origin) + local;
+    v_normal = NORMALS[face];
+    v_ao = 0.4 + float(ao) * 0.2;
+    v_layer = a_layer;
+
+    /* Every light level is 80% of the one above, level 0 keeps a little ambient light */
+    float level = float(max(a_light & 15u, (a_light >> 4u) & 15u));
+    v_light = max(pow(0.8, 15.0 - level), 0.05);
+
+    gl_Position = u_Projection * vec4(v_position, 1.0);
+}
@@ -0,0 +1,58 @@
+package de.skyengine.game.world.chunk;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BitStorageTest {
+
+    @Test
+    public void everyWidthKeepsItsNeighbours() {
+        for (int bits = 1; bits <= 32; bits <<= 1) {
+            BitStorage storage = new BitStorage(bits, 100);
+            long max = (1L << bits) - 1;
+            for (int i = 0; i < storage.getSize(); i++) {
+                storage.set(i, (int) (i * 0x9E3779B9L & max));
+            }
+
+            for (int i = 0; i < storage.getSize(); i++) {
+                assertEquals((int) (i * 0x9E3779B9L & max), storage.get(i), bits + " bits, entry " + i);
+            }
+        }
+    }
+
+    @Test
+    public void valuesAreMaskedToTheWidth() {
+        BitStorage storage = new BitStorage(4, 32);
+        storage.set(1, 0xFF);
+
+        assertEquals(0, storage.get(0));
+        assertEquals(0xF, storage.get(1));
+        assertEquals(0, storage.get(2));
+    }
+
+    @Test
+    public void getAndSetReturnsThePreviousValue() {
+        BitStorage storage = new BitStorage(2, 64);
+        storage.set(33, 2);
+
+        assertEquals(2, storage.getAndSet(33, 3));
+        assertEquals(3, storage.get(33));
+    }
+
+    @Test
+    public void copyIsIndependent() {
+        BitStorage storage = new BitStorage(8, 16);
+        storage.set(3, 42);
+        BitStorage copy = storage.copy();
+        storage.set(3, 7);
+
+        assertEquals(42, copy.get(3));
+    }
+
+    @Test
+    public void rejectsWidthsThatSpanLongs() {
+        assertThrows(IllegalArgumentException.class, () -> new BitStorage(3, 16));
+        assertThrows(IllegalArgumentException.class, () -> new BitStorage(64, 16));
+    }
+}
@@ -0,0 +1,150 @@
+package de.skyengine.game.world.chunk;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ChunkMapTest {
+
+    @Test
+    public void putGetAndReplace() {
+        ChunkMap<String> map = new ChunkMap<>();
+
+        assertNull(map.put(ChunkPosition.pack(3, -7), "a"));
+        assertEquals("a", map.get(3, -7));
+        assertEquals("a", map.put(ChunkPosition.pack(3, -7), "b"));
+        assertEquals("b", map.get(3, -7));
+        assertEquals(1, map.size());
+        assertNull(map.get(-7, 3));
+    }
+
+    @Test
+    public void rejectsNullValues() {
+        assertThrows(NullPointerException.class, () -> new ChunkMap<String>().put(0L, null));
+    }
+
+    @Test
+    public void collidingKeysWrapAroundTheTable() {
+        int mask = 127;
+        long[] keys = keysWithHome(mask, mask, 5);
+        /* Expected size 64 gives a table of 128 slots, the 5 keys all start probing at the last slot */
+        ChunkMap<Long> map = new ChunkMap<>(64);
+        for (long key : keys) {
+            map.put(key, key);
+        }
+
+        for (long key : keys) {
+            assertEquals(key, (long) map.get(key));
+        }
+
+        /* Removing the head of the chain has to shift the wrapped entries back */
+        assertEquals(keys[0], (long) map.remove(keys[0]));
+        assertEquals(keys[2], (long) map.remove(keys[2]));
+        assertNull(map.remove(keys[2]));
+
+        assertNull(map.get(keys[0]));
+        assertNull(map.get(keys[2]));
+        assertEquals(keys[1], (long) map.get(keys[1]));
+        assertEquals(keys[3], (long) map.get(keys[3]));
+        assertEquals(keys[4], (long) map.get(keys[4]));
+        assertEquals(3, map.size());
+    }
+
+    @Test
+    public void removeKeepsOtherChainsReachable() {
+        int mask = 127;
+        long[] first = keysWithHome(mask, 10, 3);
+        long[] second = keysWithHome(mask, 11, 3);
+        ChunkMap<Long> map = new ChunkMap<>(64);
+        /* The chains of slot 10 and 11 interleave */
+        for (int i = 0; i < 3; i++) {
+            map.put(first[i], first[i]);
+            map.put(second[i], second[i]);
+        }
+
+        map.remove(first[0]);
+        map.remove(second[1]);
+
+        assertEquals(first[1], (long) map.get(first[1]));
+        assertEquals(first[2], (long) map.get(first[2]));
+        assertEquals(second[0], (long) map.get(second[0]));
+        assertEquals(second[2], (long) map.get(second[2]));
+    }
+
+    @Test
+    public void rehashKeepsAllEntries() {
+        ChunkMap<Integer> map = new ChunkMap<>(1);
+        for (int i = 0; i < 1000; i++) {
+            map.put(ChunkPosition.pack(i % 40 - 20, i / 40 - 12), i);
+        }
+
+        assertEquals(1000, map.size());
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(i, (int) map.get(i % 40 - 20, i / 40 - 12));
+        }
+    }
+
+    @Test
+    public void matchesHashMapUnderRandomChanges() {
+        Random random = new Random(42);
+        ChunkMap<Integer> map = new ChunkMap<>(1);
+        Map<Long, Integer> expected = new HashMap<>();
+
+        for (int i = 0; i < 20_000; i++) {
+            long key = ChunkPosition.pack(random.nextInt(48) - 24, random.nextInt(48) - 24);
+            if (random.nextInt(3) == 0) {
+                assertEquals(expected.remove(key), map.remove(key));
+            } else {
+                assertEquals(expected.put(key, i), map.put(key, i));
+            }
+        }
+
+        assertEquals(expected.size(), map.size());
+        for (Map.Entry<Long, Integer> entry : expected.entrySet()) {
+            assertEquals(entry.getValue(), map.get(entry.getKey()));
+        }
+    }
+
+    @Test
+    public void iterationVisitsEveryEntryOnce() {
+        ChunkMap<Integer> map = new ChunkMap<>();
+        for (int i = 0; i < 100; i++) {
+            map.put(ChunkPosition.pack(i, -i), i);
+        }
+
+        boolean[] seen = new boolean[100];
+        for (int slot = map.firstSlot(); slot >= 0; slot = map.nextSlot(slot)) {
+            int value = map.valueAt(slot);
+            assertFalse(seen[value], "Visited " + value + " twice");
+            assertEquals(ChunkPosition.pack(value, -value), map.keyAt(slot));
+            seen[value] = true;
+        }
+        for (int i = 0; i < 100; i++) {
+            assertTrue(seen[i], "Visited " + i);
+        }
+
+        map.clear();
+        assertTrue(map.isEmpty());
+        assertEquals(-1, map.firstSlot());
+        assertNull(map.get(1, -1));
+    }
+
+    /**
+     * @return packed positions near the origin whose hash starts probing at the given slot
+     */
+    private static long[] keysWithHome(int mask, int home, int count) {
+        long[] keys = new long[count];
+        int found = 0;
+        for (int x = -1000; found < count; x++) {
+            for (int z = -1000; z < 1000 && found < count; z++) {
+                long key = ChunkPosition.pack(x, z);
+                if ((ChunkMap.hash(key) & mask) == home) keys[found++] = key;
+            }
+        }
+        return keys;
+    }
+}
@@ -0,0 +1,182 @@
+package de.skyengine.game.world.chunk;
+
+import de.skyengine.game.world.block.Blocks;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ChunkSectionTest {
+
+    @Test
+    public void filledSectionHasNoIndices() {
+        ChunkSection section = new ChunkSection(Blocks.STONE);
+
+        assertTrue(section.isSingleValue());
+        assertEquals(0, section.getBitsPerEntry());
+        assertEquals(Blocks.STONE, section.get(15, 15, 15));
+        assertTrue(section.isFull());
+        assertEquals(ChunkSection.VOLUME, section.getNonAirCount());
+    }
+
+    @Test
+    public void settingTheSameBlockKeepsSingleValue() {
+        ChunkSection section = new ChunkSection(Blocks.AIR);
+
+        assertEquals(Blocks.AIR, section.set(3, 4, 5, Blocks.AIR));
+        assertTrue(section.isSingleValue());
+        assertTrue(section.isEmpty());
+    }
+
+    @Test
+    public void paletteWidensWithDistinctIds() {
+        ChunkSection section = new ChunkSection(Blocks.AIR);
+        int[] expectedBits = new int[300];
+        for (int id = 1; id < expectedBits.length; id++) {
+            int distinct = id + 1;
+            expectedBits[id] = distinct <= 2 ? 1 : distinct <= 4 ? 2 : distinct <= 16 ? 4 : distinct <= 256 ? 8 : 16;
+        }
+
+        for (int id = 1; id < expectedBits.length; id++) {
+            section.set(id, id);
+            assertEquals(expectedBits[id], section.getBitsPerEntry(), "Bits after " + (id + 1) + " distinct ids");
+        }
+
+        assertEquals(0, section.getPaletteSize());
+        for (int i = 0; i < ChunkSection.VOLUME; i++) {
+            assertEquals(i < expectedBits.length ? i : Blocks.AIR, section.get(i), "Block " + i);
+        }
+    }
+
+    @Test
+    public void largePaletteFindsExistingIds() {
+        ChunkSection section = new ChunkSection(Blocks.AIR);
+        for (int id = 1; id < 200; id++) {
+            section.set(id, id * 7);
+        }
+        for (int id = 1; id < 200; id++) {
+            section.set(ChunkSection.VOLUME - id, id * 7);
+        }
+
+        assertEquals(8, section.getBitsPerEntry());
+        assertEquals(200, section.getPaletteSize());
+        for (int id = 1; id < 200; id++) {
+            assertEquals(id * 7, section.get(ChunkSection.VOLUME - id));
+        }
+    }
+
+    @Test
+    public void compactShrinksThePalette() {
+        ChunkSection section = new ChunkSection(Blocks.AIR);
+        for (int id = 1; id <= 20; id++) {
+            section.set(id, id);
+        }
+        for (int id = 2; id <= 20; id++) {
+            section.set(id, Blocks.AIR);
+        }
+        assertEquals(8, section.getBitsPerEntry());
+        assertEquals(21, section.getPaletteSize());
+
+        section.compact();
+
+        assertEquals(1, section.getBitsPerEntry());
+        assertEquals(2, section.getPaletteSize());
+        assertEquals(1, section.get(1));
+        assertEquals(Blocks.AIR, section.get(2));
+        assertEquals(1, section.getNonAirCount());
+
+        section.set(1, Blocks.AIR);
+        section.compact();
+
+        assertTrue(section.isSingleValue());
+        assertTrue(section.isEmpty());
+    }
+
+    @Test
+    public void countsFollowChanges() {
+        ChunkSection section = new ChunkSection(Blocks.STONE);
+        section.set(0, Blocks.AIR);
+        section.set(1, Blocks.WATER);
+        section.set(2, Blocks.DIRT);
+
+        assertEquals(ChunkSection.VOLUME - 1, section.getNonAirCount());
+        assertEquals(ChunkSection.VOLUME - 2, section.getOpaqueCount());
+        assertFalse(section.isFull());
+
+        section.set(0, Blocks.STONE);
+        section.set(1, Blocks.STONE);
+
+        assertTrue(section.isFull());
+    }
+
+    @Test
+    public void palettedSectionSurvivesSerialization() throws IOException {
+        ChunkSection section = new ChunkSection(Blocks.STONE);
+        for (int i = 0; i < ChunkSection.VOLUME; i += 3) {
+            section.set(i, 10 + i % 100);
+        }
+
+        ChunkSection read = roundTrip(section);
+
+        assertSameBlocks(section, read);
+        /* The lookup of the 8 bit palette has to be rebuilt, otherwise known ids get a second palette entry */
+        read.set(1, 10);
+        assertEquals(section.getPaletteSize(), read.getPaletteSize());
+    }
+
+    @Test
+    public void directSectionSurvivesSerialization() throws IOException {
+        ChunkSection section = new ChunkSection(Blocks.AIR);
+        for (int i = 0; i < ChunkSection.VOLUME; i++) {
+            section.set(i, i % 1000);
+        }
+        assertEquals(16, section.getBitsPerEntry());
+
+        assertSameBlocks(section, roundTrip(section));
+    }
+
+    @Test
+    public void filledSectionSurvivesSerialization() throws IOException {
+        ChunkSection read = roundTrip(new ChunkSection(Blocks.GLOWSTONE));
+
+        assertTrue(read.isSingleValue());
+        assertEquals(Blocks.GLOWSTONE, read.get(0));
+        assertTrue(read.hasLightSource());
+    }
+
+    @Test
+    public void copyIsIndependent() {
+        ChunkSection section = new ChunkSection(Blocks.AIR);
+        section.set(5, Blocks.LOG);
+        ChunkSection copy = section.copy();
+
+        section.set(5, Blocks.LEAVES);
+        section.set(6, Blocks.SAND);
+
+        assertEquals(Blocks.LOG, copy.get(5));
+        assertEquals(Blocks.AIR, copy.get(6));
+        assertEquals(1, copy.getNonAirCount());
+    }
+
+    private static ChunkSection roundTrip(ChunkSection section) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(section.getSerializedSize());
+        section.write(buffer);
+        assertFalse(buffer.hasRemaining(), "Serialized size matches the written bytes");
+
+        buffer.flip();
+        ChunkSection read = ChunkSection.read(buffer);
+        assertFalse(buffer.hasRemaining(), "Read all written bytes");
+        return read;
+    }
+
+    private static void assertSameBlocks(ChunkSection expected, ChunkSection actual) {
+        assertEquals(expected.getBitsPerEntry(), actual.getBitsPerEntry());
+        assertEquals(expected.getNonAirCount(), actual.getNonAirCount());
+        assertEquals(expected.getOpaqueCount(), actual.getOpaqueCount());
+        for (int i = 0; i < ChunkSection.VOLUME; i++) {
+            assertEquals(expected.get(i), actual.get(i), "Block " + i);
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package de.skyengine.game.world.generation;
+
+import de.skyengine.game.world.block.Blocks;
+import de.skyengine.game.world.chunk.Chunk;
+import de.skyengine.game.world.chunk.ChunkPosition;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TerrainGeneratorTest {
+
+    private static final long SEED = 1337L;
+
+    /** 16x16 chunks, enough for trees of neighbour chunks to reach over every kind of border. */
+    private static final int AREA = 16;
+
+    @Test
+    public void chunksDoNotDependOnTheGenerationOrder() {
+        List<ChunkPosition> positions = positions();
+        Chunk[] rowOrder = generate(positions);
+
+        List<ChunkPosition> shuffled = new ArrayList<>(positions);
+        Collections.shuffle(shuffled, new Random(42));
+        Chunk[] shuffledOrder = generate(shuffled);
+
+        Collections.reverse(shuffled);
+        Chunk[] reversedOrder = generate(shuffled);
+
+        assertSameChunks(rowOrder, shuffledOrder);
+        assertSameChunks(rowOrder, reversedOrder);
+    }
+
+    @Test
+    public void chunksDoNotDependOnTheNumberOfWorkers() throws Exception {
+        Chunk[] sequential = generate(positions());
+
+        TerrainGenerator generator = new TerrainGenerator(SEED);
+        ExecutorService workers = Executors.newFixedThreadPool(4);
+        Chunk[] parallel = new Chunk[AREA * AREA];
+        try {
+            List<Future<?>> jobs = new ArrayList<>();
+            for (ChunkPosition position : positions()) {
+                jobs.add(workers.submit(() -> {
+                    parallel[index(position)] = generate(generator, position);
+                }));
+            }
+            for (Future<?> job : jobs) {
+                job.get();
+            }
+        } finally {
+            workers.shutdown();
+            generator.dispose();
+        }
+
+        assertSameChunks(sequential, parallel);
+    }
+
+    @Test
+    public void decorationPlacesTrees() {
+        int logs = 0;
+        for (Chunk chunk : generate(positions())) {
+            for (int y = TerrainGenerator.SEA_LEVEL; y < Chunk.CHUNK_HEIGHT; y++) {
+                for (int z = 0; z < Chunk.CHUNK_WIDTH; z++) {
+                    for (int x = 0; x < Chunk.CHUNK_WIDTH; x++) {
+                        if (chunk.getBlock(x, y, z) == Blocks.LOG) logs++;
+                    }
+                }
+            }
+        }
+
+        assertTrue(logs > 0, "No tree in " + AREA * AREA + " chunks, the order tests would not cover decorate");
+    }
+
+    private static List<ChunkPosition> positions() {
+        List<ChunkPosition> positions = new ArrayList<>();
+        for (int z = 0; z < AREA; z++) {
+            for (int x = 0; x < AREA; x++) {
+                positions.add(new ChunkPosition(x - AREA / 2, z - AREA / 2));
+            }
+        }
+        return positions;
+    }
+
+    private static int index(ChunkPosition position) {
+        return (position.getZ() + AREA / 2) * AREA + position.getX() + AREA / 2;
+    }
+
+    /**
+     * @return the chunks generated with a new generator in the given order, indexed with {@link #index(ChunkPosition)}
+     */
+    private static Chunk[] generate(List<ChunkPosition> order) {
+        TerrainGenerator generator = new TerrainGenerator(SEED);
+        try {
+            Chunk[] chunks = new Chunk[AREA * AREA];
+            for (ChunkPosition position : order) {
+                chunks[index(position)] = generate(generator, position);
+            }
+            return chunks;
+        } finally {
+            generator.dispose();
+        }
+    }
+
+    private static Chunk generate(TerrainGenerator generator, ChunkPosition position) {
+        Chunk chunk = new Chunk(position);
+        generator.generateNoise(chunk);
+        generator.generateSurface(chunk);
+        generator.decorate(chunk);
+        return chunk;
+    }
+
+    private static void assertSameChunks(Chunk[] expected, Chunk[] actual) {
+        for (int i = 0; i < expected.length; i++) {
+            ChunkPosition position = expected[i].getPosition();
+            assertArrayEquals(expected[i].getBiomeData(), actual[i].getBiomeData(), "Biomes of " + position);
+
+            for (int y = 0; y < Chunk.CHUNK_HEIGHT; y++) {
+                for (int z = 0; z < Chunk.CHUNK_WIDTH; z++) {
+                    for (int x = 0; x < Chunk.CHUNK_WIDTH; x++) {
+                        if (expected[i].getBlock(x, y, z) != actual[i].getBlock(x, y, z)) {
+                            fail("Block " + x + ", " + y + ", " + z + " of " + position + " differs");
+                        }
+                    }
+                }
+            }
+        }
+    }
+}
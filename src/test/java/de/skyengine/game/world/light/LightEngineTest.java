@@ -0,0 +1,165 @@
+package de.skyengine.game.world.light;
+
+import de.skyengine.game.world.block.Blocks;
+import de.skyengine.game.world.chunk.Chunk;
+import de.skyengine.game.world.chunk.ChunkPosition;
+import de.skyengine.game.world.chunk.ChunkSection;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class LightEngineTest {
+
+    /** The test world is 3x3 chunks, the chunk at 1, 1 is the center. */
+    private static final int WORLD_SIZE = 3;
+    private static final int CENTER = 1;
+    private static final int EAST = 5;
+
+    /** The top of the stone floor of the test world. */
+    private static final int GROUND = 4 * ChunkSection.SIZE - 1;
+
+    private final LightEngine engine = new LightEngine();
+    private final Chunk[] world = new Chunk[WORLD_SIZE * WORLD_SIZE];
+
+    @BeforeEach
+    public void createWorld() {
+        for (int z = 0; z < WORLD_SIZE; z++) {
+            for (int x = 0; x < WORLD_SIZE; x++) {
+                Chunk chunk = new Chunk(new ChunkPosition(x, z));
+                for (int sectionY = 0; sectionY * ChunkSection.SIZE < GROUND; sectionY++) {
+                    chunk.fillSection(sectionY, Blocks.STONE);
+                }
+                this.world[z * WORLD_SIZE + x] = chunk;
+            }
+        }
+        for (int z = 0; z < WORLD_SIZE; z++) {
+            for (int x = 0; x < WORLD_SIZE; x++) {
+                this.engine.light(this.chunk(x, z), this.neighbours(x, z));
+            }
+        }
+    }
+
+    @Test
+    public void skyLightFillsEverythingAboveTheGround() {
+        Chunk chunk = this.chunk(CENTER, CENTER);
+
+        assertEquals(LightEngine.MAX_LEVEL, chunk.getSkyLight(0, GROUND + 1, 0));
+        assertEquals(LightEngine.MAX_LEVEL, chunk.getSkyLight(15, 255, 15));
+        assertEquals(0, chunk.getSkyLight(8, GROUND, 8));
+        assertTrue(chunk.getSkyLight(15).isUniform());
+    }
+
+    @Test
+    public void blockLightSpreadsIntoTheNeighbour() {
+        Chunk chunk = this.chunk(CENTER, CENTER);
+        Chunk east = this.chunk(CENTER + 1, CENTER);
+        int y = GROUND + 10;
+
+        int[] changed = this.setBlock(CENTER, CENTER, 15, y, 8, Blocks.GLOWSTONE);
+
+        assertEquals(15, chunk.getBlockLight(15, y, 8));
+        assertEquals(14, east.getBlockLight(0, y, 8));
+        assertEquals(9, east.getBlockLight(5, y, 8));
+        assertEquals(9, east.getBlockLight(0, y + 2, 11));
+        assertEquals(0, east.getBlockLight(15, y, 8));
+        assertEquals(0, east.getBlockLight(0, GROUND, 8));
+        assertNotEquals(0, changed[EAST] & 1 << (y >> ChunkSection.SHIFT), "East section is marked for the mesher");
+    }
+
+    @Test
+    public void removedBlockLightIsClearedInTheNeighbour() {
+        Chunk chunk = this.chunk(CENTER, CENTER);
+        Chunk east = this.chunk(CENTER + 1, CENTER);
+        int y = GROUND + 10;
+        this.setBlock(CENTER, CENTER, 15, y, 8, Blocks.GLOWSTONE);
+
+        int[] changed = this.setBlock(CENTER, CENTER, 15, y, 8, Blocks.AIR);
+
+        for (int x = 0; x < Chunk.CHUNK_WIDTH; x++) {
+            assertEquals(0, chunk.getBlockLight(x, y, 8), "Center " + x);
+            assertEquals(0, east.getBlockLight(x, y, 8), "East " + x);
+        }
+        assertNotEquals(0, changed[EAST] & 1 << (y >> ChunkSection.SHIFT), "East section is marked for the mesher");
+    }
+
+    @Test
+    public void removingOneOfTwoSourcesKeepsTheOther() {
+        Chunk east = this.chunk(CENTER + 1, CENTER);
+        int y = GROUND + 10;
+        this.setBlock(CENTER, CENTER, 15, y, 8, Blocks.GLOWSTONE);
+        this.setBlock(CENTER + 1, CENTER, 4, y, 8, Blocks.GLOWSTONE);
+
+        this.setBlock(CENTER, CENTER, 15, y, 8, Blocks.AIR);
+
+        assertEquals(11, east.getBlockLight(0, y, 8));
+        assertEquals(10, this.chunk(CENTER, CENTER).getBlockLight(15, y, 8));
+        assertEquals(15, east.getBlockLight(4, y, 8));
+    }
+
+    @Test
+    public void opaqueBlocksStopLight() {
+        Chunk east = this.chunk(CENTER + 1, CENTER);
+        int y = GROUND + 1;
+        /* The light has to go around the stone in the neighbour, 4 steps instead of 2 */
+        this.setBlock(CENTER + 1, CENTER, 0, y, 8, Blocks.STONE);
+
+        this.setBlock(CENTER, CENTER, 15, y, 8, Blocks.GLOWSTONE);
+
+        assertEquals(0, east.getBlockLight(0, y, 8));
+        assertEquals(11, east.getBlockLight(1, y, 8));
+    }
+
+    @Test
+    public void skyLightEntersAndLeavesATunnelUnderTheBorder() {
+        Chunk chunk = this.chunk(CENTER, CENTER);
+        Chunk east = this.chunk(CENTER + 1, CENTER);
+        int tunnel = GROUND - 1;
+
+        /* A shaft in the center chunk that opens into a tunnel under the chunk border */
+        this.setBlock(CENTER + 1, CENTER, 0, tunnel, 8, Blocks.AIR);
+        this.setBlock(CENTER + 1, CENTER, 1, tunnel, 8, Blocks.AIR);
+        this.setBlock(CENTER, CENTER, 15, tunnel, 8, Blocks.AIR);
+        this.setBlock(CENTER, CENTER, 15, GROUND, 8, Blocks.AIR);
+
+        assertEquals(LightEngine.MAX_LEVEL, chunk.getSkyLight(15, tunnel, 8));
+        assertEquals(14, east.getSkyLight(0, tunnel, 8));
+        assertEquals(13, east.getSkyLight(1, tunnel, 8));
+
+        int[] changed = this.setBlock(CENTER, CENTER, 15, GROUND, 8, Blocks.STONE);
+
+        assertEquals(0, chunk.getSkyLight(15, tunnel, 8));
+        assertEquals(0, east.getSkyLight(0, tunnel, 8));
+        assertEquals(0, east.getSkyLight(1, tunnel, 8));
+        assertNotEquals(0, changed[EAST] & 1 << (tunnel >> ChunkSection.SHIFT), "East section is marked for the mesher");
+    }
+
+    /**
+     * Set a block and update the light like the chunk manager does.
+     *
+     * @return the changed sections per neighbour of the chunk
+     */
+    private int[] setBlock(int chunkX, int chunkZ, int x, int y, int z, int id) {
+        Chunk chunk = this.chunk(chunkX, chunkZ);
+        chunk.setBlock(x, y, z, id);
+
+        int[] changed = new int[9];
+        this.engine.update(chunk, this.neighbours(chunkX, chunkZ), new int[] {y << 8 | z << 4 | x}, 1, changed);
+        return changed;
+    }
+
+    private Chunk chunk(int x, int z) {
+        if (x < 0 || x >= WORLD_SIZE || z < 0 || z >= WORLD_SIZE) return null;
+        return this.world[z * WORLD_SIZE + x];
+    }
+
+    private Chunk[] neighbours(int chunkX, int chunkZ) {
+        Chunk[] neighbours = new Chunk[9];
+        for (int dz = -1; dz <= 1; dz++) {
+            for (int dx = -1; dx <= 1; dx++) {
+                neighbours[(dz + 1) * 3 + dx + 1] = this.chunk(chunkX + dx, chunkZ + dz);
+            }
+        }
+        return neighbours;
+    }
+}
@@ -0,0 +1,173 @@
+package de.skyengine.game.world.render;
+
+import de.skyengine.game.world.chunk.ChunkSection;
+import org.joml.Matrix4f;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CpuChunkCullerTest {
+
+    /** The frustum of the orthographic projection is the box from -32 to 32 on every axis. */
+    private static final int HALF_EXTENT = 32;
+
+    /** The outward directions of the planes in the order of {@link Matrix4f#PLANE_NX} to {@link Matrix4f#PLANE_PZ}. */
+    private static final int[][] PLANE_DIRECTIONS = {
+            {-1, 0, 0}, {1, 0, 0},
+            {0, -1, 0}, {0, 1, 0},
+            {0, 0, -1}, {0, 0, 1}
+    };
+
+    private static final String[] PLANE_NAMES = {"-x", "+x", "-y", "+y", "-z", "+z"};
+
+    private final Matrix4f viewProjection = new Matrix4f().setOrtho(-HALF_EXTENT, HALF_EXTENT, -HALF_EXTENT, HALF_EXTENT, -HALF_EXTENT, HALF_EXTENT);
+
+    @Test
+    public void sectionInsideIsVisible() {
+        CpuChunkCuller culler = new CpuChunkCuller();
+        int slot = addSectionAround(culler, 0, 0, 0);
+
+        assertEquals(1, culler.cull(this.viewProjection));
+        assertEquals(slot, culler.getVisible()[0]);
+    }
+
+    @Test
+    public void sectionInsideNextToEachPlaneIsVisible() {
+        for (int plane = 0; plane < PLANE_DIRECTIONS.length; plane++) {
+            CpuChunkCuller culler = new CpuChunkCuller();
+            addSectionAlong(culler, plane, HALF_EXTENT - ChunkSection.SIZE / 2);
+
+            assertEquals(1, culler.cull(this.viewProjection), "Inside at the " + PLANE_NAMES[plane] + " plane");
+        }
+    }
+
+    @Test
+    public void sectionOutsideEachPlaneIsCulled() {
+        for (int plane = 0; plane < PLANE_DIRECTIONS.length; plane++) {
+            CpuChunkCuller culler = new CpuChunkCuller();
+            addSectionAlong(culler, plane, HALF_EXTENT + ChunkSection.SIZE / 2 + 1);
+
+            assertEquals(0, culler.cull(this.viewProjection), "Outside of the " + PLANE_NAMES[plane] + " plane");
+        }
+    }
+
+    @Test
+    public void sectionStraddlingEachPlaneIsVisible() {
+        for (int plane = 0; plane < PLANE_DIRECTIONS.length; plane++) {
+            CpuChunkCuller culler = new CpuChunkCuller();
+            addSectionAlong(culler, plane, HALF_EXTENT);
+
+            assertEquals(1, culler.cull(this.viewProjection), "Straddling the " + PLANE_NAMES[plane] + " plane");
+        }
+    }
+
+    @Test
+    public void onlyVisibleSectionsAreReturned() {
+        CpuChunkCuller culler = new CpuChunkCuller();
+        int inside = addSectionAround(culler, 0, 0, 0);
+        addSectionAround(culler, 100, 0, 0);
+        int straddling = addSectionAround(culler, 0, -HALF_EXTENT, 0);
+        addSectionAround(culler, 0, 0, -100);
+
+        assertEquals(2, culler.cull(this.viewProjection));
+        assertEquals(inside, culler.getVisible()[0]);
+        assertEquals(straddling, culler.getVisible()[1]);
+        assertEquals(2, culler.getVisibleCount());
+    }
+
+    @Test
+    public void removedSlotIsNotVisibleAndReused() {
+        CpuChunkCuller culler = new CpuChunkCuller();
+        int first = culler.addSection(-8, -8, -8, ChunkSection.SIZE, 6, 0);
+        int second = culler.addSection(-8, 8, -8, ChunkSection.SIZE, 12, 4);
+
+        culler.removeSection(first);
+        assertEquals(1, culler.getSectionCount());
+        assertEquals(1, culler.cull(this.viewProjection));
+        assertEquals(second, culler.getVisible()[0]);
+
+        int reused = culler.addSection(100, 0, 0, ChunkSection.SIZE, 18, 8);
+        assertEquals(first, reused);
+        assertEquals(2, culler.getSlotCount());
+        assertEquals(2, culler.getSectionCount());
+        assertEquals(18, culler.getIndexCount(reused));
+        assertEquals(8, culler.getBaseVertex(reused));
+
+        /* The new bounds replace the ones of the removed section */
+        assertEquals(1, culler.cull(this.viewProjection));
+        assertEquals(second, culler.getVisible()[0]);
+    }
+
+    @Test
+    public void removedSlotsAreReusedLastInFirstOut() {
+        CpuChunkCuller culler = new CpuChunkCuller();
+        for (int i = 0; i < 4; i++) {
+            addSectionAround(culler, 0, 0, 0);
+        }
+
+        culler.removeSection(1);
+        culler.removeSection(3);
+        assertEquals(3, addSectionAround(culler, 0, 0, 0));
+        assertEquals(1, addSectionAround(culler, 0, 0, 0));
+        assertEquals(4, addSectionAround(culler, 0, 0, 0));
+        assertEquals(5, culler.cull(this.viewProjection));
+    }
+
+    @Test
+    public void growsBeyondInitialSlots() {
+        CpuChunkCuller culler = new CpuChunkCuller();
+        int visible = 0;
+        for (int i = 0; i < 3000; i++) {
+            boolean inside = i % 3 != 0;
+            addSectionAround(culler, inside ? 0 : 100, 0, 0);
+            if (inside) visible++;
+        }
+
+        assertEquals(3000, culler.getSectionCount());
+        assertEquals(visible, culler.cull(this.viewProjection));
+    }
+
+    @Test
+    public void widthExtendsTheBoundsAlongXAndZ() {
+        /* A far terrain tile of level 3 covers 8 chunks, the chunk at its origin alone is outside */
+        int width = ChunkSection.SIZE << 3;
+        int origin = -HALF_EXTENT - width + ChunkSection.SIZE;
+
+        CpuChunkCuller culler = new CpuChunkCuller();
+        culler.addSection(origin, -8, -8, ChunkSection.SIZE, 6, 0);
+        culler.addSection(-8, -8, origin, ChunkSection.SIZE, 6, 0);
+        assertEquals(0, culler.cull(this.viewProjection));
+
+        culler = new CpuChunkCuller();
+        int alongX = culler.addSection(origin, -8, -8, width, 6, 0);
+        int alongZ = culler.addSection(-8, -8, origin, width, 6, 0);
+        assertEquals(2, culler.cull(this.viewProjection));
+        assertEquals(alongX, culler.getVisible()[0]);
+        assertEquals(alongZ, culler.getVisible()[1]);
+    }
+
+    @Test
+    public void widthDoesNotExtendTheBoundsAlongY() {
+        int width = ChunkSection.SIZE << 3;
+
+        CpuChunkCuller culler = new CpuChunkCuller();
+        culler.addSection(-8, -HALF_EXTENT - ChunkSection.SIZE - 1, -8, width, 6, 0);
+        assertEquals(0, culler.cull(this.viewProjection));
+    }
+
+    /**
+     * Add a section of {@link ChunkSection#SIZE} with its center at the given position.
+     */
+    private static int addSectionAround(CpuChunkCuller culler, int centerX, int centerY, int centerZ) {
+        int half = ChunkSection.SIZE / 2;
+        return culler.addSection(centerX - half, centerY - half, centerZ - half, ChunkSection.SIZE, 6, 0);
+    }
+
+    /**
+     * Add a section with its center moved from the origin by the given distance towards a plane.
+     */
+    private static int addSectionAlong(CpuChunkCuller culler, int plane, int distance) {
+        int[] direction = PLANE_DIRECTIONS[plane];
+        return addSectionAround(culler, direction[0] * distance, direction[1] * distance, direction[2] * distance);
+    }
+}
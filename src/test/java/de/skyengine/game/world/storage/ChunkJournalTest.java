@@ -0,0 +1,99 @@
+package de.skyengine.game.world.storage;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ChunkJournalTest {
+
+    @TempDir
+    File directory;
+
+    @Test
+    public void rotatedSegmentsAreReplayedInOrder() throws IOException {
+        ChunkJournal journal = new ChunkJournal(this.directory);
+        journal.append(-1, 2, 0, 0, 0, 1);
+        journal.append(-1, 2, 15, 255, 15, 9);
+        assertEquals(0, journal.rotate());
+        journal.append(100000, -100000, 7, 64, 3, 4);
+        journal.dispose();
+
+        ChunkJournal reopened = new ChunkJournal(this.directory);
+        try {
+            assertEquals(2, reopened.getSegment());
+            /* Records of the new session are not part of the replay */
+            reopened.append(0, 0, 1, 1, 1, 1);
+
+            List<String> records = replay(reopened);
+
+            assertEquals(List.of("-1 2 0 0 0 1", "-1 2 15 255 15 9", "100000 -100000 7 64 3 4"), records);
+        } finally {
+            reopened.dispose();
+        }
+    }
+
+    @Test
+    public void deleteKeepsNewerSegments() throws IOException {
+        ChunkJournal journal = new ChunkJournal(this.directory);
+        journal.append(0, 0, 1, 2, 3, 5);
+        int saved = journal.rotate();
+        journal.append(0, 0, 4, 5, 6, 7);
+        journal.rotate();
+        journal.delete(saved);
+        journal.dispose();
+
+        assertFalse(new File(this.directory, "chunks.0.journal").exists());
+        assertTrue(new File(this.directory, "chunks.1.journal").exists());
+
+        ChunkJournal reopened = new ChunkJournal(this.directory);
+        try {
+            assertEquals(List.of("0 0 4 5 6 7"), replay(reopened));
+        } finally {
+            reopened.dispose();
+        }
+    }
+
+    @Test
+    public void incompleteRecordIsIgnored() throws IOException {
+        ByteBuffer data = ByteBuffer.allocate(ChunkJournal.RECORD_BYTES + ChunkJournal.RECORD_BYTES / 2);
+        data.putInt(3).putInt(4).putShort((short) (10 << 8 | 2 << 4 | 1)).putShort((short) 8);
+        data.putInt(5);
+        Files.write(new File(this.directory, "chunks.7.journal").toPath(), data.array());
+        Files.write(new File(this.directory, "chunks.old.journal").toPath(), new byte[ChunkJournal.RECORD_BYTES]);
+
+        ChunkJournal journal = new ChunkJournal(this.directory);
+        try {
+            assertEquals(8, journal.getSegment());
+            assertEquals(List.of("3 4 1 10 2 8"), replay(journal));
+        } finally {
+            journal.dispose();
+        }
+    }
+
+    @Test
+    public void emptyDirectoryHasNothingToReplay() throws IOException {
+        ChunkJournal journal = new ChunkJournal(this.directory);
+        try {
+            assertEquals(0, journal.getSegment());
+            assertTrue(replay(journal).isEmpty());
+        } finally {
+            journal.dispose();
+        }
+    }
+
+    private static List<String> replay(ChunkJournal journal) throws IOException {
+        List<String> records = new ArrayList<>();
+        int count = journal.replay((chunkX, chunkZ, x, y, z, id) ->
+                records.add(chunkX + " " + chunkZ + " " + x + " " + y + " " + z + " " + id));
+        assertEquals(records.size(), count);
+        return records;
+    }
+}
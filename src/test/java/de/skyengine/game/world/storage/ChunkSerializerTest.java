@@ -0,0 +1,131 @@
+package de.skyengine.game.world.storage;
+
+import de.skyengine.game.world.biome.Biome;
+import de.skyengine.game.world.block.Blocks;
+import de.skyengine.game.world.chunk.Chunk;
+import de.skyengine.game.world.chunk.ChunkPosition;
+import de.skyengine.game.world.chunk.ChunkStatus;
+import de.skyengine.game.world.chunk.Heightmap;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ChunkSerializerTest {
+
+    @TempDir
+    File directory;
+
+    @Test
+    public void chunkSurvivesSerialization() throws IOException {
+        Chunk chunk = createChunk(new ChunkPosition(3, -2));
+        Chunk read = new Chunk(chunk.getPosition());
+
+        ChunkSerializer.read(read, ChunkSerializer.write(chunk));
+
+        assertSameChunk(chunk, read);
+        assertFalse(read.isDirty());
+    }
+
+    @Test
+    public void laterStatusesAreSavedAsDecoration() throws IOException {
+        Chunk chunk = createChunk(new ChunkPosition(0, 0));
+        chunk.setStatus(ChunkStatus.MESH);
+        Chunk read = new Chunk(chunk.getPosition());
+
+        ChunkSerializer.read(read, ChunkSerializer.write(chunk));
+
+        assertEquals(ChunkSerializer.SAVED_STATUS, read.getStatus());
+    }
+
+    @Test
+    public void rejectsTruncatedAndUnknownData() {
+        byte[] data = ChunkSerializer.write(createChunk(new ChunkPosition(0, 0)));
+        Chunk read = new Chunk(new ChunkPosition(0, 0));
+
+        assertThrows(IOException.class, () -> ChunkSerializer.read(read, Arrays.copyOf(data, data.length / 2)));
+
+        data[3] = (byte) (ChunkSerializer.VERSION + 1);
+        assertThrows(IOException.class, () -> ChunkSerializer.read(read, data));
+    }
+
+    @Test
+    public void savedChunksAreLoadedAfterReopening() {
+        Chunk[] chunks = {
+                createChunk(new ChunkPosition(0, 0)),
+                createChunk(new ChunkPosition(31, -1)),
+                createChunk(new ChunkPosition(-33, 64))
+        };
+        RegionStorage storage = new RegionStorage(this.directory);
+        for (Chunk chunk : chunks) {
+            assertTrue(storage.saveAsync(chunk).join());
+        }
+        assertTrue(storage.flush().join());
+        storage.dispose();
+
+        RegionStorage reopened = new RegionStorage(this.directory, RegionCompression.NONE);
+        try {
+            for (Chunk chunk : chunks) {
+                Chunk loaded = new Chunk(chunk.getPosition());
+                assertTrue(reopened.load(loaded).join(), "Loaded " + chunk.getPosition());
+                assertSameChunk(chunk, loaded);
+            }
+            assertFalse(reopened.load(new Chunk(new ChunkPosition(1, 0))).join());
+        } finally {
+            reopened.dispose();
+        }
+    }
+
+    @Test
+    public void chunksThatAreStillGeneratedAreNotSaved() {
+        Chunk chunk = createChunk(new ChunkPosition(0, 0));
+        chunk.setStatus(ChunkStatus.SURFACE);
+        RegionStorage storage = new RegionStorage(this.directory);
+        try {
+            assertFalse(storage.saveAsync(chunk).join());
+        } finally {
+            storage.dispose();
+        }
+    }
+
+    private static Chunk createChunk(ChunkPosition position) {
+        Chunk chunk = new Chunk(position);
+        for (int sectionY = 0; sectionY < 4; sectionY++) {
+            chunk.fillSection(sectionY, Blocks.STONE);
+        }
+        for (int x = 0; x < Chunk.CHUNK_WIDTH; x++) {
+            for (int z = 0; z < Chunk.CHUNK_WIDTH; z++) {
+                int height = 64 + (x * 7 + z * 3 + position.getX()) % 20;
+                for (int y = 64; y < height; y++) {
+                    chunk.setBlock(x, y, z, y == height - 1 ? Blocks.GRASS : Blocks.DIRT);
+                }
+            }
+        }
+        chunk.setBlock(5, 200, 5, Blocks.GLOWSTONE);
+        chunk.setBiome(1, 16, 2, Biome.HILLS);
+        chunk.setBiome(3, 0, 0, Biome.BEACH);
+        chunk.setStatus(ChunkSerializer.SAVED_STATUS);
+        return chunk;
+    }
+
+    private static void assertSameChunk(Chunk expected, Chunk actual) {
+        assertEquals(expected.getStatus(), actual.getStatus());
+        assertArrayEquals(expected.getBiomeData(), actual.getBiomeData());
+        for (Heightmap.Type type : Heightmap.Type.getValues()) {
+            assertArrayEquals(expected.getHeightmap(type).getData(), actual.getHeightmap(type).getData(), "Heightmap " + type);
+        }
+        for (int y = 0; y < Chunk.CHUNK_HEIGHT; y++) {
+            for (int z = 0; z < Chunk.CHUNK_WIDTH; z++) {
+                for (int x = 0; x < Chunk.CHUNK_WIDTH; x++) {
+                    if (expected.getBlock(x, y, z) != actual.getBlock(x, y, z)) {
+                        fail("Block " + x + ", " + y + ", " + z + " of " + expected.getPosition());
+                    }
+                }
+            }
+        }
+    }
+}
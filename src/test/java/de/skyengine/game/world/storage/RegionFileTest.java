@@ -0,0 +1,160 @@
+package de.skyengine.game.world.storage;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class RegionFileTest {
+
+    /** Sector 0 holds the offsets and sector 1 the timestamps. */
+    private static final long HEADER_BYTES = 2L * RegionFile.SECTOR_BYTES;
+
+    @TempDir
+    Path directory;
+
+    private RegionFile region;
+
+    @AfterEach
+    public void close() {
+        if (this.region != null) this.region.dispose();
+    }
+
+    @Test
+    public void newFileHasOnlyTheHeader() throws IOException {
+        this.region = this.open();
+
+        assertEquals(HEADER_BYTES, Files.size(this.path()));
+        assertNull(this.region.read(0, 0));
+        assertFalse(this.region.contains(31, 31));
+    }
+
+    @Test
+    public void writtenChunksAreReadBack() throws IOException {
+        this.region = this.open();
+        byte[] small = data(1, 100);
+        byte[] large = data(2, 3 * RegionFile.SECTOR_BYTES);
+
+        write(this.region, 0, 0, small, RegionCompression.NONE, 10);
+        write(this.region, 31, 31, large, RegionCompression.DEFLATE, 20);
+
+        assertArrayEquals(small, this.region.read(0, 0));
+        assertArrayEquals(large, this.region.read(31, 31));
+        assertEquals(10, this.region.getTimestamp(0, 0));
+        assertEquals(20, this.region.getTimestamp(31, 31));
+        assertNull(this.region.read(1, 0));
+    }
+
+    @Test
+    public void flushedChunksSurviveReopening() throws IOException {
+        this.region = this.open();
+        byte[] first = data(3, 5000);
+        byte[] second = data(4, 200);
+        write(this.region, 4, 7, first, RegionCompression.DEFLATE, 30);
+        write(this.region, 5, 7, second, RegionCompression.NONE, 31);
+        this.region.flush();
+        this.region.dispose();
+
+        this.region = this.open();
+
+        assertArrayEquals(first, this.region.read(4, 7));
+        assertArrayEquals(second, this.region.read(5, 7));
+        assertEquals(31, this.region.getTimestamp(5, 7));
+    }
+
+    @Test
+    public void disposeWritesTheHeader() throws IOException {
+        this.region = this.open();
+        byte[] data = data(5, 300);
+        write(this.region, 1, 2, data, RegionCompression.NONE, 40);
+        this.region.dispose();
+
+        this.region = this.open();
+
+        assertArrayEquals(data, this.region.read(1, 2));
+    }
+
+    @Test
+    public void headerOnTheDiskChangesOnlyOnFlush() throws IOException {
+        this.region = this.open();
+        byte[] old = data(6, 100);
+        write(this.region, 3, 3, old, RegionCompression.NONE, 50);
+        this.region.flush();
+
+        write(this.region, 3, 3, data(7, 100), RegionCompression.NONE, 51);
+        write(this.region, 4, 3, data(8, 100), RegionCompression.NONE, 52);
+
+        /* A second handle sees what a restart after a crash would see */
+        RegionFile crashed = this.open();
+        try {
+            assertArrayEquals(old, crashed.read(3, 3));
+            assertFalse(crashed.contains(4, 3));
+        } finally {
+            crashed.dispose();
+        }
+    }
+
+    @Test
+    public void replacedSectorsAreReusedAfterFlush() throws IOException {
+        this.region = this.open();
+        write(this.region, 0, 0, data(9, 100), RegionCompression.NONE, 60);
+        this.region.flush();
+        long size = Files.size(this.path());
+
+        /* The old version stays reserved until the flush, the new one needs a new sector */
+        write(this.region, 0, 0, data(10, 100), RegionCompression.NONE, 61);
+        assertEquals(size + RegionFile.SECTOR_BYTES, Files.size(this.path()));
+        this.region.flush();
+
+        byte[] reused = data(11, 100);
+        write(this.region, 1, 0, reused, RegionCompression.NONE, 62);
+        assertEquals(size + RegionFile.SECTOR_BYTES, Files.size(this.path()));
+        assertArrayEquals(reused, this.region.read(1, 0));
+        assertArrayEquals(data(10, 100), this.region.read(0, 0));
+    }
+
+    @Test
+    public void entriesPastTheEndOfTheFileAreDropped() throws IOException {
+        this.region = this.open();
+        write(this.region, 2, 2, data(12, 5000), RegionCompression.NONE, 70);
+        this.region.dispose();
+        this.region = null;
+
+        try (FileChannel channel = FileChannel.open(this.path(), StandardOpenOption.WRITE)) {
+            channel.truncate(HEADER_BYTES + RegionFile.SECTOR_BYTES);
+        }
+        this.region = this.open();
+
+        assertFalse(this.region.contains(2, 2));
+        assertNull(this.region.read(2, 2));
+    }
+
+    private RegionFile open() throws IOException {
+        return new RegionFile(this.path());
+    }
+
+    private Path path() {
+        return this.directory.resolve("r.0.0.region");
+    }
+
+    private static void write(RegionFile region, int x, int z, byte[] data, RegionCompression compression, int timestamp) throws IOException {
+        region.write(x, z, compression.compress(data), compression, data.length, timestamp);
+    }
+
+    /**
+     * @return random bytes that hardly compress, so the size in sectors is known
+     */
+    private static byte[] data(long seed, int length) {
+        byte[] data = new byte[length];
+        new Random(seed).nextBytes(data);
+        return data;
+    }
+}
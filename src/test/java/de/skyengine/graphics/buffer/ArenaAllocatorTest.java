@@ -0,0 +1,130 @@
+package de.skyengine.graphics.buffer;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ArenaAllocatorTest {
+
+    @Test
+    public void sizesAndCapacityAreAligned() {
+        ArenaAllocator allocator = new ArenaAllocator(1000, 16);
+
+        assertEquals(992, allocator.getCapacity());
+        assertEquals(0, allocator.allocate(1));
+        assertEquals(16, allocator.allocate(17));
+        assertEquals(48, allocator.getUsedBytes());
+        assertEquals(992 - 48, allocator.getFreeBytes());
+    }
+
+    @Test
+    public void rejectsInvalidArguments() {
+        assertThrows(IllegalArgumentException.class, () -> new ArenaAllocator(1024, 24));
+        assertThrows(IllegalArgumentException.class, () -> new ArenaAllocator(1024, 16).allocate(0));
+    }
+
+    @Test
+    public void allocationSplitsTheFreeRange() {
+        ArenaAllocator allocator = new ArenaAllocator(1024, 16);
+
+        assertEquals(0, allocator.allocate(256));
+        assertEquals(1, allocator.getFreeBlockCount());
+        assertEquals(768, allocator.getLargestFreeBlock());
+        assertEquals(256, allocator.allocate(768));
+        assertEquals(0, allocator.getFreeBlockCount());
+        assertEquals(-1, allocator.allocate(16));
+    }
+
+    @Test
+    public void bestFitPrefersTheSmallestRange() {
+        ArenaAllocator allocator = new ArenaAllocator(1024, 16);
+        int a = allocator.allocate(256);
+        allocator.allocate(64);
+        int c = allocator.allocate(64);
+        allocator.allocate(64);
+
+        allocator.free(a, 256);
+        allocator.free(c, 64);
+
+        /* The 64 byte hole fits exactly, the 256 byte hole and the tail stay whole */
+        assertEquals(c, allocator.allocate(48));
+        assertEquals(a, allocator.allocate(200));
+    }
+
+    @Test
+    public void freeCoalescesWithBothNeighbours() {
+        ArenaAllocator allocator = new ArenaAllocator(1024, 16);
+        int a = allocator.allocate(128);
+        int b = allocator.allocate(128);
+        int c = allocator.allocate(128);
+        allocator.allocate(640);
+
+        allocator.free(a, 128);
+        allocator.free(c, 128);
+        assertEquals(2, allocator.getFreeBlockCount());
+
+        allocator.free(b, 128);
+        assertEquals(1, allocator.getFreeBlockCount());
+        assertEquals(384, allocator.getLargestFreeBlock());
+        assertEquals(a, allocator.allocate(384));
+    }
+
+    @Test
+    public void freeCoalescesWithTheTail() {
+        ArenaAllocator allocator = new ArenaAllocator(1024, 16);
+        allocator.allocate(512);
+        int b = allocator.allocate(256);
+
+        allocator.free(b, 256);
+
+        assertEquals(1, allocator.getFreeBlockCount());
+        assertEquals(512, allocator.getLargestFreeBlock());
+    }
+
+    @Test
+    public void randomAllocationsNeverOverlapAndFreeEverything() {
+        Random random = new Random(7);
+        ArenaAllocator allocator = new ArenaAllocator(1 << 16, 64);
+        boolean[] used = new boolean[allocator.getCapacity() / 64];
+        List<int[]> ranges = new ArrayList<>();
+
+        for (int i = 0; i < 5000; i++) {
+            if (!ranges.isEmpty() && random.nextInt(5) < 2) {
+                int[] range = ranges.remove(random.nextInt(ranges.size()));
+                allocator.free(range[0], range[1]);
+                mark(used, range, false);
+                continue;
+            }
+
+            int size = 1 + random.nextInt(2048);
+            int offset = allocator.allocate(size);
+            if (offset < 0) continue;
+
+            int[] range = {offset, size};
+            assertEquals(0, offset % 64);
+            assertTrue(offset + allocator.align(size) <= allocator.getCapacity());
+            mark(used, range, true);
+            ranges.add(range);
+        }
+
+        for (int[] range : ranges) {
+            allocator.free(range[0], range[1]);
+        }
+        assertEquals(0, allocator.getUsedBytes());
+        assertEquals(1, allocator.getFreeBlockCount());
+        assertEquals(allocator.getCapacity(), allocator.getLargestFreeBlock());
+    }
+
+    private static void mark(boolean[] used, int[] range, boolean value) {
+        int first = range[0] / 64;
+        int last = (range[0] + range[1] - 1) / 64;
+        for (int unit = first; unit <= last; unit++) {
+            assertTrue(used[unit] != value, "Unit " + unit + " is already " + (value ? "used" : "free"));
+            used[unit] = value;
+        }
+    }
+}
@@ -0,0 +1,161 @@
+package de.skyengine.util.math;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class FastNoiseLiteTest {
+
+    private static final FastNoiseLite.NoiseType[] NOISE_TYPES = FastNoiseLite.NoiseType.values();
+
+    /** The domain warp fractal types only affect <code>DomainWarp(...)</code>. */
+    private static final FastNoiseLite.FractalType[] FRACTAL_TYPES = {
+            FastNoiseLite.FractalType.None,
+            FastNoiseLite.FractalType.FBm,
+            FastNoiseLite.FractalType.Ridged,
+            FastNoiseLite.FractalType.PingPong
+    };
+
+    private static final boolean[] VECTORIZED = {false, true};
+
+    /** Lattice coordinates of the vector kernel are exact below this, points beyond it use the scalar code. */
+    private static final float VECTOR_LIMIT = 2097152.0f;
+
+    @Test
+    public void vectorKernelIsOptIn() {
+        FastNoiseLite noise = new FastNoiseLite();
+        assertEquals(Boolean.getBoolean("skyengine.noise.vector") && FastNoiseLite.IsVectorSupported(), noise.IsVectorized());
+
+        noise.SetVectorized(true);
+        assertEquals(FastNoiseLite.IsVectorSupported(), noise.IsVectorized());
+        noise.SetVectorized(false);
+        assertFalse(noise.IsVectorized());
+    }
+
+    @Test
+    public void fillGrid2DMatchesGetNoise() {
+        for (boolean vectorized : VECTORIZED) {
+            for (FastNoiseLite.NoiseType noiseType : NOISE_TYPES) {
+                for (FastNoiseLite.FractalType fractalType : FRACTAL_TYPES) {
+                    FastNoiseLite noise = createNoise(noiseType, fractalType, vectorized);
+                    assertGrid2D(noise, describe(noiseType, fractalType, vectorized), -37.25F, 12.5F, 19, 7, 0.75F);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void fillGrid3DMatchesGetNoise() {
+        for (boolean vectorized : VECTORIZED) {
+            for (FastNoiseLite.NoiseType noiseType : NOISE_TYPES) {
+                for (FastNoiseLite.FractalType fractalType : FRACTAL_TYPES) {
+                    FastNoiseLite noise = createNoise(noiseType, fractalType, vectorized);
+                    assertGrid3D(noise, describe(noiseType, fractalType, vectorized), 4.5F, -20.0F, 101.75F, 5, 3, 7, 1.5F);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void fillGrid3DMatchesGetNoiseForEveryRotation() {
+        for (boolean vectorized : VECTORIZED) {
+            for (FastNoiseLite.NoiseType noiseType : NOISE_TYPES) {
+                for (FastNoiseLite.RotationType3D rotationType : FastNoiseLite.RotationType3D.values()) {
+                    FastNoiseLite noise = createNoise(noiseType, FastNoiseLite.FractalType.FBm, vectorized);
+                    noise.SetRotationType3D(rotationType);
+                    assertGrid3D(noise, describe(noiseType, rotationType, vectorized), -8.0F, 64.0F, -8.0F, 16, 4, 16, 1.0F);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void fillGridMatchesGetNoiseWithWeightedStrength() {
+        for (boolean vectorized : VECTORIZED) {
+            for (FastNoiseLite.NoiseType noiseType : NOISE_TYPES) {
+                FastNoiseLite noise = createNoise(noiseType, FastNoiseLite.FractalType.FBm, vectorized);
+                noise.SetFractalWeightedStrength(0.5F);
+                String settings = describe(noiseType, "weighted", vectorized);
+                assertGrid2D(noise, settings, 3.0F, 5.0F, 9, 9, 2.0F);
+                assertGrid3D(noise, settings, 3.0F, 5.0F, 7.0F, 5, 5, 5, 2.0F);
+            }
+        }
+    }
+
+    /**
+     * Grids smaller than a vector and grids that end in a partial vector leave a tail to the scalar code.
+     */
+    @Test
+    public void fillGridMatchesGetNoiseInTheLaneTail() {
+        for (boolean vectorized : VECTORIZED) {
+            for (FastNoiseLite.NoiseType noiseType : NOISE_TYPES) {
+                FastNoiseLite noise = createNoise(noiseType, FastNoiseLite.FractalType.FBm, vectorized);
+                String settings = describe(noiseType, FastNoiseLite.FractalType.FBm, vectorized);
+                for (int count = 1; count <= 33; count++) {
+                    assertGrid2D(noise, settings, 0.5F, -1.5F, count, 1, 3.0F);
+                    assertGrid3D(noise, settings, 0.5F, -1.5F, 2.5F, 1, count, 1, 3.0F);
+                }
+            }
+        }
+    }
+
+    /**
+     * Points beyond 2^21 after the frequency fall back to the scalar code, from the first vector that reaches them.
+     */
+    @Test
+    public void fillGridMatchesGetNoiseBeyondVectorLimit() {
+        for (boolean vectorized : VECTORIZED) {
+            for (FastNoiseLite.NoiseType noiseType : NOISE_TYPES) {
+                for (FastNoiseLite.FractalType fractalType : FRACTAL_TYPES) {
+                    FastNoiseLite noise = createNoise(noiseType, fractalType, vectorized);
+                    noise.SetFrequency(1.0F);
+                    String settings = describe(noiseType, fractalType, vectorized);
+
+                    assertGrid2D(noise, settings, VECTOR_LIMIT - 40.0F, 0.5F, 80, 2, 1.0F);
+                    assertGrid2D(noise, settings, -VECTOR_LIMIT - 8.0F, -VECTOR_LIMIT - 8.0F, 16, 16, 1.0F);
+                    assertGrid3D(noise, settings, 0.5F, VECTOR_LIMIT - 2.0F, 0.5F, 8, 4, 8, 1.0F);
+                }
+            }
+        }
+    }
+
+    private static FastNoiseLite createNoise(FastNoiseLite.NoiseType noiseType, FastNoiseLite.FractalType fractalType, boolean vectorized) {
+        FastNoiseLite noise = new FastNoiseLite(42);
+        noise.SetNoiseType(noiseType);
+        noise.SetFractalType(fractalType);
+        noise.SetFractalOctaves(4);
+        noise.SetFrequency(0.037F);
+        noise.SetVectorized(vectorized);
+        return noise;
+    }
+
+    private static String describe(FastNoiseLite.NoiseType noiseType, Object settings, boolean vectorized) {
+        return noiseType + " " + settings + (vectorized ? " vectorized" : " scalar");
+    }
+
+    private static void assertGrid2D(FastNoiseLite noise, String settings, float x0, float y0, int nx, int ny, float step) {
+        float[] out = new float[nx * ny];
+        noise.FillGrid2D(out, x0, y0, nx, ny, step);
+
+        for (int iy = 0, i = 0; iy < ny; iy++) {
+            for (int ix = 0; ix < nx; ix++, i++) {
+                float x = x0 + ix * step, y = y0 + iy * step;
+                assertEquals(noise.GetNoise(x, y), out[i], () -> settings + " at " + x + ", " + y);
+            }
+        }
+    }
+
+    private static void assertGrid3D(FastNoiseLite noise, String settings, float x0, float y0, float z0, int nx, int ny, int nz, float step) {
+        float[] out = new float[nx * ny * nz];
+        noise.FillGrid3D(out, x0, y0, z0, nx, ny, nz, step);
+
+        for (int iy = 0, i = 0; iy < ny; iy++) {
+            for (int iz = 0; iz < nz; iz++) {
+                for (int ix = 0; ix < nx; ix++, i++) {
+                    float x = x0 + ix * step, y = y0 + iy * step, z = z0 + iz * step;
+                    assertEquals(noise.GetNoise(x, y, z), out[i], () -> settings + " at " + x + ", " + y + ", " + z);
+                }
+            }
+        }
+    }
+}
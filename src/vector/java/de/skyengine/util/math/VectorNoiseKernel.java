@@ -0,0 +1,587 @@
+package de.skyengine.util.math;
+
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * OpenSimplex2 and Perlin noise on the Vector API, one point per lane.
+ * Every lane does the same float operations in the same order as {@link FastNoiseLite},
+ * so the results are bit identical to the scalar code.
+ * <p>
+ * The generators are split into small passes over scratch arrays, each in its own method. A vector only stays
+ * in registers while the whole loop body is inlined, one big method runs into the inlining limit of the JIT
+ * and boxes every vector.
+ * The float to int lane conversion isn't compiled to SIMD instructions on all JDKs either, so lattice cells
+ * are kept as whole floats and turned into ints through their bit pattern.
+ * <p>
+ * Only loaded through reflection when the <code>jdk.incubator.vector</code> module is present.
+ */
+final class VectorNoiseKernel implements INoiseKernel {
+
+    private static final VectorSpecies<Float> FLOATS = FloatVector.SPECIES_PREFERRED;
+    private static final VectorSpecies<Integer> INTS = VectorSpecies.of(int.class, FLOATS.vectorShape());
+    private static final int LANES = FLOATS.length();
+
+    private static final int PRIME_X = 501125321;
+    private static final int PRIME_Y = 1136930381;
+    private static final int PRIME_Z = 1720413743;
+
+    /** Adding 1.5 * 2^23 rounds a float to an integer and moves that integer into the low mantissa bits. */
+    private static final float MAGIC = 12582912.0f;
+    private static final int MAGIC_BITS = Float.floatToRawIntBits(MAGIC);
+
+    /** Lattice coordinates are only exact well below 2^22, points outside of this are left to the scalar code. */
+    private static final float LIMIT = 2097152.0f;
+
+    private static final float SQRT3 = 1.7320508075688772935274463415059f;
+    private static final float G2 = (3 - SQRT3) / 6;
+
+    private final float[] gradients2D;
+    private final float[] gradients3D;
+
+    private final ThreadLocal<Scratch> scratch = ThreadLocal.withInitial(Scratch::new);
+
+    VectorNoiseKernel(float[] gradients2D, float[] gradients3D) {
+        if (LANES < 4) throw new IllegalStateException("Only " + LANES + " float lanes available");
+
+        this.gradients2D = gradients2D;
+        this.gradients3D = gradients3D;
+    }
+
+    @Override
+    public int simplex(int seed, float[] xs, float[] ys, float[] out, int count) {
+        Scratch scratch = this.scratch.get();
+        int[] i = scratch.ints(0, count);
+        int[] j = scratch.ints(1, count);
+        float[] x0 = scratch.floats(0, count);
+        float[] y0 = scratch.floats(1, count);
+        float[] t = scratch.floats(2, count);
+        float[] a = scratch.floats(3, count);
+        float[] cells = scratch.floats(4, count);
+
+        int bound = floorCells(xs, FLOATS.loopBound(count), cells, x0);
+        primeCells(bound, cells, PRIME_X, i);
+        bound = floorCells(ys, bound, cells, y0);
+        primeCells(bound, cells, PRIME_Y, j);
+
+        skew(bound, x0, y0, t, a);
+        this.simplexFirst(seed, bound, i, j, x0, y0, a, out, scratch.gather);
+        this.simplexMiddle(seed, bound, i, j, x0, y0, out, scratch.gather);
+        this.simplexLast(seed, bound, i, j, x0, y0, t, a, out, scratch.gather);
+        return bound;
+    }
+
+    @Override
+    public int simplex(int seed, float[] xs, float[] ys, float[] zs, float[] out, int count) {
+        Scratch scratch = this.scratch.get();
+        float[] i = scratch.floats(0, count);
+        float[] j = scratch.floats(1, count);
+        float[] k = scratch.floats(2, count);
+        float[] x0 = scratch.floats(3, count);
+        float[] y0 = scratch.floats(4, count);
+        float[] z0 = scratch.floats(5, count);
+        float[] xNSign = scratch.floats(6, count);
+        float[] yNSign = scratch.floats(7, count);
+        float[] zNSign = scratch.floats(8, count);
+        float[] ax0 = scratch.floats(9, count);
+        float[] ay0 = scratch.floats(10, count);
+        float[] az0 = scratch.floats(11, count);
+        float[] a = scratch.floats(12, count);
+        int[] xPrimed = scratch.ints(0, count);
+        int[] yPrimed = scratch.ints(1, count);
+        int[] zPrimed = scratch.ints(2, count);
+        float[] bx = scratch.floats(13, count);
+        float[] by = scratch.floats(14, count);
+        float[] bz = scratch.floats(15, count);
+        float[] b = scratch.floats(16, count);
+
+        int bound = roundCells(xs, FLOATS.loopBound(count), i, x0, xNSign, ax0);
+        bound = roundCells(ys, bound, j, y0, yNSign, ay0);
+        bound = roundCells(zs, bound, k, z0, zNSign, az0);
+
+        attenuation(bound, x0, y0, z0, a, out);
+
+        for (int l = 0; ; l++) {
+            primeCells(bound, i, PRIME_X, xPrimed);
+            primeCells(bound, j, PRIME_Y, yPrimed);
+            primeCells(bound, k, PRIME_Z, zPrimed);
+            this.simplexCorner(seed, bound, xPrimed, yPrimed, zPrimed, x0, y0, z0, a, out, scratch.gather);
+
+            axisCorner(bound, i, j, k, x0, y0, z0, xNSign, yNSign, zNSign, ax0, ay0, az0, a,
+                    xPrimed, yPrimed, zPrimed, bx, by, bz, b);
+            this.simplexCorner(seed, bound, xPrimed, yPrimed, zPrimed, bx, by, bz, b, out, scratch.gather);
+
+            if (l == 1) break;
+
+            flipCells(bound, i, x0, xNSign, ax0);
+            flipCells(bound, j, y0, yNSign, ay0);
+            flipCells(bound, k, z0, zNSign, az0);
+            flipAttenuation(bound, ax0, ay0, az0, a);
+
+            seed = ~seed;
+        }
+
+        scale(out, bound, 32.69428253173828125f);
+        return bound;
+    }
+
+    @Override
+    public int perlin(int seed, float[] xs, float[] ys, float[] out, int count) {
+        Scratch scratch = this.scratch.get();
+        int[] x0 = scratch.ints(0, count);
+        int[] y0 = scratch.ints(1, count);
+        float[] xd = scratch.floats(0, count);
+        float[] yd = scratch.floats(1, count);
+        float[] xf = scratch.floats(2, count);
+        float[] yf = scratch.floats(3, count);
+        float[] a = scratch.floats(4, count);
+        float[] b = scratch.floats(5, count);
+        float[] cells = scratch.floats(6, count);
+
+        int bound = floorCells(xs, FLOATS.loopBound(count), cells, xd);
+        primeCells(bound, cells, PRIME_X, x0);
+        bound = floorCells(ys, bound, cells, yd);
+        primeCells(bound, cells, PRIME_Y, y0);
+        interpQuintic(bound, xd, xf);
+        interpQuintic(bound, yd, yf);
+
+        this.gradients(seed, bound, 0, 0, x0, y0, xd, yd, a, scratch.gather);
+        this.gradients(seed, bound, 1, 0, x0, y0, xd, yd, b, scratch.gather);
+        lerp(a, b, xf, a, bound);
+        this.gradients(seed, bound, 0, 1, x0, y0, xd, yd, b, scratch.gather);
+        this.gradients(seed, bound, 1, 1, x0, y0, xd, yd, out, scratch.gather);
+        lerp(b, out, xf, b, bound);
+
+        lerp(a, b, yf, out, bound);
+        scale(out, bound, 1.4247691104677813f);
+        return bound;
+    }
+
+    @Override
+    public int perlin(int seed, float[] xs, float[] ys, float[] zs, float[] out, int count) {
+        Scratch scratch = this.scratch.get();
+        int[] x0 = scratch.ints(0, count);
+        int[] y0 = scratch.ints(1, count);
+        int[] z0 = scratch.ints(2, count);
+        float[] xd = scratch.floats(0, count);
+        float[] yd = scratch.floats(1, count);
+        float[] zd = scratch.floats(2, count);
+        float[] xf = scratch.floats(3, count);
+        float[] yf = scratch.floats(4, count);
+        float[] zf = scratch.floats(5, count);
+        float[] a = scratch.floats(6, count);
+        float[] b = scratch.floats(7, count);
+        float[] c = scratch.floats(8, count);
+        float[] cells = scratch.floats(9, count);
+
+        int bound = floorCells(xs, FLOATS.loopBound(count), cells, xd);
+        primeCells(bound, cells, PRIME_X, x0);
+        bound = floorCells(ys, bound, cells, yd);
+        primeCells(bound, cells, PRIME_Y, y0);
+        bound = floorCells(zs, bound, cells, zd);
+        primeCells(bound, cells, PRIME_Z, z0);
+        interpQuintic(bound, xd, xf);
+        interpQuintic(bound, yd, yf);
+        interpQuintic(bound, zd, zf);
+
+        this.gradients(seed, bound, 0, 0, 0, x0, y0, z0, xd, yd, zd, a, scratch.gather);
+        this.gradients(seed, bound, 1, 0, 0, x0, y0, z0, xd, yd, zd, b, scratch.gather);
+        lerp(a, b, xf, a, bound);
+        this.gradients(seed, bound, 0, 1, 0, x0, y0, z0, xd, yd, zd, b, scratch.gather);
+        this.gradients(seed, bound, 1, 1, 0, x0, y0, z0, xd, yd, zd, c, scratch.gather);
+        lerp(b, c, xf, b, bound);
+        lerp(a, b, yf, a, bound);
+
+        this.gradients(seed, bound, 0, 0, 1, x0, y0, z0, xd, yd, zd, b, scratch.gather);
+        this.gradients(seed, bound, 1, 0, 1, x0, y0, z0, xd, yd, zd, c, scratch.gather);
+        lerp(b, c, xf, b, bound);
+        this.gradients(seed, bound, 0, 1, 1, x0, y0, z0, xd, yd, zd, c, scratch.gather);
+        this.gradients(seed, bound, 1, 1, 1, x0, y0, z0, xd, yd, zd, out, scratch.gather);
+        lerp(c, out, xf, c, bound);
+        lerp(b, c, yf, b, bound);
+
+        lerp(a, b, zf, out, bound);
+        scale(out, bound, 0.964921414852142333984375f);
+        return bound;
+    }
+
+    /**
+     * Unskewed offsets inside the 2D simplex cell and the attenuation of the first corner.
+     */
+    private static void skew(int bound, float[] x0, float[] y0, float[] t, float[] a) {
+        for (int p = 0; p < bound; p += LANES) {
+            FloatVector xi = FloatVector.fromArray(FLOATS, x0, p);
+            FloatVector yi = FloatVector.fromArray(FLOATS, y0, p);
+
+            FloatVector tv = xi.add(yi).mul(G2);
+            FloatVector x = xi.sub(tv);
+            FloatVector y = yi.sub(tv);
+
+            x.intoArray(x0, p);
+            y.intoArray(y0, p);
+            tv.intoArray(t, p);
+            FloatVector.broadcast(FLOATS, 0.5f).sub(x.mul(x)).sub(y.mul(y)).intoArray(a, p);
+        }
+    }
+
+    private void simplexFirst(int seed, int bound, int[] i, int[] j, float[] x0, float[] y0, float[] a, float[] out, Gather gather) {
+        for (int p = 0; p < bound; p += LANES) {
+            FloatVector av = FloatVector.fromArray(FLOATS, a, p);
+            FloatVector gradient = this.gradient(seed, IntVector.fromArray(INTS, i, p), IntVector.fromArray(INTS, j, p),
+                    FloatVector.fromArray(FLOATS, x0, p), FloatVector.fromArray(FLOATS, y0, p), gather);
+
+            falloff(av).mul(gradient).blend(0, av.compare(VectorOperators.LE, 0)).intoArray(out, p);
+        }
+    }
+
+    /**
+     * The middle corner depends on the triangle the point is in.
+     */
+    private void simplexMiddle(int seed, int bound, int[] i, int[] j, float[] x0, float[] y0, float[] out, Gather gather) {
+        for (int p = 0; p < bound; p += LANES) {
+            FloatVector x = FloatVector.fromArray(FLOATS, x0, p);
+            FloatVector y = FloatVector.fromArray(FLOATS, y0, p);
+
+            VectorMask<Float> upper = y.compare(VectorOperators.GT, x);
+            FloatVector x1 = x.add(G2 - 1).blend(x.add(G2), upper);
+            FloatVector y1 = y.add(G2).blend(y.add(G2 - 1), upper);
+            IntVector i1 = IntVector.fromArray(INTS, i, p).add(toInt(select(upper.not())).mul(PRIME_X));
+            IntVector j1 = IntVector.fromArray(INTS, j, p).add(toInt(select(upper)).mul(PRIME_Y));
+
+            FloatVector b = FloatVector.broadcast(FLOATS, 0.5f).sub(x1.mul(x1)).sub(y1.mul(y1));
+            FloatVector n1 = falloff(b).mul(this.gradient(seed, i1, j1, x1, y1, gather))
+                    .blend(0, b.compare(VectorOperators.LE, 0));
+
+            FloatVector.fromArray(FLOATS, out, p).add(n1).intoArray(out, p);
+        }
+    }
+
+    private void simplexLast(int seed, int bound, int[] i, int[] j, float[] x0, float[] y0, float[] t, float[] a,
+                             float[] out, Gather gather) {
+        for (int p = 0; p < bound; p += LANES) {
+            FloatVector c = FloatVector.fromArray(FLOATS, t, p).mul((float) (2 * (1 - 2 * G2) * (1 / G2 - 2)))
+                    .add(FloatVector.fromArray(FLOATS, a, p).add((float) (-2 * (1 - 2 * G2) * (1 - 2 * G2))));
+            FloatVector x2 = FloatVector.fromArray(FLOATS, x0, p).add(2 * G2 - 1);
+            FloatVector y2 = FloatVector.fromArray(FLOATS, y0, p).add(2 * G2 - 1);
+            IntVector i2 = IntVector.fromArray(INTS, i, p).add(PRIME_X);
+            IntVector j2 = IntVector.fromArray(INTS, j, p).add(PRIME_Y);
+
+            FloatVector n2 = falloff(c).mul(this.gradient(seed, i2, j2, x2, y2, gather))
+                    .blend(0, c.compare(VectorOperators.LE, 0));
+
+            FloatVector.fromArray(FLOATS, out, p).add(n2).mul(99.83685446303647f).intoArray(out, p);
+        }
+    }
+
+    /**
+     * Attenuation of the closest 3D lattice point, also clears the output.
+     */
+    private static void attenuation(int bound, float[] x0, float[] y0, float[] z0, float[] a, float[] out) {
+        for (int p = 0; p < bound; p += LANES) {
+            FloatVector x = FloatVector.fromArray(FLOATS, x0, p);
+            FloatVector y = FloatVector.fromArray(FLOATS, y0, p);
+            FloatVector z = FloatVector.fromArray(FLOATS, z0, p);
+
+            FloatVector.broadcast(FLOATS, 0.6f).sub(x.mul(x)).sub(y.mul(y).add(z.mul(z))).intoArray(a, p);
+            FloatVector.zero(FLOATS).intoArray(out, p);
+        }
+    }
+
+    private static void flipAttenuation(int bound, float[] ax0, float[] ay0, float[] az0, float[] a) {
+        for (int p = 0; p < bound; p += LANES) {
+            FloatVector ax = FloatVector.fromArray(FLOATS, ax0, p);
+            FloatVector ay = FloatVector.fromArray(FLOATS, ay0, p);
+            FloatVector az = FloatVector.fromArray(FLOATS, az0, p);
+
+            FloatVector.fromArray(FLOATS, a, p).add(FloatVector.broadcast(FLOATS, 0.75f).sub(ax).sub(ay.add(az)))
+                    .intoArray(a, p);
+        }
+    }
+
+    /**
+     * Adds the contribution of one lattice point with a positive attenuation to the 3D OpenSimplex2 noise.
+     */
+    private void simplexCorner(int seed, int bound, int[] xPrimed, int[] yPrimed, int[] zPrimed,
+                               float[] xd, float[] yd, float[] zd, float[] attenuation, float[] out, Gather gather) {
+        for (int p = 0; p < bound; p += LANES) {
+            FloatVector av = FloatVector.fromArray(FLOATS, attenuation, p);
+            FloatVector gradient = this.gradient(seed,
+                    IntVector.fromArray(INTS, xPrimed, p), IntVector.fromArray(INTS, yPrimed, p), IntVector.fromArray(INTS, zPrimed, p),
+                    FloatVector.fromArray(FLOATS, xd, p), FloatVector.fromArray(FLOATS, yd, p), FloatVector.fromArray(FLOATS, zd, p),
+                    gather);
+
+            FloatVector.fromArray(FLOATS, out, p).add(falloff(av).mul(gradient), av.compare(VectorOperators.GT, 0))
+                    .intoArray(out, p);
+        }
+    }
+
+    /**
+     * The second 3D OpenSimplex2 lattice point is the neighbour along the axis with the largest offset.
+     * Its attenuation is stored as <code>b - 1</code>, which is positive exactly when <code>b > 1</code>.
+     */
+    private static void axisCorner(int bound, float[] i, float[] j, float[] k, float[] x0, float[] y0, float[] z0,
+                                   float[] xNSign, float[] yNSign, float[] zNSign, float[] ax0, float[] ay0, float[] az0, float[] a,
+                                   int[] xPrimed, int[] yPrimed, int[] zPrimed, float[] xd, float[] yd, float[] zd, float[] b) {
+        for (int p = 0; p < bound; p += LANES) {
+            FloatVector ax = FloatVector.fromArray(FLOATS, ax0, p);
+            FloatVector ay = FloatVector.fromArray(FLOATS, ay0, p);
+            FloatVector az = FloatVector.fromArray(FLOATS, az0, p);
+
+            VectorMask<Float> alongX = ax.compare(VectorOperators.GE, ay).and(ax.compare(VectorOperators.GE, az));
+            VectorMask<Float> alongY = alongX.not()
+                    .and(ay.compare(VectorOperators.GT, ax)).and(ay.compare(VectorOperators.GE, az));
+            VectorMask<Float> alongZ = alongX.or(alongY).not();
+
+            FloatVector axis = az.blend(ay, alongY).blend(ax, alongX);
+            FloatVector.fromArray(FLOATS, a, p).add(axis).add(axis).sub(1).intoArray(b, p);
+
+            FloatVector sx = FloatVector.fromArray(FLOATS, xNSign, p);
+            FloatVector sy = FloatVector.fromArray(FLOATS, yNSign, p);
+            FloatVector sz = FloatVector.fromArray(FLOATS, zNSign, p);
+
+            toInt(FloatVector.fromArray(FLOATS, i, p).sub(sx, alongX)).mul(PRIME_X).intoArray(xPrimed, p);
+            toInt(FloatVector.fromArray(FLOATS, j, p).sub(sy, alongY)).mul(PRIME_Y).intoArray(yPrimed, p);
+            toInt(FloatVector.fromArray(FLOATS, k, p).sub(sz, alongZ)).mul(PRIME_Z).intoArray(zPrimed, p);
+            FloatVector.fromArray(FLOATS, x0, p).add(sx, alongX).intoArray(xd, p);
+            FloatVector.fromArray(FLOATS, y0, p).add(sy, alongY).intoArray(yd, p);
+            FloatVector.fromArray(FLOATS, z0, p).add(sz, alongZ).intoArray(zd, p);
+        }
+    }
+
+    private static void primeCells(int bound, float[] cells, int prime, int[] primed) {
+        for (int p = 0; p < bound; p += LANES) {
+            toInt(FloatVector.fromArray(FLOATS, cells, p)).mul(prime).intoArray(primed, p);
+        }
+    }
+
+    /**
+     * Gradient dot products of one corner of every 2D Perlin cell.
+     */
+    private void gradients(int seed, int bound, int cornerX, int cornerY, int[] x0, int[] y0, float[] xd0, float[] yd0,
+                           float[] out, Gather gather) {
+        int xPrime = cornerX * PRIME_X, yPrime = cornerY * PRIME_Y;
+        float xOffset = cornerX, yOffset = cornerY;
+
+        for (int p = 0; p < bound; p += LANES) {
+            this.gradient(seed,
+                    IntVector.fromArray(INTS, x0, p).add(xPrime), IntVector.fromArray(INTS, y0, p).add(yPrime),
+                    FloatVector.fromArray(FLOATS, xd0, p).sub(xOffset), FloatVector.fromArray(FLOATS, yd0, p).sub(yOffset),
+                    gather).intoArray(out, p);
+        }
+    }
+
+    /**
+     * Gradient dot products of one corner of every 3D Perlin cell.
+     */
+    private void gradients(int seed, int bound, int cornerX, int cornerY, int cornerZ, int[] x0, int[] y0, int[] z0,
+                           float[] xd0, float[] yd0, float[] zd0, float[] out, Gather gather) {
+        int xPrime = cornerX * PRIME_X, yPrime = cornerY * PRIME_Y, zPrime = cornerZ * PRIME_Z;
+        float xOffset = cornerX, yOffset = cornerY, zOffset = cornerZ;
+
+        for (int p = 0; p < bound; p += LANES) {
+            this.gradient(seed,
+                    IntVector.fromArray(INTS, x0, p).add(xPrime),
+                    IntVector.fromArray(INTS, y0, p).add(yPrime),
+                    IntVector.fromArray(INTS, z0, p).add(zPrime),
+                    FloatVector.fromArray(FLOATS, xd0, p).sub(xOffset),
+                    FloatVector.fromArray(FLOATS, yd0, p).sub(yOffset),
+                    FloatVector.fromArray(FLOATS, zd0, p).sub(zOffset),
+                    gather).intoArray(out, p);
+        }
+    }
+
+    private FloatVector gradient(int seed, IntVector xPrimed, IntVector yPrimed, FloatVector xd, FloatVector yd, Gather gather) {
+        IntVector hash = xPrimed.lanewise(VectorOperators.XOR, yPrimed).lanewise(VectorOperators.XOR, seed).mul(0x27d4eb2d);
+        hash = hash.lanewise(VectorOperators.XOR, hash.lanewise(VectorOperators.ASHR, 15)).and(127 << 1);
+        gather.load(hash, this.gradients2D, 2);
+
+        FloatVector xg = FloatVector.fromArray(FLOATS, gather.x, 0);
+        FloatVector yg = FloatVector.fromArray(FLOATS, gather.y, 0);
+        return xd.mul(xg).add(yd.mul(yg));
+    }
+
+    private FloatVector gradient(int seed, IntVector xPrimed, IntVector yPrimed, IntVector zPrimed,
+                                 FloatVector xd, FloatVector yd, FloatVector zd, Gather gather) {
+        IntVector hash = xPrimed.lanewise(VectorOperators.XOR, yPrimed).lanewise(VectorOperators.XOR, zPrimed)
+                .lanewise(VectorOperators.XOR, seed).mul(0x27d4eb2d);
+        hash = hash.lanewise(VectorOperators.XOR, hash.lanewise(VectorOperators.ASHR, 15)).and(63 << 2);
+        gather.load(hash, this.gradients3D, 3);
+
+        FloatVector xg = FloatVector.fromArray(FLOATS, gather.x, 0);
+        FloatVector yg = FloatVector.fromArray(FLOATS, gather.y, 0);
+        FloatVector zg = FloatVector.fromArray(FLOATS, gather.z, 0);
+        return xd.mul(xg).add(yd.mul(yg)).add(zd.mul(zg));
+    }
+
+    /**
+     * Same as <code>FastFloor(f)</code> as whole float and <code>f - FastFloor(f)</code> for one axis, the cells are
+     * turned into ints by {@link #primeCells(int, float[], int, int[])}.
+     * <p>
+     * Like in {@link #roundCells(float[], int, float[], float[], float[], float[])} the loop only stores floats. With the
+     * int conversion in the same loop as the range check, C2 boxed one vector per iteration once both the 2D and 3D
+     * callers were compiled.
+     *
+     * @return the number of points that could be handled, the first block outside of {@link #LIMIT} stops the pass
+     */
+    private static int floorCells(float[] in, int bound, float[] cells, float[] frac) {
+        for (int p = 0; p < bound; p += LANES) {
+            FloatVector f = FloatVector.fromArray(FLOATS, in, p);
+            if (!inRange(f)) return p;
+
+            FloatVector cell = floor(f);
+            cell.intoArray(cells, p);
+            f.sub(cell).intoArray(frac, p);
+        }
+        return bound;
+    }
+
+    /**
+     * The quintic interpolation weights of the offsets from {@link #floorCells(float[], int, float[], float[])}.
+     */
+    private static void interpQuintic(int bound, float[] frac, float[] fade) {
+        for (int p = 0; p < bound; p += LANES) {
+            interpQuintic(FloatVector.fromArray(FLOATS, frac, p)).intoArray(fade, p);
+        }
+    }
+
+    /**
+     * Same as the setup of the 3D OpenSimplex2 lattice for one axis, <code>FastRound(f)</code>,
+     * the offset, the sign <code>(int)(-1.0f - offset) | 1</code> and the absolute offset.
+     */
+    private static int roundCells(float[] in, int bound, float[] cells, float[] offsets, float[] signs, float[] absolute) {
+        for (int p = 0; p < bound; p += LANES) {
+            FloatVector f = FloatVector.fromArray(FLOATS, in, p);
+            if (!inRange(f)) return p;
+
+            FloatVector cell = round(f);
+            FloatVector offset = f.sub(cell);
+
+            // -0.5 <= offset <= 0.5, so the truncated int is -1 or 0
+            VectorMask<Float> negative = FloatVector.broadcast(FLOATS, -1.0f).sub(offset).compare(VectorOperators.LE, -1.0f);
+            FloatVector sign = FloatVector.broadcast(FLOATS, 1.0f).blend(FloatVector.broadcast(FLOATS, -1.0f), negative);
+
+            cell.intoArray(cells, p);
+            offset.intoArray(offsets, p);
+            sign.intoArray(signs, p);
+            sign.mul(offset.neg()).intoArray(absolute, p);
+        }
+        return bound;
+    }
+
+    /**
+     * Move one axis of the 3D OpenSimplex2 lattice to the second, offset grid.
+     */
+    private static void flipCells(int bound, float[] cells, float[] offsets, float[] signs, float[] absolute) {
+        for (int p = 0; p < bound; p += LANES) {
+            FloatVector sign = FloatVector.fromArray(FLOATS, signs, p);
+            FloatVector abs = FloatVector.broadcast(FLOATS, 0.5f).sub(FloatVector.fromArray(FLOATS, absolute, p));
+
+            abs.intoArray(absolute, p);
+            sign.mul(abs).intoArray(offsets, p);
+            FloatVector.fromArray(FLOATS, cells, p).add(1, sign.compare(VectorOperators.LT, 0)).intoArray(cells, p);
+            sign.neg().intoArray(signs, p);
+        }
+    }
+
+    private static void lerp(float[] a, float[] b, float[] t, float[] out, int bound) {
+        for (int p = 0; p < bound; p += LANES) {
+            FloatVector av = FloatVector.fromArray(FLOATS, a, p);
+            FloatVector bv = FloatVector.fromArray(FLOATS, b, p);
+            av.add(FloatVector.fromArray(FLOATS, t, p).mul(bv.sub(av))).intoArray(out, p);
+        }
+    }
+
+    private static void scale(float[] values, int bound, float factor) {
+        for (int p = 0; p < bound; p += LANES) {
+            FloatVector.fromArray(FLOATS, values, p).mul(factor).intoArray(values, p);
+        }
+    }
+
+    private static boolean inRange(FloatVector f) {
+        return f.abs().compare(VectorOperators.LT, LIMIT).allTrue();
+    }
+
+    /** Same as <code>(float)(int)f</code>. */
+    private static FloatVector truncate(FloatVector f) {
+        FloatVector rounded = f.add(MAGIC).sub(MAGIC);
+        VectorMask<Float> positive = f.compare(VectorOperators.GE, 0);
+        return rounded.sub(1, positive.and(rounded.compare(VectorOperators.GT, f)))
+                .add(1, positive.not().and(rounded.compare(VectorOperators.LT, f)));
+    }
+
+    /** Same as <code>f >= 0 ? (int)f : (int)f - 1</code>. */
+    private static FloatVector floor(FloatVector f) {
+        return truncate(f).sub(1, f.compare(VectorOperators.GE, 0).not());
+    }
+
+    /** Same as <code>f >= 0 ? (int)(f + 0.5f) : (int)(f - 0.5f)</code>. */
+    private static FloatVector round(FloatVector f) {
+        return truncate(f.sub(0.5f).blend(f.add(0.5f), f.compare(VectorOperators.GE, 0)));
+    }
+
+    /** Converts whole floats within {@link #LIMIT} to ints. */
+    private static IntVector toInt(FloatVector f) {
+        return f.add(MAGIC).reinterpretAsInts().sub(MAGIC_BITS);
+    }
+
+    /** 1 for the set lanes of the mask, 0 otherwise. */
+    private static FloatVector select(VectorMask<Float> mask) {
+        return FloatVector.zero(FLOATS).blend(1, mask);
+    }
+
+    /** <code>(t * t) * (t * t)</code> */
+    private static FloatVector falloff(FloatVector t) {
+        FloatVector squared = t.mul(t);
+        return squared.mul(squared);
+    }
+
+    private static FloatVector interpQuintic(FloatVector t) {
+        return t.mul(t).mul(t).mul(t.mul(t.mul(6).sub(15)).add(10));
+    }
+
+    private static final class Scratch {
+
+        private final float[][] floats = new float[17][0];
+        private final int[][] ints = new int[3][0];
+
+        private final Gather gather = new Gather();
+
+        private float[] floats(int slot, int size) {
+            if (this.floats[slot].length < size) this.floats[slot] = new float[size];
+            return this.floats[slot];
+        }
+
+        private int[] ints(int slot, int size) {
+            if (this.ints[slot].length < size) this.ints[slot] = new int[size];
+            return this.ints[slot];
+        }
+    }
+
+    /**
+     * Gradient lookup through plain arrays. The indexed <code>fromArray</code> gathers of JDK 17 crash C2 compiled code
+     * on AVX-512 hardware from time to time, the lookup is done lane by lane instead.
+     */
+    private static final class Gather {
+
+        private final int[] index = new int[LANES];
+        private final float[] x = new float[LANES];
+        private final float[] y = new float[LANES];
+        private final float[] z = new float[LANES];
+
+        /**
+         * Load the gradient components at <code>index</code> to {@link #x}, {@link #y} and for 3D {@link #z}.
+         */
+        private void load(IntVector hash, float[] gradients, int dimensions) {
+            hash.intoArray(this.index, 0);
+            for (int l = 0; l < LANES; l++) {
+                int i = this.index[l];
+                this.x[l] = gradients[i];
+                this.y[l] = gradients[i | 1];
+                if (dimensions == 3) this.z[l] = gradients[i | 2];
+            }
+        }
+    }
+}